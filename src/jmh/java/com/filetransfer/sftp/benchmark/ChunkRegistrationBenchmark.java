@@ -0,0 +1,186 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.service.ChunkBitmap;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares registering received chunks as one {@code uploaded_chunks} row per chunk against
+ * updating a per-upload bitmap row, and reading the chunk set back for {@code /check-chunks}.
+ * Runs against H2 in PostgreSQL mode with the tables Hibernate generates for both layouts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkRegistrationBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:chunk-registration;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    @State(Scope.Thread)
+    public static class Registration {
+
+        @Param({"1000", "10000"})
+        int chunksPerUpload;
+
+        Connection connection;
+        PreparedStatement insertRow;
+        PreparedStatement insertState;
+        PreparedStatement updateState;
+
+        String fileName;
+        int nextChunk;
+        ChunkBitmap bitmap;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            connection = DriverManager.getConnection(URL);
+            createTables(connection);
+            insertRow = connection.prepareStatement(
+                    "insert into uploaded_chunks (file_name, chunk_index, username) values (?, ?, 'bench')");
+            insertState = connection.prepareStatement(
+                    "insert into chunk_upload_state (file_name, username, bitmap, chunk_count, updated_at) values (?, 'bench', ?, 0, ?)");
+            updateState = connection.prepareStatement(
+                    "update chunk_upload_state set bitmap = ?, chunk_count = ?, updated_at = ? " +
+                            "where file_name = ? and username = 'bench' and chunk_count < ?");
+            startUpload();
+        }
+
+        int nextChunk() throws SQLException {
+            if (nextChunk == chunksPerUpload) {
+                startUpload();
+            }
+            return nextChunk++;
+        }
+
+        private void startUpload() throws SQLException {
+            fileName = UUID.randomUUID() + ".bin";
+            nextChunk = 0;
+            bitmap = new ChunkBitmap();
+            insertState.setString(1, fileName);
+            insertState.setBytes(2, new byte[0]);
+            insertState.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            insertState.executeUpdate();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lookup {
+
+        static final int CHUNKS = 100_000;
+
+        Connection connection;
+        PreparedStatement selectRows;
+        PreparedStatement selectState;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            connection = DriverManager.getConnection(URL);
+            createTables(connection);
+            ChunkBitmap bitmap = new ChunkBitmap();
+            try (PreparedStatement insertRow = connection.prepareStatement(
+                    "insert into uploaded_chunks (file_name, chunk_index, username) values ('lookup.bin', ?, 'bench')")) {
+                for (int i = 0; i < CHUNKS; i++) {
+                    insertRow.setInt(1, i);
+                    insertRow.addBatch();
+                    bitmap.set(i);
+                }
+                insertRow.executeBatch();
+            }
+            try (PreparedStatement insertState = connection.prepareStatement(
+                    "insert into chunk_upload_state (file_name, username, bitmap, chunk_count, updated_at) values ('lookup.bin', 'bench', ?, ?, ?)")) {
+                insertState.setBytes(1, bitmap.snapshot().toByteArray());
+                insertState.setInt(2, CHUNKS);
+                insertState.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                insertState.executeUpdate();
+            }
+            selectRows = connection.prepareStatement(
+                    "select chunk_index from uploaded_chunks where file_name = 'lookup.bin' and username = 'bench'");
+            selectState = connection.prepareStatement(
+                    "select bitmap from chunk_upload_state where file_name = 'lookup.bin' and username = 'bench'");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists uploaded_chunks (id bigint generated by default as identity, " +
+                    "chunk_index integer not null, file_name varchar(255) not null, username varchar(255) not null, primary key (id))");
+            statement.execute("create table if not exists chunk_upload_state (id bigint generated by default as identity, " +
+                    "bitmap bytea not null, chunk_count integer not null, file_name varchar(255) not null, " +
+                    "updated_at timestamp(6) not null, username varchar(255) not null, primary key (id), " +
+                    "unique (file_name, username))");
+        }
+    }
+
+    @Benchmark
+    public int registerRowPerChunk(Registration state) throws SQLException {
+        state.insertRow.setString(1, state.fileName);
+        state.insertRow.setInt(2, state.nextChunk());
+        return state.insertRow.executeUpdate();
+    }
+
+    @Benchmark
+    public int registerBitmap(Registration state) throws SQLException {
+        if (!state.bitmap.set(state.nextChunk())) {
+            return 0;
+        }
+        BitSet snapshot = state.bitmap.snapshot();
+        state.updateState.setBytes(1, snapshot.toByteArray());
+        state.updateState.setInt(2, snapshot.cardinality());
+        state.updateState.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+        state.updateState.setString(4, state.fileName);
+        state.updateState.setInt(5, snapshot.cardinality());
+        return state.updateState.executeUpdate();
+    }
+
+    @Benchmark
+    public boolean registerBitmapInMemory(Registration state) throws SQLException {
+        return state.bitmap.set(state.nextChunk());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public Set<Integer> loadRowPerChunk(Lookup state) throws SQLException {
+        Set<Integer> chunks = new HashSet<>();
+        try (ResultSet resultSet = state.selectRows.executeQuery()) {
+            while (resultSet.next()) {
+                chunks.add(resultSet.getInt(1));
+            }
+        }
+        return chunks;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public ChunkBitmap loadBitmap(Lookup state) throws SQLException {
+        try (ResultSet resultSet = state.selectState.executeQuery()) {
+            resultSet.next();
+            return ChunkBitmap.fromBitSet(BitSet.valueOf(resultSet.getBytes(1)));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.filetransfer.sftp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to upload 64 MB to an upload session as chunks of {@code chunkSizeMb}, through the
+ * running application on loopback (H2, local file system blob store): as multipart POSTs, which Tomcat
+ * parses and spools to a temporary file before the chunk is copied into the staging file, and as raw
+ * PUT bodies streamed straight into the staging file. Throughput in MB/s is {@code 64 / score} with the
+ * score in seconds.
+ * <p>
+ * Each iteration opens a session one chunk larger than what is sent, so it is never finalized, and
+ * aborts it afterwards.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkUploadBenchmark {
+
+    private static final long UPLOAD_SIZE = 64L * 1024 * 1024;
+    private static final String BOUNDARY = "chunk-upload-benchmark";
+
+    @Param({"1", "8", "64"})
+    int chunkSizeMb;
+
+    RunningApplication app;
+    byte[] chunk;
+    int chunkCount;
+    String uploadId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        app = RunningApplication.start();
+        chunk = new byte[chunkSizeMb * 1024 * 1024];
+        new Random(42).nextBytes(chunk); // Incompressible, like most large transfers
+        chunkCount = (int) (UPLOAD_SIZE / chunk.length);
+    }
+
+    @Setup(Level.Iteration)
+    public void openSession() throws Exception {
+        uploadId = app.openUploadSession(UPLOAD_SIZE + chunk.length, chunk.length);
+    }
+
+    @TearDown(Level.Iteration)
+    public void abortSession() throws Exception {
+        app.abortUploadSession(uploadId);
+    }
+
+    @Benchmark
+    public void multipartPost() throws Exception {
+        HttpRequest.BodyPublisher head = HttpRequest.BodyPublishers.ofString("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"chunk\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n");
+        HttpRequest.BodyPublisher tail = HttpRequest.BodyPublishers.ofString("\r\n--" + BOUNDARY + "--\r\n");
+        for (int i = 0; i < chunkCount; i++) {
+            HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.concat(
+                    head, HttpRequest.BodyPublishers.ofByteArray(chunk), tail);
+            app.send(app.authorized("/api/files/uploads/" + uploadId + "/chunks/" + i)
+                    .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY), "POST", body);
+        }
+    }
+
+    @Benchmark
+    public void rawPut() throws Exception {
+        for (int i = 0; i < chunkCount; i++) {
+            app.send(app.authorized("/api/files/uploads/" + uploadId + "/chunks/" + i)
+                    .header("Content-Type", "application/octet-stream"), "PUT", HttpRequest.BodyPublishers.ofByteArray(chunk));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        app.close();
+    }
+}
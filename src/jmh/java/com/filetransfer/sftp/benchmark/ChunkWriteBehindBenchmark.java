@@ -0,0 +1,90 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.service.ChunkIndexService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers {@value #CHUNKS} received chunks at once, each from its own virtual thread as if from its
+ * own upload request, spread over {@code uploads} uploads, through the application's
+ * {@link ChunkIndexService}, with each chunk written in its own transaction ({@code writeBehind=false})
+ * or written behind in batches. The score is chunks stored (and acknowledged) per second; the
+ * {@code writes} counter is the rate of INSERT and UPDATE statements on {@code chunk_upload_state} that
+ * the database executed, read from H2's query statistics.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkWriteBehindBenchmark {
+
+    private static final int CHUNKS = 10_000;
+
+    @Param({"false", "true"})
+    boolean writeBehind;
+
+    @Param({"10", "1000"})
+    int uploads;
+
+    RunningApplication app;
+    ChunkIndexService chunkIndexService;
+    JdbcTemplate jdbcTemplate;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Statements {
+        public long writes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        app = RunningApplication.start("--chunks.write-behind.enabled=" + writeBehind);
+        chunkIndexService = app.bean(ChunkIndexService.class);
+        jdbcTemplate = app.bean(JdbcTemplate.class);
+        jdbcTemplate.execute("SET QUERY_STATISTICS_MAX_ENTRIES 10000");
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        app.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public void registerConcurrently(Statements statements) throws Exception {
+        long before = writeStatements();
+        String batch = UUID.randomUUID() + "-";
+        List<Future<Boolean>> registrations = new ArrayList<>(CHUNKS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CHUNKS; i++) {
+                String upload = batch + (i % uploads);
+                int chunkIndex = i / uploads;
+                registrations.add(executor.submit(() -> chunkIndexService.register(upload, "bench", chunkIndex)));
+            }
+            for (Future<Boolean> registration : registrations) {
+                if (!registration.get()) {
+                    throw new IllegalStateException("Chunk registered twice");
+                }
+            }
+        }
+        statements.writes += writeStatements() - before;
+    }
+
+    private long writeStatements() {
+        Long count = jdbcTemplate.queryForObject("select coalesce(sum(execution_count), 0) from information_schema.query_statistics " +
+                "where lower(sql_statement) like 'update chunk_upload_state%' " +
+                "or lower(sql_statement) like 'insert into chunk_upload_state%'", Long.class);
+        return count != null ? count : 0;
+    }
+}
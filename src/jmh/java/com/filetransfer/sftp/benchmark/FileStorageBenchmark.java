@@ -0,0 +1,306 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.repository.ChunkUploadStateRepository;
+import com.filetransfer.sftp.service.ChunkBitmap;
+import com.filetransfer.sftp.service.ChunkIndexService;
+import com.filetransfer.sftp.service.ChunkStateWriter;
+import com.filetransfer.sftp.service.FileStorageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Calls {@link FileStorageService} directly in the application started against in-memory H2 in
+ * PostgreSQL mode and a temporary directory on the local filesystem: storing one chunk, merging an
+ * upload's chunks into its file, and reading an upload's received chunks the way {@code /check-chunks}
+ * does. Each state starts its own application, so only the one a benchmark uses is running.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageBenchmark {
+
+    private static final String USER = "bench";
+
+    /**
+     * Sequential chunks of one upload after another, from one client; the chunk directory is emptied
+     * after each iteration. With write-behind, each chunk waits for the batch that stores its state.
+     */
+    @State(Scope.Thread)
+    public static class SaveChunk {
+
+        static final int CHUNKS_PER_UPLOAD = 1000;
+
+        @Param({"65536", "1048576", "8388608"})
+        int chunkSize;
+
+        @Param({"false", "true"})
+        boolean writeBehind;
+
+        RunningApplication app;
+        FileStorageService fileStorageService;
+        ChunkPart chunk;
+        String fileName;
+        int nextChunk;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            app = RunningApplication.start("--chunks.write-behind.enabled=" + writeBehind);
+            fileStorageService = app.bean(FileStorageService.class);
+            chunk = new ChunkPart(randomBytes(chunkSize));
+            nextChunk = CHUNKS_PER_UPLOAD;
+        }
+
+        int nextChunk() {
+            if (nextChunk == CHUNKS_PER_UPLOAD) {
+                fileName = UUID.randomUUID() + ".bin";
+                nextChunk = 0;
+            }
+            return nextChunk++;
+        }
+
+        @TearDown(Level.Iteration)
+        public void deleteChunks() throws IOException {
+            deleteContents(app.chunkRoot());
+            nextChunk = CHUNKS_PER_UPLOAD;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            app.close();
+        }
+    }
+
+    /**
+     * An upload of {@code chunks} chunks of {@code chunkSize} bytes, stored fresh before each merge.
+     * The file is created empty first, as merging only replaces the content of an existing file, and
+     * deleted after the merge.
+     */
+    @State(Scope.Thread)
+    public static class Merge {
+
+        @Param({"16", "128"})
+        int chunks;
+
+        @Param({"65536", "1048576"})
+        int chunkSize;
+
+        RunningApplication app;
+        FileStorageService fileStorageService;
+        byte[][] content;
+        String fileName;
+        long merges;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            app = RunningApplication.start();
+            fileStorageService = app.bean(FileStorageService.class);
+            content = new byte[chunks][];
+            for (int i = 0; i < chunks; i++) {
+                content[i] = randomBytes(chunkSize);
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void uploadChunks() throws Exception {
+            fileName = UUID.randomUUID() + ".bin";
+            fileStorageService.saveFile(InputStream.nullInputStream(), fileName, USER);
+            // Different content every time, so the merged blob is never deduplicated against the last one
+            ByteBuffer.wrap(content[0]).putLong(0, merges++);
+
+            List<Future<?>> uploads = new ArrayList<>(chunks);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < chunks; i++) {
+                    int chunkIndex = i;
+                    uploads.add(executor.submit(() -> {
+                        fileStorageService.saveChunk(new ChunkPart(content[chunkIndex]), fileName, chunkIndex, USER);
+                        return null;
+                    }));
+                }
+                for (Future<?> upload : uploads) {
+                    upload.get();
+                }
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteFile() {
+            fileStorageService.deleteFile(fileName, USER);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            app.close();
+        }
+    }
+
+    /**
+     * An upload with {@code chunks} received chunks in its {@code chunk_upload_state} rows, either all
+     * of them in a row or every other one, the worst case for the ranges sent back to the client.
+     */
+    @State(Scope.Benchmark)
+    public static class Lookup {
+
+        static final String FILE_NAME = "lookup.bin";
+
+        @Param({"10000", "100000", "1000000"})
+        int chunks;
+
+        @Param({"contiguous", "gaps"})
+        String received;
+
+        RunningApplication app;
+        ChunkIndexService chunkIndexService;
+        ChunkUploadStateRepository chunkUploadStateRepository;
+        ChunkStateWriter chunkStateWriter;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            app = RunningApplication.start();
+            chunkIndexService = app.bean(ChunkIndexService.class);
+            chunkUploadStateRepository = app.bean(ChunkUploadStateRepository.class);
+            chunkStateWriter = app.bean(ChunkStateWriter.class);
+
+            ChunkBitmap bitmap = new ChunkBitmap();
+            for (int i = 0; i < chunks; i += received.equals("gaps") ? 2 : 1) {
+                bitmap.set(i);
+            }
+            List<Object[]> ranges = new ArrayList<>();
+            for (int page = 0; page * ChunkBitmap.PAGE_BITS < chunks; page++) {
+                BitSet bits = bitmap.snapshotPage(page);
+                ranges.add(new Object[]{FILE_NAME, USER, page * ChunkBitmap.PAGE_BITS, bits.toByteArray(), bits.cardinality(),
+                        new Timestamp(System.currentTimeMillis())});
+            }
+            app.bean(JdbcTemplate.class).batchUpdate("insert into chunk_upload_state " +
+                    "(file_name, username, first_chunk, bitmap, chunk_count, updated_at) values (?, ?, ?, ?, ?, ?)", ranges);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            app.close();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String saveChunk(SaveChunk state) throws IOException {
+        int chunkIndex = state.nextChunk();
+        state.fileStorageService.saveChunk(state.chunk, state.fileName, chunkIndex, USER);
+        return state.fileName;
+    }
+
+    @Benchmark
+    public boolean mergeChunks(Merge state) throws IOException {
+        if (!state.fileStorageService.mergeChunks(state.fileName, USER)) {
+            throw new IllegalStateException("Merge of " + state.fileName + " was refused");
+        }
+        return true;
+    }
+
+    /**
+     * The chunks of an upload that this node has already cached, as a chunk upload looks them up.
+     */
+    @Benchmark
+    public Object getCachedChunks(Lookup state) {
+        ChunkBitmap chunks = state.chunkIndexService.getChunks(Lookup.FILE_NAME, USER);
+        return chunks.toRanges();
+    }
+
+    /**
+     * The chunks of an upload loaded from the database, as {@code /check-chunks} reads them so that it
+     * includes chunks registered on other nodes.
+     */
+    @Benchmark
+    public Object loadUploadedChunks(Lookup state) {
+        ChunkIndexService chunkIndexService = new ChunkIndexService(state.chunkUploadStateRepository, state.chunkStateWriter);
+        return chunkIndexService.getChunks(Lookup.FILE_NAME, USER).toRanges();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void deleteContents(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder())
+                    .filter(path -> !path.equals(directory))
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A chunk held in memory, as Spring hands a small multipart part to the controller.
+     */
+    private static final class ChunkPart implements MultipartFile {
+
+        private final byte[] content;
+
+        ChunkPart(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public String getName() {
+            return "chunk";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "chunk";
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.write(dest.toPath(), content);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.security.JwtFilter;
+import com.filetransfer.sftp.security.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JwtFilter} throughput for a request carrying a valid bearer token, against a copy of
+ * the previous filter that decrypted the signing key and parsed the token three times per request.
+ * The user lookup is an in-memory stub so only token handling is compared.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    String encryptedSecret;
+    String encryptionKey;
+
+    JwtFilter filter;
+    LegacyJwtFilter legacyFilter;
+    HttpServletRequest request;
+    HttpServletResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Per-request INFO/DEBUG logging would otherwise dominate the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        SecureRandom random = new SecureRandom();
+        byte[] aesKey = new byte[32];
+        byte[] secret = new byte[64];
+        random.nextBytes(aesKey);
+        random.nextBytes(secret);
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"));
+        encryptedSecret = Base64.getEncoder().encodeToString(cipher.doFinal(secret));
+        encryptionKey = Base64.getEncoder().encodeToString(aesKey);
+
+        UserDetails user = User.withUsername("alice").password("{noop}secret").roles("USER").build();
+        UserDetailsService userDetailsService = username -> user;
+
+        JwtUtil jwtUtil = new JwtUtil(encryptedSecret, encryptionKey);
+        filter = new JwtFilter(jwtUtil, userDetailsService, new SimpleMeterRegistry());
+        legacyFilter = new LegacyJwtFilter(userDetailsService);
+        request = bearerRequest(jwtUtil.generateToken("alice"));
+        response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> defaultValue(method.getReturnType()));
+    }
+
+    @Benchmark
+    public Authentication legacyFilter() throws Exception {
+        legacyFilter.doFilter(request, response, NO_OP_CHAIN);
+        return takeAuthentication();
+    }
+
+    @Benchmark
+    public Authentication cachedKeyFilter() throws Exception {
+        filter.doFilter(request, response, NO_OP_CHAIN);
+        return takeAuthentication();
+    }
+
+    private static Authentication takeAuthentication() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        if (authentication == null) {
+            throw new IllegalStateException("Request was not authenticated");
+        }
+        return authentication;
+    }
+
+    /**
+     * A request that only answers the calls the filter chain makes: the Authorization header,
+     * request attributes used by {@code OncePerRequestFilter}, and a few request details.
+     */
+    private static HttpServletRequest bearerRequest(String token) {
+        String authorization = "Bearer " + token;
+        return (HttpServletRequest) Proxy.newProxyInstance(JwtFilterBenchmark.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getHeader" -> HttpHeaders.AUTHORIZATION.equalsIgnoreCase((String) args[0]) ? authorization : null;
+                    case "getDispatcherType" -> DispatcherType.REQUEST;
+                    case "getRemoteAddr" -> "127.0.0.1";
+                    case "getRequestURI", "getServletPath" -> "/api/files/upload-chunk";
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * The filter and token handling as they were before the signing key and parser were cached.
+     */
+    private class LegacyJwtFilter extends org.springframework.web.filter.OncePerRequestFilter {
+
+        private final UserDetailsService userDetailsService;
+
+        LegacyJwtFilter(UserDetailsService userDetailsService) {
+            this.userDetailsService = userDetailsService;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                chain.doFilter(request, response);
+                return;
+            }
+            String token = authHeader.substring(7);
+            String username = getClaims(token).getSubject();
+            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                if (getClaims(token).getSubject() != null && !getClaims(token).getExpiration().before(new Date())) {
+                    UsernamePasswordAuthenticationToken authentication =
+                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                }
+            }
+            chain.doFilter(request, response);
+        }
+
+        private Claims getClaims(String token) {
+            return Jwts.parser()
+                    .verifyWith((SecretKey) getSigningKey())
+                    .build()
+                    .parseSignedClaims(token)
+                    .getPayload();
+        }
+
+        private Key getSigningKey() {
+            try {
+                byte[] aesKeyBytes = Base64.getDecoder().decode(encryptionKey);
+                byte[] decodedSecret = Base64.getDecoder().decode(encryptedSecret);
+                Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKeyBytes, "AES"));
+                return Keys.hmacShaKeyFor(cipher.doFinal(decodedSecret));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to decrypt JWT secret key", e);
+            }
+        }
+    }
+}
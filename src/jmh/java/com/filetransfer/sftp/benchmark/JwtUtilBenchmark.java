@@ -0,0 +1,76 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.security.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JwtUtil} issuing a token at login and verifying one on every authenticated request,
+ * for a valid token and for one that has expired.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtUtilBenchmark {
+
+    JwtUtil jwtUtil;
+    String token;
+    String expiredToken;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Per-token DEBUG logging would otherwise dominate the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        SecureRandom random = new SecureRandom();
+        byte[] aesKey = new byte[32];
+        byte[] secret = new byte[64];
+        random.nextBytes(aesKey);
+        random.nextBytes(secret);
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"));
+
+        jwtUtil = new JwtUtil(Base64.getEncoder().encodeToString(cipher.doFinal(secret)),
+                Base64.getEncoder().encodeToString(aesKey));
+        token = jwtUtil.generateToken("alice");
+        expiredToken = Jwts.builder()
+                .subject("alice")
+                .issuedAt(new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)))
+                .expiration(new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)))
+                .signWith(Keys.hmacShaKeyFor(secret))
+                .compact();
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("alice");
+    }
+
+    @Benchmark
+    public Claims verifyToken() {
+        return jwtUtil.verifyToken(token).orElseThrow();
+    }
+
+    @Benchmark
+    public Optional<Claims> verifyExpiredToken() {
+        Optional<Claims> claims = jwtUtil.verifyToken(expiredToken);
+        if (claims.isPresent()) {
+            throw new IllegalStateException("Expired token was accepted");
+        }
+        return claims;
+    }
+}
@@ -0,0 +1,147 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.filetransfer.sftp.SftpApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The application started in-process on a free port, against in-memory H2 and a temporary storage
+ * directory, with a registered user whose bearer token authorizes the requests. For benchmarks that go
+ * through HTTP.
+ */
+final class RunningApplication implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final Path root;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final String token;
+
+    private RunningApplication(Path root, String... extraArgs) throws Exception {
+        this.root = root;
+
+        // An encrypted signing secret and its AES key, in the form JwtUtil expects
+        SecureRandom random = new SecureRandom();
+        byte[] aesKey = new byte[32];
+        byte[] secret = new byte[64];
+        random.nextBytes(aesKey);
+        random.nextBytes(secret);
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"));
+
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + root.getFileName() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--server.port=0",
+                "--sftp.port=0",
+                "--storage.root=" + root.resolve("storage"),
+                "--storage.chunk-root=" + root.resolve("chunks"),
+                "--server.tomcat.basedir=" + root.resolve("tomcat"),
+                "--frontend.url=http://localhost",
+                "--logging.level.root=WARN",
+                "--jwt.secret=" + Base64.getEncoder().encodeToString(cipher.doFinal(secret)),
+                "--jwt.encryption.key=" + Base64.getEncoder().encodeToString(aesKey)));
+        args.addAll(List.of(extraArgs));
+        context = new SpringApplicationBuilder(SftpApplication.class).run(args.toArray(String[]::new));
+        baseUrl = "http://127.0.0.1:" + port();
+
+        Map<String, String> credentials = Map.of("username", "bench", "password", "bench-password");
+        sendJson(HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/register")), "POST", credentials);
+        token = sendJson(HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login")), "POST", credentials);
+    }
+
+    /**
+     * Starts the application; {@code extraArgs} are additional {@code --property=value} arguments.
+     */
+    static RunningApplication start(String... extraArgs) throws Exception {
+        return new RunningApplication(Files.createTempDirectory("sftp-app-bench-"), extraArgs);
+    }
+
+    int port() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    /**
+     * The {@code storage.chunk-root} directory that chunks are written to.
+     */
+    Path chunkRoot() {
+        return root.resolve("chunks");
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    String token() {
+        return token;
+    }
+
+    HttpClient client() {
+        return client;
+    }
+
+    HttpRequest.Builder authorized(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Authorization", "Bearer " + token);
+    }
+
+    /**
+     * Opens an upload session and returns its id.
+     */
+    String openUploadSession(long totalSize, int chunkSize) throws Exception {
+        Map<String, Object> request = Map.of("fileName", "bench.bin", "totalSize", totalSize, "chunkSize", chunkSize);
+        JsonNode created = objectMapper.readTree(sendJson(authorized("/api/files/uploads"), "POST", request));
+        return created.get("uploadId").asText();
+    }
+
+    void abortUploadSession(String uploadId) throws Exception {
+        client.send(authorized("/api/files/uploads/" + uploadId).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    String sendJson(HttpRequest.Builder request, String method, Object value) throws Exception {
+        return send(request.header("Content-Type", "application/json"), method,
+                HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(value)));
+    }
+
+    /**
+     * Sends the request and returns the response body, failing on anything but a 2xx status.
+     */
+    String send(HttpRequest.Builder request, String method, HttpRequest.BodyPublisher body) throws Exception {
+        HttpResponse<String> response = client.send(request.method(method, body).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(method + " " + response.uri() + " answered " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
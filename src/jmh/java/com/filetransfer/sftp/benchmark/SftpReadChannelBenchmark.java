@@ -0,0 +1,114 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.filesystem.StorageFileSystem;
+import com.filetransfer.sftp.filesystem.StorageFileSystemProvider;
+import com.filetransfer.sftp.model.FileMetadata;
+import com.filetransfer.sftp.service.FileStorageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures 32 KB SFTP read requests against a stored file the way SSHD's file handle issues them, a
+ * position change followed by a read, on the channel the storage file system returns: a plain
+ * {@link FileChannel} (as before), a positional read channel ({@code mapThreshold} above the file size)
+ * and a memory-mapped one. Requests are either sequential, as in a pipelined download, or at random
+ * offsets, as from segmented clients such as lftp and rclone. The file is in the page cache, so the
+ * difference is the per-request system calls.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SftpReadChannelBenchmark {
+
+    private static final int FILE_SIZE = 256 * 1024 * 1024;
+    private static final int REQUEST_SIZE = 32 * 1024;
+
+    @Param({"fileChannel", "positional", "mapped"})
+    String channelType;
+
+    Path root;
+    Path blob;
+    SeekableByteChannel channel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("sftp-read-bench-");
+        blob = root.resolve("blob");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(blob)) {
+            for (int written = 0; written < FILE_SIZE; written += block.length) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+
+        if ("fileChannel".equals(channelType)) {
+            channel = FileChannel.open(blob, StandardOpenOption.READ);
+            return;
+        }
+        FileMetadata fileMetadata = new FileMetadata("large.bin", "bench", FILE_SIZE / 1024L, LocalDateTime.now(), null);
+        FileStorageService fileStorageService = new FileStorageService() {
+            @Override
+            public Optional<FileMetadata> getFile(String fileName, String username) {
+                return Optional.of(fileMetadata);
+            }
+
+            @Override
+            public Optional<Path> getContentPath(FileMetadata file) {
+                return Optional.of(blob);
+            }
+        };
+        long mapThreshold = "mapped".equals(channelType) ? 0 : Long.MAX_VALUE;
+        StorageFileSystem fileSystem = new StorageFileSystemProvider(fileStorageService, mapThreshold).newFileSystem("bench");
+        channel = Files.newByteChannel(fileSystem.getPath("/large.bin"));
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        final ByteBuffer buffer = ByteBuffer.allocate(REQUEST_SIZE);
+        long nextOffset;
+    }
+
+    @Benchmark
+    public int sequential(Request request) throws IOException {
+        long offset = request.nextOffset;
+        request.nextOffset = (offset + REQUEST_SIZE) % FILE_SIZE;
+        return read(request.buffer, offset);
+    }
+
+    @Benchmark
+    public int random(Request request) throws IOException {
+        long offset = (long) ThreadLocalRandom.current().nextInt(FILE_SIZE / REQUEST_SIZE) * REQUEST_SIZE;
+        return read(request.buffer, offset);
+    }
+
+    private int read(ByteBuffer buffer, long offset) throws IOException {
+        buffer.clear();
+        channel.position(offset);
+        return channel.read(buffer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.deleteIfExists(blob);
+        Files.deleteIfExists(root);
+    }
+}
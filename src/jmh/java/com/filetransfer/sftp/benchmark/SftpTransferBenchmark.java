@@ -0,0 +1,249 @@
+package com.filetransfer.sftp.benchmark;
+
+import com.filetransfer.sftp.config.SftpTransportSettings;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.common.keyprovider.KeyPairProvider;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Measures SFTP upload and download time for one file between an SSHD server and an SSHD client on
+ * loopback, through a proxy that delays each direction by half of {@code rttMs} to simulate a long link.
+ * {@code default} is SSHD's out-of-the-box transport; {@code tuned} applies the
+ * {@link SftpTransportSettings} from {@code application.properties} to both ends. Throughput in MB/s is
+ * {@code fileSizeMb / score}.
+ * <p>
+ * Only the transport is measured: the server serves a temporary directory, not the blob store.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SftpTransferBenchmark {
+
+    @Param({"0", "50", "150"})
+    int rttMs;
+
+    @Param({"default", "tuned"})
+    String transport;
+
+    @Param({"32"})
+    int fileSizeMb;
+
+    SshServer server;
+    SshClient client;
+    DelayProxy proxy;
+    ClientSession session;
+    SftpClient sftp;
+    Path root;
+    byte[] content;
+    byte[] buffer = new byte[256 * 1024];
+    int bufferSize;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Per-packet debug logging would otherwise dominate the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+
+        root = Files.createTempDirectory("sftp-bench-");
+        content = new byte[fileSizeMb * 1024 * 1024];
+        new Random(42).nextBytes(content); // Incompressible, like most large transfers
+        Files.write(root.resolve("download.bin"), content);
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        server.setKeyPairProvider(KeyPairProvider.wrap(generator.generateKeyPair()));
+        server.setPasswordAuthenticator((username, password, serverSession) -> true);
+        server.setFileSystemFactory(new VirtualFileSystemFactory(root));
+        server.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+
+        client = SshClient.setUpDefaultClient();
+        bufferSize = 32 * 1024; // OpenSSH's sftp request size
+        if ("tuned".equals(transport)) {
+            Properties properties = applicationProperties();
+            SftpTransportSettings settings = tunedSettings(properties);
+            settings.apply(server);
+            settings.apply(client);
+            bufferSize = Integer.parseInt(properties.getProperty("sftp.write-buffer-size"));
+        }
+        server.start();
+        client.start();
+
+        proxy = new DelayProxy(server.getPort(), Duration.ofMillis(rttMs).dividedBy(2));
+        session = client.connect("bench", "127.0.0.1", proxy.port()).verify(Duration.ofSeconds(30)).getSession();
+        session.addPasswordIdentity("bench");
+        session.auth().verify(Duration.ofSeconds(30));
+        sftp = SftpClientFactory.instance().createSftpClient(session);
+    }
+
+    private static Properties applicationProperties() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = SftpTransferBenchmark.class.getResourceAsStream("/application.properties")) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static SftpTransportSettings tunedSettings(Properties properties) {
+        return new SftpTransportSettings(Integer.parseInt(properties.getProperty("sftp.nio-workers")),
+                Long.parseLong(properties.getProperty("sftp.window-size")),
+                Long.parseLong(properties.getProperty("sftp.max-packet-size")),
+                Integer.parseInt(properties.getProperty("sftp.read-buffer-size")),
+                Integer.parseInt(properties.getProperty("sftp.write-buffer-size")),
+                List.of(properties.getProperty("sftp.ciphers").split(",")),
+                List.of(properties.getProperty("sftp.macs").split(",")));
+    }
+
+    @Benchmark
+    public void upload() throws IOException {
+        try (OutputStream out = sftp.write("/upload.bin", bufferSize)) {
+            for (int offset = 0; offset < content.length; offset += bufferSize) {
+                out.write(content, offset, Math.min(bufferSize, content.length - offset));
+            }
+        }
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        long total = 0;
+        try (InputStream in = sftp.read("/download.bin", bufferSize)) {
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                total += read;
+            }
+        }
+        if (total != content.length) {
+            throw new IllegalStateException("Downloaded " + total + " of " + content.length + " bytes");
+        }
+        return total;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sftp.close();
+        session.close();
+        client.stop();
+        server.stop(true);
+        proxy.close();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * TCP proxy that forwards bytes after a fixed one-way delay, without limiting bandwidth, so a
+     * sender is held back only by how much it may have in flight.
+     */
+    static class DelayProxy implements AutoCloseable {
+
+        private final ServerSocket listener;
+        private final int targetPort;
+        private final long delayNanos;
+
+        DelayProxy(int targetPort, Duration oneWayDelay) throws IOException {
+            this.listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.targetPort = targetPort;
+            this.delayNanos = oneWayDelay.toNanos();
+            Thread acceptor = new Thread(this::accept, "delay-proxy");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return listener.getLocalPort();
+        }
+
+        private void accept() {
+            while (!listener.isClosed()) {
+                try {
+                    Socket downstream = listener.accept();
+                    Socket upstream = new Socket();
+                    upstream.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), targetPort));
+                    for (Socket socket : List.of(downstream, upstream)) {
+                        socket.setTcpNoDelay(true);
+                        socket.setReceiveBufferSize(4 * 1024 * 1024);
+                        socket.setSendBufferSize(4 * 1024 * 1024);
+                    }
+                    pipe(downstream, upstream);
+                    pipe(upstream, downstream);
+                } catch (IOException e) {
+                    return; // Listener closed
+                }
+            }
+        }
+
+        private void pipe(Socket from, Socket to) {
+            BlockingQueue<Packet> queue = new LinkedBlockingQueue<>();
+            Thread reader = new Thread(() -> {
+                try (InputStream in = from.getInputStream()) {
+                    byte[] chunk = new byte[64 * 1024];
+                    for (int read; (read = in.read(chunk)) >= 0; ) {
+                        queue.put(new Packet(Arrays.copyOf(chunk, read), System.nanoTime() + delayNanos));
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // Connection closed
+                }
+                queue.add(Packet.EOF);
+            }, "delay-proxy-read");
+            Thread writer = new Thread(() -> {
+                try (OutputStream out = to.getOutputStream()) {
+                    for (Packet packet; (packet = queue.take()) != Packet.EOF; ) {
+                        long wait = packet.due - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        out.write(packet.data);
+                    }
+                    to.shutdownOutput();
+                } catch (IOException | InterruptedException e) {
+                    // Connection closed
+                }
+            }, "delay-proxy-write");
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            listener.close();
+        }
+
+        private record Packet(byte[] data, long due) {
+            static final Packet EOF = new Packet(new byte[0], 0);
+        }
+    }
+}
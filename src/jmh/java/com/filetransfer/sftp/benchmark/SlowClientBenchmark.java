@@ -0,0 +1,135 @@
+package com.filetransfer.sftp.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test for slow clients: {@code slowClients} connections each start a chunk upload and then send
+ * one byte per second, like uploads over a poor mobile link, while the benchmark times a fast request
+ * (reading the upload session) against the same server. A multipart POST ({@code body=multipart}) is
+ * parsed with blocking reads, so each slow upload holds a request thread: one of Tomcat's 200 workers
+ * with {@code threads=platform}, and on virtual threads a virtual thread whose carrier is pinned while
+ * Tomcat waits for the socket. A raw PUT ({@code body=raw}) is read without blocking and holds no thread.
+ * A score of {@value #TIMEOUT_SECONDS} s means the fast request was not served in time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlowClientBenchmark {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int TIMEOUT_SECONDS = 10;
+    private static final String BOUNDARY = "slow-client-benchmark";
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    @Param({"multipart", "raw"})
+    String body;
+
+    @Param({"100", "1000"})
+    int slowClients;
+
+    RunningApplication app;
+    String uploadId;
+    List<Socket> sockets;
+    ScheduledExecutorService trickler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        app = RunningApplication.start("--spring.threads.virtual.enabled=" + "virtual".equals(threads));
+        // One chunk per slow client and one that is never sent, so the session is never finalized
+        uploadId = app.openUploadSession((long) CHUNK_SIZE * (slowClients + 1), CHUNK_SIZE);
+    }
+
+    @Setup(Level.Iteration)
+    public void startSlowClients() throws Exception {
+        sockets = new ArrayList<>(slowClients);
+        for (int i = 0; i < slowClients; i++) {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), app.port());
+            socket.getOutputStream().write(requestHead(i).getBytes(StandardCharsets.US_ASCII));
+            sockets.add(socket);
+        }
+        trickler = Executors.newSingleThreadScheduledExecutor();
+        trickler.scheduleAtFixedRate(this::trickle, 0, 1, TimeUnit.SECONDS);
+        Thread.sleep(10_000); // Let the server take the connections and start their requests
+    }
+
+    /**
+     * The request line, headers and (for multipart) the part headers of an upload of chunk {@code i},
+     * declaring a body that is never completed.
+     */
+    private String requestHead(int i) {
+        String path = "/api/files/uploads/" + uploadId + "/chunks/" + i;
+        String auth = "Host: localhost\r\nAuthorization: Bearer " + app.token() + "\r\n";
+        if ("raw".equals(body)) {
+            return "PUT " + path + " HTTP/1.1\r\n" + auth
+                    + "Content-Type: application/octet-stream\r\n"
+                    + "Content-Length: " + CHUNK_SIZE + "\r\n\r\n";
+        }
+        String part = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"chunk\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n";
+        return "POST " + path + " HTTP/1.1\r\n" + auth
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + "Content-Length: " + (part.length() + CHUNK_SIZE + BOUNDARY.length() + 8) + "\r\n\r\n"
+                + part;
+    }
+
+    private void trickle() {
+        for (Socket socket : sockets) {
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write(0);
+                out.flush();
+            } catch (IOException e) {
+                // Closed by the server; the remaining clients keep trickling
+            }
+        }
+    }
+
+    @Benchmark
+    public int fastRequest() throws Exception {
+        try {
+            HttpResponse<Void> response = app.client().send(app.authorized("/api/files/uploads/" + uploadId)
+                    .timeout(Duration.ofSeconds(TIMEOUT_SECONDS)).GET().build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Upload session lookup answered " + response.statusCode());
+            }
+            return response.statusCode();
+        } catch (HttpTimeoutException e) {
+            return 0; // Not served while the slow clients held the server
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopSlowClients() throws Exception {
+        trickler.shutdownNow();
+        trickler.awaitTermination(5, TimeUnit.SECONDS);
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        Thread.sleep(2000); // Let the server fail the cut-off uploads and free their threads
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        app.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.filetransfer.sftp.config;
+
+import com.filetransfer.sftp.service.AdaptiveLimiter;
+import com.filetransfer.sftp.service.AdmissionControl;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Holds an {@link AdmissionControl} slot for the whole of a request whose body is streamed into storage
+ * as it is read, from before the body is read until the response is complete, including requests that
+ * finish asynchronously. Successful requests report their body size so the limit can adapt to the time
+ * per byte; server errors shrink it. Requests that receive their body before storing it take their slot
+ * around the storing instead (see {@link AdmissionControl#run}).
+ */
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".permit";
+
+    private final AdmissionControl admissionControl;
+    private final AdmissionControl.Operation operation;
+
+    public AdmissionInterceptor(AdmissionControl admissionControl, AdmissionControl.Operation operation) {
+        this.admissionControl = admissionControl;
+        this.operation = operation;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // Admitted on the original dispatch
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication != null ? authentication.getName() : request.getRemoteAddr();
+        AdaptiveLimiter.Permit permit = admissionControl.admit(operation, username);
+        if (permit != null) {
+            request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Normally released after the async dispatch, but there is none when the connection fails
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                release(request, (HttpServletResponse) event.getSuppliedResponse(), null);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        release(request, response, ex);
+    }
+
+    private void release(HttpServletRequest request, HttpServletResponse response, Exception ex) {
+        AdaptiveLimiter.Permit permit = (AdaptiveLimiter.Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit == null) {
+            return;
+        }
+        int status = response.getStatus();
+        if (ex != null || status >= 500) {
+            permit.releaseOverloaded();
+        } else {
+            permit.release(status < 300 ? Math.max(0, request.getContentLengthLong()) : 0);
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.filetransfer.sftp.config;
 
+import com.filetransfer.sftp.filesystem.StagedUploadListener;
+import com.filetransfer.sftp.filesystem.StorageFileSystemFactory;
+import com.filetransfer.sftp.security.SftpAuthenticator;
 import org.apache.sshd.server.SshServer;
-import org.apache.sshd.server.auth.password.PasswordAuthenticator;
 import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
 import org.apache.sshd.sftp.server.SftpSubsystemFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 
@@ -18,38 +23,39 @@ public class SftpServerConfig {
     private static final Logger logger = LoggerFactory.getLogger(SftpServerConfig.class);
 
     @Bean
-    public SshServer sshServer() {
-        logger.info("Starting SFTP server on port 2222...");
+    public SshServer sshServer(StorageFileSystemFactory fileSystemFactory, SftpAuthenticator authenticator,
+                               SftpTransportSettings transportSettings, SftpSessionMetrics sessionMetrics,
+                               @Value("${sftp.port:2222}") int port,
+                               @Value("${sftp.host-key-path:hostkey.ser}") String hostKeyPath) {
+        logger.info("Starting SFTP server on port {}...", port);
 
         SshServer sshServer = SshServer.setUpDefaultServer();
-        sshServer.setPort(2222);
+        sshServer.setPort(port);
+        transportSettings.apply(sshServer);
 
         try {
-            // Set up host key provider
-            sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(Paths.get("hostkey.ser")));
-            logger.debug("Host key provider configured successfully.");
+            // Set up host key provider; the key is generated on first start and reused from then on
+            Path hostKey = Paths.get(hostKeyPath).toAbsolutePath();
+            Files.createDirectories(hostKey.getParent());
+            sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(hostKey));
+            logger.debug("Host key provider configured successfully with key {}.", hostKey);
         } catch (Exception e) {
             logger.error("Failed to configure host key provider: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to configure host key provider", e);
         }
 
-        // Set up password authenticator
-        sshServer.setPasswordAuthenticator((username, password, session) -> {
-            try {
-                boolean authenticated = "user".equals(username) && "password".equals(password);
-                if (!authenticated) {
-                    logger.warn("Authentication failed for user: {}", username);
-                }
-                return authenticated;
-            } catch (Exception e) {
-                logger.error("Error during authentication for user {}: {}", username, e.getMessage(), e);
-                throw new RuntimeException("Authentication error", e);
-            }
-        });
+        // Authenticate against registered users' passwords and public keys
+        sshServer.setPasswordAuthenticator(authenticator);
+        sshServer.setPublickeyAuthenticator(authenticator);
 
-        // Set up SFTP subsystem
+        // Set up SFTP subsystem, serving each user's stored files
         try {
-            sshServer.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+            sshServer.setFileSystemFactory(fileSystemFactory);
+            SftpSubsystemFactory sftpSubsystemFactory = new SftpSubsystemFactory();
+            sftpSubsystemFactory.addSftpEventListener(sessionMetrics);
+            // Uploads are only stored when the client closes the file after writing all of it
+            sftpSubsystemFactory.addSftpEventListener(new StagedUploadListener());
+            sshServer.setSubsystemFactories(Collections.singletonList(sftpSubsystemFactory));
             logger.debug("SFTP subsystem factory configured successfully.");
         } catch (Exception e) {
             logger.error("Failed to configure SFTP subsystem factory: {}", e.getMessage(), e);
@@ -0,0 +1,143 @@
+package com.filetransfer.sftp.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SFTP sessions and what they transfer. Open SFTP sessions are published as the
+ * {@code sftp.sessions.active} gauge and the bytes they move as the {@code sftp.transfer.bytes}
+ * counter. When a session ends, its average throughput in each direction it used goes to the
+ * {@code sftp.session.throughput} distribution summary, so slow clients show up as its low end.
+ * <p>
+ * Registered on the SFTP subsystem by {@link SftpServerConfig}.
+ */
+@Component
+public class SftpSessionMetrics implements SftpEventListener {
+
+    private static final String UPLOAD = "upload";
+    private static final String DOWNLOAD = "download";
+
+    private final Map<ServerSession, SessionTransfer> sessions = new ConcurrentHashMap<>();
+    private final Counter uploadedBytes;
+    private final Counter downloadedBytes;
+    private final DistributionSummary uploadThroughput;
+    private final DistributionSummary downloadThroughput;
+
+    @Autowired
+    public SftpSessionMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable());
+    }
+
+    public SftpSessionMetrics(MeterRegistry meterRegistry) {
+        if (meterRegistry == null) {
+            uploadedBytes = downloadedBytes = null;
+            uploadThroughput = downloadThroughput = null;
+            return;
+        }
+        Gauge.builder("sftp.sessions.active", sessions, Map::size).register(meterRegistry);
+        uploadedBytes = bytesCounter(meterRegistry, UPLOAD);
+        downloadedBytes = bytesCounter(meterRegistry, DOWNLOAD);
+        uploadThroughput = throughputSummary(meterRegistry, UPLOAD);
+        downloadThroughput = throughputSummary(meterRegistry, DOWNLOAD);
+    }
+
+    private static Counter bytesCounter(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder("sftp.transfer.bytes").baseUnit("bytes").tag("direction", direction).register(meterRegistry);
+    }
+
+    private static DistributionSummary throughputSummary(MeterRegistry meterRegistry, String direction) {
+        return DistributionSummary.builder("sftp.session.throughput").baseUnit("bytes.per.second")
+                .tag("direction", direction).register(meterRegistry);
+    }
+
+    public int getActiveSessions() {
+        return sessions.size();
+    }
+
+    @Override
+    public void initialized(ServerSession session, int version) {
+        // A client may open the subsystem on more than one channel of its SSH session
+        sessions.compute(session, (key, transfer) -> transfer != null ? transfer.opened() : new SessionTransfer(System.nanoTime()));
+    }
+
+    @Override
+    public void destroying(ServerSession session) {
+        SessionTransfer transfer = sessions.get(session);
+        if (transfer == null || sessions.computeIfPresent(session, (key, open) -> open.closed() ? open : null) != null) {
+            return; // Other channels of the session are still open
+        }
+        if (uploadThroughput != null) {
+            double seconds = Math.max(System.nanoTime() - transfer.startNanos, 1) / 1e9;
+            record(uploadThroughput, transfer.uploaded.sum(), seconds);
+            record(downloadThroughput, transfer.downloaded.sum(), seconds);
+        }
+    }
+
+    private static void record(DistributionSummary throughput, long bytes, double seconds) {
+        if (bytes > 0) {
+            throughput.record(bytes / seconds);
+        }
+    }
+
+    @Override
+    public void read(ServerSession session, String remoteHandle, FileHandle localHandle, long offset, byte[] data,
+                     int dataOffset, int dataLen, int readLen, Throwable thrown) {
+        if (thrown == null && readLen > 0) {
+            transferred(session, readLen, false);
+        }
+    }
+
+    @Override
+    public void written(ServerSession session, String remoteHandle, FileHandle localHandle, long offset, byte[] data,
+                        int dataOffset, int dataLen, Throwable thrown) {
+        if (thrown == null && dataLen > 0) {
+            transferred(session, dataLen, true);
+        }
+    }
+
+    private void transferred(ServerSession session, int bytes, boolean upload) {
+        SessionTransfer transfer = sessions.get(session);
+        if (transfer != null) {
+            (upload ? transfer.uploaded : transfer.downloaded).add(bytes);
+        }
+        if (uploadedBytes != null) {
+            (upload ? uploadedBytes : downloadedBytes).increment(bytes);
+        }
+    }
+
+    private static final class SessionTransfer {
+        final long startNanos;
+        final LongAdder uploaded = new LongAdder();
+        final LongAdder downloaded = new LongAdder();
+        int channels = 1;
+
+        SessionTransfer(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        // Both only called inside ConcurrentHashMap.compute for the session, so never concurrently
+        SessionTransfer opened() {
+            channels++;
+            return this;
+        }
+
+        /**
+         * Returns whether the session still has other channels open.
+         */
+        boolean closed() {
+            return --channels > 0;
+        }
+    }
+}
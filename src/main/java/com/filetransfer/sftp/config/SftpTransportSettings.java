@@ -0,0 +1,105 @@
+package com.filetransfer.sftp.config;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.helpers.AbstractFactoryManager;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.apache.sshd.sftp.SftpModuleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transport tuning for the SSH server. SSHD's defaults (a 2 MB channel window, 32 KB packets) cap a
+ * single transfer at roughly window / round-trip time, which is a few MB/s between continents; these
+ * settings raise that ceiling and put the AEAD ciphers and encrypt-then-MAC MACs first in the offered
+ * lists, keeping CTR ciphers and plain HMAC-SHA2 after them as fallbacks for older clients. SSH
+ * negotiates the first algorithm in the client's list that the server offers, so these lists decide what
+ * clients may use and the client's own order decides which of those they get.
+ * <p>
+ * Applied to the server by {@link SftpServerConfig}; the SFTP benchmark applies the same settings to
+ * its client, since downloads are bounded by the client's window.
+ */
+@Component
+public class SftpTransportSettings {
+
+    private static final Logger logger = LoggerFactory.getLogger(SftpTransportSettings.class);
+
+    private final int nioWorkers;
+    private final long windowSize;
+    private final long maxPacketSize;
+    private final int readBufferSize;
+    private final int writeBufferSize;
+    private final List<String> ciphers;
+    private final List<String> macs;
+
+    public SftpTransportSettings(@Value("${sftp.nio-workers:0}") int nioWorkers,
+                                 @Value("${sftp.window-size:2097152}") long windowSize,
+                                 @Value("${sftp.max-packet-size:32768}") long maxPacketSize,
+                                 @Value("${sftp.read-buffer-size:64512}") int readBufferSize,
+                                 @Value("${sftp.write-buffer-size:262144}") int writeBufferSize,
+                                 @Value("${sftp.ciphers:}") List<String> ciphers,
+                                 @Value("${sftp.macs:}") List<String> macs) {
+        this.nioWorkers = nioWorkers;
+        this.windowSize = windowSize;
+        this.maxPacketSize = maxPacketSize;
+        this.readBufferSize = readBufferSize;
+        this.writeBufferSize = writeBufferSize;
+        this.ciphers = ciphers;
+        this.macs = macs;
+    }
+
+    /**
+     * Applies the settings to a server or client before it is started. Empty cipher or MAC lists keep
+     * SSHD's defaults; names SSHD does not support are logged and skipped.
+     */
+    public void apply(AbstractFactoryManager manager) {
+        if (nioWorkers > 0) {
+            CoreModuleProperties.NIO_WORKERS.set(manager, nioWorkers);
+        }
+        CoreModuleProperties.WINDOW_SIZE.set(manager, windowSize);
+        CoreModuleProperties.MAX_PACKET_SIZE.set(manager, maxPacketSize);
+        SftpModuleProperties.MAX_READDATA_PACKET_LENGTH.set(manager, readBufferSize);
+        SftpModuleProperties.MAX_WRITEDATA_PACKET_LENGTH.set(manager, writeBufferSize);
+
+        List<String> cipherNames = names(ciphers);
+        if (!cipherNames.isEmpty()) {
+            BuiltinCiphers.ParseResult parsed = BuiltinCiphers.parseCiphersList(cipherNames);
+            List<NamedFactory<Cipher>> factories = new ArrayList<>();
+            parsed.getParsedFactories().stream().filter(factory -> factory.isSupported()).forEach(factories::add);
+            manager.setCipherFactories(requireSome(factories, "sftp.ciphers", parsed.getUnsupportedFactories()));
+        }
+
+        List<String> macNames = names(macs);
+        if (!macNames.isEmpty()) {
+            BuiltinMacs.ParseResult parsed = BuiltinMacs.parseMacsList(macNames);
+            List<NamedFactory<Mac>> factories = new ArrayList<>();
+            parsed.getParsedFactories().stream().filter(factory -> factory.isSupported()).forEach(factories::add);
+            manager.setMacFactories(requireSome(factories, "sftp.macs", parsed.getUnsupportedFactories()));
+        }
+
+        logger.debug("SSH transport: window {} bytes, max packet {} bytes, ciphers {}, MACs {}",
+                windowSize, maxPacketSize, manager.getCipherFactoriesNameList(), manager.getMacFactoriesNameList());
+    }
+
+    private static List<String> names(List<String> configured) {
+        return configured.stream().map(String::trim).filter(name -> !name.isEmpty()).toList();
+    }
+
+    private static <T> List<T> requireSome(List<T> factories, String property, List<String> unsupported) {
+        if (!unsupported.isEmpty()) {
+            logger.warn("Ignoring unsupported entries in {}: {}", property, unsupported);
+        }
+        if (factories.isEmpty()) {
+            throw new IllegalStateException("None of the algorithms in " + property + " are supported");
+        }
+        return factories;
+    }
+}
@@ -0,0 +1,24 @@
+package com.filetransfer.sftp.config;
+
+import com.filetransfer.sftp.service.AdmissionControl;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final AdmissionControl admissionControl;
+
+    public WebConfig(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Uploads stream their body into storage, so all of the request is server-side work. Chunks take
+        // their slots in the controller, only around storing and registering what has arrived.
+        registry.addInterceptor(new AdmissionInterceptor(admissionControl, AdmissionControl.Operation.UPLOAD))
+                .addPathPatterns("/api/files/upload");
+    }
+}
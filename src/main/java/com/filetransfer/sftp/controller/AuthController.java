@@ -3,6 +3,7 @@ package com.filetransfer.sftp.controller;
 import com.filetransfer.sftp.model.User;
 import com.filetransfer.sftp.repository.UserRepository;
 import com.filetransfer.sftp.security.JwtUtil;
+import com.filetransfer.sftp.security.PrincipalCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -25,11 +26,13 @@ public class AuthController {
 
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
+    private final PrincipalCache principalCache;
     private final BCryptPasswordEncoder passwordEncoder;
 
-    public AuthController(UserRepository userRepository, JwtUtil jwtUtil) {
+    public AuthController(UserRepository userRepository, JwtUtil jwtUtil, PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.jwtUtil = jwtUtil;
+        this.principalCache = principalCache;
         this.passwordEncoder = new BCryptPasswordEncoder();
     }
 
@@ -46,6 +49,7 @@ public class AuthController {
 
             user.setPassword(passwordEncoder.encode(user.getPassword()));
             userRepository.save(user);
+            principalCache.invalidate(user.getUsername());
 
             logger.info("User {} registered successfully", user.getUsername());
             return ResponseEntity.ok("User registered successfully!");
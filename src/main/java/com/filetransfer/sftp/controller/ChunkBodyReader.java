@@ -0,0 +1,139 @@
+package com.filetransfer.sftp.controller;
+
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.service.AdaptiveLimiter;
+import com.filetransfer.sftp.service.AdmissionControl;
+import com.filetransfer.sftp.service.ChunkWrite;
+import com.filetransfer.sftp.service.UploadSessionService;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a raw chunk body with non-blocking servlet I/O and writes it into the upload session's staging
+ * file as it arrives. No thread waits on the socket in between, so a client that sends slowly costs a
+ * connection rather than a thread; Tomcat's blocking reads would otherwise also pin the carrier of a
+ * virtual thread. The listener is installed once the request has gone async, and the response is set
+ * on the {@link DeferredResult}.
+ * <p>
+ * The chunk is admitted once, when it is opened before reading starts, and a refusal is answered there
+ * with Retry-After. The callbacks run on container threads that must not block, and a body that is
+ * partly stored must not be turned away, so from then on a chunk admission slot is only taken if one is
+ * free (see {@link AdmissionControl#tryAdmit}), while writing what has arrived and while registering the
+ * chunk, not while waiting for the client to send more.
+ */
+final class ChunkBodyReader implements ReadListener, DeferredResultProcessingInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkBodyReader.class);
+
+    private final UploadSessionService uploadSessionService;
+    private final AdmissionControl admissionControl;
+    private final ChunkWrite chunk;
+    private final DeferredResult<ResponseEntity<?>> result;
+    private final String uploadId;
+    private final String username;
+    private final byte[] buffer;
+    private ServletInputStream body;
+
+    ChunkBodyReader(UploadSessionService uploadSessionService, AdmissionControl admissionControl, ChunkWrite chunk,
+                    DeferredResult<ResponseEntity<?>> result, String uploadId, String username, int bufferSize) {
+        this.uploadSessionService = uploadSessionService;
+        this.admissionControl = admissionControl;
+        this.chunk = chunk;
+        this.result = result;
+        this.uploadId = uploadId;
+        this.username = username;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, DeferredResult<T> deferredResult) throws IOException {
+        body = request.getNativeRequest(HttpServletRequest.class).getInputStream();
+        body.setReadListener(this);
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        AdaptiveLimiter.Permit permit = admissionControl.tryAdmit(AdmissionControl.Operation.CHUNK, username);
+        long written = 0;
+        boolean failed = false;
+        try {
+            // Only what has already arrived: reads do not block while the stream is ready
+            while (body.isReady() && !result.isSetOrExpired()) {
+                int read = body.read(buffer);
+                if (read == -1) {
+                    return;
+                }
+                if (!write(read)) {
+                    failed = true;
+                    return;
+                }
+                written += read;
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected chunk {} for upload session: {} by user: {}: {}", chunk.getChunkIndex(), uploadId, username, e.getMessage());
+            result.setResult(ResponseEntity.badRequest().body(e.getMessage()));
+        } finally {
+            if (permit != null) {
+                if (failed) {
+                    permit.releaseOverloaded();
+                } else {
+                    permit.release(written);
+                }
+            }
+        }
+    }
+
+    private boolean write(int length) {
+        try {
+            chunk.write(ByteBuffer.wrap(buffer, 0, length));
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        if (result.isSetOrExpired()) {
+            return;
+        }
+        try {
+            result.setResult(ResponseEntity.ok(admissionControl.runAdmitted(AdmissionControl.Operation.CHUNK, username, 0,
+                    () -> uploadSessionService.completeChunk(chunk))));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected chunk {} for upload session: {} by user: {}: {}", chunk.getChunkIndex(), uploadId, username, e.getMessage());
+            result.setResult(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (ChunkChecksumException e) {
+            result.setErrorResult(e); // Answered by GlobalExceptionHandler as a retryable error
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Called by the container when reading the body fails, typically because the client went away.
+     */
+    @Override
+    public void onError(Throwable t) {
+        if (result.setResult(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Chunk body could not be read"))) {
+            logger.warn("Chunk {} for upload session {} (user {}) was cut off: {}", chunk.getChunkIndex(), uploadId, username, t.toString());
+        }
+    }
+
+    private void fail(Exception e) {
+        logger.error("Chunk {} upload failed for upload session {} (user {}): {}", chunk.getChunkIndex(), uploadId, username, e.getMessage(), e);
+        result.setResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Chunk upload failed: " + e.getMessage()));
+    }
+}
@@ -1,24 +1,58 @@
 package com.filetransfer.sftp.controller;
 
+import com.filetransfer.sftp.dto.ChunkRangesDTO;
+import com.filetransfer.sftp.dto.CreateUploadSessionRequest;
+import com.filetransfer.sftp.dto.FileListPageDTO;
 import com.filetransfer.sftp.dto.FileMetadataDTO;
+import com.filetransfer.sftp.dto.MergeJobDTO;
+import com.filetransfer.sftp.dto.UploadSessionDTO;
+import com.filetransfer.sftp.exception.AdmissionRejectedException;
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.exception.ContentProofRequiredException;
 import com.filetransfer.sftp.model.FileMetadata;
+import com.filetransfer.sftp.service.AdmissionControl;
+import com.filetransfer.sftp.service.ChunkBitmap;
+import com.filetransfer.sftp.service.ChunkChecksum;
+import com.filetransfer.sftp.service.ChunkWrite;
+import com.filetransfer.sftp.service.ContentPossessionChallenge;
+import com.filetransfer.sftp.service.FileListCursor;
 import com.filetransfer.sftp.service.FileStorageService;
+import com.filetransfer.sftp.service.MergeJobService;
+import com.filetransfer.sftp.service.TransferMetrics;
+import com.filetransfer.sftp.service.UploadSessionService;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.regex.Pattern;
 
 @RestController
 @RequestMapping("/api/files")
@@ -26,13 +60,34 @@ public class FileTransferController {
 
     private static final Logger logger = LoggerFactory.getLogger(FileTransferController.class);
 
+    // Tomcat's sendfile request attributes (see org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
     private final FileStorageService fileStorageService;
+    private final MergeJobService mergeJobService;
+    private final UploadSessionService uploadSessionService;
+    private final TransferMetrics transferMetrics;
+    private final AdmissionControl admissionControl;
+    private final int bufferSize;
 
-    public FileTransferController(FileStorageService fileStorageService) {
+    public FileTransferController(FileStorageService fileStorageService, MergeJobService mergeJobService,
+                                  UploadSessionService uploadSessionService, TransferMetrics transferMetrics,
+                                  AdmissionControl admissionControl,
+                                  @Value("${storage.buffer-size:65536}") int bufferSize) {
         this.fileStorageService = fileStorageService;
+        this.mergeJobService = mergeJobService;
+        this.uploadSessionService = uploadSessionService;
+        this.transferMetrics = transferMetrics;
+        this.admissionControl = admissionControl;
+        this.bufferSize = bufferSize;
     }
 
-    @PostMapping("/upload")
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file, Authentication authentication) {
         String username = authentication.getName();
         logger.debug("Upload request received from user: {}", username);
@@ -54,8 +109,80 @@ public class FileTransferController {
         }
     }
 
+    @PostMapping(value = "/upload", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<String> uploadFileStream(
+            @RequestParam("fileName") String fileName,
+            HttpServletRequest request,
+            Authentication authentication) {
+
+        String username = authentication.getName();
+        logger.debug("Streaming upload request received for file: {} from user: {}", fileName, username);
+
+        if (fileName.isBlank()) {
+            return ResponseEntity.badRequest().body("File name cannot be empty");
+        }
+
+        try (InputStream body = request.getInputStream()) {
+            fileStorageService.saveFile(body, fileName, username);
+            logger.info("File streamed successfully by user: {}", username);
+            return ResponseEntity.ok("File uploaded successfully!");
+        } catch (IOException e) {
+            logger.error("Streaming upload failed for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("File upload failed: " + e.getMessage());
+        } catch (Exception e) {
+            logger.error("Unexpected error during streaming upload for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("File upload failed due to an unexpected error");
+        }
+    }
+
+    /**
+     * Lets a client that knows the SHA-256 and size of a file skip sending it when the content is
+     * already stored. Responds 404 if the content is unknown, in which case the file must be uploaded.
+     * Content stored by other users additionally needs proof that the client holds it: the first
+     * request is answered 428 with a challenge, and the request repeated with {@code challenge} and
+     * {@code proof} creates the file.
+     */
+    @PostMapping("/upload-by-hash")
+    public ResponseEntity<?> uploadByHash(
+            @RequestParam("fileName") String fileName,
+            @RequestParam("sha256") String sha256,
+            @RequestParam("size") long size,
+            @RequestParam(value = "challenge", required = false) String challenge,
+            @RequestParam(value = "proof", required = false) String proof,
+            Authentication authentication) {
+
+        String username = authentication.getName();
+        logger.debug("Upload by hash request received for file: {} from user: {}", fileName, username);
+
+        if (!SHA256_HEX.matcher(sha256).matches() || size < 0) {
+            return ResponseEntity.badRequest().body("sha256 must be a hex encoded SHA-256 and size must not be negative");
+        }
+
+        try {
+            if (fileStorageService.saveFileByHash(fileName, sha256.toLowerCase(), size, username, challenge, proof)) {
+                return ResponseEntity.status(HttpStatus.CREATED).body("File created from existing content.");
+            }
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Content not found, upload the file.");
+        } catch (ContentProofRequiredException e) {
+            ContentPossessionChallenge.Challenge issued = e.getChallenge();
+            return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED).body(Map.of(
+                    "challenge", issued.token(),
+                    "nonce", issued.nonce(),
+                    "offset", issued.offset(),
+                    "length", issued.length()));
+        } catch (Exception e) {
+            logger.error("Upload by hash failed for file {} (user {}): {}", fileName, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("File upload failed due to an unexpected error");
+        }
+    }
+
     @GetMapping("/download/{fileName}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable String fileName, Authentication authentication) {
+    public void downloadFile(
+            @PathVariable String fileName,
+            Authentication authentication,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
         String username = authentication.getName();
         logger.debug("Download request received for file: {} from user: {}", fileName, username);
 
@@ -64,22 +191,185 @@ public class FileTransferController {
 
             if (fileMetadata.isEmpty()) {
                 logger.warn("File not found: {} for user: {}", fileName, username);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
 
             FileMetadata file = fileMetadata.get();
-            logger.info("File downloaded successfully: {} by user: {}", fileName, username);
+            long contentLength = fileStorageService.getContentLength(file);
+            long lastModified = fileStorageService.getLastModified(file);
+            String eTag = fileStorageService.getETag(file);
+
+            // Compressed content goes out as stored when the client can decode it and wants all of it
+            Optional<String> storedEncoding = fileStorageService.getStoredEncoding(file);
+            boolean sendStored = storedEncoding.isPresent() && request.getHeader(HttpHeaders.RANGE) == null
+                    && acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), storedEncoding.get());
+            if (storedEncoding.isPresent()) {
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (sendStored) {
+                eTag = eTag.substring(0, eTag.length() - 1) + "-" + storedEncoding.get() + "\"";
+            }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getFileName());
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/octet-stream");
+            // Handles If-None-Match / If-Modified-Since (304) and If-Match / If-Unmodified-Since (412)
+            if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+                logger.debug("File {} not modified for user: {}", fileName, username);
+                return;
+            }
+
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getFileName());
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+            if (sendStored) {
+                sendStoredContent(file, storedEncoding.get(), request, response);
+                logger.info("File downloaded successfully: {} by user: {} ({})", fileName, username, storedEncoding.get());
+                return;
+            }
+
+            long start = 0;
+            long end = contentLength - 1;
+            HttpRange range = resolveRange(request, eTag, lastModified);
+            if (range != null) {
+                if (contentLength == 0 || !isSatisfiable(range, contentLength)) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                start = range.getRangeStart(contentLength);
+                end = range.getRangeEnd(contentLength);
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + contentLength);
+            }
+
+            long count = end - start + 1;
+            response.setContentLengthLong(count);
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(file.getFileData());
+            if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+                return;
+            }
+
+            Optional<Path> contentPath = fileStorageService.getContentPath(file);
+            if (contentPath.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+                // Let the connector hand the file region to the socket without copying it through user space
+                request.setAttribute(SENDFILE_FILENAME_ATTR, contentPath.get().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTR, start);
+                request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            } else {
+                fileStorageService.transferContent(file, start, count, response.getOutputStream());
+            }
+            transferMetrics.recordBytes(TransferMetrics.Operation.DOWNLOAD, count);
+            logger.info("File downloaded successfully: {} by user: {}", fileName, username);
         } catch (Exception e) {
             logger.error("Error downloading file {} for user {}: {}", fileName, username, e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        }
+    }
+
+    private void sendStoredContent(FileMetadata file, String encoding, HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        Optional<Path> storedPath = fileStorageService.getStoredContentPath(file);
+        if (storedPath.isPresent()) {
+            response.setContentLengthLong(Files.size(storedPath.get()));
+        }
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        long sent;
+        if (storedPath.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            sent = Files.size(storedPath.get());
+            request.setAttribute(SENDFILE_FILENAME_ATTR, storedPath.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, 0L);
+            request.setAttribute(SENDFILE_END_ATTR, sent);
+        } else {
+            try (InputStream inputStream = fileStorageService.openStoredContent(file)) {
+                sent = inputStream.transferTo(response.getOutputStream());
+            }
+        }
+        transferMetrics.recordBytes(TransferMetrics.Operation.DOWNLOAD, sent);
+    }
+
+    /**
+     * Whether the Accept-Encoding header accepts the coding: it is listed, or {@code *} is, without
+     * {@code q=0}. The coding's own entry takes precedence over {@code *}, so {@code *, gzip;q=0}
+     * does not accept gzip.
+     */
+    static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean listed = null;
+        Boolean wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.trim().split(";");
+            String coding = parts[0].trim();
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].replace(" ", "").toLowerCase();
+                if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0{0,3})?")) {
+                    rejected = true;
+                }
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                listed = listed == null ? !rejected : listed && !rejected;
+            } else if (coding.equals("*")) {
+                wildcard = wildcard == null ? !rejected : wildcard && !rejected;
+            }
+        }
+        if (listed != null) {
+            return listed;
+        }
+        return wildcard != null && wildcard;
+    }
+
+    /**
+     * Returns the single byte range to serve, or {@code null} when the whole file should be sent:
+     * no Range header, an unparsable or multi-range header, or an If-Range validator that no
+     * longer matches the current representation.
+     */
+    private HttpRange resolveRange(HttpServletRequest request, String eTag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"")) {
+                if (!ifRange.equals(eTag)) {
+                    return null;
+                }
+            } else {
+                try {
+                    if (request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 != lastModified / 1000) {
+                        return null;
+                    }
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring invalid Range header: {}", rangeHeader);
+            return null;
+        }
+    }
+
+    private boolean isSatisfiable(HttpRange range, long contentLength) {
+        try {
+            return range.getRangeStart(contentLength) < contentLength;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
     }
 
@@ -93,7 +383,8 @@ public class FileTransferController {
         logger.debug("File list request received from user: {}", username);
 
         try {
-            Pageable pageable = PageRequest.of(page, size);
+            // A stable order, so pages neither repeat nor skip files; /browse avoids the offset
+            Pageable pageable = PageRequest.of(page, size, Sort.by("uploadedAt", "fileName").descending());
             List<FileMetadataDTO> files = fileStorageService.listUserFiles(username, pageable);
             return ResponseEntity.ok(files);
         } catch (Exception e) {
@@ -102,20 +393,61 @@ public class FileTransferController {
         }
     }
 
+    @GetMapping("/browse")
+    public ResponseEntity<?> browseUserFiles(
+            Authentication authentication,
+            @RequestParam(defaultValue = "UPLOADED_AT") FileListCursor.SortBy sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) Long minSizeKB,
+            @RequestParam(required = false) Long maxSizeKB,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime uploadedFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime uploadedTo
+    ) {
+        String username = authentication.getName();
+        logger.debug("File browse request received from user: {}", username);
+
+        try {
+            FileListPageDTO files = fileStorageService.browseFiles(username, sort, cursor, size, prefix,
+                    minSizeKB, maxSizeKB, uploadedFrom, uploadedTo);
+            return ResponseEntity.ok(files);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Rejected file browse request from user {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error browsing files for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to list files");
+        }
+    }
+
     @PostMapping("/upload-chunk")
     public ResponseEntity<String> uploadChunk(
             @RequestParam("file") MultipartFile chunk,
             @RequestParam("fileName") String fileName,
             @RequestParam("chunkIndex") int chunkIndex,
+            @RequestParam(value = "crc32c", required = false) String crc32c,
+            @RequestParam(value = "xxh64", required = false) String xxh64,
             Authentication authentication) {
 
         String username = authentication.getName();
         logger.debug("Chunk upload request received for file: {}, chunk: {}, user: {}", fileName, chunkIndex, username);
 
         try {
-            fileStorageService.saveChunk(chunk, fileName, chunkIndex, username);
+            // The body has been received by now, so the slot covers only storing it
+            admissionControl.run(AdmissionControl.Operation.CHUNK, username, chunk.getSize(), () -> {
+                fileStorageService.saveChunk(chunk, fileName, chunkIndex, username, ChunkChecksum.of(crc32c, xxh64));
+                return null;
+            });
             logger.info("Chunk {} uploaded successfully for file: {} by user: {}", chunkIndex, fileName, username);
             return ResponseEntity.ok("Chunk " + chunkIndex + " uploaded successfully!");
+        } catch (AdmissionRejectedException e) {
+            throw e; // Answered by GlobalExceptionHandler with Retry-After
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected chunk {} for file: {} by user: {}: {}", chunkIndex, fileName, username, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (ChunkChecksumException e) {
+            throw e; // Answered by GlobalExceptionHandler as a retryable error
         } catch (IOException e) {
             logger.error("Chunk upload failed for file: {}, chunk: {}, user: {}: {}", fileName, chunkIndex, username, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Chunk upload failed: " + e.getMessage());
@@ -126,7 +458,7 @@ public class FileTransferController {
     }
 
     @PostMapping("/merge-chunks")
-    public ResponseEntity<String> mergeChunks(
+    public ResponseEntity<?> mergeChunks(
             @RequestParam("fileName") String fileName,
             Authentication authentication) {
 
@@ -134,26 +466,41 @@ public class FileTransferController {
         logger.debug("Merge request received for file: {} from user: {}", fileName, username);
 
         try {
-            boolean merged = fileStorageService.mergeChunks(fileName, username);
-
-            if (merged) {
-                logger.info("File merged successfully: {} by user: {}", fileName, username);
-                return ResponseEntity.ok("File merged successfully!");
-            } else {
+            if (fileStorageService.getFile(fileName, username).isEmpty()) {
                 logger.warn("Unauthorized merge attempt for file: {} by user: {}", fileName, username);
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Unauthorized to merge this file.");
             }
-        } catch (IOException e) {
-            logger.error("Merge failed for file: {} by user: {}: {}", fileName, username, e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Merging failed: " + e.getMessage());
+
+            MergeJobDTO job = mergeJobService.submit(fileName, username);
+            logger.info("Merge job {} accepted for file: {} by user: {}", job.getJobId(), fileName, username);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/files/merge-jobs/" + job.getJobId()))
+                    .body(job);
+        } catch (AdmissionRejectedException e) {
+            throw e; // Answered by GlobalExceptionHandler with Retry-After
         } catch (Exception e) {
-            logger.error("Unexpected error merging file {} for user {}: {}", fileName, username, e.getMessage(), e);
+            logger.error("Unexpected error queueing merge of file {} for user {}: {}", fileName, username, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Merging failed due to unexpected error");
         }
     }
 
+    @GetMapping("/merge-jobs/{jobId}")
+    public ResponseEntity<MergeJobDTO> getMergeJob(@PathVariable String jobId, Authentication authentication) {
+        String username = authentication.getName();
+        logger.debug("Merge job status request received for job: {} from user: {}", jobId, username);
+
+        try {
+            return mergeJobService.getJob(jobId, username)
+                    .map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        } catch (Exception e) {
+            logger.error("Error fetching merge job {} for user {}: {}", jobId, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/check-chunks/{fileName}")
-    public ResponseEntity<Set<Integer>> checkUploadedChunks(
+    public ResponseEntity<ChunkRangesDTO> checkUploadedChunks(
             @PathVariable String fileName,
             Authentication authentication) {
 
@@ -161,11 +508,165 @@ public class FileTransferController {
         logger.debug("Check chunks request received for file: {} from user: {}", fileName, username);
 
         try {
-            Set<Integer> uploadedChunks = fileStorageService.getUploadedChunks(fileName, username);
-            return ResponseEntity.ok(uploadedChunks);
+            ChunkBitmap uploadedChunks = fileStorageService.getUploadedChunks(fileName, username);
+            return ResponseEntity.ok(new ChunkRangesDTO(uploadedChunks.cardinality(), uploadedChunks.toRanges()));
         } catch (Exception e) {
             logger.error("Error checking chunks for file {} (user {}): {}", fileName, username, e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Set.of());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/uploads")
+    public ResponseEntity<?> createUploadSession(@RequestBody CreateUploadSessionRequest request, Authentication authentication) {
+        String username = authentication.getName();
+        logger.debug("Upload session request received for file: {} from user: {}", request.getFileName(), username);
+
+        try {
+            UploadSessionDTO session = uploadSessionService.create(request.getFileName(), username,
+                    request.getTotalSize(), request.getChunkSize(), request.getChecksum());
+            return ResponseEntity.created(URI.create("/api/files/uploads/" + session.getUploadId())).body(session);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected upload session for file: {} by user: {}: {}", request.getFileName(), username, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error creating upload session for file {} (user {}): {}", request.getFileName(), username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload session could not be created");
+        }
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadSessionDTO> getUploadSession(@PathVariable String uploadId, Authentication authentication) {
+        String username = authentication.getName();
+        logger.debug("Upload session status request received for: {} from user: {}", uploadId, username);
+
+        try {
+            return uploadSessionService.getSession(uploadId, username)
+                    .map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        } catch (Exception e) {
+            logger.error("Error fetching upload session {} for user {}: {}", uploadId, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/chunks/{chunkIndex}")
+    public ResponseEntity<?> uploadSessionChunk(
+            @PathVariable String uploadId,
+            @PathVariable int chunkIndex,
+            @RequestParam("file") MultipartFile chunk,
+            @RequestParam(value = "crc32c", required = false) String crc32c,
+            @RequestParam(value = "xxh64", required = false) String xxh64,
+            Authentication authentication) {
+
+        String username = authentication.getName();
+        logger.debug("Chunk {} received for upload session: {} from user: {}", chunkIndex, uploadId, username);
+
+        try (InputStream inputStream = chunk.getInputStream()) {
+            return writeSessionChunk(uploadId, chunkIndex, inputStream, chunk.getSize(), crc32c, xxh64, username);
+        } catch (IOException e) {
+            logger.error("Chunk {} upload failed for upload session {} (user {}): {}", chunkIndex, uploadId, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Chunk upload failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the chunk as the raw request body and streams it straight into the staging file at the
+     * chunk's offset, without the multipart parsing and temporary file of the POST variant. The
+     * checksum, if any, is passed as a query parameter. The body is read without blocking (see
+     * {@link ChunkBodyReader}); a body that has not arrived within {@code spring.mvc.async.request-timeout}
+     * is answered with 408 and the chunk can be resent.
+     */
+    @PutMapping(value = "/uploads/{uploadId}/chunks/{chunkIndex}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public DeferredResult<ResponseEntity<?>> putUploadSessionChunk(
+            @PathVariable String uploadId,
+            @PathVariable int chunkIndex,
+            @RequestParam(value = "crc32c", required = false) String crc32c,
+            @RequestParam(value = "xxh64", required = false) String xxh64,
+            HttpServletRequest request,
+            Authentication authentication) {
+
+        String username = authentication.getName();
+        logger.debug("Raw chunk {} received for upload session: {} from user: {}", chunkIndex, uploadId, username);
+
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(null,
+                () -> ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).body("Chunk " + chunkIndex + " was not received in time"));
+        ChunkWrite chunk;
+        try {
+            // The chunk is admitted here, before any of the body is read; the reader never turns it away
+            Optional<ChunkWrite> opened = admissionControl.run(AdmissionControl.Operation.CHUNK, username, 0,
+                    () -> uploadSessionService.openChunk(uploadId, username, chunkIndex, ChunkChecksum.of(crc32c, xxh64)));
+            if (opened.isEmpty()) {
+                result.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+                return result;
+            }
+            chunk = opened.get();
+            if (chunk.isAlreadyReceived()) {
+                result.setResult(ResponseEntity.ok(admissionControl.run(AdmissionControl.Operation.CHUNK, username, 0,
+                        () -> uploadSessionService.completeChunk(opened.get()))));
+                return result;
+            }
+        } catch (AdmissionRejectedException e) {
+            throw e; // Answered by GlobalExceptionHandler with Retry-After
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected chunk {} for upload session: {} by user: {}: {}", chunkIndex, uploadId, username, e.getMessage());
+            result.setResult(ResponseEntity.badRequest().body(e.getMessage()));
+            return result;
+        } catch (IllegalStateException e) {
+            result.setResult(ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage()));
+            return result;
+        } catch (Exception e) {
+            logger.error("Chunk {} upload failed for upload session {} (user {}): {}", chunkIndex, uploadId, username, e.getMessage(), e);
+            result.setResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Chunk upload failed due to unexpected error"));
+            return result;
+        }
+
+        result.onCompletion(() -> {
+            try {
+                chunk.close();
+            } catch (IOException e) {
+                logger.warn("Could not close staging file of upload session {}: {}", uploadId, e.getMessage());
+            }
+        });
+        ChunkBodyReader reader = new ChunkBodyReader(uploadSessionService, admissionControl, chunk, result, uploadId, username, bufferSize);
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(reader, reader);
+        return result;
+    }
+
+    private ResponseEntity<?> writeSessionChunk(String uploadId, int chunkIndex, InputStream inputStream, long size,
+                                                String crc32c, String xxh64, String username) {
+        try {
+            return admissionControl.run(AdmissionControl.Operation.CHUNK, username, size,
+                            () -> uploadSessionService.writeChunk(uploadId, username, chunkIndex, inputStream, ChunkChecksum.of(crc32c, xxh64)))
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        } catch (AdmissionRejectedException e) {
+            throw e; // Answered by GlobalExceptionHandler with Retry-After
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected chunk {} for upload session: {} by user: {}: {}", chunkIndex, uploadId, username, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (ChunkChecksumException e) {
+            throw e; // Answered by GlobalExceptionHandler as a retryable error
+        } catch (Exception e) {
+            logger.error("Chunk {} upload failed for upload session {} (user {}): {}", chunkIndex, uploadId, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Chunk upload failed due to unexpected error");
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<String> abortUploadSession(@PathVariable String uploadId, Authentication authentication) {
+        String username = authentication.getName();
+        logger.debug("Abort request received for upload session: {} from user: {}", uploadId, username);
+
+        try {
+            if (uploadSessionService.abort(uploadId, username)) {
+                return ResponseEntity.ok("Upload aborted.");
+            }
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Upload session not found or no longer open.");
+        } catch (Exception e) {
+            logger.error("Error aborting upload session {} for user {}: {}", uploadId, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload could not be aborted");
         }
     }
 
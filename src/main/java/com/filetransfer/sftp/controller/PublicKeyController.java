@@ -0,0 +1,109 @@
+package com.filetransfer.sftp.controller;
+
+import com.filetransfer.sftp.dto.AddPublicKeyRequest;
+import com.filetransfer.sftp.dto.PublicKeyDTO;
+import com.filetransfer.sftp.model.UserPublicKey;
+import com.filetransfer.sftp.repository.UserPublicKeyRepository;
+import org.apache.sshd.common.config.keys.AuthorizedKeyEntry;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.apache.sshd.common.config.keys.PublicKeyEntryResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Public keys a user can log in to the SFTP server with.
+ */
+@RestController
+@RequestMapping("/api/keys")
+public class PublicKeyController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicKeyController.class);
+
+    private final UserPublicKeyRepository userPublicKeyRepository;
+
+    public PublicKeyController(UserPublicKeyRepository userPublicKeyRepository) {
+        this.userPublicKeyRepository = userPublicKeyRepository;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<PublicKeyDTO>> listKeys(Authentication authentication) {
+        String username = authentication.getName();
+        logger.debug("Public key list request received from user: {}", username);
+
+        try {
+            List<PublicKeyDTO> keys = userPublicKeyRepository.findByUsernameOrderByCreatedAtAsc(username).stream()
+                    .map(PublicKeyController::toDTO)
+                    .toList();
+            return ResponseEntity.ok(keys);
+        } catch (Exception e) {
+            logger.error("Error listing public keys for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping
+    public ResponseEntity<?> addKey(@RequestBody AddPublicKeyRequest request, Authentication authentication) {
+        String username = authentication.getName();
+        if (username.startsWith("guest-")) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Guest users cannot log in over SFTP");
+        }
+
+        PublicKey publicKey;
+        AuthorizedKeyEntry entry;
+        try {
+            entry = request.getPublicKey() == null ? null : AuthorizedKeyEntry.parseAuthorizedKeyEntry(request.getPublicKey().trim());
+            if (entry == null) {
+                return ResponseEntity.badRequest().body("Public key cannot be empty");
+            }
+            publicKey = entry.resolvePublicKey(null, Collections.emptyMap(), PublicKeyEntryResolver.FAILING);
+        } catch (Exception e) {
+            logger.warn("Rejected public key from user {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().body("Not a valid OpenSSH public key");
+        }
+
+        try {
+            String fingerprint = KeyUtils.getFingerPrint(publicKey);
+            if (userPublicKeyRepository.existsByUsernameAndFingerprint(username, fingerprint)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("Public key already added: " + fingerprint);
+            }
+
+            UserPublicKey saved = userPublicKeyRepository.save(new UserPublicKey(username, KeyUtils.getKeyType(publicKey),
+                    fingerprint, PublicKeyEntry.toString(publicKey), entry.getComment()));
+            logger.info("Public key {} added for user: {}", fingerprint, username);
+            return ResponseEntity.created(URI.create("/api/keys/" + saved.getId())).body(toDTO(saved));
+        } catch (Exception e) {
+            logger.error("Error adding public key for user {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Public key could not be added");
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<String> deleteKey(@PathVariable Long id, Authentication authentication) {
+        String username = authentication.getName();
+
+        try {
+            if (userPublicKeyRepository.deleteByIdAndUsername(id, username) == 0) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Public key not found");
+            }
+            logger.info("Public key {} deleted by user: {}", id, username);
+            return ResponseEntity.ok("Public key deleted successfully");
+        } catch (Exception e) {
+            logger.error("Error deleting public key {} for user {}: {}", id, username, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Public key could not be deleted");
+        }
+    }
+
+    private static PublicKeyDTO toDTO(UserPublicKey key) {
+        return new PublicKeyDTO(key.getId(), key.getKeyType(), key.getFingerprint(), key.getComment(), key.getCreatedAt());
+    }
+}
@@ -0,0 +1,13 @@
+package com.filetransfer.sftp.dto;
+
+public class AddPublicKeyRequest {
+    private String publicKey; // One authorized_keys line, e.g. the contents of id_ed25519.pub
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    public void setPublicKey(String publicKey) {
+        this.publicKey = publicKey;
+    }
+}
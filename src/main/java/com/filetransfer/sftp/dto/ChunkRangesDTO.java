@@ -0,0 +1,21 @@
+package com.filetransfer.sftp.dto;
+
+import java.util.List;
+
+public class ChunkRangesDTO {
+    private int chunkCount;
+    private List<int[]> ranges; // Inclusive [first, last] chunk indexes
+
+    public ChunkRangesDTO(int chunkCount, List<int[]> ranges) {
+        this.chunkCount = chunkCount;
+        this.ranges = ranges;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public List<int[]> getRanges() {
+        return ranges;
+    }
+}
@@ -0,0 +1,21 @@
+package com.filetransfer.sftp.dto;
+
+import java.util.List;
+
+public class FileListPageDTO {
+    private List<FileMetadataDTO> files;
+    private String nextCursor; // Passed back to get the next page, null on the last one
+
+    public FileListPageDTO(List<FileMetadataDTO> files, String nextCursor) {
+        this.files = files;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<FileMetadataDTO> getFiles() {
+        return files;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,60 @@
+package com.filetransfer.sftp.dto;
+
+import com.filetransfer.sftp.model.MergeJobStatus;
+
+import java.time.LocalDateTime;
+
+public class MergeJobDTO {
+    private String jobId;
+    private String fileName;
+    private MergeJobStatus status;
+    private long bytesMerged;
+    private Long totalBytes;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public MergeJobDTO(String jobId, String fileName, MergeJobStatus status, long bytesMerged, Long totalBytes,
+                       String errorMessage, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.jobId = jobId;
+        this.fileName = fileName;
+        this.status = status;
+        this.bytesMerged = bytesMerged;
+        this.totalBytes = totalBytes;
+        this.errorMessage = errorMessage;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public MergeJobStatus getStatus() {
+        return status;
+    }
+
+    public long getBytesMerged() {
+        return bytesMerged;
+    }
+
+    public Long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
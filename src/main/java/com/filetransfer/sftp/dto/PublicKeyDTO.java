@@ -0,0 +1,39 @@
+package com.filetransfer.sftp.dto;
+
+import java.time.LocalDateTime;
+
+public class PublicKeyDTO {
+    private Long id;
+    private String keyType;
+    private String fingerprint;
+    private String comment;
+    private LocalDateTime createdAt;
+
+    public PublicKeyDTO(Long id, String keyType, String fingerprint, String comment, LocalDateTime createdAt) {
+        this.id = id;
+        this.keyType = keyType;
+        this.fingerprint = fingerprint;
+        this.comment = comment;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getKeyType() {
+        return keyType;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,86 @@
+package com.filetransfer.sftp.dto;
+
+import com.filetransfer.sftp.model.UploadSessionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class UploadSessionDTO {
+    private String uploadId;
+    private String fileName;
+    private UploadSessionStatus status;
+    private long totalSize;
+    private int chunkSize;
+    private int chunkCount;
+    private int receivedChunks;
+    private List<int[]> receivedRanges; // Inclusive [first, last] chunk indexes
+    private String jobId;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public UploadSessionDTO(String uploadId, String fileName, UploadSessionStatus status, long totalSize, int chunkSize,
+                            int chunkCount, int receivedChunks, List<int[]> receivedRanges, String jobId,
+                            String errorMessage, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.status = status;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.receivedChunks = receivedChunks;
+        this.receivedRanges = receivedRanges;
+        this.jobId = jobId;
+        this.errorMessage = errorMessage;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public UploadSessionStatus getStatus() {
+        return status;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int getReceivedChunks() {
+        return receivedChunks;
+    }
+
+    public List<int[]> getReceivedRanges() {
+        return receivedRanges;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
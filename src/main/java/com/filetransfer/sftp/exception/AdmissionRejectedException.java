@@ -0,0 +1,43 @@
+package com.filetransfer.sftp.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a request is turned away by admission control instead of being queued without limit.
+ * The status is 429 when the user already has their share of the operation running and 503 when the node
+ * as a whole is saturated; either way the client should retry after {@link #getRetryAfterSeconds()}.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String operation;
+    private final String reason;
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String operation, String reason, HttpStatus status, long retryAfterSeconds, String message) {
+        super(message);
+        this.operation = operation;
+        this.reason = reason;
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Why the request was rejected, e.g. {@code queue_full}; used as a metric tag.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
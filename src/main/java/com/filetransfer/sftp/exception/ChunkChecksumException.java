@@ -0,0 +1,19 @@
+package com.filetransfer.sftp.exception;
+
+/**
+ * A chunk's content did not match the checksum the client declared for it, most likely because it
+ * was corrupted or cut short in transit. Nothing of the chunk was kept, so the client can resend it.
+ */
+public class ChunkChecksumException extends RuntimeException {
+
+    private final int chunkIndex;
+
+    public ChunkChecksumException(int chunkIndex, String algorithm, String expected, String actual) {
+        super("Chunk " + chunkIndex + " failed " + algorithm + " verification: expected " + expected + " but received " + actual);
+        this.chunkIndex = chunkIndex;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+}
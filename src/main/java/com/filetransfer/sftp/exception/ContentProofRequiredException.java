@@ -0,0 +1,21 @@
+package com.filetransfer.sftp.exception;
+
+import com.filetransfer.sftp.service.ContentPossessionChallenge;
+
+/**
+ * A file was to be created from content another user uploaded, without (valid) proof that the client
+ * holds that content. The client must answer the attached challenge, or upload the file.
+ */
+public class ContentProofRequiredException extends RuntimeException {
+
+    private final ContentPossessionChallenge.Challenge challenge;
+
+    public ContentProofRequiredException(ContentPossessionChallenge.Challenge challenge) {
+        super("Proof of possession required for content stored by another user");
+        this.challenge = challenge;
+    }
+
+    public ContentPossessionChallenge.Challenge getChallenge() {
+        return challenge;
+    }
+}
@@ -2,6 +2,7 @@ package com.filetransfer.sftp.exception;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -30,6 +31,30 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errors, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(ChunkChecksumException.class)
+    public ResponseEntity<Map<String, Object>> handleChunkChecksumException(ChunkChecksumException ex, WebRequest request) {
+        logger.warn("Chunk Checksum Mismatch: {}", ex.getMessage());
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", ex.getMessage());
+        response.put("chunkIndex", ex.getChunkIndex());
+        response.put("retryable", true);
+        response.put("path", request.getDescription(false));
+        return new ResponseEntity<>(response, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Map<String, Object>> handleAdmissionRejectedException(AdmissionRejectedException ex, WebRequest request) {
+        logger.debug("Admission Rejected: {}", ex.getMessage()); // Counted in admission.rejected; may be frequent under load
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", ex.getMessage());
+        response.put("operation", ex.getOperation());
+        response.put("retryAfter", ex.getRetryAfterSeconds());
+        response.put("path", request.getDescription(false));
+        return ResponseEntity.status(ex.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response);
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException ex, WebRequest request) {
         logger.error("Runtime Exception: {}", ex.getMessage(), ex);
@@ -0,0 +1,228 @@
+package com.filetransfer.sftp.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Read-only channel over a blob's local file. The SFTP subsystem sets the position before every read
+ * request, so the position is kept here and each read is a single positional read of the file rather
+ * than a seek followed by a read. Files of at least the mapping threshold are memory-mapped, in regions
+ * mapped on first access, so their reads are copies out of the page cache without a system call.
+ * <p>
+ * Blob files are never modified once stored, which is what makes mapping them safe.
+ * <p>
+ * A mapping cannot be released explicitly: it stays in the address space until its buffer is garbage
+ * collected, even after the file is closed. So at most {@link #MAX_MAPPED_REGIONS} regions are held at
+ * once, the least recently mapped being dropped for a new one, and closing the channel drops them all.
+ * Reads that are still copying out of a dropped region finish on their own reference to it.
+ */
+class LocalReadChannel extends FileChannel {
+
+    static final long REGION_SIZE = 1L << 30;
+
+    // A sequential read needs the region it is in and, at a boundary, the next one
+    static final int MAX_MAPPED_REGIONS = 2;
+
+    private final FileChannel file;
+    private final long size;
+    private final long regionSize;
+    private final MappedByteBuffer[] regions;
+    // Indexes of the regions held in regions, least recently mapped first; guarded by regions
+    private final Deque<Integer> mapped = new ArrayDeque<>();
+    private volatile long position;
+
+    LocalReadChannel(FileChannel file, long mapThreshold) throws IOException {
+        this(file, mapThreshold, REGION_SIZE);
+    }
+
+    LocalReadChannel(FileChannel file, long mapThreshold, long regionSize) throws IOException {
+        this.file = file;
+        this.size = file.size();
+        this.regionSize = regionSize;
+        this.regions = size > 0 && size >= mapThreshold ? new MappedByteBuffer[(int) ((size - 1) / regionSize) + 1] : null;
+    }
+
+    boolean isMapped() {
+        return regions != null;
+    }
+
+    int mappedRegions() {
+        if (regions == null) {
+            return 0;
+        }
+        synchronized (regions) {
+            return mapped.size();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (!dsts[i].hasRemaining()) {
+                continue;
+            }
+            int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (regions == null) {
+            return file.read(dst, position);
+        }
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            MappedByteBuffer region = region((int) (position / regionSize));
+            int offset = (int) (position % regionSize);
+            int length = (int) Math.min(dst.remaining(), region.capacity() - offset);
+            dst.put(dst.position(), region, offset, length);
+            dst.position(dst.position() + length);
+            position += length;
+            total += length;
+        }
+        return total;
+    }
+
+    private MappedByteBuffer region(int index) throws IOException {
+        MappedByteBuffer region = regions[index];
+        if (region == null) {
+            synchronized (regions) {
+                region = regions[index];
+                if (region == null) {
+                    ensureOpen(); // Not remapped after the close dropped the regions
+                    long start = index * regionSize;
+                    region = file.map(MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+                    regions[index] = region;
+                    mapped.addLast(index);
+                    if (mapped.size() > MAX_MAPPED_REGIONS) {
+                        regions[mapped.removeFirst()] = null;
+                    }
+                }
+            }
+        }
+        return region;
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return file.transferTo(position, count, target);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return file.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return file.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return file.tryLock(position, size, shared);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // Nothing to flush on a read-only channel
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        // Closing the file does not unmap the regions; they are unmapped once no longer referenced
+        if (regions != null) {
+            synchronized (regions) {
+                Arrays.fill(regions, null);
+                mapped.clear();
+            }
+        }
+        file.close();
+    }
+}
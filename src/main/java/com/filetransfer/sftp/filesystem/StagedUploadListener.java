@@ -0,0 +1,30 @@
+package com.filetransfer.sftp.filesystem;
+
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.Handle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+
+/**
+ * Tells the {@link StagedWriteChannel} of an SFTP upload how it ended. The subsystem reports a
+ * {@code closing} event only for a close the client asked for, before closing the handle; handles left
+ * open when the session or channel goes away are closed without one, and are therefore discarded.
+ * A failed write marks the upload as failed.
+ */
+public class StagedUploadListener implements SftpEventListener {
+
+    @Override
+    public void closing(ServerSession session, String remoteHandle, Handle localHandle) {
+        if (localHandle instanceof FileHandle fileHandle && fileHandle.getFileChannel() instanceof StagedWriteChannel channel) {
+            channel.complete();
+        }
+    }
+
+    @Override
+    public void written(ServerSession session, String remoteHandle, FileHandle localHandle, long offset, byte[] data,
+                        int dataOffset, int dataLen, Throwable thrown) {
+        if (thrown != null && localHandle.getFileChannel() instanceof StagedWriteChannel channel) {
+            channel.fail();
+        }
+    }
+}
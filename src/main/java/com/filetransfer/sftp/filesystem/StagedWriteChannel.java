@@ -0,0 +1,306 @@
+package com.filetransfer.sftp.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Channel for a file opened for writing. Writes land in a staging file of the blob store at the
+ * offsets the client sends them, so out-of-order and pipelined SFTP writes need no reassembly, and
+ * the staging file is stored as the file's content when the client closes the handle.
+ * <p>
+ * Only a close the client asked for, after every write succeeded, stores the file (see
+ * {@link StagedUploadListener}). A handle that is closed because the session or channel was lost, or
+ * after a failed write, is discarded with its staging file, so a cut-off upload never replaces the
+ * stored file with part of the new content.
+ * <p>
+ * When an existing file is opened without truncation, its content is copied into the staging file
+ * only when needed: for reads and appends, for a write that leaves a gap after what was written from
+ * offset 0, and at the end for the part of the old content the client did not overwrite. A client
+ * that rewrites the file from the start never has the old content copied.
+ * <p>
+ * The SFTP subsystem sets the position before every request, so unless the file was opened for
+ * appending the position is kept here and each request is one positional read or write of the staging
+ * file instead of a seek followed by the transfer.
+ */
+class StagedWriteChannel extends FileChannel {
+
+    /**
+     * Stores the completed staging file. Called once, after the staging channel is closed.
+     */
+    @FunctionalInterface
+    interface Commit {
+        void commit(StagedWriteChannel channel, Path stagingFile) throws IOException;
+    }
+
+    /**
+     * The content of the file being overwritten.
+     */
+    interface ExistingContent {
+        long size();
+
+        InputStream open() throws IOException;
+    }
+
+    private final FileChannel delegate;
+    private final Path stagingFile;
+    private final ExistingContent existing;
+    private final Commit commit;
+    private final Consumer<StagedWriteChannel> closed;
+    private final boolean append;
+    private volatile long position;
+
+    // Until seeded, the staging file holds exactly the bytes [0, written) that the client wrote
+    private boolean seeded;
+    private long written;
+    private volatile boolean complete;
+    private volatile boolean failed;
+
+    /**
+     * @param existing the content of the file that is overwritten without truncation, or {@code null}
+     * @param closed   called once the channel is closed, whether it was stored or discarded
+     */
+    StagedWriteChannel(FileChannel delegate, Path stagingFile, boolean append, ExistingContent existing,
+                       Commit commit, Consumer<StagedWriteChannel> closed) {
+        this.delegate = delegate;
+        this.stagingFile = stagingFile;
+        this.append = append;
+        this.existing = existing;
+        this.seeded = existing == null;
+        this.commit = commit;
+        this.closed = closed;
+    }
+
+    /**
+     * Marks the upload as finished by the client, so closing the channel stores it.
+     */
+    void complete() {
+        complete = true;
+    }
+
+    /**
+     * Marks the upload as failed, so closing the channel discards it.
+     */
+    void fail() {
+        failed = true;
+    }
+
+    /**
+     * Copies the existing content the client has not written over into the staging file.
+     */
+    private synchronized void seed() throws IOException {
+        if (seeded) {
+            return;
+        }
+        if (written >= existing.size()) {
+            seeded = true; // All of it was written over
+            return;
+        }
+        try (InputStream content = existing.open()) {
+            content.skipNBytes(written);
+            byte[] buffer = new byte[65536];
+            long offset = written;
+            int read;
+            while ((read = content.read(buffer)) > 0) {
+                ByteBuffer source = ByteBuffer.wrap(buffer, 0, read);
+                while (source.hasRemaining()) {
+                    offset += delegate.write(source, offset);
+                }
+            }
+        }
+        seeded = true;
+    }
+
+    /**
+     * Seeds the staging file before a write at {@code offset} that would leave a gap of old content.
+     */
+    private synchronized void beforeWrite(long offset) throws IOException {
+        if (!seeded && (append || offset > written)) {
+            seed();
+        }
+    }
+
+    private synchronized void afterWrite(long offset, long count) {
+        if (!seeded && count > 0) {
+            written = Math.max(written, offset + count);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        seed();
+        if (append) {
+            return delegate.read(dst);
+        }
+        int read = delegate.read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        seed();
+        if (append) {
+            return delegate.read(dsts, offset, length);
+        }
+        delegate.position(position);
+        long read = delegate.read(dsts, offset, length);
+        position = delegate.position();
+        return read;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        seed();
+        return delegate.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        beforeWrite(position);
+        if (append) {
+            return delegate.write(src);
+        }
+        long offset = position;
+        int count = delegate.write(src, offset);
+        afterWrite(offset, count);
+        position = offset + count;
+        return count;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        beforeWrite(position);
+        if (append) {
+            return delegate.write(srcs, offset, length);
+        }
+        long start = position;
+        delegate.position(start);
+        long count = delegate.write(srcs, offset, length);
+        afterWrite(start, count);
+        position = delegate.position();
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        beforeWrite(position);
+        int count = delegate.write(src, position);
+        afterWrite(position, count);
+        return count;
+    }
+
+    @Override
+    public long position() throws IOException {
+        if (append) {
+            return delegate.position();
+        }
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        if (append) {
+            delegate.position(newPosition);
+            return this;
+        }
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        return seeded ? delegate.size() : Math.max(existing.size(), written);
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        seed();
+        delegate.truncate(size);
+        if (position > size) {
+            position = size;
+        }
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        // The staging file is not the stored file, so there is nothing to make durable before the close.
+        // The subsystem forces every handle it closes, on an interrupted thread when the session was
+        // lost, which would fail before the close could discard the staging file.
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        seed();
+        return delegate.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        seed();
+        return delegate.transferFrom(src, position, count);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        throw new UnsupportedOperationException("Staged files cannot be mapped");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return delegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return delegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        boolean store = complete && !failed;
+        try {
+            try {
+                if (store) {
+                    seed(); // The old content after the last byte written
+                }
+                delegate.close();
+            } catch (IOException e) {
+                delegate.close();
+                Files.deleteIfExists(stagingFile);
+                throw e;
+            }
+            if (store) {
+                commit.commit(this, stagingFile);
+            } else {
+                Files.deleteIfExists(stagingFile);
+            }
+        } finally {
+            closed.accept(this);
+        }
+    }
+}
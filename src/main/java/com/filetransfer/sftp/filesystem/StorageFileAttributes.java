@@ -0,0 +1,140 @@
+package com.filetransfer.sftp.filesystem;
+
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Attributes of a stored file or of the root directory. Files belong to the user whose file system
+ * they are listed in and are only accessible to that user.
+ */
+class StorageFileAttributes implements PosixFileAttributes {
+
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+
+    private final boolean directory;
+    private final long size;
+    private final FileTime lastModifiedTime;
+    private final Owner owner;
+
+    private StorageFileAttributes(boolean directory, long size, FileTime lastModifiedTime, String owner) {
+        this.directory = directory;
+        this.size = size;
+        this.lastModifiedTime = lastModifiedTime;
+        this.owner = new Owner(owner);
+    }
+
+    static StorageFileAttributes directory(String owner, FileTime lastModifiedTime) {
+        return new StorageFileAttributes(true, 0, lastModifiedTime, owner);
+    }
+
+    static StorageFileAttributes file(String owner, long size, FileTime lastModifiedTime) {
+        return new StorageFileAttributes(false, size, lastModifiedTime, owner);
+    }
+
+    /**
+     * Returns the attributes requested by a {@code Files.readAttributes(path, "view:names")} call.
+     */
+    Map<String, Object> toMap(String view, String names) {
+        Map<String, Object> all = new LinkedHashMap<>();
+        all.put("lastModifiedTime", lastModifiedTime());
+        all.put("lastAccessTime", lastAccessTime());
+        all.put("creationTime", creationTime());
+        all.put("size", size());
+        all.put("isRegularFile", isRegularFile());
+        all.put("isDirectory", isDirectory());
+        all.put("isSymbolicLink", isSymbolicLink());
+        all.put("isOther", isOther());
+        all.put("fileKey", fileKey());
+        if ("posix".equals(view)) {
+            all.put("permissions", permissions());
+            all.put("owner", owner());
+            all.put("group", group());
+        }
+        if ("*".equals(names)) {
+            return all;
+        }
+
+        Map<String, Object> selected = new LinkedHashMap<>();
+        Arrays.stream(names.split(","))
+                .filter(all::containsKey)
+                .forEach(name -> selected.put(name, all.get(name)));
+        return selected;
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return !directory;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return false;
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public Object fileKey() {
+        return null;
+    }
+
+    @Override
+    public UserPrincipal owner() {
+        return owner;
+    }
+
+    @Override
+    public GroupPrincipal group() {
+        return owner;
+    }
+
+    @Override
+    public Set<PosixFilePermission> permissions() {
+        return directory ? DIRECTORY_PERMISSIONS : FILE_PERMISSIONS;
+    }
+
+    private record Owner(String getName) implements GroupPrincipal {
+
+        @Override
+        public String toString() {
+            return getName;
+        }
+    }
+}
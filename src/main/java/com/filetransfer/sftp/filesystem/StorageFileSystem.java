@@ -0,0 +1,87 @@
+package com.filetransfer.sftp.filesystem;
+
+import org.apache.sshd.common.file.util.BaseFileSystem;
+
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One user's view of the stored files, as served over SFTP. Files live directly under {@code /};
+ * there are no subdirectories.
+ */
+public class StorageFileSystem extends BaseFileSystem<StoragePath> {
+
+    private final String username;
+    private final FileTime createdAt = FileTime.fromMillis(System.currentTimeMillis());
+    // Files being written in this session, so they can be stat-ed before their content is stored
+    private final Map<String, StagedWriteChannel> openWrites = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+
+    StorageFileSystem(StorageFileSystemProvider provider, String username) {
+        super(provider);
+        this.username = username;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    FileTime getCreatedAt() {
+        return createdAt;
+    }
+
+    StagedWriteChannel getOpenWrite(String fileName) {
+        return openWrites.get(fileName);
+    }
+
+    void registerOpenWrite(String fileName, StagedWriteChannel channel) {
+        openWrites.put(fileName, channel);
+    }
+
+    void unregisterOpenWrite(String fileName, StagedWriteChannel channel) {
+        openWrites.remove(fileName, channel);
+    }
+
+    StoragePath createListedPath(String fileName, StorageFileAttributes attributes) {
+        return new StoragePath(this, "/", List.of(fileName), attributes);
+    }
+
+    @Override
+    public StorageFileSystemProvider provider() {
+        return (StorageFileSystemProvider) super.provider();
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Set.of("basic", "posix");
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException("File owners cannot be changed");
+    }
+
+    @Override
+    protected StoragePath create(String root, List<String> names) {
+        return new StoragePath(this, root, names);
+    }
+
+    @Override
+    public String toString() {
+        return "StorageFileSystem[" + username + "]";
+    }
+}
@@ -0,0 +1,39 @@
+package com.filetransfer.sftp.filesystem;
+
+import com.filetransfer.sftp.service.FileStorageService;
+import org.apache.sshd.common.file.FileSystemFactory;
+import org.apache.sshd.common.session.SessionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+
+/**
+ * Gives every SSH session a file system over the authenticated user's stored files.
+ */
+@Component
+public class StorageFileSystemFactory implements FileSystemFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageFileSystemFactory.class);
+
+    private final StorageFileSystemProvider provider;
+
+    public StorageFileSystemFactory(FileStorageService fileStorageService,
+                                    @Value("${sftp.mmap-threshold:1048576}") long mapThreshold) {
+        this.provider = new StorageFileSystemProvider(fileStorageService, mapThreshold);
+    }
+
+    @Override
+    public Path getUserHomeDir(SessionContext session) {
+        return null; // Sessions start in the root directory, which holds all of the user's files
+    }
+
+    @Override
+    public FileSystem createFileSystem(SessionContext session) {
+        logger.debug("Creating storage file system for SFTP user: {}", session.getUsername());
+        return provider.newFileSystem(session.getUsername());
+    }
+}
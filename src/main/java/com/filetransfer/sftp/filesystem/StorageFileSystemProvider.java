@@ -0,0 +1,451 @@
+package com.filetransfer.sftp.filesystem;
+
+import com.filetransfer.sftp.model.FileMetadata;
+import com.filetransfer.sftp.service.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.spi.FileSystemProvider;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Exposes each user's stored files as a {@link FileSystem}, so the SFTP subsystem reads and writes
+ * the same files and metadata as the REST API. Reads go straight to the blob store: through the
+ * blob's local file when it has one (memory-mapped once it is at least {@code mapThreshold} bytes),
+ * and through its content stream otherwise. Writes go to a staging file of the blob store that
+ * becomes the file's content when the handle is closed.
+ */
+public class StorageFileSystemProvider extends FileSystemProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageFileSystemProvider.class);
+
+    public static final String SCHEME = "storage";
+
+    private static final int LIST_PAGE_SIZE = 500;
+
+    private final FileStorageService fileStorageService;
+    private final long mapThreshold;
+
+    public StorageFileSystemProvider(FileStorageService fileStorageService, long mapThreshold) {
+        this.fileStorageService = fileStorageService;
+        this.mapThreshold = mapThreshold;
+    }
+
+    public StorageFileSystem newFileSystem(String username) {
+        return new StorageFileSystem(this, username);
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+        throw new UnsupportedOperationException("Storage file systems are created per user, see newFileSystem(String)");
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        throw new UnsupportedOperationException("Storage file systems are not addressable by URI");
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        throw new UnsupportedOperationException("Storage file systems are not addressable by URI");
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return newFileChannel(path, options, attrs);
+    }
+
+    @Override
+    public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        StoragePath storagePath = toStoragePath(path);
+        String fileName = storagePath.toFileName();
+        if (fileName == null) {
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        }
+
+        if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND)) {
+            return openForWrite(storagePath.getFileSystem(), fileName, options);
+        }
+        return openForRead(storagePath.getFileSystem(), fileName);
+    }
+
+    private FileChannel openForRead(StorageFileSystem fileSystem, String fileName) throws IOException {
+        FileMetadata fileMetadata = fileStorageService.getFile(fileName, fileSystem.getUsername())
+                .orElseThrow(() -> new NoSuchFileException("/" + fileName));
+
+        Path contentPath = fileStorageService.getContentPath(fileMetadata).orElse(null);
+        if (contentPath != null) {
+            return new LocalReadChannel(FileChannel.open(contentPath, StandardOpenOption.READ), mapThreshold);
+        }
+        return new StreamReadChannel(() -> fileStorageService.openContent(fileMetadata),
+                fileStorageService.getContentLength(fileMetadata));
+    }
+
+    private FileChannel openForWrite(StorageFileSystem fileSystem, String fileName, Set<? extends OpenOption> options) throws IOException {
+        String username = fileSystem.getUsername();
+        FileMetadata existing = fileStorageService.getFile(fileName, username).orElse(null);
+        if (existing != null && options.contains(StandardOpenOption.CREATE_NEW)) {
+            throw new FileAlreadyExistsException("/" + fileName);
+        }
+        if (existing == null && !options.contains(StandardOpenOption.CREATE) && !options.contains(StandardOpenOption.CREATE_NEW)) {
+            throw new NoSuchFileException("/" + fileName);
+        }
+
+        Path stagingFile = fileStorageService.newStagingFile();
+        try {
+            // Modifying part of a stored file: its current content is copied in as far as the writes need it
+            StagedWriteChannel.ExistingContent existingContent = null;
+            if (existing != null && !options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = fileStorageService.getContentLength(existing);
+                existingContent = new StagedWriteChannel.ExistingContent() {
+                    @Override
+                    public long size() {
+                        return size;
+                    }
+
+                    @Override
+                    public InputStream open() throws IOException {
+                        return fileStorageService.openContent(existing);
+                    }
+                };
+            }
+
+            Set<OpenOption> stagingOptions = new HashSet<>();
+            stagingOptions.add(StandardOpenOption.WRITE);
+            if (options.contains(StandardOpenOption.READ)) {
+                stagingOptions.add(StandardOpenOption.READ);
+            }
+            if (options.contains(StandardOpenOption.APPEND)) {
+                stagingOptions.add(StandardOpenOption.APPEND);
+            }
+
+            StagedWriteChannel channel = new StagedWriteChannel(FileChannel.open(stagingFile, stagingOptions), stagingFile,
+                    options.contains(StandardOpenOption.APPEND), existingContent,
+                    (completed, staged) -> fileStorageService.saveStagedFile(staged, fileName, username),
+                    closed -> fileSystem.unregisterOpenWrite(fileName, closed));
+            fileSystem.registerOpenWrite(fileName, channel);
+            logger.debug("Opened {} for writing by {} in staging file {}", fileName, username, stagingFile);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(stagingFile);
+            throw e;
+        }
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        StoragePath storagePath = toStoragePath(dir);
+        if (storagePath.toFileName() != null) {
+            readAttributes(storagePath); // Fails with NoSuchFileException if it does not exist either
+            throw new NotDirectoryException(dir.toString());
+        }
+        return new StorageDirectoryStream(storagePath.getFileSystem(), filter);
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        if (toStoragePath(dir).toFileName() == null) {
+            throw new FileAlreadyExistsException(dir.toString());
+        }
+        throw new UnsupportedOperationException("Directories are not supported: " + dir);
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        StoragePath storagePath = toStoragePath(path);
+        String fileName = storagePath.toFileName();
+        if (fileName == null) {
+            throw new AccessDeniedException(path.toString());
+        }
+        if (!fileStorageService.deleteFile(fileName, storagePath.getFileSystem().getUsername())) {
+            throw new NoSuchFileException(path.toString());
+        }
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) {
+        throw new UnsupportedOperationException("Server-side copy is not supported");
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        StoragePath sourcePath = toStoragePath(source);
+        StoragePath targetPath = toStoragePath(target);
+        String fileName = sourcePath.toFileName();
+        String newFileName = targetPath.toFileName();
+        if (fileName == null || newFileName == null) {
+            throw new AccessDeniedException(source.toString(), target.toString(), "The root directory cannot be moved or replaced");
+        }
+
+        boolean replaceExisting = Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING);
+        if (!fileStorageService.renameFile(fileName, newFileName, sourcePath.getFileSystem().getUsername(), replaceExisting)) {
+            throw new NoSuchFileException(source.toString());
+        }
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) {
+        return path.toAbsolutePath().normalize().equals(path2.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        return false;
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) {
+        throw new UnsupportedOperationException("File store information is not available");
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        StorageFileAttributes attributes = readAttributes(toStoragePath(path));
+        if (attributes.isRegularFile() && Arrays.asList(modes).contains(AccessMode.EXECUTE)) {
+            throw new AccessDeniedException(path.toString());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        if (type.isAssignableFrom(PosixFileAttributeView.class)) {
+            return (V) new StorageFileAttributeView(toStoragePath(path));
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+        if (type.isAssignableFrom(PosixFileAttributes.class)) {
+            return (A) readAttributes(toStoragePath(path));
+        }
+        throw new UnsupportedOperationException("Unsupported attributes type: " + type.getName());
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        int separator = attributes.indexOf(':');
+        String view = separator < 0 ? "basic" : attributes.substring(0, separator);
+        String names = separator < 0 ? attributes : attributes.substring(separator + 1);
+        if (!"basic".equals(view) && !"posix".equals(view)) {
+            throw new UnsupportedOperationException("Unsupported attribute view: " + view);
+        }
+        return readAttributes(toStoragePath(path)).toMap(view, names);
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+        readAttributes(toStoragePath(path)); // Fails with NoSuchFileException for missing files
+        // Times and permissions are managed by the server; clients preserving them (e.g. "put -p") are not an error
+        logger.debug("Ignoring attribute {} set on {}", attribute, path);
+    }
+
+    private StorageFileAttributes readAttributes(StoragePath path) throws IOException {
+        if (path.getListedAttributes() != null) {
+            return path.getListedAttributes();
+        }
+
+        StorageFileSystem fileSystem = path.getFileSystem();
+        String fileName = path.toFileName();
+        if (fileName == null) {
+            return StorageFileAttributes.directory(fileSystem.getUsername(), fileSystem.getCreatedAt());
+        }
+
+        StagedWriteChannel openWrite = fileSystem.getOpenWrite(fileName);
+        if (openWrite != null && openWrite.isOpen()) {
+            return StorageFileAttributes.file(fileSystem.getUsername(), openWrite.size(),
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        }
+
+        FileMetadata fileMetadata = fileStorageService.getFile(fileName, fileSystem.getUsername())
+                .orElseThrow(() -> new NoSuchFileException(path.toString()));
+        return toAttributes(fileMetadata);
+    }
+
+    private StorageFileAttributes toAttributes(FileMetadata fileMetadata) {
+        long size = fileMetadata.getContentLength() != null
+                ? fileMetadata.getContentLength()
+                : fileStorageService.getContentLength(fileMetadata);
+        FileTime lastModified = FileTime.from(fileMetadata.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant());
+        return StorageFileAttributes.file(fileMetadata.getOwner(), size, lastModified);
+    }
+
+    private static StoragePath toStoragePath(Path path) {
+        if (path instanceof StoragePath storagePath) {
+            return storagePath;
+        }
+        throw new ProviderMismatchException("Not a storage path: " + path);
+    }
+
+    /**
+     * Lists the user's files page by page, carrying each file's attributes on its path.
+     */
+    private class StorageDirectoryStream implements DirectoryStream<Path> {
+
+        private final StorageFileSystem fileSystem;
+        private final Filter<? super Path> filter;
+        private boolean iteratorReturned;
+        private boolean closed;
+
+        StorageDirectoryStream(StorageFileSystem fileSystem, Filter<? super Path> filter) {
+            this.fileSystem = fileSystem;
+            this.filter = filter;
+        }
+
+        @Override
+        public Iterator<Path> iterator() {
+            if (closed || iteratorReturned) {
+                throw new IllegalStateException("Directory stream is closed or already iterated");
+            }
+            iteratorReturned = true;
+
+            return new Iterator<>() {
+                private String lastFileName = "";
+                private Iterator<FileMetadata> current = List.<FileMetadata>of().iterator();
+                private boolean lastPage;
+                private Path next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && !closed) {
+                        if (!current.hasNext()) {
+                            if (lastPage) {
+                                return false;
+                            }
+                            List<FileMetadata> files = fileStorageService.listFiles(fileSystem.getUsername(), lastFileName, LIST_PAGE_SIZE);
+                            lastPage = files.size() < LIST_PAGE_SIZE;
+                            if (!files.isEmpty()) {
+                                lastFileName = files.get(files.size() - 1).getFileName();
+                            }
+                            current = files.iterator();
+                            continue;
+                        }
+
+                        FileMetadata fileMetadata = current.next();
+                        String fileName = fileMetadata.getFileName();
+                        if (fileName.isEmpty() || fileName.contains("/") || ".".equals(fileName) || "..".equals(fileName)) {
+                            continue; // Not addressable as a single path segment
+                        }
+                        Path path = fileSystem.createListedPath(fileName, toAttributes(fileMetadata));
+                        try {
+                            if (filter == null || filter.accept(path)) {
+                                next = path;
+                            }
+                        } catch (IOException e) {
+                            throw new DirectoryIteratorException(e);
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Path next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Path result = next;
+                    next = null;
+                    return result;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Attribute view whose updates are accepted and ignored, like {@link #setAttribute}.
+     */
+    private class StorageFileAttributeView implements PosixFileAttributeView {
+
+        private final StoragePath path;
+
+        StorageFileAttributeView(StoragePath path) {
+            this.path = path;
+        }
+
+        @Override
+        public String name() {
+            return "posix";
+        }
+
+        @Override
+        public PosixFileAttributes readAttributes() throws IOException {
+            return StorageFileSystemProvider.this.readAttributes(path);
+        }
+
+        @Override
+        public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
+            setAttribute(path, "basic:lastModifiedTime", lastModifiedTime);
+        }
+
+        @Override
+        public void setPermissions(Set<PosixFilePermission> perms) throws IOException {
+            setAttribute(path, "posix:permissions", perms);
+        }
+
+        @Override
+        public void setGroup(GroupPrincipal group) throws IOException {
+            setAttribute(path, "posix:group", group);
+        }
+
+        @Override
+        public UserPrincipal getOwner() throws IOException {
+            return readAttributes().owner();
+        }
+
+        @Override
+        public void setOwner(UserPrincipal owner) throws IOException {
+            setAttribute(path, "posix:owner", owner);
+        }
+    }
+}
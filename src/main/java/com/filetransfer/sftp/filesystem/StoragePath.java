@@ -0,0 +1,59 @@
+package com.filetransfer.sftp.filesystem;
+
+import org.apache.sshd.common.file.util.BasePath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+
+/**
+ * Path in a {@link StorageFileSystem}. The namespace is flat: the root directory holds the user's files.
+ */
+public class StoragePath extends BasePath<StoragePath, StorageFileSystem> {
+
+    // Attributes read along with a directory listing, so stat-ing each entry does not query it again
+    private final StorageFileAttributes listedAttributes;
+
+    public StoragePath(StorageFileSystem fileSystem, String root, List<String> names) {
+        this(fileSystem, root, names, null);
+    }
+
+    StoragePath(StorageFileSystem fileSystem, String root, List<String> names, StorageFileAttributes listedAttributes) {
+        super(fileSystem, root, names);
+        this.listedAttributes = listedAttributes;
+    }
+
+    StorageFileAttributes getListedAttributes() {
+        return listedAttributes;
+    }
+
+    /**
+     * Returns the name of the file this path refers to, or {@code null} for the root directory.
+     *
+     * @throws NoSuchFileException if the path points below the root, where nothing can exist
+     */
+    String toFileName() throws NoSuchFileException {
+        StoragePath absolute = toAbsolutePath().normalize();
+        if (absolute.names.isEmpty()) {
+            return null;
+        }
+        if (absolute.names.size() > 1 || "..".equals(absolute.names.get(0))) {
+            throw new NoSuchFileException(toString());
+        }
+        return absolute.names.get(0);
+    }
+
+    @Override
+    public File toFile() {
+        throw new UnsupportedOperationException("Storage paths are not backed by local files: " + this);
+    }
+
+    @Override
+    public StoragePath toRealPath(LinkOption... options) throws IOException {
+        StoragePath absolute = toAbsolutePath().normalize();
+        getFileSystem().provider().checkAccess(absolute);
+        return absolute;
+    }
+}
@@ -0,0 +1,257 @@
+package com.filetransfer.sftp.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-only channel over content that is only available as a stream, such as compressed blobs or
+ * PostgreSQL large objects. Reads at increasing offsets, which is how SFTP clients download, are
+ * served from one open stream; reading backwards reopens it.
+ * <p>
+ * Reads block on the content stream, which may be a database connection, so they are guarded by a
+ * {@link ReentrantLock} rather than a monitor, which would pin the carrier of a virtual thread.
+ */
+class StreamReadChannel extends FileChannel {
+
+    private static final int TRANSFER_BUFFER_SIZE = 65536;
+
+    /**
+     * Opens the content from its first byte.
+     */
+    @FunctionalInterface
+    interface ContentOpener {
+        InputStream open() throws IOException;
+    }
+
+    private final ContentOpener opener;
+    private final long size;
+    private final ReentrantLock lock = new ReentrantLock();
+    private byte[] scratch; // For destinations without a backing array, reused across reads
+    private InputStream stream;
+    private long streamPosition;
+    private long position;
+
+    StreamReadChannel(ContentOpener opener, long size) {
+        this.opener = opener;
+        this.size = size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        lock.lock();
+        try {
+            int read = read(dst, position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (!dsts[i].hasRemaining()) {
+                    continue;
+                }
+                int read = read(dsts[i]);
+                if (read < 0) {
+                    return total == 0 ? -1 : total;
+                }
+                total += read;
+                if (dsts[i].hasRemaining()) {
+                    break;
+                }
+            }
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        lock.lock();
+        try {
+            return readAt(dst, position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readAt(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        seek(position);
+
+        int length = (int) Math.min(dst.remaining(), size - position);
+        int read;
+        if (dst.hasArray()) {
+            read = stream.read(dst.array(), dst.arrayOffset() + dst.position(), length);
+            if (read > 0) {
+                dst.position(dst.position() + read);
+            }
+        } else {
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[Math.max(length, TRANSFER_BUFFER_SIZE)];
+            }
+            read = stream.read(scratch, 0, length);
+            if (read > 0) {
+                dst.put(scratch, 0, read);
+            }
+        }
+        if (read < 0) {
+            throw new IOException("Stored content ended at " + streamPosition + " of " + size + " bytes");
+        }
+        streamPosition += read;
+        return read;
+    }
+
+    private void seek(long target) throws IOException {
+        if (stream == null || target < streamPosition) {
+            if (stream != null) {
+                stream.close();
+            }
+            stream = opener.open();
+            streamPosition = 0;
+        }
+        if (target > streamPosition) {
+            stream.skipNBytes(target - streamPosition);
+            streamPosition = target;
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        lock.lock();
+        try {
+            ensureOpen();
+            position = newPosition;
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(TRANSFER_BUFFER_SIZE, Math.max(count, 1)));
+        long transferred = 0;
+        while (transferred < count) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), count - transferred));
+            int read = read(buffer, position + transferred);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            transferred += read;
+        }
+        return transferred;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // Nothing to flush on a read-only channel
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        throw new UnsupportedOperationException("Streamed content cannot be mapped");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Streamed content cannot be locked");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Streamed content cannot be locked");
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        lock.lock();
+        try {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.filetransfer.sftp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Received chunks of one range of an in-progress upload, stored as a bitmap whose bit 0 is chunk
+ * {@code firstChunk}. Ranges are {@link com.filetransfer.sftp.service.ChunkBitmap#PAGE_BITS} chunks
+ * long; rows written before ranges were introduced start at chunk 0 and may hold the whole upload.
+ */
+@Entity
+@Data
+@Table(name = "chunk_upload_state", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"fileName", "username", "firstChunk"})
+})
+public class ChunkUploadState {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(nullable = false)
+    private int firstChunk;
+
+    @Column(nullable = false, columnDefinition = "BYTEA")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] bitmap; // BitSet.toByteArray() layout
+
+    @Column(nullable = false)
+    private int chunkCount;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    public ChunkUploadState() {}
+
+    public ChunkUploadState(String fileName, String username, int firstChunk, byte[] bitmap, int chunkCount,
+                            LocalDateTime updatedAt) {
+        this.fileName = fileName;
+        this.username = username;
+        this.firstChunk = firstChunk;
+        this.bitmap = bitmap;
+        this.chunkCount = chunkCount;
+        this.updatedAt = updatedAt;
+    }
+}
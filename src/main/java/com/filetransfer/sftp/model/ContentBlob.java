@@ -0,0 +1,36 @@
+package com.filetransfer.sftp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reference count of a stored blob. Blobs are shared by every file with the same content and are
+ * only deleted once no file references them any more.
+ */
+@Entity
+@Data
+@Table(name = "content_blobs", indexes = {
+        @Index(columnList = "checksum, contentLength"),
+        @Index(columnList = "refCount, updatedAt")
+})
+public class ContentBlob {
+
+    @Id
+    private String blobRef;
+
+    @Column(nullable = false, length = 64)
+    private String checksum;
+
+    @Column(nullable = false)
+    private long contentLength;
+
+    @Column(nullable = false)
+    private long refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt; // Last time the count changed; unreferenced blobs are kept for a grace period
+
+    public ContentBlob() {}
+}
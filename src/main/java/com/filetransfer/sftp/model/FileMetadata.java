@@ -2,12 +2,18 @@ package com.filetransfer.sftp.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
 @Entity
 @Data
 @Table(name = "file_metadata", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"fileName", "owner"})
+}, indexes = {
+        // Covering indexes for the keyset listing, see FileMetadataRepository
+        @Index(name = "idx_file_metadata_owner_uploaded_at", columnList = "owner, uploadedAt, fileName, fileSize"),
+        @Index(name = "idx_file_metadata_owner_file_name", columnList = "owner, fileName, uploadedAt, fileSize")
 })
 public class FileMetadata {
 
@@ -27,8 +33,17 @@ public class FileMetadata {
     @Column(nullable = false)
     private LocalDateTime uploadedAt;
 
-    @Column(nullable = false, columnDefinition = "BYTEA")
-    private byte[] fileData;
+    @Basic(fetch = FetchType.LAZY) // Only loaded on access, requires bytecode enhancement (see pom.xml)
+    @Column(columnDefinition = "BYTEA")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] fileData; // Legacy in-row storage, moved to the blob store by BlobMigrationService
+
+    private String blobRef; // Reference into the BlobStore holding the content
+
+    private Long contentLength; // Exact content size in bytes
+
+    private String checksum; // SHA-256 of the content, hex encoded
 
     public FileMetadata() {}
 
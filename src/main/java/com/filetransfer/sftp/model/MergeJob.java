@@ -0,0 +1,56 @@
+package com.filetransfer.sftp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Data
+@Table(name = "merge_jobs", indexes = {
+        @Index(columnList = "status, createdAt"),
+        @Index(columnList = "owner, userSlot", unique = true)
+})
+public class MergeJob {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private MergeJobStatus status;
+
+    private Long totalBytes;
+
+    @Column(nullable = false)
+    private long bytesMerged;
+
+    private String errorMessage;
+
+    private String uploadSessionId; // Set when the job finalizes an upload session instead of merging chunk files
+
+    private Integer userSlot; // Admission slot of the owner's held until the job finishes, if it took one
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt; // Doubles as the heartbeat of running jobs
+
+    public MergeJob() {}
+
+    public MergeJob(String id, String fileName, String owner, LocalDateTime createdAt) {
+        this.id = id;
+        this.fileName = fileName;
+        this.owner = owner;
+        this.status = MergeJobStatus.QUEUED;
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+    }
+}
@@ -0,0 +1,8 @@
+package com.filetransfer.sftp.model;
+
+public enum MergeJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,72 @@
+package com.filetransfer.sftp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload with a declared size and chunk size. Chunks are written straight into a preallocated
+ * staging file at their final offset, and the file is stored once every chunk has arrived.
+ */
+@Entity
+@Data
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private long totalSize;
+
+    @Column(nullable = false)
+    private int chunkSize;
+
+    @Column(nullable = false)
+    private int chunkCount;
+
+    private String checksum; // Expected SHA-256 (hex), if the client declared one; the stored content's once imported
+
+    private String blobRef; // Blob the staging file was stored as, once it has been imported
+
+    @Column(nullable = false, length = 1024)
+    private String stagingPath;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private UploadSessionStatus status;
+
+    private String jobId;
+
+    private String errorMessage;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    public UploadSession() {}
+
+    public UploadSession(String id, String fileName, String owner, long totalSize, int chunkSize, String checksum,
+                         String stagingPath, LocalDateTime createdAt) {
+        this.id = id;
+        this.fileName = fileName;
+        this.owner = owner;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = (int) ((totalSize + chunkSize - 1) / chunkSize);
+        this.checksum = checksum;
+        this.stagingPath = stagingPath;
+        this.status = UploadSessionStatus.OPEN;
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+    }
+}
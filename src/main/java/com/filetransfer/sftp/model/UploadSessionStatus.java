@@ -0,0 +1,9 @@
+package com.filetransfer.sftp.model;
+
+public enum UploadSessionStatus {
+    OPEN,
+    FINALIZING,
+    COMPLETED,
+    FAILED,
+    ABORTED
+}
@@ -0,0 +1,48 @@
+package com.filetransfer.sftp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Public key a user may log in to the SFTP server with, stored as its authorized_keys line.
+ */
+@Entity
+@Data
+@Table(name = "user_public_keys",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"username", "fingerprint"}))
+public class UserPublicKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(nullable = false)
+    private String keyType;
+
+    @Column(nullable = false, length = 128)
+    private String fingerprint; // SHA256:<base64>, as printed by ssh-keygen -l
+
+    @Column(nullable = false, length = 8192)
+    private String publicKey;
+
+    private String comment;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public UserPublicKey() {}
+
+    public UserPublicKey(String username, String keyType, String fingerprint, String publicKey, String comment) {
+        this.username = username;
+        this.keyType = keyType;
+        this.fingerprint = fingerprint;
+        this.publicKey = publicKey;
+        this.comment = comment;
+        this.createdAt = LocalDateTime.now();
+    }
+}
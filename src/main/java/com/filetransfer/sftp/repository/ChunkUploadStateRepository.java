@@ -0,0 +1,20 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.ChunkUploadState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ChunkUploadStateRepository extends JpaRepository<ChunkUploadState, Long> {
+    List<ChunkUploadState> findByFileNameAndUsername(String fileName, String username);
+
+    @Query("select coalesce(sum(s.chunkCount), 0) from ChunkUploadState s where s.fileName = :fileName and s.username = :username")
+    long sumChunkCount(@Param("fileName") String fileName, @Param("username") String username);
+
+    @Modifying
+    @Query("delete from ChunkUploadState s where s.fileName = :fileName and s.username = :username")
+    int deleteByFileNameAndUsername(@Param("fileName") String fileName, @Param("username") String username);
+}
@@ -0,0 +1,53 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.ContentBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+    Optional<ContentBlob> findFirstByChecksumAndContentLength(String checksum, long contentLength);
+
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount + 1, b.updatedAt = :now where b.blobRef = :blobRef")
+    int increment(@Param("blobRef") String blobRef, @Param("now") LocalDateTime now);
+
+    /**
+     * Restarts the grace period of the blob, taking its row lock. Returns 0 if it has no row.
+     */
+    @Modifying
+    @Query("update ContentBlob b set b.updatedAt = :now where b.blobRef = :blobRef")
+    int touch(@Param("blobRef") String blobRef, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount - 1, b.updatedAt = :now where b.blobRef = :blobRef and b.refCount > 0")
+    int decrement(@Param("blobRef") String blobRef, @Param("now") LocalDateTime now);
+
+    /**
+     * Creates the count for a blob seen for the first time. Returns 0 if a concurrent transaction
+     * created it first.
+     */
+    @Modifying
+    @Query(value = "insert into content_blobs (blob_ref, checksum, content_length, ref_count, updated_at) " +
+            "values (:blobRef, :checksum, :contentLength, :refCount, :now) on conflict do nothing", nativeQuery = true)
+    int insertIfAbsent(@Param("blobRef") String blobRef, @Param("checksum") String checksum,
+                       @Param("contentLength") long contentLength, @Param("refCount") long refCount,
+                       @Param("now") LocalDateTime now);
+
+    @Query("select b.blobRef from ContentBlob b where b.refCount = 0 and b.updatedAt < :before order by b.updatedAt")
+    List<String> findUnreferenced(@Param("before") LocalDateTime before, Pageable pageable);
+
+    /**
+     * Removes the count if the blob is still unreferenced. Returns 0 if it was referenced or claimed
+     * again.
+     */
+    @Modifying
+    @Query("delete from ContentBlob b where b.blobRef = :blobRef and b.refCount = 0 and b.updatedAt < :before")
+    int deleteUnreferenced(@Param("blobRef") String blobRef, @Param("before") LocalDateTime before);
+}
@@ -1,16 +1,112 @@
 package com.filetransfer.sftp.repository;
 
+import com.filetransfer.sftp.dto.FileMetadataDTO;
 import com.filetransfer.sftp.model.FileMetadata;
-import org.springframework.data.domain.Page;
+import com.filetransfer.sftp.storage.StoredBlob;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 public interface FileMetadataRepository extends JpaRepository<FileMetadata, Long> {
     Optional<FileMetadata> findByFileNameAndOwner(String fileName, String owner);
-    void deleteByFileNameAndOwner(String fileName, String owner);
-    Page<FileMetadata> findByOwner(String owner, Pageable pageable);
+
+    @Query("select new com.filetransfer.sftp.dto.FileMetadataDTO(f.fileName, f.fileSize, f.uploadedAt) " +
+            "from FileMetadata f where f.owner = :owner")
+    List<FileMetadataDTO> findSummariesByOwner(@Param("owner") String owner, Pageable pageable);
+
+    // Keyset pages of the listing: each starts strictly after the last file of the previous one, so no
+    // rows are skipped over, and Slice fetches one extra row instead of counting. Unused filters are
+    // passed as match-everything values so the statement, and its plan, stay the same. Both are
+    // answered from the covering indexes of migration V2.
+
+    @Query("select new com.filetransfer.sftp.dto.FileMetadataDTO(f.fileName, f.fileSize, f.uploadedAt) " +
+            "from FileMetadata f where f.owner = :owner " +
+            "and (f.uploadedAt, f.fileName) < (:afterUploadedAt, :afterFileName) " +
+            "and f.fileName like :namePattern escape '\\' " +
+            "and f.fileSize between :minSizeKb and :maxSizeKb " +
+            "and f.uploadedAt >= :uploadedFrom and f.uploadedAt < :uploadedTo " +
+            "order by f.uploadedAt desc, f.fileName desc")
+    Slice<FileMetadataDTO> findSummariesByOwnerNewestFirst(@Param("owner") String owner,
+                                                           @Param("afterUploadedAt") LocalDateTime afterUploadedAt,
+                                                           @Param("afterFileName") String afterFileName,
+                                                           @Param("namePattern") String namePattern,
+                                                           @Param("minSizeKb") long minSizeKb,
+                                                           @Param("maxSizeKb") long maxSizeKb,
+                                                           @Param("uploadedFrom") LocalDateTime uploadedFrom,
+                                                           @Param("uploadedTo") LocalDateTime uploadedTo,
+                                                           Pageable pageable);
+
+    @Query("select new com.filetransfer.sftp.dto.FileMetadataDTO(f.fileName, f.fileSize, f.uploadedAt) " +
+            "from FileMetadata f where f.owner = :owner " +
+            "and f.fileName > :afterFileName " +
+            "and f.fileName like :namePattern escape '\\' " +
+            "and f.fileSize between :minSizeKb and :maxSizeKb " +
+            "and f.uploadedAt >= :uploadedFrom and f.uploadedAt < :uploadedTo " +
+            "order by f.fileName")
+    Slice<FileMetadataDTO> findSummariesByOwnerByName(@Param("owner") String owner,
+                                                      @Param("afterFileName") String afterFileName,
+                                                      @Param("namePattern") String namePattern,
+                                                      @Param("minSizeKb") long minSizeKb,
+                                                      @Param("maxSizeKb") long maxSizeKb,
+                                                      @Param("uploadedFrom") LocalDateTime uploadedFrom,
+                                                      @Param("uploadedTo") LocalDateTime uploadedTo,
+                                                      Pageable pageable);
+
+    @Modifying
+    @Query("update FileMetadata f set f.blobRef = :blobRef, f.contentLength = :contentLength, f.checksum = :checksum, " +
+            "f.fileSize = :contentLength / 1024, f.fileData = null where f.id = :id")
+    int replaceBlob(@Param("id") Long id, @Param("blobRef") String blobRef,
+                    @Param("contentLength") long contentLength, @Param("checksum") String checksum);
+
+    @Query("select new com.filetransfer.sftp.storage.StoredBlob(f.blobRef, f.contentLength, f.checksum) from FileMetadata f " +
+            "where f.fileName = :fileName and f.owner = :owner and f.blobRef is not null")
+    Optional<StoredBlob> findBlobByFileNameAndOwner(@Param("fileName") String fileName, @Param("owner") String owner);
+
+    List<FileMetadata> findByOwnerAndFileNameGreaterThanOrderByFileName(String owner, String afterFileName, Limit limit);
+
+    boolean existsByFileNameAndOwner(String fileName, String owner);
+
+    @Modifying
+    @Query("update FileMetadata f set f.fileName = :newFileName where f.fileName = :fileName and f.owner = :owner")
+    int rename(@Param("fileName") String fileName, @Param("newFileName") String newFileName, @Param("owner") String owner);
+
+    @Modifying
+    @Query("delete from FileMetadata f where f.fileName = :fileName and f.owner = :owner")
+    int deleteByFileNameAndOwner(@Param("fileName") String fileName, @Param("owner") String owner);
+    boolean existsByBlobRef(String blobRef);
+    long countByBlobRef(String blobRef);
+    boolean existsByOwnerAndChecksumAndContentLength(String owner, String checksum, Long contentLength);
+
+    @Query("select f.blobRef from FileMetadata f where f.checksum = :checksum and f.contentLength = :contentLength " +
+            "and f.blobRef is not null")
+    List<String> findBlobRefsByContent(@Param("checksum") String checksum, @Param("contentLength") long contentLength,
+                                       Pageable pageable);
+
+    /**
+     * Ids of files whose content is still inline, in id order from the first one after {@code after}.
+     */
+    @Query("select f.id from FileMetadata f where f.blobRef is null and f.fileData is not null and f.id > :after order by f.id")
+    List<Long> findIdsWithoutBlob(@Param("after") long after, Pageable pageable);
+
+    @Query("select f.fileData from FileMetadata f where f.id = :id")
+    byte[] findFileDataById(@Param("id") Long id);
+
+    @Query(value = "select octet_length(file_data) from file_metadata where id = :id", nativeQuery = true)
+    Long findFileDataLengthById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("update FileMetadata f set f.blobRef = :blobRef, f.contentLength = :contentLength, f.checksum = :checksum, f.fileData = null " +
+            "where f.id = :id and f.blobRef is null")
+    int attachBlob(@Param("id") Long id, @Param("blobRef") String blobRef,
+                   @Param("contentLength") long contentLength, @Param("checksum") String checksum);
 }
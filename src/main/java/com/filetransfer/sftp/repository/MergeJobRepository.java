@@ -0,0 +1,59 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.MergeJob;
+import com.filetransfer.sftp.model.MergeJobStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface MergeJobRepository extends JpaRepository<MergeJob, String> {
+    Optional<MergeJob> findByIdAndOwner(String id, String owner);
+
+    long countByStatus(MergeJobStatus status);
+
+    @Query("select j.userSlot from MergeJob j where j.owner = :owner and j.userSlot is not null")
+    List<Integer> findUserSlots(@Param("owner") String owner);
+
+    @Query("select j.id from MergeJob j where j.status = com.filetransfer.sftp.model.MergeJobStatus.QUEUED order by j.createdAt")
+    List<String> findQueuedIds(Pageable pageable);
+
+    /**
+     * Moves a queued job to RUNNING. Returns 0 if another worker claimed it first.
+     */
+    @Transactional
+    @Modifying
+    @Query("update MergeJob j set j.status = com.filetransfer.sftp.model.MergeJobStatus.RUNNING, j.updatedAt = :now " +
+            "where j.id = :id and j.status = com.filetransfer.sftp.model.MergeJobStatus.QUEUED")
+    int claim(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update MergeJob j set j.bytesMerged = :bytesMerged, j.totalBytes = :totalBytes, j.updatedAt = :now " +
+            "where j.id = :id and j.status = com.filetransfer.sftp.model.MergeJobStatus.RUNNING")
+    int updateProgress(@Param("id") String id, @Param("bytesMerged") long bytesMerged,
+                       @Param("totalBytes") Long totalBytes, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update MergeJob j set j.status = :status, j.bytesMerged = :bytesMerged, j.totalBytes = :totalBytes, " +
+            "j.errorMessage = :errorMessage, j.updatedAt = :now, j.userSlot = null where j.id = :id")
+    int finish(@Param("id") String id, @Param("status") MergeJobStatus status, @Param("bytesMerged") long bytesMerged,
+               @Param("totalBytes") Long totalBytes, @Param("errorMessage") String errorMessage, @Param("now") LocalDateTime now);
+
+    /**
+     * Puts running jobs back in the queue when their worker stopped sending heartbeats, e.g. because
+     * the node restarted.
+     */
+    @Transactional
+    @Modifying
+    @Query("update MergeJob j set j.status = com.filetransfer.sftp.model.MergeJobStatus.QUEUED, j.updatedAt = :now " +
+            "where j.status = com.filetransfer.sftp.model.MergeJobStatus.RUNNING and j.updatedAt < :staleBefore")
+    int requeueStale(@Param("staleBefore") LocalDateTime staleBefore, @Param("now") LocalDateTime now);
+}
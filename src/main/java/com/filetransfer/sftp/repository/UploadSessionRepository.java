@@ -0,0 +1,72 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.model.UploadSessionStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    Optional<UploadSession> findByIdAndOwner(String id, String owner);
+
+    /**
+     * Moves an open session to FINALIZING. Returns 0 if it is no longer open, so only the request
+     * that delivered the last chunk starts finalization.
+     */
+    @Modifying
+    @Query("update UploadSession s set s.status = com.filetransfer.sftp.model.UploadSessionStatus.FINALIZING, " +
+            "s.jobId = :jobId, s.updatedAt = :now " +
+            "where s.id = :id and s.status = com.filetransfer.sftp.model.UploadSessionStatus.OPEN")
+    int startFinalizing(@Param("id") String id, @Param("jobId") String jobId, @Param("now") LocalDateTime now);
+
+    /**
+     * Remembers the blob a finalizing session's staging file was stored as.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.blobRef = :blobRef, s.checksum = :checksum, s.updatedAt = :now " +
+            "where s.id = :id and s.status = com.filetransfer.sftp.model.UploadSessionStatus.FINALIZING")
+    int recordBlob(@Param("id") String id, @Param("blobRef") String blobRef, @Param("checksum") String checksum,
+                   @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.status = :to, s.updatedAt = :now where s.id = :id and s.status = :from")
+    int transition(@Param("id") String id, @Param("from") UploadSessionStatus from, @Param("to") UploadSessionStatus to,
+                   @Param("now") LocalDateTime now);
+
+    /**
+     * Open sessions that have not changed, and have not had a chunk stored, since {@code idleSince}.
+     */
+    @Query("select s from UploadSession s where s.status = com.filetransfer.sftp.model.UploadSessionStatus.OPEN " +
+            "and s.updatedAt < :idleSince and not exists (select c.id from ChunkUploadState c " +
+            "where c.fileName = s.id and c.username = s.owner and c.updatedAt >= :idleSince) order by s.updatedAt")
+    List<UploadSession> findIdle(@Param("idleSince") LocalDateTime idleSince, Pageable pageable);
+
+    /**
+     * Aborts an open session if it is still idle. Returns 0 if it received a chunk or changed since
+     * it was found.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.status = com.filetransfer.sftp.model.UploadSessionStatus.ABORTED, " +
+            "s.errorMessage = :reason, s.updatedAt = :now " +
+            "where s.id = :id and s.status = com.filetransfer.sftp.model.UploadSessionStatus.OPEN " +
+            "and s.updatedAt < :idleSince and not exists (select c.id from ChunkUploadState c " +
+            "where c.fileName = s.id and c.username = s.owner and c.updatedAt >= :idleSince)")
+    int abortIdle(@Param("id") String id, @Param("idleSince") LocalDateTime idleSince, @Param("reason") String reason,
+                  @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.status = :status, s.errorMessage = :errorMessage, s.updatedAt = :now where s.id = :id")
+    int finish(@Param("id") String id, @Param("status") UploadSessionStatus status,
+               @Param("errorMessage") String errorMessage, @Param("now") LocalDateTime now);
+}
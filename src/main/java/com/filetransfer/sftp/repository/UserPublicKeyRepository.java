@@ -0,0 +1,16 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.UserPublicKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface UserPublicKeyRepository extends JpaRepository<UserPublicKey, Long> {
+    List<UserPublicKey> findByUsernameOrderByCreatedAtAsc(String username);
+
+    boolean existsByUsernameAndFingerprint(String username, String fingerprint);
+
+    @Transactional
+    long deleteByIdAndUsername(Long id, String username);
+}
@@ -1,11 +1,16 @@
 package com.filetransfer.sftp.security;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -17,7 +22,13 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Authenticates requests carrying a bearer token. The time spent verifying tokens is published as the
+ * {@code auth.jwt.verify} timer, tagged with whether the token was accepted.
+ */
 @Component
 public class JwtFilter extends OncePerRequestFilter {
 
@@ -25,10 +36,19 @@ public class JwtFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final Timer validTokens;
+    private final Timer invalidTokens;
 
-    public JwtFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    @Autowired
+    public JwtFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(jwtUtil, userDetailsService, meterRegistry.getIfAvailable());
+    }
+
+    public JwtFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService, MeterRegistry meterRegistry) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.validTokens = meterRegistry != null ? Timer.builder("auth.jwt.verify").tag("result", "valid").register(meterRegistry) : null;
+        this.invalidTokens = meterRegistry != null ? Timer.builder("auth.jwt.verify").tag("result", "invalid").register(meterRegistry) : null;
     }
 
     @Override
@@ -45,9 +65,22 @@ public class JwtFilter extends OncePerRequestFilter {
             }
 
             final String token = authHeader.substring(7);
-            final String username = jwtUtil.extractUsername(token);
+            // Signature and expiry are checked in this single parse; the claims are reused below.
+            final long verifyStart = System.nanoTime();
+            final Optional<Claims> claims = jwtUtil.verifyToken(token);
+            if (validTokens != null) {
+                (claims.isPresent() ? validTokens : invalidTokens).record(System.nanoTime() - verifyStart, TimeUnit.NANOSECONDS);
+            }
 
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (claims.isEmpty()) {
+                logger.warn("Invalid JWT token received.");
+                chain.doFilter(request, response);
+                return;
+            }
+
+            final String username = claims.get().getSubject();
+
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
                 logger.debug("Validating JWT token for user: {}", username);
 
                 UserDetails userDetails;
@@ -59,18 +92,14 @@ public class JwtFilter extends OncePerRequestFilter {
                     return;
                 }
 
-                if (jwtUtil.isTokenValid(token)) {
-                    logger.debug("JWT token is valid for user: {}", username);
+                logger.debug("JWT token is valid for user: {}", username);
 
-                    UsernamePasswordAuthenticationToken authentication =
-                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                UsernamePasswordAuthenticationToken authentication =
+                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                    logger.info("User authenticated successfully: {}", username);
-                } else {
-                    logger.warn("Invalid JWT token for user: {}", username);
-                }
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+                logger.info("User authenticated successfully: {}", username);
             }
 
             chain.doFilter(request, response);
@@ -1,15 +1,17 @@
 package com.filetransfer.sftp.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
 
-import java.security.Key;
 import java.util.Base64;
 import java.util.Date;
 import java.util.Map;
+import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,13 +27,19 @@ public class JwtUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtUtil.class);
 
-    @Value("${jwt.secret}")
-    private String encryptedSecretKey;
+    // The secret is decrypted once at startup; the key and parser are immutable and thread-safe.
+    private final SecretKey signingKey;
+    private final JwtParser jwtParser;
 
-    @Value("${jwt.encryption.key}")
-    private String encodedEncryptionKey;
+    public JwtUtil(@Value("${jwt.secret}") String encryptedSecretKey,
+                   @Value("${jwt.encryption.key}") String encodedEncryptionKey) {
+        this.signingKey = decryptSigningKey(encryptedSecretKey, encodedEncryptionKey);
+        this.jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+    }
 
-    private Key getSigningKey() {
+    private static SecretKey decryptSigningKey(String encryptedSecretKey, String encodedEncryptionKey) {
         try {
             // Decode the Base64-encoded AES key (must be exactly 32 bytes)
             byte[] aesKeyBytes = Base64.getDecoder().decode(encodedEncryptionKey);
@@ -49,7 +57,7 @@ public class JwtUtil {
             cipher.init(Cipher.DECRYPT_MODE, aesKey);
             byte[] decryptedKey = cipher.doFinal(decodedSecret);
 
-            logger.debug("JWT secret key successfully decrypted.");
+            logger.info("JWT secret key successfully decrypted.");
             return Keys.hmacShaKeyFor(decryptedKey);
         } catch (Exception e) {
             logger.error("Failed to decrypt JWT secret key: {}", e.getMessage(), e);
@@ -65,7 +73,7 @@ public class JwtUtil {
                     .subject(username)
                     .issuedAt(new Date())
                     .expiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60)) // 1 hour expiration
-                    .signWith(getSigningKey())
+                    .signWith(signingKey)
                     .compact();
 
             logger.debug("JWT token generated successfully for user: {}", username);
@@ -78,11 +86,7 @@ public class JwtUtil {
 
     public Claims getClaims(String token) {
         try {
-            Claims claims = Jwts.parser()
-                    .verifyWith((SecretKey) getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            Claims claims = jwtParser.parseSignedClaims(token).getPayload();
 
             logger.debug("Claims extracted successfully from JWT token.");
             return claims;
@@ -95,6 +99,28 @@ public class JwtUtil {
         }
     }
 
+    /**
+     * Verifies the token's signature and expiry in a single parse.
+     *
+     * @return the token's claims, or empty if the token is malformed, forged, expired or lacks a subject or expiration
+     */
+    public Optional<Claims> verifyToken(String token) {
+        try {
+            Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+            if (claims.getSubject() == null || claims.getExpiration() == null) {
+                logger.warn("JWT token has no subject or expiration.");
+                return Optional.empty();
+            }
+            return Optional.of(claims);
+        } catch (ExpiredJwtException e) {
+            logger.debug("JWT token expired for user: {}", e.getClaims().getSubject());
+            return Optional.empty();
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.warn("JWT token validation failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     public String extractUsername(String token) {
         try {
             String username = getClaims(token).getSubject();
@@ -107,14 +133,9 @@ public class JwtUtil {
     }
 
     public boolean isTokenValid(String token) {
-        try {
-            boolean isValid = extractUsername(token) != null && !getClaims(token).getExpiration().before(new Date());
-            logger.debug("JWT token validation result: {}", isValid);
-            return isValid;
-        } catch (Exception e) {
-            logger.warn("JWT token validation failed: {}", e.getMessage());
-            return false;
-        }
+        boolean isValid = verifyToken(token).isPresent();
+        logger.debug("JWT token validation result: {}", isValid);
+        return isValid;
     }
 
     public String generateGuestToken(String guestUsername) {
@@ -127,7 +148,7 @@ public class JwtUtil {
                         "iat", new Date(),
                         "exp", expirationDate
                 ))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package com.filetransfer.sftp.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, time-limited cache of registered users' principals, so that authenticating a bearer token
+ * does not query the users table on every request. Entries expire after {@code security.principal-cache.ttl-ms},
+ * which also bounds how long another node's account changes take to be seen here; changes made on this
+ * node must call {@link #invalidate(String)}.
+ * <p>
+ * Only the username, password hash and authorities are kept, and every hit returns a fresh
+ * {@link UserDetails}, because authentication managers erase credentials on the instance they are given.
+ */
+@Component
+public class PrincipalCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrincipalCache.class);
+
+    private final Map<String, CachedPrincipal> principals = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final int maxSize;
+
+    public PrincipalCache(@Value("${security.principal-cache.ttl-ms:60000}") long ttlMs,
+                          @Value("${security.principal-cache.max-size:10000}") int maxSize) {
+        this.ttlMs = ttlMs;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached principal, or {@code null} if there is none or it has expired.
+     */
+    public UserDetails get(String username) {
+        CachedPrincipal cached = principals.get(username);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt < System.currentTimeMillis()) {
+            principals.remove(username, cached);
+            return null;
+        }
+        return User.withUsername(username)
+                .password(cached.password)
+                .authorities(cached.authorities)
+                .build();
+    }
+
+    public void put(UserDetails userDetails) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (principals.size() >= maxSize) {
+            makeRoom();
+        }
+        principals.put(userDetails.getUsername(), new CachedPrincipal(userDetails.getPassword(),
+                List.copyOf(userDetails.getAuthorities()), System.currentTimeMillis() + ttlMs));
+    }
+
+    /**
+     * Drops the user's principal. Call whenever a user is created, deleted or has its password or role changed.
+     */
+    public void invalidate(String username) {
+        if (principals.remove(username) != null) {
+            logger.debug("Principal cache entry invalidated for user: {}", username);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.principal-cache.evict-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        principals.values().removeIf(cached -> cached.expiresAt < now);
+    }
+
+    private void makeRoom() {
+        evictExpired();
+        // Still full: drop arbitrary entries, they are reloaded on their next request
+        Iterator<String> usernames = principals.keySet().iterator();
+        while (principals.size() >= maxSize && usernames.hasNext()) {
+            usernames.next();
+            usernames.remove();
+        }
+    }
+
+    private record CachedPrincipal(String password, Collection<? extends GrantedAuthority> authorities, long expiresAt) {
+    }
+}
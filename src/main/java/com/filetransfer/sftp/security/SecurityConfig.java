@@ -1,5 +1,8 @@
 package com.filetransfer.sftp.security;
 
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -22,9 +25,11 @@ import java.util.List;
 public class SecurityConfig {
 
     private final JwtFilter jwtFilter;
+    private final int managementPort;
 
-    public SecurityConfig(JwtFilter jwtFilter) {
+    public SecurityConfig(JwtFilter jwtFilter, @Value("${management.server.port:-1}") int managementPort) {
         this.jwtFilter = jwtFilter;
+        this.managementPort = managementPort;
     }
 
     @Bean
@@ -32,7 +37,12 @@ public class SecurityConfig {
         http
                 .csrf(csrf -> csrf.disable()) // Disable CSRF for APIs
                 .authorizeHttpRequests(auth -> auth
+                        // The request was authorized before it went async; JwtFilter does not run again on the dispatch back
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/**").permitAll() // Allow login/register without authentication
+                        .requestMatchers("/actuator/health").permitAll()
+                        // Scraped without a token only on the separate management port, never on the public one
+                        .requestMatchers(this::isPrometheusScrapeOnManagementPort).permitAll()
                         .requestMatchers("/api/files/**").authenticated()
                         .anyRequest().authenticated()
                 )
@@ -42,6 +52,11 @@ public class SecurityConfig {
         return http.build();
     }
 
+    private boolean isPrometheusScrapeOnManagementPort(HttpServletRequest request) {
+        return managementPort > 0 && request.getLocalPort() == managementPort
+                && "/actuator/prometheus".equals(request.getRequestURI());
+    }
+
 
 
     @Bean
@@ -0,0 +1,202 @@
+package com.filetransfer.sftp.security;
+
+import com.filetransfer.sftp.repository.UserPublicKeyRepository;
+import jakarta.annotation.PreDestroy;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.server.auth.AsyncAuthException;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.auth.pubkey.PublickeyAuthenticator;
+import org.apache.sshd.server.session.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticates SFTP logins against registered users: passwords with the same BCrypt hashes as
+ * {@code /api/auth/login}, public keys against the keys users have added under {@code /api/keys}.
+ * <p>
+ * BCrypt runs on a small bounded pool and the result is handed back to SSHD through an
+ * {@link AsyncAuthException}, so slow hashing never holds up the SSH I/O threads; when the pool's queue
+ * is full the login fails instead of queueing without limit. Successful password checks are remembered
+ * for {@code sftp.auth.cache-ttl-ms} as a salted SHA-256 of the password, together with the BCrypt hash it
+ * was checked against, so batch clients opening many sessions pay for BCrypt once and a password change
+ * invalidates the entry.
+ */
+@Component
+public class SftpAuthenticator implements PasswordAuthenticator, PublickeyAuthenticator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SftpAuthenticator.class);
+
+    private static final int SALT_LENGTH = 16;
+
+    private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
+    private final PasswordEncoder passwordEncoder;
+    private final UserPublicKeyRepository userPublicKeyRepository;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, VerifiedPassword> verifiedPasswords = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long cacheTtlMs;
+    private final int cacheMaxSize;
+
+    public SftpAuthenticator(UserDetailsService userDetailsService, PrincipalCache principalCache,
+                             PasswordEncoder passwordEncoder, UserPublicKeyRepository userPublicKeyRepository,
+                             @Value("${sftp.auth.threads:2}") int threads,
+                             @Value("${sftp.auth.queue-capacity:100}") int queueCapacity,
+                             @Value("${sftp.auth.cache-ttl-ms:300000}") long cacheTtlMs,
+                             @Value("${sftp.auth.cache-max-size:10000}") int cacheMaxSize) {
+        this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
+        this.passwordEncoder = passwordEncoder;
+        this.userPublicKeyRepository = userPublicKeyRepository;
+        this.cacheTtlMs = cacheTtlMs;
+        this.cacheMaxSize = cacheMaxSize;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("sftp-auth-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public boolean authenticate(String username, String password, ServerSession session) {
+        if (username == null || password == null || username.startsWith("guest-")) {
+            logger.warn("SFTP authentication refused for user: {}", username);
+            return false;
+        }
+
+        // Fast path, on the calling thread: the principal is cached and this password was verified recently
+        UserDetails cached = principalCache.get(username);
+        if (cached != null && isVerified(username, password, cached.getPassword())) {
+            logger.debug("SFTP password accepted from verified-credential cache for user: {}", username);
+            return true;
+        }
+
+        AsyncAuthException result = new AsyncAuthException();
+        try {
+            executor.execute(() -> result.setAuthed(checkPassword(username, password)));
+        } catch (RejectedExecutionException e) {
+            logger.warn("SFTP authentication for user {} rejected: {} password checks already queued",
+                    username, executor.getQueue().size());
+            return false;
+        }
+        throw result;
+    }
+
+    @Override
+    public boolean authenticate(String username, PublicKey key, ServerSession session) {
+        if (username == null || key == null || username.startsWith("guest-")) {
+            return false;
+        }
+        // An indexed lookup, so unlike BCrypt it is cheap enough for the calling thread
+        try {
+            String fingerprint = KeyUtils.getFingerPrint(key);
+            boolean authenticated = userPublicKeyRepository.existsByUsernameAndFingerprint(username, fingerprint);
+            if (!authenticated) {
+                logger.debug("Public key {} is not registered for user: {}", fingerprint, username);
+            }
+            return authenticated;
+        } catch (Exception e) {
+            logger.error("Error during public key authentication for user {}: {}", username, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private boolean checkPassword(String username, String password) {
+        try {
+            UserDetails user = userDetailsService.loadUserByUsername(username);
+            if (isVerified(username, password, user.getPassword())) {
+                return true;
+            }
+            if (!passwordEncoder.matches(password, user.getPassword())) {
+                logger.warn("SFTP authentication failed for user: {}", username);
+                return false;
+            }
+            rememberVerified(username, password, user.getPassword());
+            logger.info("SFTP authentication successful for user: {}", username);
+            return true;
+        } catch (UsernameNotFoundException e) {
+            logger.warn("SFTP authentication failed for unknown user: {}", username);
+            return false;
+        } catch (Exception e) {
+            logger.error("Error during SFTP authentication for user {}: {}", username, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private boolean isVerified(String username, String password, String passwordHash) {
+        VerifiedPassword verified = verifiedPasswords.get(username);
+        if (verified == null) {
+            return false;
+        }
+        if (verified.expiresAt < System.currentTimeMillis() || !verified.passwordHash.equals(passwordHash)) {
+            verifiedPasswords.remove(username, verified);
+            return false;
+        }
+        return MessageDigest.isEqual(verified.digest, digest(verified.salt, password));
+    }
+
+    private void rememberVerified(String username, String password, String passwordHash) {
+        if (cacheMaxSize <= 0 || cacheTtlMs <= 0) {
+            return;
+        }
+        if (verifiedPasswords.size() >= cacheMaxSize) {
+            makeRoom();
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        verifiedPasswords.put(username, new VerifiedPassword(salt, digest(salt, password), passwordHash,
+                System.currentTimeMillis() + cacheTtlMs));
+    }
+
+    @Scheduled(fixedDelayString = "${security.principal-cache.evict-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        verifiedPasswords.values().removeIf(verified -> verified.expiresAt < now);
+    }
+
+    private void makeRoom() {
+        evictExpired();
+        Iterator<String> usernames = verifiedPasswords.keySet().iterator();
+        while (verifiedPasswords.size() >= cacheMaxSize && usernames.hasNext()) {
+            usernames.next();
+            usernames.remove();
+        }
+    }
+
+    private static byte[] digest(byte[] salt, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record VerifiedPassword(byte[] salt, byte[] digest, String passwordHash, long expiresAt) {
+    }
+}
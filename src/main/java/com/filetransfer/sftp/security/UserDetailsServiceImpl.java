@@ -17,9 +17,11 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     private static final Logger logger = LoggerFactory.getLogger(UserDetailsServiceImpl.class);
 
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
-    public UserDetailsServiceImpl(UserRepository userRepository) {
+    public UserDetailsServiceImpl(UserRepository userRepository, PrincipalCache principalCache) {
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -37,6 +39,12 @@ public class UserDetailsServiceImpl implements UserDetailsService {
                         .build();
             }
 
+            UserDetails cached = principalCache.get(username);
+            if (cached != null) {
+                logger.debug("User found in principal cache: {}", username);
+                return cached;
+            }
+
             // Check registered users in the database
             Optional<User> user = userRepository.findByUsername(username);
             if (user.isEmpty()) {
@@ -45,11 +53,13 @@ public class UserDetailsServiceImpl implements UserDetailsService {
             }
 
             logger.debug("User found: {}", username);
-            return org.springframework.security.core.userdetails.User
+            UserDetails userDetails = org.springframework.security.core.userdetails.User
                     .withUsername(user.get().getUsername())
                     .password(user.get().getPassword())
                     .roles("USER")
                     .build();
+            principalCache.put(userDetails);
+            return userDetails;
 
         } catch (UsernameNotFoundException e) {
             throw e;
@@ -0,0 +1,249 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.exception.AdmissionRejectedException;
+import org.springframework.http.HttpStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for one kind of operation, with a bounded queue of callers waiting for a slot and
+ * a cap on the operations a single user may run at once.
+ * <p>
+ * The limit adapts to latency, AIMD style: operations report how long they took per byte, and when
+ * that rises above {@code tolerance} times the best seen recently (the disk or the database is
+ * saturated) the limit shrinks by 10%; otherwise, while the limit is actually being used, it grows by
+ * one per limit's worth of completions. It stays between {@code minLimit} and {@code maxLimit}.
+ * <p>
+ * Waiting uses a {@link ReentrantLock} rather than {@code synchronized} so that waiting virtual threads
+ * do not pin their carriers.
+ */
+public class AdaptiveLimiter {
+
+    static final String USER_LIMIT = "user_limit";
+    static final String QUEUE_FULL = "queue_full";
+    static final String TIMEOUT = "timeout";
+
+    private static final double BACKOFF = 0.9;
+    // How fast the baseline drifts up towards current latency, so it follows lasting changes
+    private static final double BASELINE_DRIFT = 0.01;
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final int perUserLimit;
+    private final long maxWaitNanos;
+    private final double tolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final Map<String, Integer> inFlightByUser = new HashMap<>();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double baselineNanosPerByte = Double.NaN;
+    private double averageNanos;
+
+    public AdaptiveLimiter(String name, int minLimit, int maxLimit, int queueSize, int perUserLimit,
+                           long maxWaitMs, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits of " + name + " must satisfy 1 <= min <= max");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.perUserLimit = perUserLimit;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.tolerance = tolerance;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Takes a slot, waiting up to {@code maxWaitMs} for one if the limit is reached. The permit must be
+     * released once the operation is done.
+     *
+     * @throws AdmissionRejectedException with 429 if the user is at their cap, or 503 if the queue is
+     *                                    full or no slot was freed in time
+     */
+    public Permit acquire(String username) {
+        lock.lock();
+        try {
+            checkUser(username);
+            if (inFlight >= (int) limit) {
+                if (waiting >= queueSize) {
+                    throw rejection(QUEUE_FULL, HttpStatus.SERVICE_UNAVAILABLE, "Too many " + name + " requests are waiting");
+                }
+                awaitSlot();
+                checkUser(username);
+            }
+            inFlight++;
+            inFlightByUser.merge(username, 1, Integer::sum);
+            return new Permit(username, inFlight, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot only if one is free right away and the user is below their cap. Never waits and
+     * never rejects: returns {@code null} instead, for work that goes ahead either way.
+     */
+    public Permit tryAcquire(String username) {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit || inFlightByUser.getOrDefault(username, 0) >= perUserLimit) {
+                return null;
+            }
+            inFlight++;
+            inFlightByUser.merge(username, 1, Integer::sum);
+            return new Permit(username, inFlight, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkUser(String username) {
+        if (inFlightByUser.getOrDefault(username, 0) >= perUserLimit) {
+            throw rejection(USER_LIMIT, HttpStatus.TOO_MANY_REQUESTS,
+                    "At most " + perUserLimit + " " + name + " requests may run at once per user");
+        }
+    }
+
+    private void awaitSlot() {
+        waiting++;
+        try {
+            long remaining = maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    throw rejection(TIMEOUT, HttpStatus.SERVICE_UNAVAILABLE, "No " + name + " slot became free in time");
+                }
+                remaining = slotFreed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejection(TIMEOUT, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for a " + name + " slot");
+        } finally {
+            waiting--;
+        }
+    }
+
+    private AdmissionRejectedException rejection(String reason, HttpStatus status, String message) {
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil(averageNanos / 1e9));
+        return new AdmissionRejectedException(name, reason, status, retryAfterSeconds, message);
+    }
+
+    private void release(Permit permit, long bytes, boolean overloaded) {
+        if (!permit.released.compareAndSet(false, true)) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - permit.startNanos;
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightByUser.computeIfPresent(permit.username, (user, count) -> count > 1 ? count - 1 : null);
+
+            double previousLimit = limit;
+            if (overloaded) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+            } else if (bytes > 0) {
+                record(elapsedNanos, bytes, permit.inFlightAtStart);
+            }
+            if ((int) limit > (int) previousLimit) {
+                slotFreed.signalAll();
+            } else {
+                slotFreed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(long elapsedNanos, long bytes, int inFlightAtStart) {
+        averageNanos = averageNanos == 0 ? elapsedNanos : averageNanos + (elapsedNanos - averageNanos) * AVERAGE_WEIGHT;
+
+        double nanosPerByte = (double) elapsedNanos / bytes;
+        if (Double.isNaN(baselineNanosPerByte) || nanosPerByte < baselineNanosPerByte) {
+            baselineNanosPerByte = nanosPerByte;
+        } else {
+            baselineNanosPerByte += (nanosPerByte - baselineNanosPerByte) * BASELINE_DRIFT;
+        }
+
+        if (nanosPerByte > tolerance * baselineNanosPerByte) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+        } else if (inFlightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A slot taken by {@link #acquire(String)} or {@link #tryAcquire(String)}, to be released with one of the {@code release} methods.
+     * Only the first release counts.
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final String username;
+        private final int inFlightAtStart;
+        private final long startNanos;
+
+        private Permit(String username, int inFlightAtStart, long startNanos) {
+            this.username = username;
+            this.inFlightAtStart = inFlightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Releases the slot after moving {@code bytes}, feeding the time it took into the limit.
+         * Pass 0 when the size is unknown or the operation failed for reasons unrelated to load.
+         */
+        public void release(long bytes) {
+            AdaptiveLimiter.this.release(this, bytes, false);
+        }
+
+        /**
+         * Releases the slot after a failure caused by load (e.g. no database connection), which shrinks
+         * the limit.
+         */
+        public void releaseOverloaded() {
+            AdaptiveLimiter.this.release(this, 0, true);
+        }
+    }
+}
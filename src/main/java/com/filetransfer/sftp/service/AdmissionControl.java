@@ -0,0 +1,219 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.exception.AdmissionRejectedException;
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.model.MergeJobStatus;
+import com.filetransfer.sftp.repository.MergeJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Admission control for the operations that move file content, so a burst of them is turned away
+ * quickly instead of piling up until the node runs out of database connections or heap.
+ * <p>
+ * Uploads and chunk writes each get an {@link AdaptiveLimiter} ({@code admission.upload.*},
+ * {@code admission.chunk.*}). A chunk holds its slot only while the server works on it (see
+ * {@link #run}): storing a received body, writing a part of a raw body that has arrived, registering
+ * the chunk. Waiting for the client to send the body takes no slot, and the limit adapts to the time
+ * per byte of that work alone. A raw body read without blocking is admitted once, before reading
+ * starts; the parts of it that arrive later are never made to wait or turned away (see
+ * {@link #tryAdmit} and {@link #runAdmitted}).
+ * <p>
+ * Merges already run as queued jobs with a fixed concurrency ({@code merge.jobs.concurrency}), so for
+ * them the queue is what is bounded: a new merge is refused while {@code admission.merge.max-queued}
+ * jobs are waiting, or when the user's {@code admission.merge.per-user} slots are all held by jobs that
+ * are queued or running. A slot is a unique {@code (owner, user_slot)} of the job's row, so concurrent
+ * requests, on this node or another, cannot take more slots than there are.
+ * <p>
+ * Limits, requests in flight and waiting are published as the {@code admission.limit},
+ * {@code admission.in-flight} and {@code admission.queue} gauges, and rejections as
+ * {@code admission.rejected}, all tagged with the operation.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+    // Merges take much longer than a request, so a refused client need not come back right away
+    private static final long MERGE_RETRY_AFTER_SECONDS = 30;
+
+    /**
+     * Server-side work of an operation, run by {@link #run}.
+     */
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    public enum Operation {
+        UPLOAD, CHUNK
+    }
+
+    private final MergeJobRepository mergeJobRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Map<Operation, AdaptiveLimiter> limiters = new EnumMap<>(Operation.class);
+    private final int maxQueuedMerges;
+    private final int mergesPerUser;
+
+    public AdmissionControl(MergeJobRepository mergeJobRepository,
+                            ObjectProvider<MeterRegistry> meterRegistry,
+                            @Value("${admission.enabled:true}") boolean enabled,
+                            @Value("${admission.queue-size:200}") int queueSize,
+                            @Value("${admission.max-wait-ms:5000}") long maxWaitMs,
+                            @Value("${admission.latency-tolerance:2.0}") double tolerance,
+                            @Value("${admission.upload.min-limit:2}") int uploadMinLimit,
+                            @Value("${admission.upload.max-limit:32}") int uploadMaxLimit,
+                            @Value("${admission.upload.per-user:4}") int uploadsPerUser,
+                            @Value("${admission.chunk.min-limit:4}") int chunkMinLimit,
+                            @Value("${admission.chunk.max-limit:128}") int chunkMaxLimit,
+                            @Value("${admission.chunk.per-user:16}") int chunksPerUser,
+                            @Value("${admission.merge.max-queued:100}") int maxQueuedMerges,
+                            @Value("${admission.merge.per-user:4}") int mergesPerUser) {
+        this.mergeJobRepository = mergeJobRepository;
+        this.meterRegistry = meterRegistry.getIfAvailable();
+        this.enabled = enabled;
+        this.maxQueuedMerges = maxQueuedMerges;
+        this.mergesPerUser = mergesPerUser;
+        register(Operation.UPLOAD, new AdaptiveLimiter("upload", uploadMinLimit, uploadMaxLimit, queueSize,
+                uploadsPerUser, maxWaitMs, tolerance));
+        register(Operation.CHUNK, new AdaptiveLimiter("chunk", chunkMinLimit, chunkMaxLimit, queueSize,
+                chunksPerUser, maxWaitMs, tolerance));
+    }
+
+    private void register(Operation operation, AdaptiveLimiter limiter) {
+        limiters.put(operation, limiter);
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("admission.limit", limiter, AdaptiveLimiter::getLimit)
+                .tag("operation", limiter.getName()).register(meterRegistry);
+        Gauge.builder("admission.in-flight", limiter, AdaptiveLimiter::getInFlight)
+                .tag("operation", limiter.getName()).register(meterRegistry);
+        Gauge.builder("admission.queue", limiter, AdaptiveLimiter::getWaiting)
+                .tag("operation", limiter.getName()).register(meterRegistry);
+    }
+
+    /**
+     * Admits one operation for the user, waiting briefly for a slot if needed. Returns {@code null}
+     * when admission control is disabled.
+     *
+     * @throws AdmissionRejectedException if the request is refused
+     */
+    public AdaptiveLimiter.Permit admit(Operation operation, String username) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            return limiters.get(operation).acquire(username);
+        } catch (AdmissionRejectedException e) {
+            rejected(e, username);
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a slot for an operation that was already admitted, if one is free right away. Returns
+     * {@code null}, and the work goes ahead without a slot, when none is or admission control is
+     * disabled. Never waits and never rejects.
+     */
+    public AdaptiveLimiter.Permit tryAdmit(Operation operation, String username) {
+        return enabled ? limiters.get(operation).tryAcquire(username) : null;
+    }
+
+    /**
+     * Runs the server-side work of an operation that was already admitted, in a slot of its limiter if
+     * one is free right away (see {@link #tryAdmit}). Never waits and never rejects.
+     */
+    public <T, E extends Exception> T runAdmitted(Operation operation, String username, long bytes, Work<T, E> work) throws E {
+        return run(tryAdmit(operation, username), bytes, work);
+    }
+
+    /**
+     * Runs the server-side work of an operation in a slot of its limiter, waiting briefly for one if
+     * needed. {@code bytes} is what the work moves; the time it took per byte feeds the limit. Input
+     * the work rejects ({@link IllegalArgumentException}, {@link IllegalStateException},
+     * {@link ChunkChecksumException}) releases the slot without a sample, any other failure shrinks the
+     * limit.
+     *
+     * @throws AdmissionRejectedException if the request is refused
+     */
+    public <T, E extends Exception> T run(Operation operation, String username, long bytes, Work<T, E> work) throws E {
+        return run(admit(operation, username), bytes, work);
+    }
+
+    private <T, E extends Exception> T run(AdaptiveLimiter.Permit permit, long bytes, Work<T, E> work) throws E {
+        if (permit == null) {
+            return work.run();
+        }
+        boolean done = false;
+        try {
+            T result = work.run();
+            done = true;
+            permit.release(bytes);
+            return result;
+        } catch (IllegalArgumentException | IllegalStateException | ChunkChecksumException e) {
+            done = true;
+            permit.release(0);
+            throw e;
+        } finally {
+            if (!done) {
+                permit.releaseOverloaded();
+            }
+        }
+    }
+
+    /**
+     * Queues a merge for the user in one of their free slots: {@code queue} saves the job holding the
+     * given slot, or {@code null} when admission control is disabled, and fails with a
+     * {@link DataIntegrityViolationException} if a concurrent request took that slot first.
+     *
+     * @throws AdmissionRejectedException if the merge queue is full or the user has no free slot
+     */
+    public <T> T admitMerge(String username, Function<Integer, T> queue) {
+        if (!enabled) {
+            return queue.apply(null);
+        }
+        if (mergeJobRepository.countByStatus(MergeJobStatus.QUEUED) >= maxQueuedMerges) {
+            throw rejectedMerge(username, new AdmissionRejectedException("merge", AdaptiveLimiter.QUEUE_FULL,
+                    HttpStatus.SERVICE_UNAVAILABLE, MERGE_RETRY_AFTER_SECONDS, "Too many merges are queued"));
+        }
+        List<Integer> taken = mergeJobRepository.findUserSlots(username);
+        for (int slot = 0; slot < mergesPerUser; slot++) {
+            if (taken.contains(slot)) {
+                continue;
+            }
+            try {
+                return queue.apply(slot);
+            } catch (DataIntegrityViolationException e) {
+                logger.debug("Merge slot {} of user {} was taken concurrently", slot, username);
+            }
+        }
+        throw rejectedMerge(username, new AdmissionRejectedException("merge", AdaptiveLimiter.USER_LIMIT,
+                HttpStatus.TOO_MANY_REQUESTS, MERGE_RETRY_AFTER_SECONDS,
+                "At most " + mergesPerUser + " merges may be queued or running per user"));
+    }
+
+    private AdmissionRejectedException rejectedMerge(String username, AdmissionRejectedException rejection) {
+        rejected(rejection, username);
+        return rejection;
+    }
+
+    private void rejected(AdmissionRejectedException e, String username) {
+        logger.debug("Rejected {} request from user {}: {}", e.getOperation(), username, e.getMessage());
+        if (meterRegistry != null) {
+            meterRegistry.counter("admission.rejected", "operation", e.getOperation(), "reason", e.getReason()).increment();
+        }
+    }
+}
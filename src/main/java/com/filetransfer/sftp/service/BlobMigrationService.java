@@ -0,0 +1,120 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.repository.FileMetadataRepository;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.StoredBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+/**
+ * Moves content still stored in the legacy {@code file_metadata.fileData} column into the active
+ * blob store, one small batch per run. Rows keep being served from the column until they are
+ * switched over, so the migration runs while the application is live.
+ * <p>
+ * Runs walk the rows in id order, each batch starting after the last id of the one before, and start
+ * over from the lowest id once a pass is done. A row that fails to migrate is retried on the next
+ * pass instead of on every run, so rows that keep failing cannot stall the migration of the others.
+ * Rows with neither a blob nor inline content have nothing to migrate and are not looked at.
+ */
+@Service
+public class BlobMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobMigrationService.class);
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final BlobStoreRegistry blobStoreRegistry;
+    private final ContentBlobService contentBlobService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.migration.batch-size:20}")
+    private int batchSize;
+
+    // Last id looked at in the current pass; only this node's scheduler moves it
+    private volatile long cursor;
+
+    public BlobMigrationService(FileMetadataRepository fileMetadataRepository,
+                                BlobStoreRegistry blobStoreRegistry,
+                                ContentBlobService contentBlobService,
+                                TransactionTemplate transactionTemplate) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.blobStoreRegistry = blobStoreRegistry;
+        this.contentBlobService = contentBlobService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(initialDelayString = "${storage.migration.interval-ms:10000}",
+            fixedDelayString = "${storage.migration.interval-ms:10000}")
+    public void migrateBatch() {
+        if (!enabled) {
+            return;
+        }
+
+        List<Long> ids;
+        try {
+            ids = fileMetadataRepository.findIdsWithoutBlob(cursor, PageRequest.of(0, batchSize));
+        } catch (Exception e) {
+            logger.error("Failed to find files awaiting blob migration: {}", e.getMessage(), e);
+            return;
+        }
+
+        if (ids.isEmpty()) {
+            cursor = 0; // Pass done; files that failed are retried in the next one
+            return;
+        }
+        cursor = ids.get(ids.size() - 1);
+
+        int migrated = 0;
+        for (Long id : ids) {
+            if (migrate(id)) {
+                migrated++;
+            }
+        }
+        logger.info("Migrated {} of {} files to blob store {}", migrated, ids.size(), blobStoreRegistry.getActiveStore().getScheme());
+    }
+
+    private boolean migrate(Long id) {
+        StoredBlob blob = null;
+        try {
+            byte[] fileData = fileMetadataRepository.findFileDataById(id);
+            if (fileData == null) {
+                logger.warn("File {} has neither a blob reference nor inline data, skipping", id);
+                return false;
+            }
+
+            blob = contentBlobService.deduplicate(blobStoreRegistry.getActiveStore().write(new ByteArrayInputStream(fileData)));
+
+            StoredBlob migrated = blob;
+            Boolean attached = transactionTemplate.execute(status -> {
+                // Only switch rows that were not deleted or migrated concurrently
+                if (fileMetadataRepository.attachBlob(id, migrated.getBlobRef(), migrated.getSize(), migrated.getChecksum()) == 0) {
+                    return false;
+                }
+                contentBlobService.acquire(migrated);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(attached)) {
+                logger.debug("File {} changed during migration, discarding blob {}", id, blob.getBlobRef());
+                contentBlobService.discard(blob);
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to migrate file {} to the blob store: {}", id, e.getMessage(), e);
+            if (blob != null) {
+                contentBlobService.discard(blob);
+            }
+            return false;
+        }
+    }
+}
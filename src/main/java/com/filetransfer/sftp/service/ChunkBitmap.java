@@ -0,0 +1,143 @@
+package com.filetransfer.sftp.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free set of received chunk indexes. Bits are kept in 4096-bit pages that are allocated on
+ * first use, so sparse or small uploads stay small, and every update is a single CAS on one word.
+ */
+public class ChunkBitmap {
+
+    public static final int MAX_CHUNKS = 1 << 20;
+
+    /**
+     * Chunks per page, which is also the range of chunks stored in one {@code chunk_upload_state} row.
+     */
+    public static final int PAGE_BITS = 1 << 12;
+    private static final int PAGE_WORDS = PAGE_BITS / Long.SIZE;
+
+    private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(MAX_CHUNKS / PAGE_BITS);
+    private final AtomicInteger cardinality = new AtomicInteger();
+    private final AtomicInteger length = new AtomicInteger();
+
+    /**
+     * Marks the chunk as received. Returns {@code false} if it already was.
+     */
+    public boolean set(int chunkIndex) {
+        checkIndex(chunkIndex);
+        AtomicLongArray page = pages.get(chunkIndex / PAGE_BITS);
+        if (page == null) {
+            pages.compareAndSet(chunkIndex / PAGE_BITS, null, new AtomicLongArray(PAGE_WORDS));
+            page = pages.get(chunkIndex / PAGE_BITS);
+        }
+
+        int word = (chunkIndex % PAGE_BITS) / Long.SIZE;
+        long mask = 1L << (chunkIndex % Long.SIZE);
+        long current;
+        do {
+            current = page.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!page.compareAndSet(word, current, current | mask));
+
+        cardinality.incrementAndGet();
+        length.accumulateAndGet(chunkIndex + 1, Math::max);
+        return true;
+    }
+
+    public boolean get(int chunkIndex) {
+        checkIndex(chunkIndex);
+        AtomicLongArray page = pages.get(chunkIndex / PAGE_BITS);
+        return page != null && (page.get((chunkIndex % PAGE_BITS) / Long.SIZE) & (1L << (chunkIndex % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Number of chunks received.
+     */
+    public int cardinality() {
+        return cardinality.get();
+    }
+
+    /**
+     * Highest received chunk index plus one. Equal to {@link #cardinality()} when chunks
+     * {@code 0..n-1} have all been received.
+     */
+    public int length() {
+        return length.get();
+    }
+
+    /**
+     * Returns a point-in-time copy. Concurrent updates may or may not be included.
+     */
+    public BitSet snapshot() {
+        int words = (length.get() + Long.SIZE - 1) / Long.SIZE;
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            AtomicLongArray page = pages.get(i / PAGE_WORDS);
+            if (page != null) {
+                bits[i] = page.get(i % PAGE_WORDS);
+            }
+        }
+        return BitSet.valueOf(bits);
+    }
+
+    /**
+     * Returns a point-in-time copy of one page, where bit 0 is chunk {@code page * PAGE_BITS}.
+     */
+    public BitSet snapshotPage(int page) {
+        AtomicLongArray words = pages.get(page);
+        if (words == null) {
+            return new BitSet();
+        }
+        long[] bits = new long[PAGE_WORDS];
+        for (int i = 0; i < PAGE_WORDS; i++) {
+            bits[i] = words.get(i);
+        }
+        return BitSet.valueOf(bits);
+    }
+
+    /**
+     * Received chunks as inclusive {@code [first, last]} index ranges in ascending order.
+     */
+    public List<int[]> toRanges() {
+        BitSet bits = snapshot();
+        List<int[]> ranges = new ArrayList<>();
+        for (int start = bits.nextSetBit(0); start >= 0; ) {
+            int end = bits.nextClearBit(start);
+            ranges.add(new int[]{start, end - 1});
+            start = bits.nextSetBit(end);
+        }
+        return ranges;
+    }
+
+    public static ChunkBitmap fromBitSet(BitSet bits) {
+        if (bits.length() > MAX_CHUNKS) {
+            throw new IllegalArgumentException("Bitmap holds chunk indexes beyond " + (MAX_CHUNKS - 1));
+        }
+        ChunkBitmap bitmap = new ChunkBitmap();
+        long[] words = bits.toLongArray();
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != 0) {
+                if (bitmap.pages.get(i / PAGE_WORDS) == null) {
+                    bitmap.pages.set(i / PAGE_WORDS, new AtomicLongArray(PAGE_WORDS));
+                }
+                bitmap.pages.get(i / PAGE_WORDS).set(i % PAGE_WORDS, words[i]);
+            }
+        }
+        bitmap.cardinality.set(bits.cardinality());
+        bitmap.length.set(bits.length());
+        return bitmap;
+    }
+
+    private static void checkIndex(int chunkIndex) {
+        if (chunkIndex < 0 || chunkIndex >= MAX_CHUNKS) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (MAX_CHUNKS - 1) + ": " + chunkIndex);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.InputStream;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum a client declared for one chunk: a CRC32C (8 hex digits) or an XXH64 with seed 0 (16 hex
+ * digits). The chunk is verified as it is streamed to disk, by wrapping the request body with
+ * {@link #verifying(InputStream)} and calling {@link #verify(CheckedInputStream, int)} once it has been read,
+ * or by feeding a {@link #newChecksum()} when the body arrives in pieces.
+ */
+public final class ChunkChecksum {
+
+    public enum Algorithm {
+        CRC32C(8),
+        XXH64(16);
+
+        private final int hexLength;
+
+        Algorithm(int hexLength) {
+            this.hexLength = hexLength;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final long expected;
+
+    private ChunkChecksum(Algorithm algorithm, long expected) {
+        this.algorithm = algorithm;
+        this.expected = expected;
+    }
+
+    /**
+     * Returns the declared checksum, or {@code null} if the client sent neither.
+     *
+     * @throws IllegalArgumentException if both are sent or one is not a hex value of the right length
+     */
+    public static ChunkChecksum of(String crc32c, String xxh64) {
+        if (crc32c != null && xxh64 != null) {
+            throw new IllegalArgumentException("Send either crc32c or xxh64, not both");
+        }
+        if (crc32c != null) {
+            return new ChunkChecksum(Algorithm.CRC32C, parseHex(crc32c, Algorithm.CRC32C));
+        }
+        if (xxh64 != null) {
+            return new ChunkChecksum(Algorithm.XXH64, parseHex(xxh64, Algorithm.XXH64));
+        }
+        return null;
+    }
+
+    private static long parseHex(String value, Algorithm algorithm) {
+        if (value.length() != algorithm.hexLength || !value.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException(algorithm.name().toLowerCase() + " must be " + algorithm.hexLength + " hex digits");
+        }
+        return HexFormat.fromHexDigitsToLong(value);
+    }
+
+    /**
+     * Returns a fresh checksum of this algorithm, to be fed the chunk as it arrives.
+     */
+    public Checksum newChecksum() {
+        return switch (algorithm) {
+            case CRC32C -> new CRC32C();
+            case XXH64 -> XXHashFactory.fastestJavaInstance().newStreamingHash64(0).asChecksum();
+        };
+    }
+
+    public CheckedInputStream verifying(InputStream inputStream) {
+        return new CheckedInputStream(inputStream, newChecksum());
+    }
+
+    /**
+     * @throws ChunkChecksumException if what was read through the stream does not match
+     */
+    public void verify(CheckedInputStream inputStream, int chunkIndex) {
+        verify(inputStream.getChecksum(), chunkIndex);
+    }
+
+    /**
+     * @throws ChunkChecksumException if the checksum of what was received does not match
+     */
+    public void verify(Checksum received, int chunkIndex) {
+        long actual = received.getValue();
+        if (actual != expected) {
+            throw new ChunkChecksumException(chunkIndex, algorithm.name().toLowerCase(), format(expected), format(actual));
+        }
+    }
+
+    private String format(long value) {
+        String hex = HexFormat.of().toHexDigits(value);
+        return hex.substring(hex.length() - algorithm.hexLength);
+    }
+}
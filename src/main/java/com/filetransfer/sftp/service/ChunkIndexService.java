@@ -0,0 +1,145 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.model.ChunkUploadState;
+import com.filetransfer.sftp.repository.ChunkUploadStateRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which chunks of each in-progress upload have been received. Every upload has one
+ * {@link ChunkBitmap} cached in memory and a {@code chunk_upload_state} row per range of
+ * {@link ChunkBitmap#PAGE_BITS} chunks, so registering a chunk is a CAS plus an update of the one
+ * range row that holds it, instead of a row per chunk or a rewrite of the whole bitmap.
+ * Idle uploads are dropped from the cache and reloaded from their rows on the next access.
+ * <p>
+ * The rows are authoritative: every node caches its own bitmap, and chunks that another node
+ * registered are only in it once it is read from the rows again. So where that matters the rows are
+ * read: whether an upload is complete is {@link #countStoredChunks}, and the chunk lists reported to
+ * clients and checked before a merge are {@link #getStoredChunks}. {@link #getChunks} is this node's
+ * view, which only ever lacks chunks; it is enough to skip a chunk that is known to be received.
+ * <p>
+ * Uploads are identified by owner and name: the file name for {@code /upload-chunk} uploads and
+ * the session id for upload sessions.
+ * <p>
+ * Rows are written by {@link ChunkStateWriter}, behind and batched across uploads unless that is
+ * disabled. Either way {@link #register} returns only once the chunk is stored.
+ */
+@Service
+public class ChunkIndexService {
+
+    private final ChunkUploadStateRepository chunkUploadStateRepository;
+    private final ChunkStateWriter chunkStateWriter;
+    private final Map<UploadKey, CachedBitmap> bitmaps = new ConcurrentHashMap<>();
+
+    @Value("${chunks.cache.idle-ms:600000}")
+    private long idleMs;
+
+    public ChunkIndexService(ChunkUploadStateRepository chunkUploadStateRepository, ChunkStateWriter chunkStateWriter) {
+        this.chunkUploadStateRepository = chunkUploadStateRepository;
+        this.chunkStateWriter = chunkStateWriter;
+    }
+
+    /**
+     * Records the chunk as received and stores it. Returns {@code false} if it already was received.
+     */
+    public boolean register(String fileName, String username, int chunkIndex) {
+        UploadKey key = new UploadKey(fileName, username);
+        ChunkBitmap bitmap = getChunks(fileName, username);
+        boolean added = bitmap.set(chunkIndex);
+        try {
+            if (added) {
+                chunkStateWriter.write(key, chunkIndex);
+            } else {
+                // Possibly set by a concurrent request whose write has not committed yet
+                chunkStateWriter.awaitPending(key);
+            }
+        } catch (RuntimeException e) {
+            // Reloaded from the row on the next access, so the chunk counts as missing and can be resent
+            bitmaps.remove(key);
+            throw e;
+        }
+        return added;
+    }
+
+    public ChunkBitmap getChunks(String fileName, String username) {
+        UploadKey key = new UploadKey(fileName, username);
+        CachedBitmap cached = bitmaps.get(key);
+        if (cached == null) {
+            // Loaded outside the map so a slow query does not block other uploads hashing to the same bin
+            CachedBitmap loaded = new CachedBitmap(ChunkBitmap.fromBitSet(load(fileName, username)));
+            cached = bitmaps.putIfAbsent(key, loaded);
+            if (cached == null) {
+                cached = loaded;
+            }
+        }
+        cached.lastAccess = System.currentTimeMillis();
+        return cached.bitmap;
+    }
+
+    /**
+     * The upload's chunks as stored, including those registered on other nodes: its rows are read and
+     * their chunks added to the cached bitmap, which is returned.
+     */
+    public ChunkBitmap getStoredChunks(String fileName, String username) {
+        CachedBitmap cached = bitmaps.get(new UploadKey(fileName, username));
+        if (cached == null) {
+            return getChunks(fileName, username); // Just loaded from the rows
+        }
+        BitSet stored = load(fileName, username);
+        for (int i = stored.nextSetBit(0); i >= 0; i = stored.nextSetBit(i + 1)) {
+            cached.bitmap.set(i);
+        }
+        cached.lastAccess = System.currentTimeMillis();
+        return cached.bitmap;
+    }
+
+    /**
+     * Number of the upload's chunks that are stored, whichever node registered them.
+     */
+    public int countStoredChunks(String fileName, String username) {
+        return (int) chunkUploadStateRepository.sumChunkCount(fileName, username);
+    }
+
+    /**
+     * Removes the chunk state of a finished upload. Joins the caller's transaction, if any.
+     */
+    public void clear(String fileName, String username) {
+        UploadKey key = new UploadKey(fileName, username);
+        chunkStateWriter.discard(key);
+        chunkUploadStateRepository.deleteByFileNameAndUsername(fileName, username);
+        bitmaps.remove(key);
+    }
+
+    @Scheduled(fixedDelayString = "${chunks.cache.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleMs;
+        bitmaps.values().removeIf(cached -> cached.lastAccess < idleBefore);
+    }
+
+    private BitSet load(String fileName, String username) {
+        BitSet chunks = new BitSet();
+        for (ChunkUploadState range : chunkUploadStateRepository.findByFileNameAndUsername(fileName, username)) {
+            BitSet bits = BitSet.valueOf(range.getBitmap());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                chunks.set(range.getFirstChunk() + i);
+            }
+        }
+        return chunks;
+    }
+
+    record UploadKey(String fileName, String username) {}
+
+    private static class CachedBitmap {
+        final ChunkBitmap bitmap;
+        volatile long lastAccess;
+
+        CachedBitmap(ChunkBitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+}
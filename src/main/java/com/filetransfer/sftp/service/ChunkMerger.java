@@ -0,0 +1,116 @@
+package com.filetransfer.sftp.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Assembles chunk files into a single target file. The target is preallocated to its final
+ * size and every chunk is copied to its own offset with positional channel transfers, so chunks
+ * are written in parallel and nothing is buffered on the heap.
+ * <p>
+ * The copies run on a fixed pool of platform threads even in virtual-thread mode: file I/O blocks the
+ * carrier thread anyway, and the pool size is what bounds the load on the disk.
+ */
+@Component
+public class ChunkMerger {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkMerger.class);
+
+    private final ExecutorService executor;
+
+    public ChunkMerger(@Value("${merge.parallelism:4}") int parallelism) {
+        this.executor = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("chunk-merge-"));
+    }
+
+    /**
+     * Writes the chunks, in list order, into {@code target} and returns the total number of bytes.
+     * {@code progress} is told the total size up front and the size of each chunk once it has been written.
+     */
+    public long merge(List<Path> chunks, Path target, MergeProgressListener progress) throws IOException {
+        long[] offsets = new long[chunks.size()];
+        long totalSize = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            offsets[i] = totalSize;
+            totalSize += Files.size(chunks.get(i));
+        }
+        progress.onStart(totalSize);
+
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.setLength(totalSize);
+        }
+
+        try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            List<Future<?>> writes = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                Path chunk = chunks.get(i);
+                long offset = offsets[i];
+                writes.add(executor.submit(() -> {
+                    progress.onChunkMerged(writeChunk(chunk, targetChannel, offset));
+                    return null;
+                }));
+            }
+
+            awaitAll(writes);
+            targetChannel.force(false);
+        }
+
+        logger.debug("Merged {} chunks ({} bytes) into {}", chunks.size(), totalSize, target);
+        return totalSize;
+    }
+
+    private long writeChunk(Path chunk, FileChannel targetChannel, long offset) throws IOException {
+        try (FileChannel source = FileChannel.open(chunk, StandardOpenOption.READ)) {
+            long size = source.size();
+            long written = 0;
+            while (written < size) {
+                long transferred = targetChannel.transferFrom(source, offset + written, size - written);
+                if (transferred <= 0) {
+                    throw new EOFException("Chunk " + chunk + " ended after " + written + " of " + size + " bytes");
+                }
+                written += transferred;
+            }
+            return size;
+        }
+    }
+
+    private void awaitAll(List<Future<?>> writes) throws IOException {
+        try {
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (ExecutionException e) {
+            writes.forEach(write -> write.cancel(true));
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Chunk write failed", e.getCause());
+        } catch (InterruptedException e) {
+            writes.forEach(write -> write.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging chunks", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
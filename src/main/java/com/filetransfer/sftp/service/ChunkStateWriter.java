@@ -0,0 +1,382 @@
+package com.filetransfer.sftp.service;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the {@code chunk_upload_state} rows of {@link ChunkIndexService}, behind and in batches.
+ * Chunk registrations are collected for up to {@code chunks.write-behind.flush-interval-ms} after the
+ * first one, or until {@code chunks.write-behind.max-batch} have arrived, and then written in one
+ * transaction as a JDBC batch of updates (plus one of inserts for ranges that have no row yet). An
+ * upload's chunks are stored in one row per range of {@link ChunkBitmap#PAGE_BITS} chunks, and only the
+ * ranges that received chunks are written, so a registration rewrites at most 512 bytes of bitmap
+ * however large the upload is. All registrations of a range in a batch come down to one row write:
+ * each registration adds its chunk to the range's pending bits when it is queued, so what is written
+ * does not depend on any one caller's view of the upload.
+ * <p>
+ * Callers wait until the batch holding their chunk has committed, so a chunk is still acknowledged
+ * only once it is stored; the database sees one statement per upload per batch and one commit per
+ * batch instead of a statement and a commit per chunk.
+ * <p>
+ * Rows are merged, not replaced: the rows of a batch are locked with {@code select ... for update} and
+ * each is written back as the union of its chunks and the snapshot's, so concurrent writers of one
+ * upload, on this node or another, never drop each other's chunks. Ranges without a row get one; if
+ * another writer inserts it first, it is merged into instead. A snapshot that could be neither
+ * merged nor inserted fails the batch, so no caller is told a chunk is stored when it is not.
+ * <p>
+ * Each write to the database is a {@code chunks.state.write} observation tagged with whether it was
+ * batched, so its time is published as a timer and, with tracing on, as a span.
+ */
+@Component
+public class ChunkStateWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStateWriter.class);
+
+    private static final String LOCK = "select file_name, username, first_chunk, bitmap from chunk_upload_state " +
+            "where (file_name, username, first_chunk) in (%s) order by file_name, username, first_chunk for update";
+    private static final String UPDATE = "update chunk_upload_state set bitmap = ?, chunk_count = ?, updated_at = ? " +
+            "where file_name = ? and username = ? and first_chunk = ?";
+    private static final String INSERT = "insert into chunk_upload_state (file_name, username, first_chunk, bitmap, chunk_count, updated_at) " +
+            "values (?, ?, ?, ?, ?, ?) on conflict do nothing";
+    // Rows locked per query, to keep the statement and its IN list short
+    private static final int LOCK_BATCH = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObservationRegistry observationRegistry;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long flushIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private Batch pending = new Batch();
+    private Batch flushing;
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Autowired
+    public ChunkStateWriter(JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            ObjectProvider<ObservationRegistry> observationRegistry,
+                            @Value("${chunks.write-behind.enabled:true}") boolean enabled,
+                            @Value("${chunks.write-behind.max-batch:500}") int maxBatch,
+                            @Value("${chunks.write-behind.flush-interval-ms:10}") long flushIntervalMs) {
+        this(jdbcTemplate, transactionTemplate, observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP),
+                enabled, maxBatch, flushIntervalMs);
+    }
+
+    public ChunkStateWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            ObservationRegistry observationRegistry, boolean enabled, int maxBatch, long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.observationRegistry = observationRegistry;
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new CustomizableThreadFactory("chunk-state-writer-").newThread(this::run);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Writes what is still queued and stops.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            batchReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /**
+     * Queues the chunk to be added to the upload's row for the range that holds it and waits until it
+     * has been committed; with write-behind disabled, stores it right away in a transaction of its own.
+     *
+     * @throws RuntimeException if the batch could not be written
+     */
+    void write(ChunkIndexService.UploadKey key, int chunkIndex) {
+        if (!enabled) {
+            Dirty dirty = new Dirty();
+            dirty.add(chunkIndex);
+            store(Map.of(key, dirty), false);
+            return;
+        }
+        CompletableFuture<Void> committed;
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Chunk state writer is not running");
+            }
+            pending.uploads.computeIfAbsent(key, k -> new Dirty()).add(chunkIndex);
+            if (++pending.chunks == 1 || pending.chunks >= maxBatch) {
+                batchReady.signal();
+            }
+            committed = pending.committed;
+        } finally {
+            lock.unlock();
+        }
+        await(committed);
+    }
+
+    /**
+     * Waits for a write of the upload that is queued or in progress, if there is one, so that a chunk
+     * registered by a concurrent request is not reported as stored before it is.
+     *
+     * @throws RuntimeException if that write failed
+     */
+    void awaitPending(ChunkIndexService.UploadKey key) {
+        CompletableFuture<Void> committed = pendingWrite(key, false);
+        if (committed != null) {
+            await(committed);
+        }
+    }
+
+    /**
+     * Drops a queued write of an upload whose state is being removed, and waits for one in progress.
+     */
+    void discard(ChunkIndexService.UploadKey key) {
+        CompletableFuture<Void> committed = pendingWrite(key, true);
+        if (committed != null) {
+            committed.exceptionally(e -> null).join();
+        }
+    }
+
+    private CompletableFuture<Void> pendingWrite(ChunkIndexService.UploadKey key, boolean dropQueued) {
+        lock.lock();
+        try {
+            if (pending.uploads.containsKey(key)) {
+                if (!dropQueued) {
+                    return pending.committed;
+                }
+                pending.uploads.remove(key);
+            }
+            return flushing != null && flushing.uploads.containsKey(key) ? flushing.committed : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void await(CompletableFuture<Void> committed) {
+        try {
+            committed.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to store chunk state", e.getCause());
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Batch batch;
+                lock.lock();
+                try {
+                    while (running && pending.chunks == 0) {
+                        batchReady.await();
+                    }
+                    // Let more registrations join the batch, up to the interval or the batch size
+                    long remaining = flushIntervalNanos;
+                    while (running && pending.chunks < maxBatch && remaining > 0) {
+                        remaining = batchReady.awaitNanos(remaining);
+                    }
+                    if (!running && pending.chunks == 0) {
+                        return;
+                    }
+                    batch = pending;
+                    pending = new Batch();
+                    flushing = batch;
+                } finally {
+                    lock.unlock();
+                }
+                flush(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Chunk state writer interrupted");
+        } finally {
+            lock.lock();
+            try {
+                running = false;
+                pending.committed.completeExceptionally(new IllegalStateException("Chunk state writer stopped"));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void flush(Batch batch) {
+        try {
+            if (!batch.uploads.isEmpty()) {
+                store(batch.uploads, true);
+            }
+            batch.committed.complete(null);
+            logger.debug("Stored chunk state of {} uploads for {} chunks", batch.uploads.size(), batch.chunks);
+        } catch (Exception e) {
+            logger.error("Failed to store chunk state of {} uploads: {}", batch.uploads.size(), e.getMessage(), e);
+            batch.committed.completeExceptionally(e);
+        } finally {
+            lock.lock();
+            try {
+                flushing = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void store(Map<ChunkIndexService.UploadKey, Dirty> uploads, boolean batched) {
+        Observation.createNotStarted("chunks.state.write", observationRegistry)
+                .lowCardinalityKeyValue("batched", String.valueOf(batched))
+                .highCardinalityKeyValue("uploads", String.valueOf(uploads.size()))
+                .observe(() -> transactionTemplate.executeWithoutResult(status -> writeRows(uploads)));
+    }
+
+    private void writeRows(Map<ChunkIndexService.UploadKey, Dirty> uploads) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<Range, BitSet> snapshots = new LinkedHashMap<>();
+        for (Map.Entry<ChunkIndexService.UploadKey, Dirty> upload : uploads.entrySet()) {
+            for (Map.Entry<Integer, BitSet> page : upload.getValue().pages.entrySet()) {
+                snapshots.put(new Range(upload.getKey(), page.getKey() * ChunkBitmap.PAGE_BITS), page.getValue());
+            }
+        }
+
+        // Ranges without a row get one; those whose row was created concurrently are merged into it
+        List<Range> missing = merge(snapshots, now);
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<Object[]> inserts = new ArrayList<>(missing.size());
+        for (Range range : missing) {
+            BitSet snapshot = snapshots.get(range);
+            inserts.add(new Object[]{range.upload().fileName(), range.upload().username(), range.firstChunk(),
+                    snapshot.toByteArray(), snapshot.cardinality(), now});
+        }
+        List<Range> created = notApplied(missing, jdbcTemplate.batchUpdate(INSERT, inserts));
+        if (created.isEmpty()) {
+            return;
+        }
+        Map<Range, BitSet> racing = new LinkedHashMap<>();
+        created.forEach(range -> racing.put(range, snapshots.get(range)));
+        List<Range> lost = merge(racing, now);
+        if (!lost.isEmpty()) {
+            throw new IllegalStateException("Chunk state of " + lost.size() + " ranges could be neither inserted nor updated");
+        }
+    }
+
+    /**
+     * Locks the rows of the ranges and adds the snapshots' chunks to them. Returns the ranges that
+     * have no row.
+     */
+    private List<Range> merge(Map<Range, BitSet> snapshots, Timestamp now) {
+        List<Range> ranges = new ArrayList<>(snapshots.keySet());
+        Map<Range, BitSet> stored = new HashMap<>();
+        for (int from = 0; from < ranges.size(); from += LOCK_BATCH) {
+            List<Range> group = ranges.subList(from, Math.min(from + LOCK_BATCH, ranges.size()));
+            Object[] args = new Object[group.size() * 3];
+            for (int i = 0; i < group.size(); i++) {
+                args[3 * i] = group.get(i).upload().fileName();
+                args[3 * i + 1] = group.get(i).upload().username();
+                args[3 * i + 2] = group.get(i).firstChunk();
+            }
+            String sql = String.format(LOCK, String.join(", ", Collections.nCopies(group.size(), "(?, ?, ?)")));
+            jdbcTemplate.query(sql, rs -> {
+                Range range = new Range(new ChunkIndexService.UploadKey(rs.getString(1), rs.getString(2)), rs.getInt(3));
+                stored.put(range, BitSet.valueOf(rs.getBytes(4)));
+            }, args);
+        }
+
+        List<Range> missing = new ArrayList<>();
+        List<Range> updated = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        for (Range range : ranges) {
+            BitSet bits = stored.get(range);
+            if (bits == null) {
+                missing.add(range);
+                continue;
+            }
+            bits.or(snapshots.get(range));
+            updated.add(range);
+            updates.add(new Object[]{bits.toByteArray(), bits.cardinality(), now,
+                    range.upload().fileName(), range.upload().username(), range.firstChunk()});
+        }
+        missing.addAll(notApplied(updated, jdbcTemplate.batchUpdate(UPDATE, updates)));
+        return missing;
+    }
+
+    private static <T> List<T> notApplied(List<T> rows, int[] counts) {
+        List<T> notApplied = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                notApplied.add(rows.get(i));
+            }
+        }
+        return notApplied;
+    }
+
+    /**
+     * The {@code chunk_upload_state} row of the upload's chunks from {@code firstChunk} on.
+     */
+    private record Range(ChunkIndexService.UploadKey upload, int firstChunk) {}
+
+    /**
+     * The chunks of an upload queued since it was last written, by page; bit 0 of a page is chunk
+     * {@code page * PAGE_BITS}.
+     */
+    private static class Dirty {
+        final Map<Integer, BitSet> pages = new TreeMap<>();
+
+        void add(int chunkIndex) {
+            pages.computeIfAbsent(chunkIndex / ChunkBitmap.PAGE_BITS, page -> new BitSet())
+                    .set(chunkIndex % ChunkBitmap.PAGE_BITS);
+        }
+    }
+
+    private static class Batch {
+        final Map<ChunkIndexService.UploadKey, Dirty> uploads = new LinkedHashMap<>();
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+        int chunks;
+    }
+}
@@ -0,0 +1,115 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.model.UploadSession;
+import io.micrometer.observation.Observation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * One chunk of an upload session being written at its offset in the staging file. The body is fed
+ * to {@link #write(ByteBuffer)} in pieces as it arrives, so it can come from a blocking stream or from
+ * non-blocking servlet reads, and handed to {@link UploadSessionService#completeChunk(ChunkWrite)}
+ * once it has all been written. Opened by {@link UploadSessionService#openChunk}.
+ * <p>
+ * A chunk that needs its body is a {@code transfer} observation (see {@link TransferMetrics}) from
+ * when it is opened until it is closed.
+ */
+public final class ChunkWrite implements Closeable {
+
+    private final UploadSession session;
+    private final int chunkIndex;
+    private final long offset;
+    private final long length;
+    private final ChunkChecksum checksum;
+    private final Checksum received;
+    private final FileChannel channel;
+    private final Observation observation;
+    private long written;
+
+    ChunkWrite(UploadSession session, int chunkIndex, ChunkChecksum checksum, boolean alreadyReceived,
+               TransferMetrics transferMetrics) throws IOException {
+        this.session = session;
+        this.chunkIndex = chunkIndex;
+        this.offset = (long) chunkIndex * session.getChunkSize();
+        this.length = Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+        this.checksum = checksum;
+        this.received = checksum != null && !alreadyReceived ? checksum.newChecksum() : null;
+        this.channel = alreadyReceived ? null : FileChannel.open(Paths.get(session.getStagingPath()), StandardOpenOption.WRITE);
+        this.observation = alreadyReceived ? Observation.NOOP : transferMetrics.start(TransferMetrics.Operation.CHUNK, session.getOwner());
+    }
+
+    /**
+     * Whether the chunk was received before, in which case its body is not needed.
+     */
+    public boolean isAlreadyReceived() {
+        return channel == null;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    UploadSession getSession() {
+        return session;
+    }
+
+    Observation getObservation() {
+        return observation;
+    }
+
+    /**
+     * Writes the next bytes of the body at their place in the staging file.
+     *
+     * @throws IllegalArgumentException if the body is longer than the chunk
+     */
+    public void write(ByteBuffer src) throws IOException {
+        if (written + src.remaining() > length) {
+            throw lengthMismatch();
+        }
+        if (received != null) {
+            received.update(src.duplicate());
+        }
+        while (src.hasRemaining()) {
+            written += channel.write(src, offset + written);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the body was shorter than the chunk
+     * @throws com.filetransfer.sftp.exception.ChunkChecksumException if it does not match the declared checksum
+     */
+    void verify() {
+        if (written != length) {
+            throw lengthMismatch();
+        }
+        if (received != null) {
+            // Bytes already written at this offset are overwritten when the chunk is resent
+            checksum.verify(received, chunkIndex);
+        }
+    }
+
+    private IllegalArgumentException lengthMismatch() {
+        return new IllegalArgumentException("Chunk " + chunkIndex + " must be exactly " + length + " bytes");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            observation.stop();
+        }
+    }
+}
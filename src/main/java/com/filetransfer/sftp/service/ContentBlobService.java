@@ -0,0 +1,211 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.repository.ContentBlobRepository;
+import com.filetransfer.sftp.repository.FileMetadataRepository;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.StoredBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reference counting for content-addressed blobs. Every file pointing at a blob holds one
+ * reference; counts change in the same transaction as the file metadata. Blobs whose count drops
+ * to zero are deleted by {@link #collectUnreferenced()} after a grace period, so an upload of the
+ * same content in the meantime simply takes the blob back.
+ * <p>
+ * A blob is claimed before a file is pointed at it: the claim touches its row, which restarts the
+ * grace period, and checks that the blob is still stored. Collection deletes the blob while it holds
+ * the row lock, so a claim racing with it waits and then finds the blob gone instead of handing out a
+ * reference to deleted content. Blobs are only ever deleted by collection; releasing or discarding
+ * one leaves it to the next run after the grace period.
+ * <p>
+ * Blobs written before counting existed have no row yet; their count is initialised from the
+ * number of files referencing them the first time they are claimed, acquired or released.
+ */
+@Service
+public class ContentBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentBlobService.class);
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final BlobStoreRegistry blobStoreRegistry;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.gc.grace-ms:3600000}")
+    private long graceMs;
+
+    @Value("${storage.gc.batch-size:100}")
+    private int batchSize;
+
+    public ContentBlobService(ContentBlobRepository contentBlobRepository,
+                              FileMetadataRepository fileMetadataRepository,
+                              BlobStoreRegistry blobStoreRegistry,
+                              TransactionTemplate transactionTemplate) {
+        this.contentBlobRepository = contentBlobRepository;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.blobStoreRegistry = blobStoreRegistry;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Claims the blob already holding the same content, if any, and discards the copy that was just
+     * written. Content-addressed stores return the same reference anyway; for the others this is
+     * what keeps identical content stored once. Otherwise claims the blob that was written.
+     *
+     * @throws IllegalStateException if the blob was collected while it was being written, which
+     *                               happens when a content-addressed store found it still stored
+     */
+    public StoredBlob deduplicate(StoredBlob written) {
+        Optional<StoredBlob> existing = findByContent(written.getChecksum(), written.getSize());
+        if (existing.isPresent() && !existing.get().getBlobRef().equals(written.getBlobRef()) && claim(existing.get())) {
+            discard(written);
+            logger.debug("Blob {} duplicates {}, keeping the existing one", written.getBlobRef(), existing.get().getBlobRef());
+            return existing.get();
+        }
+
+        if (!claim(written)) {
+            throw new IllegalStateException("Blob " + written.getBlobRef() + " was deleted while it was being stored");
+        }
+        return written;
+    }
+
+    public Optional<StoredBlob> findByContent(String checksum, long size) {
+        Optional<StoredBlob> counted = contentBlobRepository.findFirstByChecksumAndContentLength(checksum, size)
+                .map(blob -> new StoredBlob(blob.getBlobRef(), blob.getContentLength(), blob.getChecksum()));
+        if (counted.isPresent()) {
+            return counted;
+        }
+        return fileMetadataRepository.findBlobRefsByContent(checksum, size, PageRequest.of(0, 1)).stream()
+                .findFirst()
+                .map(blobRef -> new StoredBlob(blobRef, size, checksum));
+    }
+
+    /**
+     * Keeps the blob from being collected for the grace period, within which a file must acquire it.
+     * Returns {@code false} if it has been deleted.
+     */
+    public boolean claim(StoredBlob blob) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (contentBlobRepository.touch(blob.getBlobRef(), now) == 0) {
+                long references = fileMetadataRepository.countByBlobRef(blob.getBlobRef());
+                if (contentBlobRepository.insertIfAbsent(blob.getBlobRef(), blob.getChecksum(), blob.getSize(), references, now) == 0) {
+                    contentBlobRepository.touch(blob.getBlobRef(), now);
+                }
+            }
+
+            // The row is locked now, so the blob cannot be collected until the claim commits
+            if (blobStoreRegistry.getStore(blob.getBlobRef()).exists(blob.getBlobRef())) {
+                return true;
+            }
+            status.setRollbackOnly();
+            logger.debug("Blob {} was collected before it could be claimed", blob.getBlobRef());
+            return false;
+        }));
+    }
+
+    /**
+     * Adds a reference for a file that now points at the blob. Must run in the transaction that
+     * updated the file metadata.
+     */
+    public void acquire(StoredBlob blob) {
+        LocalDateTime now = LocalDateTime.now();
+        if (contentBlobRepository.increment(blob.getBlobRef(), now) > 0) {
+            return;
+        }
+
+        // First reference under counting; the metadata row changed by this transaction is included
+        long references = fileMetadataRepository.countByBlobRef(blob.getBlobRef());
+        if (contentBlobRepository.insertIfAbsent(blob.getBlobRef(), blob.getChecksum(), blob.getSize(), references, now) == 0) {
+            contentBlobRepository.increment(blob.getBlobRef(), now);
+        }
+    }
+
+    /**
+     * Drops a reference for a file that no longer points at the blob. Must run in the transaction
+     * that updated the file metadata.
+     */
+    public void release(StoredBlob blob) {
+        LocalDateTime now = LocalDateTime.now();
+        if (contentBlobRepository.decrement(blob.getBlobRef(), now) > 0) {
+            return;
+        }
+
+        // Not counted yet; the metadata row changed by this transaction is no longer included
+        long references = fileMetadataRepository.countByBlobRef(blob.getBlobRef());
+        if (contentBlobRepository.insertIfAbsent(blob.getBlobRef(), blob.getChecksum(), blob.getSize(), references, now) == 0) {
+            contentBlobRepository.decrement(blob.getBlobRef(), now);
+        }
+    }
+
+    /**
+     * Gives up a blob that was written or claimed but never acquired. It is left to collection, as a
+     * concurrent upload of the same content may have claimed it too.
+     */
+    public void discard(StoredBlob blob) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                long references = fileMetadataRepository.countByBlobRef(blob.getBlobRef());
+                contentBlobRepository.insertIfAbsent(blob.getBlobRef(), blob.getChecksum(), blob.getSize(), references, LocalDateTime.now());
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to discard blob {}: {}", blob.getBlobRef(), e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${storage.gc.interval-ms:600000}", fixedDelayString = "${storage.gc.interval-ms:600000}")
+    public void collectUnreferenced() {
+        try {
+            LocalDateTime before = LocalDateTime.now().minusNanos(graceMs * 1_000_000);
+            List<String> blobRefs = contentBlobRepository.findUnreferenced(before, PageRequest.of(0, batchSize));
+
+            int deleted = 0;
+            for (String blobRef : blobRefs) {
+                if (delete(blobRef, before)) {
+                    deleted++;
+                }
+            }
+            if (deleted > 0) {
+                logger.info("Deleted {} unreferenced blobs", deleted);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to collect unreferenced blobs: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the blob and its row in one transaction, unless it was referenced or claimed since it
+     * was listed. The row stays locked until the blob is gone.
+     */
+    private boolean delete(String blobRef, LocalDateTime before) {
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (contentBlobRepository.deleteUnreferenced(blobRef, before) == 0) {
+                    return false;
+                }
+                try {
+                    blobStoreRegistry.getStore(blobRef).delete(blobRef);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                logger.debug("Blob {} deleted", blobRef);
+                return true;
+            }));
+        } catch (Exception e) {
+            logger.warn("Failed to delete blob {}: {}", blobRef, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.storage.BlobStreams;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Proof that a client holds the content it asks to link by hash from another user's upload. The
+ * SHA-256 and size of a file are not secret (they are published alongside downloads, or guessed for
+ * well-known files), so knowing them must not be enough to obtain a copy.
+ * <p>
+ * The server picks a random byte range of the content and a nonce; the client answers with the
+ * SHA-256 of the nonce followed by that range. The challenge is an HMAC-signed token carrying the
+ * range, nonce, user, content and expiry, so any node can check the answer without keeping state.
+ * <p>
+ * The HMAC key is {@code storage.dedup.challenge-key}, which must be set when
+ * {@code storage.dedup.cross-user} is enabled. It has its own setting rather than falling back to the
+ * JWT secret, so the key that signs challenges never shares its source with the one that signs tokens.
+ */
+@Component
+public class ContentPossessionChallenge {
+
+    // Long enough that the range cannot be guessed or brute-forced, short enough to read quickly
+    static final long RANGE_LENGTH = 1024 * 1024;
+    private static final long TTL_MILLIS = 5 * 60 * 1000;
+    private static final String HMAC = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    public ContentPossessionChallenge(@Value("${storage.dedup.cross-user:false}") boolean crossUser,
+                                      @Value("${storage.dedup.challenge-key:}") String key) {
+        if (key == null || key.isBlank()) {
+            if (crossUser) {
+                throw new IllegalStateException("storage.dedup.challenge-key must be set when storage.dedup.cross-user is enabled");
+            }
+            this.key = null; // No challenges are issued
+            return;
+        }
+        this.key = new SecretKeySpec(("upload-by-hash\0" + key).getBytes(StandardCharsets.UTF_8), HMAC);
+    }
+
+    /**
+     * A range of the content to hash, with the nonce to prefix it with and the token to send back.
+     */
+    public record Challenge(String token, String nonce, long offset, long length) {}
+
+    public Challenge issue(String username, String checksum, long size) {
+        long length = Math.min(size, RANGE_LENGTH);
+        long offset = size > length ? ThreadLocalRandom.current().nextLong(size - length + 1) : 0;
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        String payload = HexFormat.of().formatHex(nonce) + ":" + offset + ":" + length + ":" + (System.currentTimeMillis() + TTL_MILLIS);
+        String token = encode(payload) + "." + encode(sign(username, checksum, size, payload));
+        return new Challenge(token, HexFormat.of().formatHex(nonce), offset, length);
+    }
+
+    /**
+     * Checks the client's answer to a challenge issued to it for this content, reading the challenged
+     * range from {@code content}. Returns {@code false} for a forged, expired or foreign token and for
+     * a wrong answer.
+     */
+    public boolean verify(String username, String checksum, long size, String token, String proof,
+                          InputStream content) throws IOException {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 2) {
+            return false;
+        }
+        String payload;
+        try {
+            payload = new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(sign(username, checksum, size, payload), Base64.getUrlDecoder().decode(parts[1]))) {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        // Signed by this server, so well-formed
+        String[] fields = payload.split(":");
+        byte[] nonce = HexFormat.of().parseHex(fields[0]);
+        long offset = Long.parseLong(fields[1]);
+        long length = Long.parseLong(fields[2]);
+        if (Long.parseLong(fields[3]) < System.currentTimeMillis()) {
+            return false;
+        }
+
+        MessageDigest digest = BlobStreams.newSha256();
+        digest.update(nonce);
+        content.skipNBytes(offset);
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                return false;
+            }
+            digest.update(buffer, 0, read);
+            remaining -= read;
+        }
+        return BlobStreams.toHex(digest.digest()).equalsIgnoreCase(proof);
+    }
+
+    private byte[] sign(String username, String checksum, long size, String payload) {
+        if (key == null) {
+            throw new IllegalStateException("Possession challenges need storage.dedup.challenge-key");
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            return mac.doFinal((username + "\0" + checksum + "\0" + size + "\0" + payload).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to sign possession challenge", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return encode(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(byte[] value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+    }
+}
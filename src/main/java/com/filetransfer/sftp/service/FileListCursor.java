@@ -0,0 +1,95 @@
+package com.filetransfer.sftp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a keyset-paginated file listing: the sort key of the last file returned. The next page
+ * starts strictly after it, so it costs the same however deep it is and is not thrown off by files
+ * added or deleted in between.
+ * <p>
+ * Clients get it as an opaque token. File names are unique, so they break ties between files
+ * uploaded at the same time.
+ */
+public final class FileListCursor {
+
+    public enum SortBy {
+        /** Newest first. */
+        UPLOADED_AT,
+        /** By name, ascending. */
+        FILE_NAME
+    }
+
+    // Sorts before every real upload time when listing newest first
+    static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private static final String SEPARATOR = "\n";
+
+    private final SortBy sortBy;
+    private final LocalDateTime uploadedAt;
+    private final String fileName;
+
+    private FileListCursor(SortBy sortBy, LocalDateTime uploadedAt, String fileName) {
+        this.sortBy = sortBy;
+        this.uploadedAt = uploadedAt;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Position before the first file, so the first page can be read with the same query as the rest.
+     */
+    public static FileListCursor first(SortBy sortBy) {
+        return new FileListCursor(sortBy, LATEST, "");
+    }
+
+    /**
+     * Position just after the given file.
+     */
+    public static FileListCursor after(SortBy sortBy, LocalDateTime uploadedAt, String fileName) {
+        return new FileListCursor(sortBy, uploadedAt, fileName);
+    }
+
+    /**
+     * Reads a token produced by {@link #encode()}, or returns {@link #first(SortBy)} for a missing one.
+     *
+     * @throws IllegalArgumentException if the token is malformed or belongs to a listing in another order
+     */
+    public static FileListCursor decode(String token, SortBy sortBy) {
+        if (token == null || token.isEmpty()) {
+            return first(sortBy);
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (parts.length != 3 || !parts[0].equals(sortBy.name())) {
+            throw new IllegalArgumentException("Cursor does not belong to a listing sorted by " + sortBy);
+        }
+        try {
+            return new FileListCursor(sortBy, LocalDateTime.parse(parts[1]), parts[2]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public String encode() {
+        String value = sortBy.name() + SEPARATOR + uploadedAt + SEPARATOR + fileName;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    public LocalDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
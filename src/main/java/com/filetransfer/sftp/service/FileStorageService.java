@@ -1,44 +1,96 @@
 package com.filetransfer.sftp.service;
 
+import com.filetransfer.sftp.dto.FileListPageDTO;
 import com.filetransfer.sftp.dto.FileMetadataDTO;
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.exception.ContentProofRequiredException;
 import com.filetransfer.sftp.model.FileMetadata;
-import com.filetransfer.sftp.model.UploadedChunk;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.model.UploadSessionStatus;
 import com.filetransfer.sftp.repository.FileMetadataRepository;
+import com.filetransfer.sftp.repository.UploadSessionRepository;
 import jakarta.transaction.Transactional;
 
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
-import com.filetransfer.sftp.repository.UploadedChunkRepository;
+import com.filetransfer.sftp.storage.BlobStore;
+import com.filetransfer.sftp.storage.BlobStreams;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.CompressingBlobStore;
+import com.filetransfer.sftp.storage.StoredBlob;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.UUID;
 import java.util.stream.Stream;
+import java.util.zip.CheckedInputStream;
 
 @Service
 public class FileStorageService {
 
     @Autowired
-    UploadedChunkRepository uploadedChunkRepository;
+    ChunkIndexService chunkIndexService;
 
     @Autowired
     FileMetadataRepository fileMetadataRepository;
 
     private static final Logger logger = LoggerFactory.getLogger(FileStorageService.class);
-    private static final String CHUNK_DIR = "chunks/";
+    private static final int MAX_LIST_PAGE_SIZE = 1000;
+
+    @Value("${storage.chunk-root:chunks}")
+    private String chunkRoot;
+
+    @Autowired
+    BlobStoreRegistry blobStoreRegistry;
+
+    @Autowired
+    ChunkMerger chunkMerger;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    ContentBlobService contentBlobService;
+
+    @Autowired
+    TransferMetrics transferMetrics;
+
+    @Autowired
+    ContentPossessionChallenge possessionChallenge;
+
+    @Value("${storage.dedup.cross-user:false}")
+    private boolean crossUserDedup;
 
     public Optional<FileMetadata> getFile(String fileName, String username) {
         try {
@@ -50,32 +102,314 @@ public class FileStorageService {
     }
 
     public void saveFile(MultipartFile file, String username) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            saveFile(inputStream, file.getOriginalFilename(), username);
+        }
+    }
+
+    /**
+     * Streams the upload into the active blob store through a fixed-size buffer, so heap usage
+     * does not depend on the size of the file. Content that is already stored is shared instead of
+     * being kept twice.
+     */
+    public void saveFile(InputStream inputStream, String fileName, String username) throws IOException {
+        transferMetrics.observe(TransferMetrics.Operation.UPLOAD, username, () -> writeFile(inputStream, fileName, username));
+    }
+
+    private void writeFile(InputStream inputStream, String fileName, String username) throws IOException {
+        StoredBlob blob = null;
         try {
+            blob = contentBlobService.deduplicate(blobStoreRegistry.getActiveStore().write(inputStream));
+            insertFile(fileName, username, blob);
 
-            byte[] fileData = file.getBytes();
+            transferMetrics.recordBytes(TransferMetrics.Operation.UPLOAD, blob.getSize());
+            logger.info("File saved successfully by {}: {} (Size: {} KB)", username, fileName, blob.getSize() / 1024);
+        } catch (Exception e) {
+            logger.error("Failed to save file {} for user {}: {}", fileName, username, e.getMessage(), e);
+            if (blob != null) {
+                contentBlobService.discard(blob);
+            }
+            throw new IOException("Failed to save file", e);
+        }
+    }
+
+    /**
+     * Creates the file from content that is already stored, identified by its SHA-256 and size, so
+     * the client does not need to send the bytes. Returns {@code false} if no such content is known.
+     * <p>
+     * Content the user has stored themselves is linked right away. Content of other users is only
+     * linked with {@code storage.dedup.cross-user} and an answer ({@code challengeToken} and
+     * {@code proof}) to a {@link ContentPossessionChallenge}; without one, or with a wrong one, a new
+     * challenge is thrown.
+     *
+     * @throws ContentProofRequiredException if the content belongs to other users and was not proven
+     */
+    public boolean saveFileByHash(String fileName, String checksum, long size, String username,
+                                  String challengeToken, String proof) {
+        try {
+            boolean ownContent = fileMetadataRepository.existsByOwnerAndChecksumAndContentLength(username, checksum, size);
+            if (!ownContent && !crossUserDedup) {
+                return false;
+            }
+            Optional<StoredBlob> blob = contentBlobService.findByContent(checksum, size);
+            if (blob.isEmpty()) {
+                return false;
+            }
+            if (!ownContent && !provesPossession(blob.get(), username, challengeToken, proof)) {
+                throw new ContentProofRequiredException(possessionChallenge.issue(username, checksum, size));
+            }
+            if (!contentBlobService.claim(blob.get())) {
+                return false; // Collected since it was looked up
+            }
 
-            FileMetadata fileMetadata = new FileMetadata(
-                    file.getOriginalFilename(),
-                    username,
-                    file.getSize() / 1024, // Convert bytes to KB
-                    LocalDateTime.now(),
-                    fileData // Store actual binary data
-            );
+            insertFile(fileName, username, blob.get());
+            logger.info("File {} saved by user {} from existing content {}", fileName, username, blob.get().getBlobRef());
+            return true;
+        } catch (ContentProofRequiredException e) {
+            logger.debug("File {} by hash for user {} needs proof of possession", fileName, username);
+            throw e;
+        } catch (Exception e) {
+            logger.error("Failed to save file {} by hash for user {}: {}", fileName, username, e.getMessage(), e);
+            throw new RuntimeException("Failed to save file", e);
+        }
+    }
 
+    private boolean provesPossession(StoredBlob blob, String username, String challengeToken, String proof) throws IOException {
+        if (challengeToken == null || proof == null) {
+            return false;
+        }
+        try (InputStream content = blobStoreRegistry.getStore(blob.getBlobRef()).open(blob.getBlobRef())) {
+            return possessionChallenge.verify(username, blob.getChecksum(), blob.getSize(), challengeToken, proof, content);
+        }
+    }
+
+    private void insertFile(String fileName, String username, StoredBlob blob) {
+        FileMetadata fileMetadata = new FileMetadata(
+                fileName,
+                username,
+                blob.getSize() / 1024, // Convert bytes to KB
+                LocalDateTime.now(),
+                null
+        );
+        attachBlob(fileMetadata, blob);
+
+        transactionTemplate.executeWithoutResult(status -> {
             fileMetadataRepository.save(fileMetadata);
+            contentBlobService.acquire(blob);
+        });
+    }
+
+    /**
+     * Creates an empty file in the active store's staging area for content that arrives piecewise,
+     * e.g. over SFTP. Pass it to {@link #saveStagedFile} once it is complete.
+     */
+    public Path newStagingFile() throws IOException {
+        return blobStoreRegistry.getActiveStore().newStagingFile();
+    }
+
+    /**
+     * Stores a file produced by {@link #newStagingFile()} as the content of the user's file, creating
+     * the file or replacing its content. The staging file is consumed: the filesystem store moves it
+     * into place instead of copying it.
+     */
+    public void saveStagedFile(Path stagingFile, String fileName, String username) throws IOException {
+        transferMetrics.observe(TransferMetrics.Operation.UPLOAD, username, () -> importStagedFile(stagingFile, fileName, username));
+    }
+
+    private void importStagedFile(Path stagingFile, String fileName, String username) throws IOException {
+        StoredBlob blob;
+        try {
+            blob = blobStoreRegistry.getActiveStore().importFile(stagingFile);
+        } catch (Exception e) {
+            logger.error("Failed to store staged content of file {} for user {}: {}", fileName, username, e.getMessage(), e);
+            Files.deleteIfExists(stagingFile);
+            throw new IOException("Failed to save file", e);
+        }
 
-            logger.info("File saved successfully by {}: {} (Size: {} KB)",
-                    username, file.getOriginalFilename(), file.getSize() / 1024);
+        try {
+            storeBlob(fileName, username, blob, () -> { });
         } catch (Exception e) {
-            logger.error("Failed to save file {} for user {}: {}", file.getOriginalFilename(), username, e.getMessage(), e);
+            logger.error("Failed to save file {} for user {}: {}", fileName, username, e.getMessage(), e);
             throw new IOException("Failed to save file", e);
         }
+        transferMetrics.recordBytes(TransferMetrics.Operation.UPLOAD, blob.getSize());
+        logger.info("File saved successfully by {}: {} (Size: {} KB)", username, fileName, blob.getSize() / 1024);
+    }
+
+    /**
+     * Renames the user's file. Returns {@code false} if it does not exist; a file already using the
+     * new name is only replaced when {@code replaceExisting} is set.
+     */
+    public boolean renameFile(String fileName, String newFileName, String username, boolean replaceExisting) throws IOException {
+        if (fileName.equals(newFileName)) {
+            return fileMetadataRepository.existsByFileNameAndOwner(fileName, username);
+        }
+        if (!replaceExisting && fileMetadataRepository.existsByFileNameAndOwner(newFileName, username)) {
+            throw new FileAlreadyExistsException(newFileName);
+        }
+
+        try {
+            Boolean renamed = transactionTemplate.execute(status -> {
+                if (!fileMetadataRepository.existsByFileNameAndOwner(fileName, username)) {
+                    return false;
+                }
+                if (replaceExisting) {
+                    Optional<StoredBlob> replacedBlob = fileMetadataRepository.findBlobByFileNameAndOwner(newFileName, username);
+                    if (fileMetadataRepository.deleteByFileNameAndOwner(newFileName, username) > 0) {
+                        replacedBlob.ifPresent(contentBlobService::release);
+                    }
+                }
+                return fileMetadataRepository.rename(fileName, newFileName, username) > 0;
+            });
+            if (Boolean.TRUE.equals(renamed)) {
+                logger.info("File {} renamed to {} by {}", fileName, newFileName, username);
+                return true;
+            }
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            // Lost a race with another upload, or the name is taken by another user's file
+            throw new FileAlreadyExistsException(newFileName);
+        } catch (Exception e) {
+            logger.error("Failed to rename file {} to {} for user {}: {}", fileName, newFileName, username, e.getMessage(), e);
+            throw new IOException("Failed to rename file", e);
+        }
+    }
+
+    public InputStream openContent(FileMetadata fileMetadata) throws IOException {
+        if (fileMetadata.getBlobRef() != null) {
+            return blobStoreRegistry.getStore(fileMetadata.getBlobRef()).open(fileMetadata.getBlobRef());
+        }
+        byte[] fileData = Hibernate.isPropertyInitialized(fileMetadata, "fileData")
+                ? fileMetadata.getFileData()
+                : fileMetadataRepository.findFileDataById(fileMetadata.getId());
+        if (fileData == null) {
+            throw new IOException("No content stored for file " + fileMetadata.getFileName());
+        }
+        return new ByteArrayInputStream(fileData);
+    }
+
+    public long getContentLength(FileMetadata fileMetadata) {
+        if (fileMetadata.getBlobRef() != null) {
+            return fileMetadata.getContentLength();
+        }
+        // Entities are detached once the lookup returns (open-in-view is off), so legacy content that
+        // was not loaded is measured with a query instead of through the lazy attribute
+        if (Hibernate.isPropertyInitialized(fileMetadata, "fileData")) {
+            return fileMetadata.getFileData() != null ? fileMetadata.getFileData().length : 0;
+        }
+        Long length = fileMetadataRepository.findFileDataLengthById(fileMetadata.getId());
+        return length != null ? length : 0;
+    }
+
+    public long getLastModified(FileMetadata fileMetadata) {
+        return fileMetadata.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public String getETag(FileMetadata fileMetadata) {
+        if (fileMetadata.getChecksum() != null) {
+            return "\"" + fileMetadata.getChecksum() + "\"";
+        }
+        return "\"" + fileMetadata.getId() + "-" + getContentLength(fileMetadata) + "-" + getLastModified(fileMetadata) + "\"";
+    }
+
+    /**
+     * Returns the local file holding the content, if any, so callers can use zero-copy transfers.
+     */
+    public Optional<Path> getContentPath(FileMetadata fileMetadata) {
+        if (fileMetadata.getBlobRef() == null) {
+            return Optional.empty();
+        }
+        return blobStoreRegistry.getStore(fileMetadata.getBlobRef()).getLocalPath(fileMetadata.getBlobRef());
+    }
+
+    /**
+     * Returns the HTTP content-coding the content is stored in, if it is compressed with a codec
+     * clients can decode themselves.
+     */
+    public Optional<String> getStoredEncoding(FileMetadata fileMetadata) {
+        if (fileMetadata.getBlobRef() != null
+                && blobStoreRegistry.getStore(fileMetadata.getBlobRef()) instanceof CompressingBlobStore store) {
+            return Optional.ofNullable(store.getCodec().getContentEncoding());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Opens the compressed content as stored. Only valid when {@link #getStoredEncoding} is present.
+     */
+    public InputStream openStoredContent(FileMetadata fileMetadata) throws IOException {
+        return getCompressingStore(fileMetadata).openCompressed(fileMetadata.getBlobRef());
+    }
+
+    public Optional<Path> getStoredContentPath(FileMetadata fileMetadata) {
+        return getCompressingStore(fileMetadata).getCompressedLocalPath(fileMetadata.getBlobRef());
+    }
+
+    private CompressingBlobStore getCompressingStore(FileMetadata fileMetadata) {
+        if (fileMetadata.getBlobRef() != null
+                && blobStoreRegistry.getStore(fileMetadata.getBlobRef()) instanceof CompressingBlobStore store) {
+            return store;
+        }
+        throw new IllegalStateException("File " + fileMetadata.getFileName() + " is not stored compressed");
+    }
+
+    /**
+     * Writes {@code count} bytes starting at {@code position} to the output. Content on the storage
+     * volume goes through {@link FileChannel#transferTo}, so no file-sized buffer is ever allocated.
+     */
+    public void transferContent(FileMetadata fileMetadata, long position, long count, OutputStream outputStream) throws IOException {
+        Optional<Path> contentPath = getContentPath(fileMetadata);
+        if (contentPath.isEmpty()) {
+            try (InputStream inputStream = openContent(fileMetadata)) {
+                StreamUtils.copyRange(inputStream, outputStream, position, position + count - 1);
+            }
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(contentPath.get(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long transferred = 0;
+            while (transferred < count) {
+                long written = channel.transferTo(position + transferred, count - transferred, target);
+                if (written <= 0) {
+                    throw new EOFException("Stored content ended after " + transferred + " of " + count + " bytes");
+                }
+                transferred += written;
+            }
+        }
+    }
+
+    private void attachBlob(FileMetadata fileMetadata, StoredBlob blob) {
+        fileMetadata.setBlobRef(blob.getBlobRef());
+        fileMetadata.setContentLength(blob.getSize());
+        fileMetadata.setChecksum(blob.getChecksum());
+        fileMetadata.setFileSize(blob.getSize() / 1024);
+        fileMetadata.setFileData(null);
     }
 
     public void saveChunk(MultipartFile chunk, String fileName, int chunkIndex, String username) throws IOException {
+        saveChunk(chunk, fileName, chunkIndex, username, null);
+    }
+
+    /**
+     * Streams the chunk into a temporary file next to its final name and moves it into place, so a
+     * chunk that was cut short never counts as received. With a {@code checksum}, the chunk is
+     * verified while it is written.
+     *
+     * @throws ChunkChecksumException if the chunk does not match {@code checksum}; nothing is kept
+     */
+    public void saveChunk(MultipartFile chunk, String fileName, int chunkIndex, String username, ChunkChecksum checksum) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= ChunkBitmap.MAX_CHUNKS) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (ChunkBitmap.MAX_CHUNKS - 1));
+        }
+        transferMetrics.observe(TransferMetrics.Operation.CHUNK, username, () -> writeChunk(chunk, fileName, chunkIndex, username, checksum));
+    }
+
+    private void writeChunk(MultipartFile chunk, String fileName, int chunkIndex, String username, ChunkChecksum checksum) throws IOException {
+        Path partialPath = null;
         try {
 
-            Path chunkDirectory = Paths.get(CHUNK_DIR, username, fileName);
+            Path chunkDirectory = chunkDirectory(username, fileName);
 
             if (!Files.exists(chunkDirectory)) {
                 Files.createDirectories(chunkDirectory);
@@ -84,32 +418,86 @@ public class FileStorageService {
             Path chunkPath = chunkDirectory.resolve(chunkIndex + ".part");
 
             if (Files.exists(chunkPath)) {
+                // A retry, possibly racing the request that stored it: only acknowledge it once registered
                 logger.debug("Chunk {} already exists for file {} by user {}", chunkIndex, fileName, username);
+                chunkIndexService.register(fileName, username, chunkIndex);
                 return;
             }
 
-            Files.write(chunkPath, chunk.getBytes());
+            partialPath = chunkDirectory.resolve(chunkIndex + ".part." + UUID.randomUUID() + ".tmp");
+            try (InputStream inputStream = chunk.getInputStream()) {
+                if (checksum == null) {
+                    Files.copy(inputStream, partialPath);
+                } else {
+                    CheckedInputStream checked = checksum.verifying(inputStream);
+                    Files.copy(checked, partialPath);
+                    checksum.verify(checked, chunkIndex);
+                }
+            }
+            Files.move(partialPath, chunkPath, StandardCopyOption.ATOMIC_MOVE);
 
-            uploadedChunkRepository.save(new UploadedChunk(fileName, chunkIndex, username));
+            chunkIndexService.register(fileName, username, chunkIndex);
+            transferMetrics.recordBytes(TransferMetrics.Operation.CHUNK, chunk.getSize());
             logger.info("Chunk {} saved for file {} by user {}", chunkIndex, fileName, username);
+        } catch (ChunkChecksumException e) {
+            logger.warn("Rejected chunk {} for file {} by user {}: {}", chunkIndex, fileName, username, e.getMessage());
+            throw e;
         } catch (Exception e) {
             logger.error("Failed to save chunk {} for file {} by user {}: {}", chunkIndex, fileName, username, e.getMessage(), e);
             throw new IOException("Failed to save chunk", e);
+        } finally {
+            if (partialPath != null) {
+                Files.deleteIfExists(partialPath);
+            }
         }
     }
 
+    /**
+     * Directory holding the chunks of an upload, named after a hash of the user and file name so that
+     * names with separators or {@code ..} cannot reach outside {@code chunks.root}. Uploads started
+     * before chunks were stored this way keep their plain {@code user/fileName} directory.
+     */
+    Path chunkDirectory(String username, String fileName) {
+        if (isPlainSegment(username) && isPlainSegment(fileName)) {
+            Path legacy = Paths.get(chunkRoot, username, fileName);
+            if (Files.isDirectory(legacy)) {
+                return legacy;
+            }
+        }
+        byte[] uploadId = (username + "\0" + fileName).getBytes(StandardCharsets.UTF_8);
+        return Paths.get(chunkRoot, BlobStreams.toHex(BlobStreams.newSha256().digest(uploadId)));
+    }
+
+    private static boolean isPlainSegment(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && name.indexOf('/') < 0 && name.indexOf('\\') < 0 && name.indexOf('\0') < 0;
+    }
+
     public boolean isChunkUploaded(String fileName, int chunkIndex, String username) {
         try {
-            return uploadedChunkRepository.existsByFileNameAndChunkIndexAndUsername(fileName, chunkIndex, username);
+            // Received chunks stay received, so only a miss needs the rows written by other nodes
+            return chunkIndexService.getChunks(fileName, username).get(chunkIndex)
+                    || chunkIndexService.getStoredChunks(fileName, username).get(chunkIndex);
         } catch (Exception e) {
             logger.error("Failed to check if chunk {} exists for file {} by user {}: {}", chunkIndex, fileName, username, e.getMessage(), e);
             throw new RuntimeException("Failed to check chunk existence", e);
         }
     }
 
-    @Transactional
     public boolean mergeChunks(String fileName, String username) throws IOException {
-        Path chunkDirectory = Paths.get(CHUNK_DIR, username, fileName);
+        return mergeChunks(fileName, username, MergeProgressListener.NONE);
+    }
+
+    /**
+     * Merges the uploaded chunks into the file's blob. Chunks are assembled in parallel on disk
+     * outside any transaction, and the metadata is switched over in a short transaction at the end.
+     */
+    public boolean mergeChunks(String fileName, String username, MergeProgressListener progress) throws IOException {
+        return transferMetrics.observe(TransferMetrics.Operation.MERGE, username, () -> mergeChunkFiles(fileName, username, progress));
+    }
+
+    private boolean mergeChunkFiles(String fileName, String username, MergeProgressListener progress) throws IOException {
+        Path chunkDirectory = chunkDirectory(username, fileName);
 
         Optional<FileMetadata> fileMetadata = fileMetadataRepository.findByFileNameAndOwner(fileName, username);
         if (fileMetadata.isEmpty()) {
@@ -117,23 +505,23 @@ public class FileStorageService {
             return false;
         }
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        List<Path> chunkFiles = getVerifiedChunkFiles(chunkDirectory, fileName, username);
 
-        try (Stream<Path> chunkFiles = Files.list(chunkDirectory).sorted(Comparator.comparingInt(this::getChunkIndex))) {
-            for (Path chunkFile : (Iterable<Path>) chunkFiles::iterator) {
-                Files.copy(chunkFile, byteArrayOutputStream);
-            }
+        BlobStore blobStore = blobStoreRegistry.getActiveStore();
+        StoredBlob blob;
+        Path stagingFile = blobStore.newStagingFile();
+        try {
+            chunkMerger.merge(chunkFiles, stagingFile, progress);
+            blob = blobStore.importFile(stagingFile);
         } catch (IOException e) {
-            logger.error("Error reading chunk files for merging: {}", e.getMessage(), e);
+            logger.error("Error merging chunk files for file {}: {}", fileName, e.getMessage(), e);
             throw new IOException("Failed to merge chunks", e);
+        } finally {
+            Files.deleteIfExists(stagingFile);
         }
 
-        byte[] fileData = byteArrayOutputStream.toByteArray();
-
-        // Save merged file into PostgreSQL
-        FileMetadata updatedFile = fileMetadata.get();
-        updatedFile.setFileData(fileData);
-        fileMetadataRepository.save(updatedFile);
+        storeBlob(fileName, username, blob, () -> chunkIndexService.clear(fileName, username));
+        transferMetrics.recordBytes(TransferMetrics.Operation.MERGE, blob.getSize());
 
         try {
             // Delete all chunks in one operation
@@ -147,28 +535,135 @@ public class FileStorageService {
             logger.warn("Failed to delete chunk directory for file {}: {}", fileName, e.getMessage());
         }
 
-        uploadedChunkRepository.deleteByFileNameAndUsername(fileName, username); // Clean up DB entries
-        logger.info("Chunks merged & stored in DB for file {} by user {}", fileName, username);
+        logger.info("Chunks merged & stored for file {} by user {}", fileName, username);
         return true;
     }
 
+    /**
+     * Stores the staging file of a fully received upload session as the file's content. Every chunk
+     * already sits at its final offset, so this only hashes the file and moves it into the blob store.
+     * <p>
+     * The blob is recorded on the session as soon as it is imported, so a job that is requeued after
+     * that point stores the recorded blob instead of looking for the consumed staging file.
+     */
+    public boolean completeUploadSession(String sessionId, MergeProgressListener progress) throws IOException {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new IOException("Upload session " + sessionId + " not found"));
+        if (session.getStatus() == UploadSessionStatus.COMPLETED) {
+            return true; // Requeued after it had already finished
+        }
+        return transferMetrics.observe(TransferMetrics.Operation.MERGE, session.getOwner(), () -> storeUploadSession(session, progress));
+    }
+
+    private boolean storeUploadSession(UploadSession session, MergeProgressListener progress) throws IOException {
+        String sessionId = session.getId();
+        progress.onStart(session.getTotalSize());
+        StoredBlob blob = null;
+        boolean stored = false;
+        try {
+            if (session.getBlobRef() != null) {
+                // Imported by an earlier run of the job that did not finish; the staging file is gone
+                blob = new StoredBlob(session.getBlobRef(), session.getTotalSize(), session.getChecksum());
+            } else {
+                blob = blobStoreRegistry.getActiveStore().importFile(Paths.get(session.getStagingPath()));
+                if (blob.getSize() != session.getTotalSize()) {
+                    throw new IOException("Stored " + blob.getSize() + " bytes but the upload declared " + session.getTotalSize());
+                }
+                if (session.getChecksum() != null && !session.getChecksum().equalsIgnoreCase(blob.getChecksum())) {
+                    throw new IOException("Checksum mismatch: expected " + session.getChecksum() + " but received " + blob.getChecksum());
+                }
+                uploadSessionRepository.recordBlob(sessionId, blob.getBlobRef(), blob.getChecksum(), LocalDateTime.now());
+            }
+
+            stored = true; // storeBlob discards the blob itself if it fails
+            storeBlob(session.getFileName(), session.getOwner(), blob, () -> {
+                chunkIndexService.clear(sessionId, session.getOwner());
+                uploadSessionRepository.finish(sessionId, UploadSessionStatus.COMPLETED, null, LocalDateTime.now());
+            });
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to complete upload session {} for file {}: {}", sessionId, session.getFileName(), e.getMessage(), e);
+            if (blob != null && !stored) {
+                contentBlobService.discard(blob);
+            }
+            String errorMessage = e.getMessage() != null && e.getMessage().length() > 255 ? e.getMessage().substring(0, 255) : e.getMessage();
+            transactionTemplate.executeWithoutResult(status -> {
+                chunkIndexService.clear(sessionId, session.getOwner());
+                uploadSessionRepository.finish(sessionId, UploadSessionStatus.FAILED, errorMessage, LocalDateTime.now());
+            });
+            throw new IOException("Failed to complete upload session", e);
+        }
+
+        progress.onChunkMerged(session.getTotalSize());
+        transferMetrics.recordBytes(TransferMetrics.Operation.MERGE, session.getTotalSize());
+        logger.info("Upload session {} stored as file {} for user {}", sessionId, session.getFileName(), session.getOwner());
+        return true;
+    }
 
-    private int getChunkIndex(Path path) {
+    /**
+     * Points the user's file at the blob, creating the metadata row if the file does not exist yet,
+     * and runs {@code inTransaction} in the same transaction. The reference to the blob the file
+     * used before is dropped in that transaction too.
+     */
+    private void storeBlob(String fileName, String username, StoredBlob imported, Runnable inTransaction) {
+        StoredBlob blob = contentBlobService.deduplicate(imported);
         try {
-            String fileName = path.getFileName().toString();
-            return Integer.parseInt(fileName.replace(".part", ""));
-        } catch (Exception e) {
-            logger.error("Failed to extract chunk index from path {}: {}", path, e.getMessage(), e);
-            throw new RuntimeException("Failed to extract chunk index", e);
+            transactionTemplate.executeWithoutResult(status -> {
+                Optional<FileMetadata> existing = fileMetadataRepository.findByFileNameAndOwner(fileName, username);
+                if (existing.isPresent()) {
+                    fileMetadataRepository.replaceBlob(existing.get().getId(), blob.getBlobRef(), blob.getSize(), blob.getChecksum());
+                } else {
+                    FileMetadata fileMetadata = new FileMetadata(fileName, username, blob.getSize() / 1024, LocalDateTime.now(), null);
+                    attachBlob(fileMetadata, blob);
+                    fileMetadataRepository.save(fileMetadata);
+                }
+                contentBlobService.acquire(blob);
+                existing.filter(file -> file.getBlobRef() != null)
+                        .map(file -> new StoredBlob(file.getBlobRef(), file.getContentLength(), file.getChecksum()))
+                        .ifPresent(contentBlobService::release);
+                inTransaction.run();
+            });
+        } catch (RuntimeException e) {
+            contentBlobService.discard(blob);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the chunk files in index order after checking that the registered chunks form a
+     * contiguous range starting at 0 and that every one of them is present on disk.
+     */
+    private List<Path> getVerifiedChunkFiles(Path chunkDirectory, String fileName, String username) throws IOException {
+        ChunkBitmap uploadedChunks = getUploadedChunks(fileName, username);
+        int chunkCount = uploadedChunks.cardinality();
+        if (chunkCount == 0) {
+            throw new IOException("No chunks uploaded for file " + fileName);
+        }
+        if (uploadedChunks.length() != chunkCount) {
+            throw new IOException("Chunk " + uploadedChunks.snapshot().nextClearBit(0) + " of " + uploadedChunks.length()
+                    + " was never uploaded for file " + fileName);
+        }
+
+        List<Path> chunkFiles = new ArrayList<>(chunkCount);
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            Path chunkFile = chunkDirectory.resolve(chunkIndex + ".part");
+            if (!Files.isRegularFile(chunkFile)) {
+                throw new IOException("Chunk " + chunkIndex + " is registered but missing on disk for file " + fileName);
+            }
+            chunkFiles.add(chunkFile);
+        }
+
+        try (Stream<Path> files = Files.list(chunkDirectory)) {
+            long partFiles = files.filter(path -> path.getFileName().toString().endsWith(".part")).count();
+            if (partFiles != chunkFiles.size()) {
+                throw new IOException("Found " + partFiles + " chunk files but " + chunkFiles.size() + " registered chunks for file " + fileName);
+            }
         }
+        return chunkFiles;
     }
 
-    public Set<Integer> getUploadedChunks(String fileName, String username) {
+    public ChunkBitmap getUploadedChunks(String fileName, String username) {
         try {
-            return uploadedChunkRepository.findByFileNameAndUsername(fileName, username)
-                    .stream()
-                    .map(UploadedChunk::getChunkIndex)
-                    .collect(Collectors.toSet());
+            return chunkIndexService.getStoredChunks(fileName, username);
         } catch (Exception e) {
             logger.error("Failed to fetch uploaded chunks for file {} by user {}: {}", fileName, username, e.getMessage(), e);
             throw new RuntimeException("Failed to fetch uploaded chunks", e);
@@ -178,14 +673,14 @@ public class FileStorageService {
     @Transactional
     public boolean deleteFile(String fileName, String username) {
         try {
-            Optional<FileMetadata> fileMetadata = fileMetadataRepository.findByFileNameAndOwner(fileName, username);
+            Optional<StoredBlob> blob = fileMetadataRepository.findBlobByFileNameAndOwner(fileName, username);
 
-            if (fileMetadata.isEmpty()) {
+            if (fileMetadataRepository.deleteByFileNameAndOwner(fileName, username) == 0) {
                 logger.warn("File not found in database: {}", fileName);
                 return false;
             }
 
-            fileMetadataRepository.delete(fileMetadata.get());
+            blob.ifPresent(contentBlobService::release);
             logger.info("File record deleted successfully: {} by {}", fileName, username);
             return true;
         } catch (Exception e) {
@@ -194,13 +689,67 @@ public class FileStorageService {
         }
     }
 
-    public List<FileMetadataDTO> listUserFiles(String username, Pageable pageable) {
+    /**
+     * Returns up to {@code limit} of the user's files named after {@code afterFileName}, in name order,
+     * with their full metadata, for callers that need exact sizes. Pass "" to start from the first file
+     * and the last name returned to continue.
+     */
+    public List<FileMetadata> listFiles(String username, String afterFileName, int limit) {
+        try {
+            return fileMetadataRepository.findByOwnerAndFileNameGreaterThanOrderByFileName(username, afterFileName, Limit.of(limit));
+        } catch (Exception e) {
+            logger.error("Failed to list files for user {}: {}", username, e.getMessage(), e);
+            throw new RuntimeException("Failed to list files", e);
+        }
+    }
+
+    /**
+     * Returns a page of the user's files in the given order, starting after {@code cursor} (a token
+     * from a previous page, or null for the first one). Filters may be null: {@code namePrefix} matches
+     * the start of the name literally, sizes are inclusive, {@code uploadedFrom} is inclusive and
+     * {@code uploadedTo} exclusive.
+     *
+     * @throws IllegalArgumentException if the cursor or a filter is invalid
+     */
+    public FileListPageDTO browseFiles(String username, FileListCursor.SortBy sortBy, String cursor, int size,
+                                       String namePrefix, Long minSizeKb, Long maxSizeKb,
+                                       LocalDateTime uploadedFrom, LocalDateTime uploadedTo) {
+        if (size < 1 || size > MAX_LIST_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_LIST_PAGE_SIZE);
+        }
+        FileListCursor after = FileListCursor.decode(cursor, sortBy);
+        String namePattern = namePrefix == null ? "%" : escapeLike(namePrefix) + "%";
+        long minSize = minSizeKb != null ? minSizeKb : 0;
+        long maxSize = maxSizeKb != null ? maxSizeKb : Long.MAX_VALUE;
+        LocalDateTime from = uploadedFrom != null ? uploadedFrom : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime to = uploadedTo != null ? uploadedTo : FileListCursor.LATEST;
         try {
-            Page<FileMetadata> filePage = fileMetadataRepository.findByOwner(username, pageable);
+            Pageable pageable = PageRequest.ofSize(size);
+            Slice<FileMetadataDTO> page = sortBy == FileListCursor.SortBy.UPLOADED_AT
+                    ? fileMetadataRepository.findSummariesByOwnerNewestFirst(username, after.getUploadedAt(), after.getFileName(),
+                            namePattern, minSize, maxSize, from, to, pageable)
+                    : fileMetadataRepository.findSummariesByOwnerByName(username, after.getFileName(),
+                            namePattern, minSize, maxSize, from, to, pageable);
+
+            String nextCursor = null;
+            if (page.hasNext()) {
+                FileMetadataDTO last = page.getContent().get(page.getNumberOfElements() - 1);
+                nextCursor = FileListCursor.after(sortBy, last.getUploadedAt(), last.getFileName()).encode();
+            }
+            return new FileListPageDTO(page.getContent(), nextCursor);
+        } catch (Exception e) {
+            logger.error("Failed to list files for user {}: {}", username, e.getMessage(), e);
+            throw new RuntimeException("Failed to list files", e);
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
 
-            return filePage.getContent().stream()
-                    .map(file -> new FileMetadataDTO(file.getFileName(), file.getFileSize(), file.getUploadedAt()))
-                    .collect(Collectors.toList());
+    public List<FileMetadataDTO> listUserFiles(String username, Pageable pageable) {
+        try {
+            return fileMetadataRepository.findSummariesByOwner(username, pageable);
         } catch (Exception e) {
             logger.error("Failed to list files for user {}: {}", username, e.getMessage(), e);
             throw new RuntimeException("Failed to list files", e);
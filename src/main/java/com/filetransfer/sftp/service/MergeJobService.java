@@ -0,0 +1,228 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.dto.MergeJobDTO;
+import com.filetransfer.sftp.model.MergeJob;
+import com.filetransfer.sftp.model.MergeJobStatus;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.repository.MergeJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs chunk merges as background jobs. The {@code merge_jobs} table is the queue, so jobs survive
+ * restarts; each node claims queued jobs up to {@code merge.jobs.concurrency} at a time and sends
+ * heartbeats for the ones it is running. Jobs whose heartbeat stops are put back in the queue.
+ * <p>
+ * With {@code spring.threads.virtual.enabled} each job runs on its own virtual thread; the number of
+ * jobs is still bounded by {@code merge.jobs.concurrency}. The chunk copies themselves stay on the
+ * {@link ChunkMerger} pool.
+ * <p>
+ * The jobs running on this node are published as the {@code merge.jobs.active} gauge.
+ */
+@Service
+public class MergeJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MergeJobService.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final MergeJobRepository mergeJobRepository;
+    private final FileStorageService fileStorageService;
+    private final AdmissionControl admissionControl;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final Map<String, JobProgress> runningJobs = new ConcurrentHashMap<>();
+
+    @Value("${merge.jobs.stale-after-ms:120000}")
+    private long staleAfterMs;
+
+    public MergeJobService(MergeJobRepository mergeJobRepository,
+                           FileStorageService fileStorageService,
+                           AdmissionControl admissionControl,
+                           ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${merge.jobs.concurrency:2}") int concurrency,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.mergeJobRepository = mergeJobRepository;
+        this.fileStorageService = fileStorageService;
+        this.admissionControl = admissionControl;
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("merge-job-", 1).factory())
+                : Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("merge-job-"));
+        this.slots = new Semaphore(concurrency);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("merge.jobs.active", runningJobs, Map::size).register(registry);
+        }
+    }
+
+    /**
+     * @throws com.filetransfer.sftp.exception.AdmissionRejectedException if the merge queue is full
+     *                                                                    or the user has too many merges pending
+     */
+    public MergeJobDTO submit(String fileName, String username) {
+        MergeJob job = admissionControl.admitMerge(username, slot -> {
+            MergeJob queued = new MergeJob(UUID.randomUUID().toString(), fileName, username, LocalDateTime.now());
+            queued.setUserSlot(slot);
+            return mergeJobRepository.saveAndFlush(queued);
+        });
+        logger.info("Merge job {} queued for file {} by user {}", job.getId(), fileName, username);
+
+        dispatchQueuedJobs();
+        return toDTO(job);
+    }
+
+    /**
+     * Queues the job that stores a fully received upload session. Joins the caller's transaction so
+     * the job is only visible once the session has switched to FINALIZING; call
+     * {@link #dispatchQueuedJobs()} after commit to start it right away.
+     */
+    MergeJob queueUploadSession(String jobId, UploadSession session) {
+        MergeJob job = new MergeJob(jobId, session.getFileName(), session.getOwner(), LocalDateTime.now());
+        job.setUploadSessionId(session.getId());
+        return mergeJobRepository.save(job);
+    }
+
+    public Optional<MergeJobDTO> getJob(String jobId, String username) {
+        return mergeJobRepository.findByIdAndOwner(jobId, username).map(this::toDTO);
+    }
+
+    /**
+     * Sends heartbeats for local jobs, requeues jobs abandoned by other workers and starts queued
+     * jobs while this node has free slots.
+     */
+    @Scheduled(fixedDelayString = "${merge.jobs.poll-interval-ms:5000}")
+    public void poll() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            runningJobs.forEach((jobId, progress) ->
+                    mergeJobRepository.updateProgress(jobId, progress.bytesMerged.get(), progress.getTotalBytes(), now));
+
+            int requeued = mergeJobRepository.requeueStale(now.minusNanos(staleAfterMs * 1_000_000), now);
+            if (requeued > 0) {
+                logger.warn("Requeued {} merge jobs without a recent heartbeat", requeued);
+            }
+
+            dispatchQueuedJobs();
+        } catch (Exception e) {
+            logger.error("Failed to poll merge jobs: {}", e.getMessage(), e);
+        }
+    }
+
+    void dispatchQueuedJobs() {
+        int available = slots.availablePermits();
+        if (available == 0) {
+            return;
+        }
+
+        List<String> queuedIds = mergeJobRepository.findQueuedIds(PageRequest.of(0, available));
+        for (String jobId : queuedIds) {
+            if (!slots.tryAcquire()) {
+                return;
+            }
+            if (mergeJobRepository.claim(jobId, LocalDateTime.now()) == 0) {
+                slots.release(); // Claimed by another worker in the meantime
+                continue;
+            }
+            runningJobs.put(jobId, new JobProgress());
+            executor.execute(() -> run(jobId));
+        }
+    }
+
+    private void run(String jobId) {
+        JobProgress progress = runningJobs.get(jobId);
+        try {
+            MergeJob job = mergeJobRepository.findById(jobId).orElseThrow();
+            logger.info("Merge job {} started for file {} by user {}", jobId, job.getFileName(), job.getOwner());
+
+            boolean merged = job.getUploadSessionId() != null
+                    ? fileStorageService.completeUploadSession(job.getUploadSessionId(), progress)
+                    : fileStorageService.mergeChunks(job.getFileName(), job.getOwner(), progress);
+            if (merged) {
+                finish(jobId, MergeJobStatus.COMPLETED, progress, null);
+                logger.info("Merge job {} completed ({} bytes)", jobId, progress.bytesMerged.get());
+            } else {
+                finish(jobId, MergeJobStatus.FAILED, progress, "Unauthorized to merge this file.");
+            }
+        } catch (Exception e) {
+            logger.error("Merge job {} failed: {}", jobId, e.getMessage(), e);
+            finish(jobId, MergeJobStatus.FAILED, progress, e.getMessage());
+        } finally {
+            runningJobs.remove(jobId);
+            slots.release();
+        }
+
+        try {
+            dispatchQueuedJobs();
+        } catch (Exception e) {
+            logger.error("Failed to dispatch queued merge jobs: {}", e.getMessage(), e);
+        }
+    }
+
+    private void finish(String jobId, MergeJobStatus status, JobProgress progress, String errorMessage) {
+        if (errorMessage != null && errorMessage.length() > MAX_ERROR_LENGTH) {
+            errorMessage = errorMessage.substring(0, MAX_ERROR_LENGTH);
+        }
+        mergeJobRepository.finish(jobId, status, progress.bytesMerged.get(), progress.getTotalBytes(), errorMessage, LocalDateTime.now());
+    }
+
+    private MergeJobDTO toDTO(MergeJob job) {
+        long bytesMerged = job.getBytesMerged();
+        Long totalBytes = job.getTotalBytes();
+
+        // Jobs running on this node report live progress instead of the last heartbeat
+        JobProgress progress = runningJobs.get(job.getId());
+        if (progress != null && job.getStatus() == MergeJobStatus.RUNNING) {
+            bytesMerged = progress.bytesMerged.get();
+            totalBytes = progress.getTotalBytes();
+        }
+
+        return new MergeJobDTO(job.getId(), job.getFileName(), job.getStatus(), bytesMerged, totalBytes,
+                job.getErrorMessage(), job.getCreatedAt(), job.getUpdatedAt());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class JobProgress implements MergeProgressListener {
+
+        private final AtomicLong totalBytes = new AtomicLong(-1);
+        private final AtomicLong bytesMerged = new AtomicLong();
+
+        @Override
+        public void onStart(long totalBytes) {
+            this.totalBytes.set(totalBytes);
+        }
+
+        @Override
+        public void onChunkMerged(long bytes) {
+            bytesMerged.addAndGet(bytes);
+        }
+
+        Long getTotalBytes() {
+            long total = totalBytes.get();
+            return total < 0 ? null : total;
+        }
+    }
+}
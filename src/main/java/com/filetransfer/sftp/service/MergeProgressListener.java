@@ -0,0 +1,22 @@
+package com.filetransfer.sftp.service;
+
+/**
+ * Receives progress updates from {@link ChunkMerger}. Chunk callbacks arrive concurrently from the
+ * merge threads.
+ */
+public interface MergeProgressListener {
+
+    MergeProgressListener NONE = new MergeProgressListener() {
+        @Override
+        public void onStart(long totalBytes) {
+        }
+
+        @Override
+        public void onChunkMerged(long bytes) {
+        }
+    };
+
+    void onStart(long totalBytes);
+
+    void onChunkMerged(long bytes);
+}
@@ -0,0 +1,96 @@
+package com.filetransfer.sftp.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency and size of the transfers that move file content: uploads, chunks, merges and downloads.
+ * <p>
+ * Each transfer runs as a {@code transfer} observation tagged with its operation. It is published as a
+ * timer of the same name and, with tracing on, as a span that the {@code storage.blob} and JDBC spans of
+ * the transfer nest under, so a slow upload shows whether its time went to the disk, the database or
+ * waiting for the body. Sizes go to the {@code transfer.bytes} distribution summary. Downloads are
+ * streamed by the controller after it returns, so their latency is that of {@code http.server.requests}.
+ */
+@Component
+public class TransferMetrics {
+
+    /**
+     * Records nothing, for services built outside of Spring.
+     */
+    public static final TransferMetrics NONE = new TransferMetrics(null, ObservationRegistry.NOOP);
+
+    public enum Operation {
+        UPLOAD, CHUNK, MERGE, DOWNLOAD;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    // 64 KB to 128 GB in steps of 8, from a small chunk to a large merged file
+    private static final double[] SIZE_BUCKETS = {1L << 16, 1L << 19, 1L << 22, 1L << 25, 1L << 28, 1L << 31, 1L << 34, 1L << 37};
+
+    private final ObservationRegistry observationRegistry;
+    private final Map<Operation, DistributionSummary> bytes = new EnumMap<>(Operation.class);
+
+    @Autowired
+    public TransferMetrics(ObjectProvider<MeterRegistry> meterRegistry, ObjectProvider<ObservationRegistry> observationRegistry) {
+        this(meterRegistry.getIfAvailable(), observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP));
+    }
+
+    public TransferMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+        if (meterRegistry != null) {
+            for (Operation operation : Operation.values()) {
+                bytes.put(operation, DistributionSummary.builder("transfer.bytes")
+                        .baseUnit("bytes")
+                        .tag("operation", operation.tag)
+                        .serviceLevelObjectives(SIZE_BUCKETS)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Runs the transfer under a {@code transfer} observation.
+     */
+    public <T, E extends Throwable> T observe(Operation operation, String username,
+                                              Observation.CheckedCallable<T, E> transfer) throws E {
+        return observation(operation, username).observeChecked(transfer);
+    }
+
+    public <E extends Throwable> void observe(Operation operation, String username,
+                                              Observation.CheckedRunnable<E> transfer) throws E {
+        observation(operation, username).observeChecked(transfer);
+    }
+
+    /**
+     * Starts a {@code transfer} observation for a transfer that ends in another call, e.g. a chunk whose
+     * body is read asynchronously. It must be stopped.
+     */
+    Observation start(Operation operation, String username) {
+        return observation(operation, username).start();
+    }
+
+    private Observation observation(Operation operation, String username) {
+        Observation observation = Observation.createNotStarted("transfer", observationRegistry)
+                .contextualName(operation.tag)
+                .lowCardinalityKeyValue("operation", operation.tag);
+        return username != null ? observation.highCardinalityKeyValue("user", username) : observation;
+    }
+
+    public void recordBytes(Operation operation, long size) {
+        DistributionSummary summary = bytes.get(operation);
+        if (summary != null) {
+            summary.record(size);
+        }
+    }
+}
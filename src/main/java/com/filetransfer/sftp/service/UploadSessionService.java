@@ -0,0 +1,287 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.dto.UploadSessionDTO;
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.model.UploadSessionStatus;
+import com.filetransfer.sftp.repository.UploadSessionRepository;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Uploads that declare their size and chunk size up front. The content is assembled in a staging
+ * file preallocated to the declared size: chunks may arrive in any order and are written directly
+ * at {@code chunkIndex * chunkSize}. When the last chunk lands the session is finalized by a
+ * background job that moves the staging file into the blob store, so there is no merge pass.
+ * <p>
+ * Open sessions that receive no chunk for {@code upload.sessions.idle-timeout-ms} are aborted, so
+ * abandoned uploads do not keep their preallocated staging files.
+ */
+@Service
+public class UploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ChunkIndexService chunkIndexService;
+    private final MergeJobService mergeJobService;
+    private final BlobStoreRegistry blobStoreRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferMetrics transferMetrics;
+    private final int bufferSize;
+
+    @Value("${upload.sessions.idle-timeout-ms:86400000}")
+    private long idleTimeoutMs;
+
+    @Value("${upload.sessions.reap-batch-size:100}")
+    private int reapBatchSize;
+
+    public UploadSessionService(UploadSessionRepository uploadSessionRepository,
+                                ChunkIndexService chunkIndexService,
+                                MergeJobService mergeJobService,
+                                BlobStoreRegistry blobStoreRegistry,
+                                TransactionTemplate transactionTemplate,
+                                TransferMetrics transferMetrics,
+                                @Value("${storage.buffer-size:65536}") int bufferSize) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.chunkIndexService = chunkIndexService;
+        this.mergeJobService = mergeJobService;
+        this.blobStoreRegistry = blobStoreRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.transferMetrics = transferMetrics;
+        this.bufferSize = bufferSize;
+    }
+
+    public UploadSessionDTO create(String fileName, String username, long totalSize, int chunkSize, String checksum) throws IOException {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("fileName is required");
+        }
+        if (totalSize <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("totalSize and chunkSize must be positive");
+        }
+        if ((totalSize + chunkSize - 1) / chunkSize > ChunkBitmap.MAX_CHUNKS) {
+            throw new IllegalArgumentException("An upload may have at most " + ChunkBitmap.MAX_CHUNKS + " chunks; use a larger chunkSize");
+        }
+        if (checksum != null && !SHA256_HEX.matcher(checksum).matches()) {
+            throw new IllegalArgumentException("checksum must be a hex encoded SHA-256");
+        }
+
+        Path stagingFile = blobStoreRegistry.getActiveStore().newStagingFile();
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(stagingFile.toFile(), "rw")) {
+                file.setLength(totalSize);
+            }
+            UploadSession session = uploadSessionRepository.save(new UploadSession(UUID.randomUUID().toString(), fileName,
+                    username, totalSize, chunkSize, checksum, stagingFile.toString(), LocalDateTime.now()));
+
+            logger.info("Upload session {} opened for file {} by user {} ({} bytes in {} chunks)",
+                    session.getId(), fileName, username, totalSize, session.getChunkCount());
+            return toDTO(session);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(stagingFile);
+            throw e;
+        }
+    }
+
+    public Optional<UploadSessionDTO> getSession(String sessionId, String username) {
+        return uploadSessionRepository.findByIdAndOwner(sessionId, username).map(this::toDTO);
+    }
+
+    /**
+     * Writes one chunk at its offset in the staging file. The body must be exactly the chunk's
+     * length: {@code chunkSize}, or the remainder for the last chunk. Chunks that were already
+     * received are acknowledged without reading the body again.
+     *
+     * @throws IllegalArgumentException if the chunk index or length does not match the session
+     * @throws IllegalStateException    if the session no longer accepts chunks
+     */
+    public Optional<UploadSessionDTO> writeChunk(String sessionId, String username, int chunkIndex, InputStream inputStream) throws IOException {
+        return writeChunk(sessionId, username, chunkIndex, inputStream, null);
+    }
+
+    /**
+     * Like {@link #writeChunk(String, String, int, InputStream)}, verifying the chunk against
+     * {@code checksum} while it is written.
+     *
+     * @throws ChunkChecksumException if the chunk does not match; it is not registered, so it can be resent
+     */
+    public Optional<UploadSessionDTO> writeChunk(String sessionId, String username, int chunkIndex, InputStream inputStream,
+                                                 ChunkChecksum checksum) throws IOException {
+        Optional<ChunkWrite> opened = openChunk(sessionId, username, chunkIndex, checksum);
+        if (opened.isEmpty()) {
+            return Optional.empty();
+        }
+        try (ChunkWrite chunk = opened.get()) {
+            if (!chunk.isAlreadyReceived()) {
+                // Fill the buffer before each write so a body that arrives in small socket reads
+                // still costs few system calls
+                byte[] buffer = new byte[(int) Math.max(1, Math.min(bufferSize, chunk.getLength()))];
+                int filled;
+                while ((filled = inputStream.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    chunk.write(ByteBuffer.wrap(buffer, 0, filled));
+                }
+            }
+            return Optional.of(completeChunk(chunk));
+        }
+    }
+
+    /**
+     * Opens one chunk for writing, for callers that receive the body in pieces: the body goes to
+     * {@link ChunkWrite#write(ByteBuffer)} and the chunk is then handed to {@link #completeChunk(ChunkWrite)}.
+     * A chunk that was already received needs no body.
+     *
+     * @throws IllegalArgumentException if the chunk index does not match the session
+     * @throws IllegalStateException    if the session no longer accepts chunks
+     */
+    public Optional<ChunkWrite> openChunk(String sessionId, String username, int chunkIndex, ChunkChecksum checksum) throws IOException {
+        Optional<UploadSession> found = uploadSessionRepository.findByIdAndOwner(sessionId, username);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession session = found.get();
+        if (session.getStatus() != UploadSessionStatus.OPEN) {
+            throw new IllegalStateException("Upload session is " + session.getStatus());
+        }
+        if (chunkIndex < 0 || chunkIndex >= session.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (session.getChunkCount() - 1));
+        }
+        boolean alreadyReceived = chunkIndexService.getChunks(sessionId, username).get(chunkIndex);
+        return Optional.of(new ChunkWrite(session, chunkIndex, checksum, alreadyReceived, transferMetrics));
+    }
+
+    /**
+     * Registers a chunk whose body has been written, and starts finalizing the session once it has
+     * all of its chunks.
+     *
+     * @throws IllegalArgumentException if the body was not exactly the chunk's length
+     * @throws ChunkChecksumException   if the chunk does not match; it is not registered, so it can be resent
+     */
+    public UploadSessionDTO completeChunk(ChunkWrite chunk) throws IOException {
+        UploadSession session = chunk.getSession();
+        if (!chunk.isAlreadyReceived()) {
+            try (Observation.Scope scope = chunk.getObservation().openScope()) {
+                chunk.verify();
+                if (chunkIndexService.register(session.getId(), session.getOwner(), chunk.getChunkIndex())) {
+                    logger.debug("Chunk {} written for upload session {}", chunk.getChunkIndex(), session.getId());
+                }
+            } catch (RuntimeException e) {
+                chunk.getObservation().error(e);
+                throw e;
+            }
+            transferMetrics.recordBytes(TransferMetrics.Operation.CHUNK, chunk.getLength());
+        }
+
+        // Chunks may have been registered on other nodes, which only the rows show
+        if (chunkIndexService.getChunks(session.getId(), session.getOwner()).cardinality() == session.getChunkCount()
+                || chunkIndexService.countStoredChunks(session.getId(), session.getOwner()) == session.getChunkCount()) {
+            String jobId = startFinalizing(session);
+            return toDTO(session, UploadSessionStatus.FINALIZING, jobId != null ? jobId : session.getJobId());
+        }
+        return toDTO(session);
+    }
+
+    public boolean abort(String sessionId, String username) throws IOException {
+        Optional<UploadSession> session = uploadSessionRepository.findByIdAndOwner(sessionId, username);
+        if (session.isEmpty()
+                || uploadSessionRepository.transition(sessionId, UploadSessionStatus.OPEN, UploadSessionStatus.ABORTED, LocalDateTime.now()) == 0) {
+            return false;
+        }
+
+        discardChunks(session.get());
+        logger.info("Upload session {} aborted by user {}", sessionId, username);
+        return true;
+    }
+
+    /**
+     * Aborts open sessions that have not received a chunk within the idle timeout and deletes their
+     * staging files.
+     */
+    @Scheduled(initialDelayString = "${upload.sessions.reap-interval-ms:600000}",
+            fixedDelayString = "${upload.sessions.reap-interval-ms:600000}")
+    public void abortIdleSessions() {
+        try {
+            LocalDateTime idleSince = LocalDateTime.now().minusNanos(idleTimeoutMs * 1_000_000);
+            String reason = "No chunk received for " + idleTimeoutMs / 60_000 + " minutes";
+            int aborted = 0;
+            for (UploadSession session : uploadSessionRepository.findIdle(idleSince, PageRequest.of(0, reapBatchSize))) {
+                // Skips sessions that received a chunk since they were listed
+                if (uploadSessionRepository.abortIdle(session.getId(), idleSince, reason, LocalDateTime.now()) > 0) {
+                    discardChunks(session);
+                    aborted++;
+                }
+            }
+            if (aborted > 0) {
+                logger.info("Aborted {} idle upload sessions", aborted);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to abort idle upload sessions: {}", e.getMessage(), e);
+        }
+    }
+
+    private void discardChunks(UploadSession session) throws IOException {
+        transactionTemplate.executeWithoutResult(status -> chunkIndexService.clear(session.getId(), session.getOwner()));
+        Files.deleteIfExists(Paths.get(session.getStagingPath()));
+    }
+
+    /**
+     * Returns the id of the finalization job, or {@code null} if another request started it.
+     */
+    private String startFinalizing(UploadSession session) {
+        String jobId = UUID.randomUUID().toString();
+        Boolean started = transactionTemplate.execute(status -> {
+            if (uploadSessionRepository.startFinalizing(session.getId(), jobId, LocalDateTime.now()) == 0) {
+                return false; // Another request delivered a last chunk at the same time
+            }
+            mergeJobService.queueUploadSession(jobId, session);
+            return true;
+        });
+
+        if (Boolean.TRUE.equals(started)) {
+            logger.info("All {} chunks received for upload session {}, finalizing in job {}", session.getChunkCount(), session.getId(), jobId);
+            mergeJobService.dispatchQueuedJobs();
+            return jobId;
+        }
+        return null;
+    }
+
+    private UploadSessionDTO toDTO(UploadSession session) {
+        return toDTO(session, session.getStatus(), session.getJobId());
+    }
+
+    private UploadSessionDTO toDTO(UploadSession session, UploadSessionStatus status, String jobId) {
+        int receivedChunks = session.getChunkCount();
+        List<int[]> receivedRanges = List.of();
+        if (status == UploadSessionStatus.OPEN) {
+            ChunkBitmap chunks = chunkIndexService.getStoredChunks(session.getId(), session.getOwner());
+            receivedChunks = chunks.cardinality();
+            receivedRanges = chunks.toRanges();
+        } else if (status == UploadSessionStatus.ABORTED) {
+            receivedChunks = 0;
+        }
+
+        return new UploadSessionDTO(session.getId(), session.getFileName(), status, session.getTotalSize(),
+                session.getChunkSize(), session.getChunkCount(), receivedChunks, receivedRanges, jobId,
+                session.getErrorMessage(), session.getCreatedAt(), session.getUpdatedAt());
+    }
+}
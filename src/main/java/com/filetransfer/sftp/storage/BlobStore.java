@@ -0,0 +1,62 @@
+package com.filetransfer.sftp.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Storage engine for file content. Implementations hand out references of the form
+ * {@code <scheme>:<id>} which are kept on {@link com.filetransfer.sftp.model.FileMetadata}.
+ */
+public interface BlobStore {
+
+    String getScheme();
+
+    /**
+     * Streams the content into the store through a bounded buffer, computing its SHA-256 on the way.
+     */
+    StoredBlob write(InputStream inputStream) throws IOException;
+
+    /**
+     * Stores the content of a file produced by {@link #newStagingFile()}. The file is consumed: stores
+     * on the same volume move it into place instead of copying it.
+     */
+    default StoredBlob importFile(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return write(inputStream);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Creates an empty file for assembling content that will be passed to {@link #importFile(Path)}.
+     */
+    default Path newStagingFile() throws IOException {
+        return Files.createTempFile("blob-", ".staging");
+    }
+
+    InputStream open(String blobRef) throws IOException;
+
+    /**
+     * Returns the local file backing the blob, if the store keeps one, so callers can use zero-copy I/O.
+     */
+    default Optional<Path> getLocalPath(String blobRef) {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns whether the blob is still stored.
+     */
+    default boolean exists(String blobRef) {
+        try (InputStream inputStream = open(blobRef)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void delete(String blobRef) throws IOException;
+}
@@ -0,0 +1,113 @@
+package com.filetransfer.sftp.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes blob references to the store that issued them. New content is always written to the
+ * store selected by {@code storage.blob-store}, compressed with {@code storage.compression.codec}
+ * unless that is {@code none}, while existing references keep resolving after either setting is
+ * changed.
+ * <p>
+ * With observations enabled, calls to the underlying stores are observed as {@code storage.blob}.
+ */
+@Component
+public class BlobStoreRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStoreRegistry.class);
+
+    private final Map<String, BlobStore> storesByScheme;
+    private final Map<String, CompressionCodec> codecsByName;
+    private final Map<String, CompressingBlobStore> compressingStores = new ConcurrentHashMap<>();
+    private final int bufferSize;
+    private final int sampleSize;
+    private final double maxRatio;
+    private final MeterRegistry meterRegistry;
+    private final BlobStore activeStore;
+
+    @Autowired
+    public BlobStoreRegistry(List<BlobStore> blobStores,
+                             List<CompressionCodec> codecs,
+                             ObjectProvider<MeterRegistry> meterRegistry,
+                             ObjectProvider<ObservationRegistry> observationRegistry,
+                             @Value("${storage.blob-store:fs}") String activeScheme,
+                             @Value("${storage.compression.codec:none}") String activeCodec,
+                             @Value("${storage.buffer-size:65536}") int bufferSize,
+                             @Value("${storage.compression.sample-size:65536}") int sampleSize,
+                             @Value("${storage.compression.max-ratio:0.9}") double maxRatio) {
+        this(blobStores, codecs, meterRegistry.getIfAvailable(), observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP),
+                activeScheme, activeCodec, bufferSize, sampleSize, maxRatio);
+    }
+
+    public BlobStoreRegistry(List<BlobStore> blobStores, List<CompressionCodec> codecs, MeterRegistry meterRegistry,
+                             ObservationRegistry observationRegistry, String activeScheme, String activeCodec,
+                             int bufferSize, int sampleSize, double maxRatio) {
+        this.storesByScheme = blobStores.stream()
+                .map(store -> observationRegistry.isNoop() ? store : new ObservedBlobStore(store, observationRegistry))
+                .collect(Collectors.toMap(BlobStore::getScheme, Function.identity()));
+        this.codecsByName = codecs.stream()
+                .collect(Collectors.toMap(CompressionCodec::getName, Function.identity()));
+        this.bufferSize = bufferSize;
+        this.sampleSize = sampleSize;
+        this.maxRatio = maxRatio;
+        this.meterRegistry = meterRegistry;
+
+        BlobStore store = storesByScheme.get(activeScheme);
+        if (store == null) {
+            throw new IllegalStateException("Unknown blob store: " + activeScheme + ", expected one of " + storesByScheme.keySet());
+        }
+        if (!"none".equals(activeCodec)) {
+            if (!codecsByName.containsKey(activeCodec)) {
+                throw new IllegalStateException("Unknown compression codec: " + activeCodec + ", expected none or one of " + codecsByName.keySet());
+            }
+            store = getCompressingStore(activeCodec, activeScheme);
+        }
+        this.activeStore = store;
+        logger.info("Using blob store: {}", activeStore.getScheme());
+    }
+
+    /**
+     * Registry without compression.
+     */
+    public BlobStoreRegistry(List<BlobStore> blobStores, String activeScheme) {
+        this(blobStores, List.of(), null, ObservationRegistry.NOOP, activeScheme, "none", 65536, 65536, 0.9);
+    }
+
+    public BlobStore getActiveStore() {
+        return activeStore;
+    }
+
+    public BlobStore getStore(String blobRef) {
+        int separator = blobRef.indexOf(':');
+        String scheme = separator > 0 ? blobRef.substring(0, separator) : "";
+        int plus = scheme.indexOf('+');
+        BlobStore store = plus > 0 && codecsByName.containsKey(scheme.substring(0, plus))
+                ? getCompressingStore(scheme.substring(0, plus), scheme.substring(plus + 1))
+                : storesByScheme.get(scheme);
+        if (store == null) {
+            throw new IllegalArgumentException("No blob store for reference: " + blobRef);
+        }
+        return store;
+    }
+
+    private CompressingBlobStore getCompressingStore(String codec, String scheme) {
+        BlobStore delegate = storesByScheme.get(scheme);
+        if (delegate == null) {
+            return null;
+        }
+        return compressingStores.computeIfAbsent(codec + "+" + scheme, key -> new CompressingBlobStore(
+                codecsByName.get(codec), delegate, bufferSize, sampleSize, maxRatio, meterRegistry));
+    }
+}
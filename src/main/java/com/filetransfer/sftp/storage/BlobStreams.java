@@ -0,0 +1,45 @@
+package com.filetransfer.sftp.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Copy helpers shared by the blob stores.
+ */
+public final class BlobStreams {
+
+    private BlobStreams() {
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /**
+     * Copies the input to the output through a buffer of {@code bufferSize} bytes, updating the digest
+     * with every byte copied. Returns the number of bytes copied.
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream, MessageDigest digest, int bufferSize) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            outputStream.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+}
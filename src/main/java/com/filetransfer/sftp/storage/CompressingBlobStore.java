@@ -0,0 +1,181 @@
+package com.filetransfer.sftp.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compresses content on its way into another store. References look like {@code zstd+fs:<id>},
+ * so the codec needed to read a blob is part of the reference and blobs stay readable after the
+ * configured codec changes. Content whose first {@code sampleSize} bytes do not compress below
+ * {@code maxRatio} of their size is passed through uncompressed and keeps the plain reference of
+ * the underlying store.
+ * <p>
+ * Sizes and checksums of the returned {@link StoredBlob} always describe the uncompressed
+ * content, so deduplication and ETags do not depend on the codec.
+ */
+public class CompressingBlobStore implements BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressingBlobStore.class);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final CompressionCodec codec;
+    private final BlobStore delegate;
+    private final int bufferSize;
+    private final int sampleSize;
+    private final double maxRatio;
+    private final MeterRegistry meterRegistry;
+
+    public CompressingBlobStore(CompressionCodec codec, BlobStore delegate, int bufferSize, int sampleSize,
+                                double maxRatio, MeterRegistry meterRegistry) {
+        this.codec = codec;
+        this.delegate = delegate;
+        this.bufferSize = bufferSize;
+        this.sampleSize = sampleSize;
+        this.maxRatio = maxRatio;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String getScheme() {
+        return codec.getName() + "+" + delegate.getScheme();
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public StoredBlob write(InputStream inputStream) throws IOException {
+        byte[] sample = inputStream.readNBytes(sampleSize);
+        if (!isCompressible(sample)) {
+            return delegate.write(new SequenceInputStream(new ByteArrayInputStream(sample), inputStream));
+        }
+
+        Path stagingFile = delegate.newStagingFile();
+        try {
+            long cpuStart = THREADS.getCurrentThreadCpuTime();
+            MessageDigest digest = BlobStreams.newSha256();
+            long size;
+            try (OutputStream outputStream = codec.compress(new BufferedOutputStream(Files.newOutputStream(stagingFile), bufferSize))) {
+                digest.update(sample);
+                outputStream.write(sample);
+                size = sample.length + BlobStreams.copy(inputStream, outputStream, digest, bufferSize);
+            }
+            long cpuNanos = THREADS.getCurrentThreadCpuTime() - cpuStart;
+            long compressedSize = Files.size(stagingFile);
+
+            StoredBlob stored = delegate.importFile(stagingFile);
+            String blobRef = getScheme() + stored.getBlobRef().substring(delegate.getScheme().length());
+            record(blobRef, size, compressedSize, cpuNanos);
+            return new StoredBlob(blobRef, size, BlobStreams.toHex(digest.digest()));
+        } finally {
+            Files.deleteIfExists(stagingFile);
+        }
+    }
+
+    /**
+     * Samples the staged file first, so incompressible content is still moved into place without
+     * being copied.
+     */
+    @Override
+    public StoredBlob importFile(Path file) throws IOException {
+        byte[] sample;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            sample = inputStream.readNBytes(sampleSize);
+        }
+        if (!isCompressible(sample)) {
+            return delegate.importFile(file);
+        }
+
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return write(inputStream);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public Path newStagingFile() throws IOException {
+        return delegate.newStagingFile();
+    }
+
+    @Override
+    public InputStream open(String blobRef) throws IOException {
+        return codec.decompress(openCompressed(blobRef));
+    }
+
+    /**
+     * Opens the compressed bytes as stored, for clients that accept the codec's content-coding.
+     */
+    public InputStream openCompressed(String blobRef) throws IOException {
+        return delegate.open(toDelegateRef(blobRef));
+    }
+
+    /**
+     * Returns the local file holding the compressed bytes, if the underlying store keeps one.
+     */
+    public Optional<Path> getCompressedLocalPath(String blobRef) {
+        return delegate.getLocalPath(toDelegateRef(blobRef));
+    }
+
+    @Override
+    public boolean exists(String blobRef) {
+        return delegate.exists(toDelegateRef(blobRef));
+    }
+
+    @Override
+    public void delete(String blobRef) throws IOException {
+        delegate.delete(toDelegateRef(blobRef));
+    }
+
+    private String toDelegateRef(String blobRef) {
+        if (!blobRef.startsWith(getScheme() + ":")) {
+            throw new IllegalArgumentException("Not a " + getScheme() + " blob: " + blobRef);
+        }
+        return delegate.getScheme() + blobRef.substring(getScheme().length());
+    }
+
+    private boolean isCompressible(byte[] sample) throws IOException {
+        if (sample.length == 0) {
+            return false;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(sample.length);
+        try (OutputStream outputStream = codec.compress(compressed)) {
+            outputStream.write(sample);
+        }
+        boolean compressible = compressed.size() <= sample.length * maxRatio;
+        if (!compressible && meterRegistry != null) {
+            meterRegistry.counter("storage.compression.skipped", "codec", codec.getName()).increment();
+        }
+        return compressible;
+    }
+
+    private void record(String blobRef, long size, long compressedSize, long cpuNanos) {
+        double ratio = compressedSize == 0 ? 1.0 : (double) size / compressedSize;
+        logger.debug("Compressed blob {} with {}: {} -> {} bytes ({}x) in {} ms CPU",
+                blobRef, codec.getName(), size, compressedSize, String.format("%.2f", ratio), cpuNanos / 1_000_000);
+        if (meterRegistry == null) {
+            return;
+        }
+        meterRegistry.summary("storage.compression.ratio", "codec", codec.getName()).record(ratio);
+        meterRegistry.timer("storage.compression.cpu", "codec", codec.getName()).record(cpuNanos, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("storage.compression.bytes.in", "codec", codec.getName()).increment(size);
+        meterRegistry.counter("storage.compression.bytes.out", "codec", codec.getName()).increment(compressedSize);
+    }
+}
@@ -0,0 +1,26 @@
+package com.filetransfer.sftp.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streaming compression format used by {@link CompressingBlobStore}.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Name used in blob references, e.g. {@code zstd} in {@code zstd+fs:<id>}.
+     */
+    String getName();
+
+    /**
+     * HTTP content-coding of the compressed bytes, or {@code null} if there is no registered one and
+     * the content always has to be decompressed for clients.
+     */
+    String getContentEncoding();
+
+    OutputStream compress(OutputStream outputStream) throws IOException;
+
+    InputStream decompress(InputStream inputStream) throws IOException;
+}
@@ -0,0 +1,147 @@
+package com.filetransfer.sftp.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store on the local filesystem. Blobs live under {@code objects/ab/<sha256>},
+ * so identical content is only ever stored once.
+ */
+@Component
+public class FileSystemBlobStore implements BlobStore {
+
+    public static final String SCHEME = "fs";
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemBlobStore.class);
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+    private final int bufferSize;
+
+    public FileSystemBlobStore(@Value("${storage.root:storage}") String root,
+                               @Value("${storage.buffer-size:65536}") int bufferSize) {
+        this.root = Paths.get(root);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public StoredBlob write(InputStream inputStream) throws IOException {
+        Path tempDirectory = root.resolve("tmp");
+        Files.createDirectories(tempDirectory);
+        Path temp = tempDirectory.resolve(UUID.randomUUID().toString());
+
+        try {
+            MessageDigest digest = BlobStreams.newSha256();
+            long size;
+            try (OutputStream outputStream = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                size = BlobStreams.copy(inputStream, outputStream, digest, bufferSize);
+            }
+
+            String checksum = BlobStreams.toHex(digest.digest());
+            moveIntoPlace(temp, checksum);
+            return new StoredBlob(SCHEME + ":" + checksum, size, checksum);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Hashes the staged file in one sequential pass and renames it into place, so merged uploads are
+     * never copied a second time.
+     */
+    @Override
+    public StoredBlob importFile(Path file) throws IOException {
+        try {
+            MessageDigest digest = BlobStreams.newSha256();
+            long size = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(buffer)) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                    size += read;
+                }
+            }
+            String checksum = BlobStreams.toHex(digest.digest());
+            moveIntoPlace(file, checksum);
+            return new StoredBlob(SCHEME + ":" + checksum, size, checksum);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public Path newStagingFile() throws IOException {
+        Path tempDirectory = root.resolve("tmp");
+        Files.createDirectories(tempDirectory);
+        return Files.createFile(tempDirectory.resolve(UUID.randomUUID().toString()));
+    }
+
+    @Override
+    public InputStream open(String blobRef) throws IOException {
+        return Files.newInputStream(resolve(blobRef));
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String blobRef) {
+        return Optional.of(resolve(blobRef));
+    }
+
+    @Override
+    public boolean exists(String blobRef) {
+        return Files.exists(resolve(blobRef));
+    }
+
+    @Override
+    public void delete(String blobRef) throws IOException {
+        Files.deleteIfExists(resolve(blobRef));
+    }
+
+    private void moveIntoPlace(Path file, String checksum) throws IOException {
+        Path target = objectPath(checksum);
+        if (Files.exists(target)) {
+            logger.debug("Blob {} already stored, discarding duplicate copy", checksum);
+            Files.delete(file);
+        } else {
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private Path resolve(String blobRef) {
+        String checksum = blobRef.startsWith(SCHEME + ":") ? blobRef.substring(SCHEME.length() + 1) : "";
+        if (!SHA256_HEX.matcher(checksum).matches()) {
+            throw new IllegalArgumentException("Invalid filesystem blob reference: " + blobRef);
+        }
+        return objectPath(checksum);
+    }
+
+    private Path objectPath(String checksum) {
+        return root.resolve("objects").resolve(checksum.substring(0, 2)).resolve(checksum);
+    }
+}
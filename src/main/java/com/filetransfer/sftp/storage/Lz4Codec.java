@@ -0,0 +1,37 @@
+package com.filetransfer.sftp.storage;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LZ4 frame format. Fastest of the codecs, but browsers and HTTP clients cannot decode it, so
+ * downloads are always decompressed on the server.
+ */
+@Component
+public class Lz4Codec implements CompressionCodec {
+
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) throws IOException {
+        return new LZ4FrameOutputStream(outputStream);
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) throws IOException {
+        return new LZ4FrameInputStream(inputStream);
+    }
+}
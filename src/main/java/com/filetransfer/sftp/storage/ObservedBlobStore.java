@@ -0,0 +1,72 @@
+package com.filetransfer.sftp.storage;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Runs every call to a blob store as a {@code storage.blob} observation tagged with the store and the
+ * operation, so storage time shows up as a timer and as spans. Reads are observed until the stream is
+ * open, not while the caller consumes it.
+ */
+class ObservedBlobStore implements BlobStore {
+
+    private final BlobStore delegate;
+    private final ObservationRegistry observationRegistry;
+
+    ObservedBlobStore(BlobStore delegate, ObservationRegistry observationRegistry) {
+        this.delegate = delegate;
+        this.observationRegistry = observationRegistry;
+    }
+
+    private Observation observation(String operation) {
+        return Observation.createNotStarted("storage.blob", observationRegistry)
+                .contextualName("blob " + operation)
+                .lowCardinalityKeyValue("store", delegate.getScheme())
+                .lowCardinalityKeyValue("operation", operation);
+    }
+
+    @Override
+    public String getScheme() {
+        return delegate.getScheme();
+    }
+
+    @Override
+    public StoredBlob write(InputStream inputStream) throws IOException {
+        return observation("write").observeChecked(() -> delegate.write(inputStream));
+    }
+
+    @Override
+    public StoredBlob importFile(Path file) throws IOException {
+        return observation("import").observeChecked(() -> delegate.importFile(file));
+    }
+
+    @Override
+    public Path newStagingFile() throws IOException {
+        return delegate.newStagingFile();
+    }
+
+    @Override
+    public InputStream open(String blobRef) throws IOException {
+        return observation("open").observeChecked(() -> delegate.open(blobRef));
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String blobRef) {
+        return delegate.getLocalPath(blobRef);
+    }
+
+    @Override
+    public boolean exists(String blobRef) {
+        return delegate.exists(blobRef);
+    }
+
+    @Override
+    public void delete(String blobRef) throws IOException {
+        observation("delete").observeChecked(() -> delegate.delete(blobRef));
+    }
+}
@@ -0,0 +1,156 @@
+package com.filetransfer.sftp.storage;
+
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Stores content as PostgreSQL large objects, which are streamed in pages instead of living in
+ * the {@code file_metadata} row. Large objects can only be accessed inside a transaction, so an
+ * open stream keeps its own connection until it is closed.
+ */
+@Component
+public class PostgresLargeObjectBlobStore implements BlobStore {
+
+    public static final String SCHEME = "pglo";
+
+    private final DataSource dataSource;
+    private final int bufferSize;
+
+    public PostgresLargeObjectBlobStore(DataSource dataSource, @Value("${storage.buffer-size:65536}") int bufferSize) {
+        this.dataSource = dataSource;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public StoredBlob write(InputStream inputStream) throws IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                LargeObjectManager largeObjects = connection.unwrap(PGConnection.class).getLargeObjectAPI();
+                long oid = largeObjects.createLO(LargeObjectManager.READWRITE);
+
+                MessageDigest digest = BlobStreams.newSha256();
+                long size;
+                try (LargeObject largeObject = largeObjects.open(oid, LargeObjectManager.WRITE);
+                     OutputStream outputStream = largeObject.getOutputStream()) {
+                    size = BlobStreams.copy(inputStream, outputStream, digest, bufferSize);
+                }
+
+                connection.commit();
+                String checksum = BlobStreams.toHex(digest.digest());
+                return new StoredBlob(SCHEME + ":" + oid, size, checksum);
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to write large object", e);
+        }
+    }
+
+    @Override
+    public InputStream open(String blobRef) throws IOException {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            LargeObject largeObject = connection.unwrap(PGConnection.class)
+                    .getLargeObjectAPI()
+                    .open(parseOid(blobRef), LargeObjectManager.READ);
+            return new LargeObjectInputStream(connection, largeObject);
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(connection);
+            throw new IOException("Failed to open large object " + blobRef, e);
+        }
+    }
+
+    @Override
+    public void delete(String blobRef) throws IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                connection.unwrap(PGConnection.class).getLargeObjectAPI().unlink(parseOid(blobRef));
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to delete large object " + blobRef, e);
+        }
+    }
+
+    private long parseOid(String blobRef) {
+        if (!blobRef.startsWith(SCHEME + ":")) {
+            throw new IllegalArgumentException("Invalid large object reference: " + blobRef);
+        }
+        return Long.parseLong(blobRef.substring(SCHEME.length() + 1));
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+            connection.close();
+        } catch (SQLException ignored) {
+            // The connection is being discarded after a failure already reported to the caller
+        }
+    }
+
+    /**
+     * Releases the large object and its connection when the caller closes the stream.
+     */
+    private static class LargeObjectInputStream extends FilterInputStream {
+
+        private final Connection connection;
+        private final LargeObject largeObject;
+
+        LargeObjectInputStream(Connection connection, LargeObject largeObject) throws SQLException {
+            super(largeObject.getInputStream());
+            this.connection = connection;
+            this.largeObject = largeObject;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+                largeObject.close();
+                connection.commit();
+            } catch (SQLException e) {
+                throw new IOException("Failed to close large object", e);
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new IOException("Failed to release large object connection", e);
+                }
+            }
+        }
+    }
+}
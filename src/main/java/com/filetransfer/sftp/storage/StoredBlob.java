@@ -0,0 +1,31 @@
+package com.filetransfer.sftp.storage;
+
+/**
+ * Result of writing content to a {@link BlobStore}.
+ */
+public class StoredBlob {
+    private final String blobRef;
+    private final long size;
+    private final String checksum;
+
+    public StoredBlob(String blobRef, long size, String checksum) {
+        this.blobRef = blobRef;
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    public String getBlobRef() {
+        return blobRef;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * SHA-256 of the content, hex encoded.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+}
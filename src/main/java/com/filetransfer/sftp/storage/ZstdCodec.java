@@ -0,0 +1,40 @@
+package com.filetransfer.sftp.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+@Component
+public class ZstdCodec implements CompressionCodec {
+
+    private final int level;
+
+    public ZstdCodec(@Value("${storage.compression.zstd-level:3}") int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return "zstd";
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return "zstd";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) throws IOException {
+        return new ZstdOutputStream(outputStream, level);
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) throws IOException {
+        return new ZstdInputStream(inputStream);
+    }
+}
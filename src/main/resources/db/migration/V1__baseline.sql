@@ -0,0 +1,30 @@
+-- Schema as created by Hibernate's ddl-auto=update before storage and uploads were reworked. Existing
+-- databases are baselined at this version (spring.flyway.baseline-on-migrate) and skip it; everything
+-- added since is in the later migrations.
+
+create table users (
+    id bigint generated by default as identity,
+    username varchar(255),
+    password varchar(255),
+    role varchar(255),
+    primary key (id)
+);
+
+create table file_metadata (
+    id bigint generated by default as identity,
+    file_name varchar(255) not null unique,
+    owner varchar(255) not null,
+    file_size bigint not null,
+    uploaded_at timestamp(6) not null,
+    file_data bytea not null,
+    primary key (id),
+    unique (file_name, owner)
+);
+
+create table uploaded_chunks (
+    id bigint generated by default as identity,
+    file_name varchar(255) not null,
+    chunk_index integer not null,
+    username varchar(255) not null,
+    primary key (id)
+);
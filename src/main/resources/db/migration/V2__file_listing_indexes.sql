@@ -0,0 +1,4 @@
+-- Keyset-paginated file listing, newest first or by name. Each index holds every column the listing
+-- selects, filters on and sorts by, so a page is read from the index alone however deep it is.
+create index idx_file_metadata_owner_uploaded_at on file_metadata (owner, uploaded_at, file_name, file_size);
+create index idx_file_metadata_owner_file_name on file_metadata (owner, file_name, uploaded_at, file_size);
@@ -0,0 +1,3 @@
+-- Content is stored in the blob store and file_data only holds content that has not been moved there
+-- yet. ddl-auto=update never dropped the NOT NULL that file_data was created with.
+alter table file_metadata alter column file_data drop not null;
@@ -0,0 +1,72 @@
+-- Blob-backed content, deduplication, chunk bitmaps, upload sessions, merge jobs and SFTP keys. Databases
+-- that an earlier build had already extended with ddl-auto=update have some of these, hence "if not exists".
+
+alter table file_metadata add column if not exists blob_ref varchar(255);
+alter table file_metadata add column if not exists content_length bigint;
+alter table file_metadata add column if not exists checksum varchar(255);
+
+create table if not exists user_public_keys (
+    id bigint generated by default as identity,
+    username varchar(255) not null,
+    key_type varchar(255) not null,
+    public_key varchar(8192) not null,
+    fingerprint varchar(128) not null,
+    comment varchar(255),
+    created_at timestamp(6) not null,
+    primary key (id),
+    unique (username, fingerprint)
+);
+
+create table if not exists content_blobs (
+    blob_ref varchar(255) not null,
+    checksum varchar(64) not null,
+    content_length bigint not null,
+    ref_count bigint not null,
+    updated_at timestamp(6) not null,
+    primary key (blob_ref)
+);
+create index if not exists idx_content_blobs_checksum on content_blobs (checksum, content_length);
+create index if not exists idx_content_blobs_ref_count on content_blobs (ref_count, updated_at);
+
+create table if not exists chunk_upload_state (
+    id bigint generated by default as identity,
+    file_name varchar(255) not null,
+    username varchar(255) not null,
+    chunk_count integer not null,
+    bitmap bytea not null,
+    updated_at timestamp(6) not null,
+    primary key (id),
+    unique (file_name, username)
+);
+
+create table if not exists upload_sessions (
+    id varchar(255) not null,
+    file_name varchar(255) not null,
+    owner varchar(255) not null,
+    total_size bigint not null,
+    chunk_size integer not null,
+    chunk_count integer not null,
+    checksum varchar(255),
+    staging_path varchar(1024) not null,
+    status varchar(255) not null check (status in ('OPEN','FINALIZING','COMPLETED','FAILED','ABORTED')),
+    job_id varchar(255),
+    error_message varchar(255),
+    created_at timestamp(6) not null,
+    updated_at timestamp(6) not null,
+    primary key (id)
+);
+
+create table if not exists merge_jobs (
+    id varchar(255) not null,
+    file_name varchar(255) not null,
+    owner varchar(255) not null,
+    status varchar(255) not null check (status in ('QUEUED','RUNNING','COMPLETED','FAILED')),
+    bytes_merged bigint not null,
+    total_bytes bigint,
+    error_message varchar(255),
+    upload_session_id varchar(255),
+    created_at timestamp(6) not null,
+    updated_at timestamp(6) not null,
+    primary key (id)
+);
+create index if not exists idx_merge_jobs_status on merge_jobs (status, created_at);
@@ -0,0 +1,25 @@
+-- Received chunks are stored as one row per range of 4096 chunks instead of one row per upload, so
+-- registering a chunk rewrites at most 512 bytes of bitmap. An existing row becomes the range that starts
+-- at chunk 0; it still holds every chunk of its upload, and later ranges are added to it.
+
+create table chunk_upload_state_v4 as
+select file_name, username, chunk_count, bitmap, updated_at from chunk_upload_state;
+
+drop table chunk_upload_state;
+
+create table chunk_upload_state (
+    id bigint generated by default as identity,
+    file_name varchar(255) not null,
+    username varchar(255) not null,
+    first_chunk integer not null,
+    chunk_count integer not null,
+    bitmap bytea not null,
+    updated_at timestamp(6) not null,
+    primary key (id),
+    unique (file_name, username, first_chunk)
+);
+
+insert into chunk_upload_state (file_name, username, first_chunk, chunk_count, bitmap, updated_at)
+select file_name, username, 0, chunk_count, bitmap, updated_at from chunk_upload_state_v4;
+
+drop table chunk_upload_state_v4;
@@ -0,0 +1,5 @@
+-- Each merge queued through /merge-chunks holds one of its owner's admission.merge.per-user slots until it
+-- finishes. The unique index makes taking a slot atomic, so concurrent requests cannot exceed the limit.
+
+alter table merge_jobs add column user_slot integer;
+create unique index uk_merge_jobs_user_slot on merge_jobs (owner, user_slot);
@@ -0,0 +1,4 @@
+-- The blob an upload session's staging file was stored as. Importing consumes the staging file, so a
+-- finalization that is retried after the import, e.g. because its node stopped, continues from here.
+
+alter table upload_sessions add column blob_ref varchar(255);
@@ -0,0 +1,43 @@
+package com.filetransfer.sftp.config;
+
+import org.apache.sshd.core.CoreModuleProperties;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.sftp.SftpModuleProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SftpTransportSettingsTests {
+
+    @Test
+    void appliesSizesAndAlgorithmsInPreferenceOrder() {
+        SshServer server = SshServer.setUpDefaultServer();
+        new SftpTransportSettings(4, 16_777_216, 65_536, 131_072, 131_072,
+                List.of("aes128-gcm@openssh.com", " chacha20-poly1305@openssh.com", "no-such-cipher"),
+                List.of("hmac-sha2-256-etm@openssh.com")).apply(server);
+
+        assertEquals(4, CoreModuleProperties.NIO_WORKERS.getRequired(server));
+        assertEquals(16_777_216L, CoreModuleProperties.WINDOW_SIZE.getRequired(server));
+        assertEquals(65_536L, CoreModuleProperties.MAX_PACKET_SIZE.getRequired(server));
+        assertEquals(131_072, SftpModuleProperties.MAX_READDATA_PACKET_LENGTH.getRequired(server));
+        assertEquals(131_072, SftpModuleProperties.MAX_WRITEDATA_PACKET_LENGTH.getRequired(server));
+        assertEquals("aes128-gcm@openssh.com,chacha20-poly1305@openssh.com", server.getCipherFactoriesNameList());
+        assertEquals("hmac-sha2-256-etm@openssh.com", server.getMacFactoriesNameList());
+    }
+
+    @Test
+    void emptyListsKeepTheDefaultsAndUnsupportedListsAreRejected() {
+        SshServer server = SshServer.setUpDefaultServer();
+        String defaultCiphers = server.getCipherFactoriesNameList();
+        new SftpTransportSettings(0, 2_097_152, 32_768, 64_512, 262_144, List.of(), List.of("")).apply(server);
+
+        assertEquals(defaultCiphers, server.getCipherFactoriesNameList());
+
+        SftpTransportSettings unsupported = new SftpTransportSettings(0, 2_097_152, 32_768, 64_512, 262_144,
+                List.of("no-such-cipher"), List.of());
+        assertThrows(IllegalStateException.class, () -> unsupported.apply(SshServer.setUpDefaultServer()));
+    }
+}
@@ -0,0 +1,315 @@
+package com.filetransfer.sftp.controller;
+
+import com.filetransfer.sftp.dto.UploadSessionDTO;
+import com.filetransfer.sftp.exception.GlobalExceptionHandler;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.repository.ChunkUploadStateRepository;
+import com.filetransfer.sftp.repository.MergeJobRepository;
+import com.filetransfer.sftp.repository.UploadSessionRepository;
+import com.filetransfer.sftp.service.AdmissionControl;
+import com.filetransfer.sftp.service.ChunkIndexService;
+import com.filetransfer.sftp.service.ChunkStateWriter;
+import com.filetransfer.sftp.service.FileStorageService;
+import com.filetransfer.sftp.service.MergeJobService;
+import com.filetransfer.sftp.service.TransferMetrics;
+import com.filetransfer.sftp.service.UploadSessionService;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.FileSystemBlobStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Raw PUT chunks, with the body delivered the way a container with non-blocking I/O delivers it: the
+ * test hands over what the client has sent and calls the read listener, then dispatches the result.
+ */
+@ExtendWith(MockitoExtension.class)
+class FileTransferControllerTests {
+
+    @Mock
+    UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    ChunkUploadStateRepository chunkUploadStateRepository;
+
+    @Mock
+    ChunkStateWriter chunkStateWriter;
+
+    @Mock
+    MergeJobService mergeJobService;
+
+    @TempDir
+    Path storageRoot;
+
+    ChunkIndexService chunkIndexService;
+
+    UploadSessionService uploadSessionService;
+
+    AdmissionControl admissionControl;
+
+    ChunkBody body;
+
+    MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        FileSystemBlobStore blobStore = new FileSystemBlobStore(storageRoot.toString(), 65536);
+        chunkIndexService = new ChunkIndexService(chunkUploadStateRepository, chunkStateWriter);
+        uploadSessionService = new UploadSessionService(uploadSessionRepository, chunkIndexService, mergeJobService,
+                new BlobStoreRegistry(List.of(blobStore), FileSystemBlobStore.SCHEME),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), TransferMetrics.NONE, 3);
+        admissionControl = new AdmissionControl(mock(MergeJobRepository.class),
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class),
+                true, 200, 5000, 2.0, 2, 32, 4, 4, 128, 16, 100, 4);
+        FileTransferController controller = new FileTransferController(mock(FileStorageService.class), mergeJobService,
+                uploadSessionService, TransferMetrics.NONE, admissionControl, 3);
+
+        body = new ChunkBody();
+        Filter nonBlockingBody = (request, response, chain) -> chain.doFilter(
+                new HttpServletRequestWrapper((HttpServletRequest) request) {
+                    @Override
+                    public ServletInputStream getInputStream() {
+                        return body;
+                    }
+                }, response);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .addFilters(nonBlockingBody)
+                .build();
+    }
+
+    private UploadSession openSession(long totalSize, int chunkSize) throws Exception {
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        UploadSessionDTO created = uploadSessionService.create("data.bin", "alice", totalSize, chunkSize, null);
+
+        ArgumentCaptor<UploadSession> saved = ArgumentCaptor.forClass(UploadSession.class);
+        verify(uploadSessionRepository).save(saved.capture());
+        UploadSession session = saved.getValue();
+        assertEquals(created.getUploadId(), session.getId());
+        when(uploadSessionRepository.findByIdAndOwner(session.getId(), "alice")).thenReturn(Optional.of(session));
+        return session;
+    }
+
+    private MvcResult putChunk(UploadSession session, int chunkIndex, String crc32c) throws Exception {
+        var request = put("/api/files/uploads/{uploadId}/chunks/{chunkIndex}", session.getId(), chunkIndex)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .principal(new UsernamePasswordAuthenticationToken("alice", null, List.of()));
+        if (crc32c != null) {
+            request.param("crc32c", crc32c);
+        }
+        return mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @Test
+    void chunkBodyIsWrittenAsItArrives() throws Exception {
+        UploadSession session = openSession(10, 4);
+        MvcResult result = putChunk(session, 0, null);
+
+        body.receive("01");
+        body.receive("23");
+        body.end();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+        assertEquals("0123", Files.readString(Paths.get(session.getStagingPath())).substring(0, 4));
+        assertTrue(chunkIndexService.getChunks(session.getId(), "alice").get(0));
+    }
+
+    @Test
+    void admittedChunkIsNotTurnedAwayWhileItsBodyArrives() throws Exception {
+        UploadSession session = openSession(10, 4);
+        MvcResult result = putChunk(session, 0, null);
+
+        // All of the user's chunk slots are taken once the body has started
+        body.receive("01");
+        for (int i = 0; i < 16; i++) {
+            admissionControl.admit(AdmissionControl.Operation.CHUNK, "alice");
+        }
+        body.receive("23");
+        body.end();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+        assertTrue(chunkIndexService.getChunks(session.getId(), "alice").get(0));
+    }
+
+    @Test
+    void chunkBodyLongerThanTheChunkIsRejected() throws Exception {
+        UploadSession session = openSession(10, 4);
+        MvcResult result = putChunk(session, 0, null);
+
+        body.receive("01234");
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest());
+        assertFalse(chunkIndexService.getChunks(session.getId(), "alice").get(0));
+    }
+
+    @Test
+    void chunkCutOffByTheClientIsRejected() throws Exception {
+        UploadSession session = openSession(10, 4);
+        MvcResult result = putChunk(session, 0, null);
+
+        body.receive("01");
+        body.fail(new EOFException("Connection reset by peer"));
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest());
+        assertFalse(chunkIndexService.getChunks(session.getId(), "alice").get(0));
+    }
+
+    @Test
+    void chunkNotReceivedInTimeIsAnsweredWithRequestTimeout() throws Exception {
+        UploadSession session = openSession(10, 4);
+        MvcResult result = putChunk(session, 0, null);
+
+        body.receive("01");
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isRequestTimeout());
+        assertFalse(chunkIndexService.getChunks(session.getId(), "alice").get(0));
+    }
+
+    @Test
+    void chunkThatFailsItsChecksumIsAnsweredAsRetryable() throws Exception {
+        UploadSession session = openSession(10, 4);
+        CRC32C crc = new CRC32C();
+        crc.update("0123".getBytes(StandardCharsets.UTF_8));
+        MvcResult result = putChunk(session, 0, String.format("%08x", crc.getValue()));
+
+        body.receive("0X23");
+        body.end();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.chunkIndex").value(0))
+                .andExpect(jsonPath("$.retryable").value(true));
+        assertFalse(chunkIndexService.getChunks(session.getId(), "alice").get(0));
+    }
+
+    @Test
+    void storedEncodingIsSentOnlyWhenTheClientAcceptsIt() {
+        assertTrue(FileTransferController.acceptsEncoding("gzip, deflate", "gzip"));
+        assertTrue(FileTransferController.acceptsEncoding("br;q=1.0, GZIP;q=0.5", "gzip"));
+        assertTrue(FileTransferController.acceptsEncoding("*", "gzip"));
+        assertTrue(FileTransferController.acceptsEncoding("*;q=0, gzip", "gzip"));
+        assertFalse(FileTransferController.acceptsEncoding(null, "gzip"));
+        assertFalse(FileTransferController.acceptsEncoding("identity", "gzip"));
+        assertFalse(FileTransferController.acceptsEncoding("gzip;q=0", "gzip"));
+        assertFalse(FileTransferController.acceptsEncoding("*;q=0.000", "gzip"));
+        // The coding's own entry overrides the wildcard, wherever it appears
+        assertFalse(FileTransferController.acceptsEncoding("*, gzip;q=0", "gzip"));
+        assertFalse(FileTransferController.acceptsEncoding("gzip; q=0, *", "gzip"));
+    }
+
+    /**
+     * Request body that only holds what the client has sent so far, as a non-blocking container
+     * stream does: it is not ready once that has been read, until more arrives.
+     */
+    static class ChunkBody extends ServletInputStream {
+
+        private ReadListener listener;
+        private byte[] received = new byte[0];
+        private int position;
+        private boolean finished;
+
+        void receive(String data) throws Exception {
+            received = data.getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            listener.onDataAvailable();
+        }
+
+        void end() throws Exception {
+            finished = true;
+            listener.onAllDataRead();
+        }
+
+        void fail(Throwable t) {
+            listener.onError(t);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished && position == received.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return position < received.length || finished;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            listener = readListener;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == received.length) {
+                if (!finished) {
+                    throw new IllegalStateException("Read while the stream was not ready");
+                }
+                return -1;
+            }
+            int count = Math.min(len, received.length - position);
+            System.arraycopy(received, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.filetransfer.sftp.filesystem;
+
+import com.filetransfer.sftp.model.FileMetadata;
+import com.filetransfer.sftp.service.FileStorageService;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StorageFileSystemProviderTests {
+
+    @Mock
+    FileStorageService fileStorageService;
+
+    @TempDir
+    Path storageRoot;
+
+    StorageFileSystem fileSystem;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = new StorageFileSystemProvider(fileStorageService, 1024 * 1024).newFileSystem("alice");
+        lenient().when(fileStorageService.getFile(any(), eq("alice"))).thenReturn(Optional.empty());
+        lenient().when(fileStorageService.newStagingFile()).thenAnswer(invocation -> Files.createTempFile(storageRoot, "staging-", ".tmp"));
+    }
+
+    @Test
+    void writesAreStagedAndStoredWhenTheFileIsClosed() throws Exception {
+        AtomicReference<String> stored = new AtomicReference<>();
+        doAnswer(invocation -> {
+            Path stagingFile = invocation.getArgument(0);
+            stored.set(Files.readString(stagingFile));
+            Files.delete(stagingFile);
+            return null;
+        }).when(fileStorageService).saveStagedFile(any(), eq("report.csv"), eq("alice"));
+
+        Path file = fileSystem.getPath("/report.csv");
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Pipelined clients may deliver later offsets first
+            channel.position(5).write(ByteBuffer.wrap("world".getBytes(StandardCharsets.UTF_8)));
+            channel.position(0).write(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)));
+
+            assertEquals(10, Files.size(file));
+            verify(fileStorageService, never()).saveStagedFile(any(), any(), any());
+            closedByClient(channel);
+        }
+
+        assertEquals("helloworld", stored.get());
+        try (Stream<Path> staging = Files.list(storageRoot)) {
+            assertEquals(0, staging.count());
+        }
+    }
+
+    @Test
+    void uploadClosedWithoutTheClientClosingItIsDiscarded() throws Exception {
+        Path file = fileSystem.getPath("/report.csv");
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("partial".getBytes(StandardCharsets.UTF_8)));
+            // The session is lost: the subsystem closes the handle without a closing event
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("partial".getBytes(StandardCharsets.UTF_8)));
+            FileHandle handle = mock(FileHandle.class);
+            when(handle.getFileChannel()).thenReturn(channel);
+            new StagedUploadListener().written(null, "handle", handle, 7, new byte[1], 0, 1, new IOException("No space left"));
+            closedByClient(channel);
+        }
+
+        verify(fileStorageService, never()).saveStagedFile(any(), any(), any());
+        assertFalse(Files.exists(file));
+        try (Stream<Path> staging = Files.list(storageRoot)) {
+            assertEquals(0, staging.count());
+        }
+    }
+
+    @Test
+    void existingContentIsOnlyCopiedWhereTheClientDoesNotWriteOverIt() throws Exception {
+        FileMetadata existing = file("report.csv", 10);
+        when(fileStorageService.getFile("report.csv", "alice")).thenReturn(Optional.of(existing));
+        when(fileStorageService.getContentLength(existing)).thenReturn(10L);
+        lenient().when(fileStorageService.openContent(existing)).thenAnswer(invocation -> new ByteArrayInputStream("0123456789".getBytes()));
+        List<String> stored = new ArrayList<>();
+        doAnswer(invocation -> {
+            stored.add(Files.readString(invocation.getArgument(0)));
+            return null;
+        }).when(fileStorageService).saveStagedFile(any(), eq("report.csv"), eq("alice"));
+
+        Path file = fileSystem.getPath("/report.csv");
+        // Rewritten from the start and at least as long: the old content is never read
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("abcdef".getBytes(StandardCharsets.UTF_8)));
+            channel.write(ByteBuffer.wrap("ghijkl".getBytes(StandardCharsets.UTF_8)));
+            closedByClient(channel);
+        }
+        verify(fileStorageService, never()).openContent(existing);
+
+        // Shorter: the rest of the old content is kept
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("abc".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(10, channel.size());
+            closedByClient(channel);
+        }
+        // Written at an offset
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.position(4).write(ByteBuffer.wrap("XY".getBytes(StandardCharsets.UTF_8)));
+            closedByClient(channel);
+        }
+
+        assertEquals(List.of("abcdefghijkl", "abc3456789", "0123XY6789"), stored);
+    }
+
+    private static void closedByClient(SeekableByteChannel channel) {
+        FileHandle handle = mock(FileHandle.class);
+        when(handle.getFileChannel()).thenReturn(channel);
+        new StagedUploadListener().closing(null, "handle", handle);
+    }
+
+    @Test
+    void readsLocalContentAndStreamedContentAtAnyOffset() throws Exception {
+        Path blob = Files.writeString(storageRoot.resolve("blob"), "0123456789");
+        FileMetadata local = file("local.txt", 10);
+        FileMetadata streamed = file("streamed.txt", 10);
+        when(fileStorageService.getFile("local.txt", "alice")).thenReturn(Optional.of(local));
+        when(fileStorageService.getFile("streamed.txt", "alice")).thenReturn(Optional.of(streamed));
+        when(fileStorageService.getContentPath(local)).thenReturn(Optional.of(blob));
+        when(fileStorageService.getContentPath(streamed)).thenReturn(Optional.empty());
+        when(fileStorageService.getContentLength(streamed)).thenReturn(10L);
+        when(fileStorageService.openContent(streamed)).thenAnswer(invocation -> new ByteArrayInputStream("0123456789".getBytes()));
+
+        assertEquals("0123456789", Files.readString(fileSystem.getPath("local.txt")));
+        try (SeekableByteChannel channel = Files.newByteChannel(fileSystem.getPath("streamed.txt"))) {
+            ByteBuffer buffer = ByteBuffer.allocate(3);
+            channel.position(6).read(buffer);
+            assertEquals("678", new String(buffer.array()));
+
+            buffer.clear();
+            channel.position(2).read(buffer);
+            assertEquals("234", new String(buffer.array()));
+            assertEquals(5, channel.position());
+        }
+        verify(fileStorageService, times(2)).openContent(streamed);
+    }
+
+    @Test
+    void largeLocalContentIsMappedAndReadAtTheRequestedPositions() throws Exception {
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        Path blob = Files.write(storageRoot.resolve("blob"), content);
+        FileMetadata large = file("large.bin", content.length);
+        when(fileStorageService.getFile("large.bin", "alice")).thenReturn(Optional.of(large));
+        when(fileStorageService.getContentPath(large)).thenReturn(Optional.of(blob));
+
+        try (SeekableByteChannel channel = Files.newByteChannel(fileSystem.getPath("large.bin"))) {
+            assertTrue(((LocalReadChannel) channel).isMapped());
+            // Pipelined requests, answered out of order
+            for (long offset : new long[] {2_000_000, 0, content.length - 100, 1_048_576}) {
+                ByteBuffer buffer = ByteBuffer.allocate(32768);
+                int read = channel.position(offset).read(buffer);
+                assertEquals(Math.min(32768, content.length - offset), read);
+                assertEquals(offset + read, channel.position());
+                assertEquals(ByteBuffer.wrap(content, (int) offset, read), buffer.flip());
+            }
+            assertEquals(-1, channel.position(content.length).read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    void mappedRegionsAreLimitedAndDroppedOnClose() throws Exception {
+        byte[] content = new byte[5 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        Path blob = Files.write(storageRoot.resolve("blob"), content);
+
+        LocalReadChannel channel = new LocalReadChannel(FileChannel.open(blob, StandardOpenOption.READ), 0, 1024 * 1024);
+        try (channel) {
+            ByteBuffer buffer = ByteBuffer.allocate(content.length);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                assertTrue(channel.mappedRegions() <= LocalReadChannel.MAX_MAPPED_REGIONS);
+            }
+            assertEquals(ByteBuffer.wrap(content), buffer.flip());
+            assertEquals(LocalReadChannel.MAX_MAPPED_REGIONS, channel.mappedRegions());
+
+            // A region that was dropped is mapped again
+            buffer.clear().limit(100);
+            assertEquals(100, channel.read(buffer, 0));
+            assertEquals(ByteBuffer.wrap(content, 0, 100), buffer.flip());
+        }
+        assertEquals(0, channel.mappedRegions());
+        assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1), 0));
+    }
+
+    @Test
+    void directoryListingCarriesAttributesWithoutPerFileLookups() throws Exception {
+        when(fileStorageService.listFiles(eq("alice"), eq(""), anyInt())).thenReturn(List.of(file("a.txt", 3), file("b.txt", 70000)));
+
+        List<Path> entries;
+        try (Stream<Path> listing = Files.list(fileSystem.getPath("/"))) {
+            entries = listing.toList();
+        }
+
+        assertEquals(List.of("a.txt", "b.txt"), entries.stream().map(path -> path.getFileName().toString()).toList());
+        assertEquals(70000, Files.size(entries.get(1)));
+        assertTrue(Files.isRegularFile(entries.get(0)));
+        verify(fileStorageService, never()).getFile(any(), any());
+    }
+
+    @Test
+    void missingFilesAndNestedPathsDoNotExist() throws Exception {
+        assertThrows(NoSuchFileException.class, () -> Files.newInputStream(fileSystem.getPath("/missing.txt")));
+        assertThrows(NoSuchFileException.class, () -> Files.size(fileSystem.getPath("/dir/file.txt")));
+        assertFalse(Files.exists(fileSystem.getPath("missing.txt")));
+        assertTrue(Files.isDirectory(fileSystem.getPath("/")));
+        assertThrows(UnsupportedOperationException.class, () -> Files.createDirectory(fileSystem.getPath("/dir")));
+    }
+
+    @Test
+    void createNewRefusesToOverwriteAndMoveRenamesTheStoredFile() throws Exception {
+        when(fileStorageService.getFile("report.csv", "alice")).thenReturn(Optional.of(file("report.csv", 1)));
+        when(fileStorageService.renameFile("report.csv", "final.csv", "alice", false)).thenReturn(true);
+
+        assertThrows(FileAlreadyExistsException.class, () -> {
+            try (OutputStream ignored = Files.newOutputStream(fileSystem.getPath("report.csv"), StandardOpenOption.CREATE_NEW)) {
+                // Never reached
+            }
+        });
+        Files.move(fileSystem.getPath("/report.csv"), fileSystem.getPath("/final.csv"));
+
+        verify(fileStorageService).renameFile("report.csv", "final.csv", "alice", false);
+    }
+
+    private static FileMetadata file(String fileName, long size) {
+        FileMetadata fileMetadata = new FileMetadata(fileName, "alice", size / 1024, LocalDateTime.now(), null);
+        fileMetadata.setBlobRef("fs:" + fileName);
+        fileMetadata.setContentLength(size);
+        return fileMetadata;
+    }
+}
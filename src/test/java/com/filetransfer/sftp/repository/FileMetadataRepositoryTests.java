@@ -0,0 +1,206 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.dto.FileMetadataDTO;
+import com.filetransfer.sftp.model.FileMetadata;
+import com.filetransfer.sftp.storage.StoredBlob;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Schema from the Flyway migrations, checked against the entities
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Import(FileMetadataRepositoryTests.ByteCountingConfiguration.class)
+class FileMetadataRepositoryTests {
+
+    private static final int LEGACY_CONTENT_SIZE = 4 * 1024 * 1024;
+    private static final AtomicLong FETCHED_BYTES = new AtomicLong();
+
+    @Autowired
+    FileMetadataRepository fileMetadataRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 10; i++) {
+            fileMetadataRepository.save(new FileMetadata("file-" + i, "alice", 4096L, LocalDateTime.now(), new byte[LEGACY_CONTENT_SIZE]));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        FETCHED_BYTES.set(0);
+    }
+
+    @Test
+    void listingDoesNotFetchFileContent() {
+        List<FileMetadataDTO> files = fileMetadataRepository.findSummariesByOwner("alice", PageRequest.of(0, 10));
+
+        assertEquals(10, files.size());
+        assertTrue(FETCHED_BYTES.get() < 4096, "Listing fetched " + FETCHED_BYTES.get() + " bytes");
+    }
+
+    @Test
+    void lookupLoadsFileContentOnlyOnAccess() {
+        FileMetadata file = fileMetadataRepository.findByFileNameAndOwner("file-0", "alice").orElseThrow();
+        assertTrue(FETCHED_BYTES.get() < 4096, "Lookup fetched " + FETCHED_BYTES.get() + " bytes");
+
+        assertEquals(LEGACY_CONTENT_SIZE, file.getFileData().length);
+        assertTrue(FETCHED_BYTES.get() >= LEGACY_CONTENT_SIZE);
+    }
+
+    @Test
+    void legacyContentLengthIsReadWithoutFetchingTheContent() {
+        Long id = fileMetadataRepository.findByFileNameAndOwner("file-0", "alice").orElseThrow().getId();
+        FETCHED_BYTES.set(0);
+
+        assertEquals(LEGACY_CONTENT_SIZE, fileMetadataRepository.findFileDataLengthById(id));
+        assertTrue(FETCHED_BYTES.get() < 4096, "Length lookup fetched " + FETCHED_BYTES.get() + " bytes");
+    }
+
+    @Test
+    void blobLookupSkipsLegacyContent() {
+        FileMetadata file = new FileMetadata("stored.bin", "alice", 0L, LocalDateTime.now(), null);
+        file.setBlobRef("fs:" + "a".repeat(64));
+        file.setContentLength(42L);
+        file.setChecksum("a".repeat(64));
+        fileMetadataRepository.save(file);
+        entityManager.flush();
+
+        StoredBlob blob = fileMetadataRepository.findBlobByFileNameAndOwner("stored.bin", "alice").orElseThrow();
+        assertEquals(file.getBlobRef(), blob.getBlobRef());
+        assertEquals(42, blob.getSize());
+        assertTrue(fileMetadataRepository.findBlobByFileNameAndOwner("file-0", "alice").isEmpty());
+    }
+
+    @Test
+    void migrationLookupResumesAfterTheGivenIdAndSkipsFilesWithoutContent() {
+        fileMetadataRepository.save(new FileMetadata("empty.bin", "alice", 0L, LocalDateTime.now(), null));
+        entityManager.flush();
+
+        List<Long> ids = fileMetadataRepository.findIdsWithoutBlob(0, PageRequest.of(0, 100));
+        assertEquals(10, ids.size());
+        assertEquals(ids.subList(5, 8), fileMetadataRepository.findIdsWithoutBlob(ids.get(4), PageRequest.of(0, 3)));
+        assertTrue(fileMetadataRepository.findIdsWithoutBlob(ids.get(9), PageRequest.of(0, 100)).isEmpty());
+    }
+
+    @Test
+    void newestFirstPagesFollowEachOtherWithoutGapsOrRepeats() {
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < 7; i++) {
+            // Pairs of files uploaded at the same time, ordered by name between them
+            fileMetadataRepository.save(new FileMetadata("bob-" + i, "bob", 10L, base.plusMinutes(i / 2), null));
+        }
+        entityManager.flush();
+
+        List<String> names = new ArrayList<>();
+        LocalDateTime latest = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+        LocalDateTime afterUploadedAt = latest;
+        String afterFileName = "";
+        Slice<FileMetadataDTO> page;
+        do {
+            page = fileMetadataRepository.findSummariesByOwnerNewestFirst("bob", afterUploadedAt, afterFileName,
+                    "%", 0, Long.MAX_VALUE, base, latest, PageRequest.ofSize(3));
+            page.forEach(file -> names.add(file.getFileName()));
+            FileMetadataDTO last = page.getContent().get(page.getNumberOfElements() - 1);
+            afterUploadedAt = last.getUploadedAt();
+            afterFileName = last.getFileName();
+        } while (page.hasNext());
+
+        assertEquals(List.of("bob-6", "bob-5", "bob-4", "bob-3", "bob-2", "bob-1", "bob-0"), names);
+    }
+
+    @Test
+    void listingByNameAppliesPrefixSizeAndDateFilters() {
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        fileMetadataRepository.save(new FileMetadata("report_1", "bob", 10L, base, null));
+        fileMetadataRepository.save(new FileMetadata("report_2", "bob", 500L, base.plusDays(1), null));
+        fileMetadataRepository.save(new FileMetadata("report_3", "bob", 20L, base.plusDays(2), null));
+        fileMetadataRepository.save(new FileMetadata("reportX4", "bob", 20L, base.plusDays(1), null));
+        fileMetadataRepository.save(new FileMetadata("report_5", "bob", 20L, base.plusDays(1), null));
+        entityManager.flush();
+
+        // "_" in the prefix is literal, the size range is inclusive and the date range half-open
+        Slice<FileMetadataDTO> page = fileMetadataRepository.findSummariesByOwnerByName("bob", "",
+                "report\\_%", 10, 100, base.plusDays(1), base.plusDays(2), PageRequest.ofSize(10));
+        assertEquals(List.of("report_5"), page.map(FileMetadataDTO::getFileName).getContent());
+
+        page = fileMetadataRepository.findSummariesByOwnerByName("bob", "report_1",
+                "report%", 0, Long.MAX_VALUE, base, base.plusDays(3), PageRequest.ofSize(2));
+        assertEquals(List.of("report_2", "report_3"), page.map(FileMetadataDTO::getFileName).getContent());
+        assertTrue(page.hasNext());
+    }
+
+    /**
+     * Wraps the DataSource so every value read from a ResultSet is counted, approximating the
+     * bytes the JDBC driver hands to the application.
+     */
+    @TestConfiguration
+    static class ByteCountingConfiguration {
+
+        @Bean
+        static BeanPostProcessor byteCountingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource) {
+                        return proxy(DataSource.class, bean);
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static Object proxy(Class<?> type, Object target) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof byte[] bytes) {
+                    FETCHED_BYTES.addAndGet(bytes.length);
+                } else if (result instanceof String string && target instanceof ResultSet) {
+                    FETCHED_BYTES.addAndGet(string.length());
+                } else if (result instanceof Connection || result instanceof Statement || result instanceof ResultSet) {
+                    Class<?> resultType = result instanceof Connection ? Connection.class
+                            : result instanceof ResultSet ? ResultSet.class
+                            : result instanceof CallableStatement ? CallableStatement.class
+                            : result instanceof PreparedStatement ? PreparedStatement.class
+                            : Statement.class;
+                    return proxy(resultType, result);
+                }
+                return result;
+            };
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.FileMetadata;
+import jakarta.persistence.EntityManager;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Starts on a database that ddl-auto=update created before Flyway was introduced: it is baselined at
+ * V1, gets the later migrations and then passes Hibernate's schema validation.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Import(LegacySchemaMigrationTests.LegacySchemaConfiguration.class)
+class LegacySchemaMigrationTests {
+
+    @Autowired
+    FileMetadataRepository fileMetadataRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void existingDatabaseIsUpgradedAndKeepsItsFiles() {
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select count(*) from \"flyway_schema_history\" where \"version\" = '1' and \"type\" = 'BASELINE'", Integer.class));
+
+        FileMetadata legacy = fileMetadataRepository.findByFileNameAndOwner("old.txt", "alice").orElseThrow();
+        assertArrayEquals(new byte[]{1, 2, 3}, legacy.getFileData());
+
+        // Blob-backed files have no in-row content
+        FileMetadata file = new FileMetadata("new.txt", "alice", 0L, LocalDateTime.now(), null);
+        file.setBlobRef("fs:abc");
+        fileMetadataRepository.save(file);
+        entityManager.flush();
+
+        // The per-upload chunk bitmap written before V5 became the upload's range at chunk 0
+        assertEquals(0, jdbcTemplate.queryForObject("select first_chunk from chunk_upload_state where file_name = 'part.bin'", Integer.class));
+        assertArrayEquals(new byte[]{5, 0, 1}, jdbcTemplate.queryForObject(
+                "select bitmap from chunk_upload_state where file_name = 'part.bin'", byte[].class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from content_blobs", Integer.class));
+    }
+
+    @TestConfiguration
+    static class LegacySchemaConfiguration {
+
+        /**
+         * Creates the tables as the application did before migrations, then migrates: up to V4 first,
+         * where an upload in progress stores its chunk bitmap, and then the rest.
+         */
+        @Bean
+        FlywayMigrationStrategy legacySchemaFirst() {
+            return flyway -> {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(flyway.getConfiguration().getDataSource());
+                jdbcTemplate.execute("create table users (id bigint generated by default as identity, password varchar(255), " +
+                        "role varchar(255), username varchar(255), primary key (id))");
+                jdbcTemplate.execute("create table file_metadata (id bigint generated by default as identity, " +
+                        "file_data bytea not null, file_name varchar(255) not null unique, file_size bigint not null, " +
+                        "owner varchar(255) not null, uploaded_at timestamp(6) not null, primary key (id), " +
+                        "unique (file_name, owner))");
+                jdbcTemplate.execute("create table uploaded_chunks (id bigint generated by default as identity, " +
+                        "chunk_index integer not null, file_name varchar(255) not null, username varchar(255) not null, " +
+                        "primary key (id))");
+                jdbcTemplate.update("insert into file_metadata (file_data, file_name, file_size, owner, uploaded_at) " +
+                        "values (?, 'old.txt', 0, 'alice', current_timestamp)", (Object) new byte[]{1, 2, 3});
+                Flyway.configure().configuration(flyway.getConfiguration()).target("4").load().migrate();
+                jdbcTemplate.update("insert into chunk_upload_state (file_name, username, bitmap, chunk_count, updated_at) " +
+                        "values ('part.bin', 'alice', ?, 3, current_timestamp)", (Object) new byte[]{5, 0, 1});
+                flyway.migrate();
+            };
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.filetransfer.sftp.repository;
+
+import com.filetransfer.sftp.model.ChunkUploadState;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.model.UploadSessionStatus;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+class UploadSessionRepositoryTests {
+
+    @Autowired
+    UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    ChunkUploadStateRepository chunkUploadStateRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Test
+    void onlySessionsWithoutRecentChunksAreIdle() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime idleSince = now.minusHours(24);
+        save("abandoned", now.minusDays(2));
+        save("receiving", now.minusDays(2));
+        save("new", now.minusHours(1));
+        chunkUploadStateRepository.save(new ChunkUploadState("abandoned", "alice", 0, new byte[]{1}, 1, now.minusDays(2)));
+        chunkUploadStateRepository.save(new ChunkUploadState("receiving", "alice", 0, new byte[]{1}, 1, now.minusMinutes(5)));
+        entityManager.flush();
+
+        List<UploadSession> idle = uploadSessionRepository.findIdle(idleSince, PageRequest.of(0, 10));
+        assertEquals(List.of("abandoned"), idle.stream().map(UploadSession::getId).toList());
+
+        assertEquals(0, uploadSessionRepository.abortIdle("receiving", idleSince, "idle", now));
+        assertEquals(1, uploadSessionRepository.abortIdle("abandoned", idleSince, "idle", now));
+        entityManager.clear();
+        assertEquals(UploadSessionStatus.ABORTED, uploadSessionRepository.findById("abandoned").orElseThrow().getStatus());
+        assertEquals(UploadSessionStatus.OPEN, uploadSessionRepository.findById("receiving").orElseThrow().getStatus());
+    }
+
+    private void save(String id, LocalDateTime updatedAt) {
+        uploadSessionRepository.save(new UploadSession(id, id + ".bin", "alice", 10, 4, null, "/tmp/" + id, updatedAt));
+    }
+}
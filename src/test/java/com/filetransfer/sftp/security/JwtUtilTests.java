@@ -0,0 +1,80 @@
+package com.filetransfer.sftp.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtUtilTests {
+
+    private final SecureRandom random = new SecureRandom();
+
+    private byte[] secret;
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] aesKey = new byte[32];
+        random.nextBytes(aesKey);
+        secret = new byte[64];
+        random.nextBytes(secret);
+
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"));
+        jwtUtil = new JwtUtil(Base64.getEncoder().encodeToString(cipher.doFinal(secret)),
+                Base64.getEncoder().encodeToString(aesKey));
+    }
+
+    @Test
+    void verifyTokenReturnsTheClaimsOfAGeneratedToken() {
+        String token = jwtUtil.generateToken("alice");
+
+        assertEquals("alice", jwtUtil.verifyToken(token).orElseThrow().getSubject());
+        assertEquals("alice", jwtUtil.extractUsername(token));
+        assertTrue(jwtUtil.isTokenValid(token));
+    }
+
+    @Test
+    void verifyTokenRejectsTamperedExpiredAndForeignTokens() {
+        String token = jwtUtil.generateToken("alice");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        String expired = Jwts.builder()
+                .subject("alice")
+                .issuedAt(new Date(System.currentTimeMillis() - 120_000))
+                .expiration(new Date(System.currentTimeMillis() - 60_000))
+                .signWith(Keys.hmacShaKeyFor(secret))
+                .compact();
+        byte[] otherSecret = new byte[64];
+        random.nextBytes(otherSecret);
+        String foreign = Jwts.builder()
+                .subject("alice")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(otherSecret))
+                .compact();
+
+        assertTrue(jwtUtil.verifyToken(tampered).isEmpty());
+        assertTrue(jwtUtil.verifyToken(expired).isEmpty());
+        assertTrue(jwtUtil.verifyToken(foreign).isEmpty());
+        assertTrue(jwtUtil.verifyToken("not-a-token").isEmpty());
+        assertFalse(jwtUtil.isTokenValid(expired));
+    }
+
+    @Test
+    void constructorRejectsAnEncryptionKeyOfTheWrongLength() {
+        String shortKey = Base64.getEncoder().encodeToString(new byte[16]);
+
+        assertThrows(RuntimeException.class, () -> new JwtUtil("c2VjcmV0", shortKey));
+    }
+}
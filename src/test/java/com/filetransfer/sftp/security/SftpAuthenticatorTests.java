@@ -0,0 +1,125 @@
+package com.filetransfer.sftp.security;
+
+import com.filetransfer.sftp.repository.UserPublicKeyRepository;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.server.auth.AsyncAuthException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SftpAuthenticatorTests {
+
+    @Mock
+    UserDetailsService userDetailsService;
+
+    @Mock
+    UserPublicKeyRepository userPublicKeyRepository;
+
+    PrincipalCache principalCache;
+    PasswordEncoder passwordEncoder;
+    SftpAuthenticator authenticator;
+
+    @BeforeEach
+    void setUp() {
+        principalCache = new PrincipalCache(60_000, 100);
+        passwordEncoder = spy(new BCryptPasswordEncoder(4));
+        authenticator = new SftpAuthenticator(userDetailsService, principalCache, passwordEncoder,
+                userPublicKeyRepository, 1, 10, 60_000, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        authenticator.shutdown();
+    }
+
+    @Test
+    void passwordIsCheckedOffThreadAndRepeatLoginsSkipBcrypt() throws Exception {
+        UserDetails alice = user("alice", "secret");
+        when(userDetailsService.loadUserByUsername("alice")).thenAnswer(invocation -> {
+            principalCache.put(alice);
+            return alice;
+        });
+
+        assertTrue(authenticateAsync("alice", "secret"));
+        verify(passwordEncoder, times(1)).matches(any(), anyString());
+
+        // The principal is cached, so the verified password is accepted without leaving the caller's thread
+        assertTrue(authenticator.authenticate("alice", "secret", null));
+        assertTrue(authenticator.authenticate("alice", "secret", null));
+        verify(passwordEncoder, times(1)).matches(any(), anyString());
+        verify(userDetailsService, times(1)).loadUserByUsername("alice");
+
+        // A different password is not served from the cache
+        assertFalse(authenticateAsync("alice", "guess"));
+        verify(passwordEncoder, times(2)).matches(any(), anyString());
+    }
+
+    @Test
+    void changedPasswordHashInvalidatesTheVerifiedPassword() throws Exception {
+        UserDetails before = user("alice", "secret");
+        UserDetails after = user("alice", "new-secret");
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(before, after);
+
+        assertTrue(authenticateAsync("alice", "secret"));
+        assertFalse(authenticateAsync("alice", "secret"));
+        verify(passwordEncoder, times(2)).matches(any(), anyString());
+    }
+
+    @Test
+    void unknownUsersAndGuestsAreRejected() throws Exception {
+        when(userDetailsService.loadUserByUsername("bob")).thenThrow(new UsernameNotFoundException("User not found: bob"));
+
+        assertFalse(authenticateAsync("bob", "secret"));
+        assertFalse(authenticator.authenticate("guest-1234abcd", "", null));
+        verify(userDetailsService, never()).loadUserByUsername("guest-1234abcd");
+    }
+
+    @Test
+    void publicKeysAreAcceptedOnlyWhenRegisteredForTheUser() throws Exception {
+        PublicKey key = KeyPairGenerator.getInstance("EC").generateKeyPair().getPublic();
+        String fingerprint = KeyUtils.getFingerPrint(key);
+        when(userPublicKeyRepository.existsByUsernameAndFingerprint("alice", fingerprint)).thenReturn(true);
+        when(userPublicKeyRepository.existsByUsernameAndFingerprint("bob", fingerprint)).thenReturn(false);
+
+        assertTrue(authenticator.authenticate("alice", key, null));
+        assertFalse(authenticator.authenticate("bob", key, null));
+    }
+
+    private boolean authenticateAsync(String username, String password) throws Exception {
+        AsyncAuthException async = assertThrows(AsyncAuthException.class,
+                () -> authenticator.authenticate(username, password, null));
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        async.addListener(result::complete);
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private UserDetails user(String username, String password) {
+        return User.withUsername(username).password(new BCryptPasswordEncoder(4).encode(password)).roles("USER").build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.filetransfer.sftp.security;
+
+import com.filetransfer.sftp.model.User;
+import com.filetransfer.sftp.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserDetailsServiceImplTests {
+
+    @Mock
+    UserRepository userRepository;
+
+    @Test
+    void loadUserByUsernameQueriesTheDatabaseOnceUntilInvalidated() {
+        PrincipalCache principalCache = new PrincipalCache(60_000, 100);
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(userRepository, principalCache);
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(new User("alice", "hash")));
+
+        UserDetails first = userDetailsService.loadUserByUsername("alice");
+        ((CredentialsContainer) first).eraseCredentials();
+        UserDetails second = userDetailsService.loadUserByUsername("alice");
+
+        assertEquals("hash", second.getPassword());
+        assertEquals(first.getAuthorities(), second.getAuthorities());
+        verify(userRepository, times(1)).findByUsername("alice");
+
+        principalCache.invalidate("alice");
+        userDetailsService.loadUserByUsername("alice");
+
+        verify(userRepository, times(2)).findByUsername("alice");
+    }
+
+    @Test
+    void loadUserByUsernameReloadsExpiredPrincipalsAndDoesNotCacheUnknownUsers() {
+        PrincipalCache principalCache = new PrincipalCache(-1, 100);
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(userRepository, principalCache);
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(new User("alice", "hash")));
+        when(userRepository.findByUsername("mallory")).thenReturn(Optional.empty());
+
+        userDetailsService.loadUserByUsername("alice");
+        userDetailsService.loadUserByUsername("alice");
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("mallory"));
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("mallory"));
+
+        verify(userRepository, times(2)).findByUsername("alice");
+        verify(userRepository, times(2)).findByUsername("mallory");
+    }
+
+    @Test
+    void guestUsersNeverReachTheDatabase() {
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(userRepository, new PrincipalCache(60_000, 100));
+
+        assertEquals("guest-1234", userDetailsService.loadUserByUsername("guest-1234").getUsername());
+
+        verify(userRepository, never()).findByUsername("guest-1234");
+    }
+
+    @Test
+    void putEvictsEntriesOnceTheCacheIsFull() {
+        PrincipalCache principalCache = new PrincipalCache(60_000, 2);
+        for (String username : new String[]{"a", "b", "c"}) {
+            principalCache.put(org.springframework.security.core.userdetails.User
+                    .withUsername(username).password("hash").roles("USER").build());
+        }
+
+        int cached = 0;
+        for (String username : new String[]{"a", "b", "c"}) {
+            cached += principalCache.get(username) != null ? 1 : 0;
+        }
+        assertEquals(2, cached);
+        assertEquals("hash", principalCache.get("c").getPassword());
+    }
+}
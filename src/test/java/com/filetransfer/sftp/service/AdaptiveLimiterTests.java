@@ -0,0 +1,105 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.exception.AdmissionRejectedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTests {
+
+    @Test
+    void usersOverTheirCapAreRejectedWithTooManyRequests() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("chunk", 1, 10, 10, 2, 1000, 2.0);
+        limiter.acquire("alice");
+        limiter.acquire("alice");
+
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> limiter.acquire("alice"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        assertEquals(AdaptiveLimiter.USER_LIMIT, e.getReason());
+        assertTrue(e.getRetryAfterSeconds() >= 1);
+
+        limiter.acquire("bob").release(0);
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void waitersGetFreedSlotsAndTheQueueIsBounded() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("upload", 1, 1, 1, 10, 5000, 2.0);
+        AdaptiveLimiter.Permit first = limiter.acquire("alice");
+
+        CompletableFuture<AdaptiveLimiter.Permit> waiter = CompletableFuture.supplyAsync(() -> limiter.acquire("bob"));
+        while (limiter.getWaiting() == 0) {
+            Thread.sleep(10);
+        }
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> limiter.acquire("carol"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(AdaptiveLimiter.QUEUE_FULL, e.getReason());
+
+        first.release(0);
+        waiter.get(5, TimeUnit.SECONDS).release(0);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void tryAcquireNeitherWaitsNorRejects() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("chunk", 2, 2, 10, 1, 5000, 2.0);
+        AdaptiveLimiter.Permit alice = limiter.tryAcquire("alice");
+        assertNotNull(alice);
+
+        // At the user's cap, then at the limit: no slot, right away
+        assertNull(limiter.tryAcquire("alice"));
+        limiter.acquire("bob");
+        assertNull(limiter.tryAcquire("carol"));
+        assertEquals(0, limiter.getWaiting());
+
+        alice.release(0);
+        assertNotNull(limiter.tryAcquire("carol"));
+    }
+
+    @Test
+    void waitingGivesUpAfterMaxWait() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("upload", 1, 1, 10, 10, 50, 2.0);
+        limiter.acquire("alice");
+
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> limiter.acquire("bob"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(AdaptiveLimiter.TIMEOUT, e.getReason());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    void limitBacksOffOnOverloadAndGrowsBackWhileUsed() {
+        // No latency counts as too slow, so completions only ever grow the limit
+        AdaptiveLimiter limiter = new AdaptiveLimiter("chunk", 2, 8, 10, 100, 1000, Double.POSITIVE_INFINITY);
+        assertEquals(8, limiter.getLimit());
+
+        limiter.acquire("alice").releaseOverloaded();
+        assertEquals(7, limiter.getLimit());
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire("alice").releaseOverloaded();
+        }
+        assertEquals(2, limiter.getLimit());
+
+        // Fully used: one more slot per limit's worth of completions
+        for (int round = 0; round < 20; round++) {
+            int limit = limiter.getLimit();
+            AdaptiveLimiter.Permit[] permits = new AdaptiveLimiter.Permit[limit];
+            for (int i = 0; i < limit; i++) {
+                permits[i] = limiter.acquire("alice");
+            }
+            for (AdaptiveLimiter.Permit permit : permits) {
+                permit.release(1024 * 1024);
+            }
+        }
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,105 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.exception.AdmissionRejectedException;
+import com.filetransfer.sftp.model.MergeJob;
+import com.filetransfer.sftp.model.MergeJobStatus;
+import com.filetransfer.sftp.repository.MergeJobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Each request commits on its own, as it does in the application
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AdmissionControlTests {
+
+    @Autowired
+    MergeJobRepository mergeJobRepository;
+
+    AdmissionControl admissionControl;
+
+    @BeforeEach
+    void setUp() {
+        admissionControl = new AdmissionControl(mergeJobRepository,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class),
+                true, 200, 5000, 2.0, 2, 32, 4, 4, 128, 16, 100, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mergeJobRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentMergeRequestsTakeAtMostTheUsersSlots() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<MergeJob>> requests = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10; i++) {
+                requests.add(executor.submit(() -> {
+                    start.await();
+                    return queueMerge("alice");
+                }));
+            }
+            start.countDown();
+        }
+
+        int queued = 0;
+        for (Future<MergeJob> request : requests) {
+            try {
+                request.get();
+                queued++;
+            } catch (Exception e) {
+                AdmissionRejectedException rejection = (AdmissionRejectedException) e.getCause();
+                assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejection.getStatus());
+            }
+        }
+        assertEquals(4, queued);
+        assertEquals(List.of(0, 1, 2, 3), mergeJobRepository.findUserSlots("alice").stream().sorted().toList());
+    }
+
+    @Test
+    void finishedMergeFreesItsSlot() {
+        List<MergeJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(queueMerge("alice"));
+        }
+        assertThrows(AdmissionRejectedException.class, () -> queueMerge("alice"));
+        queueMerge("bob");
+
+        MergeJob finished = jobs.get(2);
+        mergeJobRepository.finish(finished.getId(), MergeJobStatus.COMPLETED, 0, null, null, LocalDateTime.now());
+
+        assertEquals(finished.getUserSlot(), queueMerge("alice").getUserSlot());
+    }
+
+    private MergeJob queueMerge(String username) {
+        return admissionControl.admitMerge(username, slot -> {
+            MergeJob job = new MergeJob(UUID.randomUUID().toString(), "file.bin", username, LocalDateTime.now());
+            job.setUserSlot(slot);
+            return mergeJobRepository.saveAndFlush(job);
+        });
+    }
+}
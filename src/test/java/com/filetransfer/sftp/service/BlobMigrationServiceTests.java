@@ -0,0 +1,128 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.repository.FileMetadataRepository;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.FileSystemBlobStore;
+import com.filetransfer.sftp.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BlobMigrationServiceTests {
+
+    private static final byte[] CONTENT = "legacy content".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    FileMetadataRepository fileMetadataRepository;
+
+    @Mock
+    ContentBlobService contentBlobService;
+
+    @TempDir
+    Path storageRoot;
+
+    FileSystemBlobStore blobStore;
+
+    BlobMigrationService blobMigrationService;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new FileSystemBlobStore(storageRoot.toString(), 65536);
+        blobMigrationService = new BlobMigrationService(fileMetadataRepository,
+                new BlobStoreRegistry(List.of(blobStore), FileSystemBlobStore.SCHEME), contentBlobService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(blobMigrationService, "enabled", true);
+        ReflectionTestUtils.setField(blobMigrationService, "batchSize", 20);
+    }
+
+    @Test
+    void inlineContentIsMovedToTheBlobStoreAndCounted() throws Exception {
+        when(fileMetadataRepository.findIdsWithoutBlob(eq(0L), any())).thenReturn(List.of(7L));
+        when(fileMetadataRepository.findFileDataById(7L)).thenReturn(CONTENT);
+        when(contentBlobService.deduplicate(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(fileMetadataRepository.attachBlob(eq(7L), anyString(), eq((long) CONTENT.length), anyString())).thenReturn(1);
+
+        blobMigrationService.migrateBatch();
+
+        ArgumentCaptor<StoredBlob> acquired = ArgumentCaptor.forClass(StoredBlob.class);
+        verify(contentBlobService).acquire(acquired.capture());
+        assertEquals(CONTENT.length, acquired.getValue().getSize());
+        try (var content = blobStore.open(acquired.getValue().getBlobRef())) {
+            assertEquals(new String(CONTENT, StandardCharsets.UTF_8), new String(content.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        verify(contentBlobService, never()).discard(any());
+    }
+
+    @Test
+    void fileChangedDuringMigrationGivesUpTheBlob() {
+        when(fileMetadataRepository.findIdsWithoutBlob(eq(0L), any())).thenReturn(List.of(7L));
+        when(fileMetadataRepository.findFileDataById(7L)).thenReturn(CONTENT);
+        when(contentBlobService.deduplicate(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(fileMetadataRepository.attachBlob(eq(7L), anyString(), anyLong(), anyString())).thenReturn(0);
+
+        blobMigrationService.migrateBatch();
+
+        verify(contentBlobService, never()).acquire(any());
+        verify(contentBlobService).discard(any());
+    }
+
+    @Test
+    void filesThatKeepFailingDoNotStallTheMigration() {
+        ReflectionTestUtils.setField(blobMigrationService, "batchSize", 2);
+        when(fileMetadataRepository.findIdsWithoutBlob(eq(0L), any())).thenReturn(List.of(1L, 2L));
+        when(fileMetadataRepository.findIdsWithoutBlob(eq(2L), any())).thenReturn(List.of(3L));
+        when(fileMetadataRepository.findIdsWithoutBlob(eq(3L), any())).thenReturn(List.of());
+        when(fileMetadataRepository.findFileDataById(anyLong())).thenReturn(CONTENT);
+        when(contentBlobService.deduplicate(any()))
+                .thenThrow(new IllegalStateException("store unavailable"))
+                .thenThrow(new IllegalStateException("store unavailable"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(fileMetadataRepository.attachBlob(eq(3L), anyString(), anyLong(), anyString())).thenReturn(1);
+
+        blobMigrationService.migrateBatch();
+        blobMigrationService.migrateBatch();
+        verify(fileMetadataRepository).attachBlob(eq(3L), anyString(), anyLong(), anyString());
+
+        // The pass is done, so the next one starts over with the files that failed
+        blobMigrationService.migrateBatch();
+        blobMigrationService.migrateBatch();
+        verify(fileMetadataRepository, times(2)).findIdsWithoutBlob(eq(0L), any());
+    }
+
+    @Test
+    void blobCollectedWhileMigratingLeavesTheFileInline() {
+        when(fileMetadataRepository.findIdsWithoutBlob(eq(0L), any())).thenReturn(List.of(7L, 8L));
+        when(fileMetadataRepository.findFileDataById(7L)).thenReturn(CONTENT);
+        when(fileMetadataRepository.findFileDataById(8L)).thenReturn(null);
+        when(contentBlobService.deduplicate(any())).thenThrow(new IllegalStateException("Blob was deleted while it was being stored"));
+
+        blobMigrationService.migrateBatch();
+
+        // Retried on the next run; the other file is still looked at
+        verify(fileMetadataRepository, never()).attachBlob(any(), any(), anyLong(), any());
+        verify(fileMetadataRepository).findFileDataById(8L);
+    }
+}
@@ -0,0 +1,81 @@
+package com.filetransfer.sftp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkBitmapTests {
+
+    @Test
+    void setReportsOnlyTheFirstRegistration() {
+        ChunkBitmap bitmap = new ChunkBitmap();
+
+        assertTrue(bitmap.set(5000));
+        assertFalse(bitmap.set(5000));
+
+        assertTrue(bitmap.get(5000));
+        assertFalse(bitmap.get(4999));
+        assertEquals(1, bitmap.cardinality());
+        assertEquals(5001, bitmap.length());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.set(ChunkBitmap.MAX_CHUNKS));
+    }
+
+    @Test
+    void rangesCollapseContiguousChunksAcrossPages() {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        for (int i = 0; i < 5000; i++) {
+            if (i != 100) {
+                bitmap.set(i);
+            }
+        }
+        bitmap.set(9000);
+
+        List<int[]> ranges = bitmap.toRanges();
+
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new int[]{0, 99}, ranges.get(0));
+        assertArrayEquals(new int[]{101, 4999}, ranges.get(1));
+        assertArrayEquals(new int[]{9000, 9000}, ranges.get(2));
+        assertEquals(bitmap.snapshot(), ChunkBitmap.fromBitSet(bitmap.snapshot()).snapshot(), "round trip");
+    }
+
+    @Test
+    void concurrentRegistrationsAreCountedOnce() throws Exception {
+        ChunkBitmap bitmap = new ChunkBitmap();
+        AtomicInteger firstRegistrations = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        if (bitmap.set(i)) {
+                            firstRegistrations.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(100_000, firstRegistrations.get());
+        assertEquals(100_000, bitmap.cardinality());
+        assertEquals(100_000, bitmap.snapshot().cardinality());
+    }
+}
@@ -0,0 +1,60 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.model.ChunkUploadState;
+import com.filetransfer.sftp.repository.ChunkUploadStateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkIndexServiceTests {
+
+    @Mock
+    ChunkUploadStateRepository chunkUploadStateRepository;
+
+    @Mock
+    ChunkStateWriter chunkStateWriter;
+
+    ChunkIndexService chunkIndexService;
+
+    @BeforeEach
+    void setUp() {
+        chunkIndexService = new ChunkIndexService(chunkUploadStateRepository, chunkStateWriter);
+    }
+
+    @Test
+    void chunksRegisteredOnAnotherNodeAreSeenOnceReadFromTheRows() {
+        when(chunkUploadStateRepository.findByFileNameAndUsername("data.bin", "alice"))
+                .thenReturn(List.of())
+                .thenReturn(List.of(row(0, 0, 1), row(ChunkBitmap.PAGE_BITS, 1)));
+        assertTrue(chunkIndexService.register("data.bin", "alice", 0));
+
+        // Chunks 1 and 4097 were then registered on another node: the cached bitmap does not have them
+        assertFalse(chunkIndexService.getChunks("data.bin", "alice").get(1));
+
+        ChunkBitmap stored = chunkIndexService.getStoredChunks("data.bin", "alice");
+        assertEquals(3, stored.cardinality());
+        assertTrue(stored.get(1));
+        assertTrue(stored.get(ChunkBitmap.PAGE_BITS + 1));
+        assertTrue(chunkIndexService.getChunks("data.bin", "alice").get(ChunkBitmap.PAGE_BITS + 1));
+    }
+
+    private static ChunkUploadState row(int firstChunk, int... chunks) {
+        BitSet bits = new BitSet();
+        for (int chunk : chunks) {
+            bits.set(chunk);
+        }
+        return new ChunkUploadState("data.bin", "alice", firstChunk, bits.toByteArray(), chunks.length, LocalDateTime.now());
+    }
+}
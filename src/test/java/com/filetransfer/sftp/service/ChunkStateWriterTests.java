@@ -0,0 +1,146 @@
+package com.filetransfer.sftp.service;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkStateWriterTests {
+
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    ChunkStateWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;QUERY_STATISTICS=TRUE";
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(), url);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table chunk_upload_state (id bigint generated by default as identity, " +
+                "file_name varchar(255) not null, username varchar(255) not null, first_chunk integer not null, " +
+                "chunk_count integer not null, bitmap bytea not null, updated_at timestamp(6) not null, primary key (id), " +
+                "unique (file_name, username, first_chunk))");
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        writer = new ChunkStateWriter(jdbcTemplate, transactionTemplate, ObservationRegistry.NOOP, true, 1000, 50);
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+        jdbcTemplate.execute("shutdown");
+    }
+
+    @Test
+    void concurrentRegistrationsAreStoredTogetherBeforeTheyReturn() throws Exception {
+        List<ChunkIndexService.UploadKey> keys = List.of(
+                new ChunkIndexService.UploadKey("a.bin", "alice"), new ChunkIndexService.UploadKey("b.bin", "alice"));
+
+        List<Future<?>> writes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 400; i++) {
+                int upload = i % 2;
+                int chunk = i / 2;
+                writes.add(executor.submit(() -> {
+                    writer.write(keys.get(upload), chunk);
+                    // Returned only once committed, so it is in the row
+                    byte[] stored = jdbcTemplate.queryForObject("select bitmap from chunk_upload_state where file_name = ?",
+                            byte[].class, keys.get(upload).fileName());
+                    assertTrue(BitSet.valueOf(stored).get(chunk));
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        }
+
+        assertEquals(List.of(200, 200), jdbcTemplate.queryForList(
+                "select chunk_count from chunk_upload_state order by file_name", Integer.class));
+        Long statements = jdbcTemplate.queryForObject("select sum(execution_count) from information_schema.query_statistics " +
+                "where sql_statement like 'update chunk_upload_state%' or sql_statement like 'insert into chunk_upload_state%'", Long.class);
+        assertTrue(statements < 100, "Stored 400 chunks with " + statements + " statements");
+    }
+
+    @Test
+    void concurrentRetriesWithoutWriteBehindLeaveOneRowWithEveryChunk() throws Exception {
+        ChunkStateWriter direct = new ChunkStateWriter(jdbcTemplate, transactionTemplate, ObservationRegistry.NOOP, false, 1, 0);
+        ChunkIndexService.UploadKey key = new ChunkIndexService.UploadKey("a.bin", "alice");
+
+        List<Future<?>> writes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 100; i++) {
+                int chunk = i % 50; // Every chunk is sent twice
+                writes.add(executor.submit(() -> direct.write(key, chunk)));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        }
+
+        assertEquals(List.of(50), jdbcTemplate.queryForList("select chunk_count from chunk_upload_state", Integer.class));
+    }
+
+    @Test
+    void chunksStoredByAnotherNodeAreKept() {
+        BitSet elsewhere = new BitSet();
+        elsewhere.set(1);
+        elsewhere.set(2);
+        jdbcTemplate.update("insert into chunk_upload_state (file_name, username, first_chunk, bitmap, chunk_count, updated_at) " +
+                "values ('a.bin', 'alice', 0, ?, 2, current_timestamp)", (Object) elsewhere.toByteArray());
+        // As many chunks as the row, but different ones
+        writer.write(new ChunkIndexService.UploadKey("a.bin", "alice"), 3);
+        writer.write(new ChunkIndexService.UploadKey("a.bin", "alice"), 4);
+
+        byte[] stored = jdbcTemplate.queryForObject("select bitmap from chunk_upload_state", byte[].class);
+        assertEquals(BitSet.valueOf(new long[]{0b11110}), BitSet.valueOf(stored));
+        assertEquals(List.of(4), jdbcTemplate.queryForList("select chunk_count from chunk_upload_state", Integer.class));
+    }
+
+    @Test
+    void onlyTheRangeHoldingTheChunkIsWritten() {
+        ChunkIndexService.UploadKey key = new ChunkIndexService.UploadKey("a.bin", "alice");
+        // Stored before ranges were introduced: the whole upload in the row of chunk 0
+        BitSet legacy = new BitSet();
+        legacy.set(1);
+        legacy.set(5000);
+        jdbcTemplate.update("insert into chunk_upload_state (file_name, username, first_chunk, bitmap, chunk_count, updated_at) " +
+                "values ('a.bin', 'alice', 0, ?, 2, current_timestamp)", (Object) legacy.toByteArray());
+        int last = ChunkBitmap.MAX_CHUNKS - 1;
+
+        writer.write(key, 3);
+        writer.write(key, last);
+
+        List<Integer> firstChunks = jdbcTemplate.queryForList(
+                "select first_chunk from chunk_upload_state order by first_chunk", Integer.class);
+        assertEquals(List.of(0, ChunkBitmap.MAX_CHUNKS - ChunkBitmap.PAGE_BITS), firstChunks);
+        byte[] first = jdbcTemplate.queryForObject("select bitmap from chunk_upload_state where first_chunk = 0", byte[].class);
+        assertEquals(BitSet.valueOf(new long[]{0b1010}), BitSet.valueOf(first).get(0, 64));
+        assertTrue(BitSet.valueOf(first).get(5000), "chunks of the legacy row are kept");
+        byte[] lastRange = jdbcTemplate.queryForObject("select bitmap from chunk_upload_state where first_chunk > 0", byte[].class);
+        assertTrue(lastRange.length <= ChunkBitmap.PAGE_BITS / Byte.SIZE);
+        assertEquals(ChunkBitmap.PAGE_BITS - 1, BitSet.valueOf(lastRange).nextSetBit(0));
+    }
+
+    @Test
+    void failedBatchIsReportedToItsCallers() {
+        jdbcTemplate.execute("drop table chunk_upload_state");
+
+        assertThrows(RuntimeException.class, () -> writer.write(new ChunkIndexService.UploadKey("a.bin", "alice"), 0));
+    }
+}
@@ -0,0 +1,151 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.model.ContentBlob;
+import com.filetransfer.sftp.repository.ContentBlobRepository;
+import com.filetransfer.sftp.repository.FileMetadataRepository;
+import com.filetransfer.sftp.storage.BlobStore;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ContentBlobServiceTests {
+
+    private static final String CHECKSUM = "c".repeat(64);
+
+    @Mock
+    ContentBlobRepository contentBlobRepository;
+
+    @Mock
+    FileMetadataRepository fileMetadataRepository;
+
+    @Mock
+    BlobStore blobStore;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ContentBlobService contentBlobService;
+
+    @BeforeEach
+    void setUp() {
+        when(blobStore.getScheme()).thenReturn("pglo");
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        contentBlobService = new ContentBlobService(contentBlobRepository, fileMetadataRepository,
+                new BlobStoreRegistry(List.of(blobStore), "pglo"), new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(contentBlobService, "graceMs", 3_600_000L);
+        ReflectionTestUtils.setField(contentBlobService, "batchSize", 100);
+    }
+
+    @Test
+    void deduplicateClaimsTheExistingBlobAndLeavesTheNewCopyToCollection() throws Exception {
+        ContentBlob existing = new ContentBlob();
+        existing.setBlobRef("pglo:100");
+        existing.setChecksum(CHECKSUM);
+        existing.setContentLength(42);
+        when(contentBlobRepository.findFirstByChecksumAndContentLength(CHECKSUM, 42)).thenReturn(Optional.of(existing));
+        when(contentBlobRepository.touch(eq("pglo:100"), any())).thenReturn(1);
+        when(blobStore.exists("pglo:100")).thenReturn(true);
+
+        StoredBlob kept = contentBlobService.deduplicate(new StoredBlob("pglo:200", 42, CHECKSUM));
+
+        assertEquals("pglo:100", kept.getBlobRef());
+        verify(contentBlobRepository).insertIfAbsent(eq("pglo:200"), eq(CHECKSUM), eq(42L), eq(0L), any());
+        verify(blobStore, never()).delete(any());
+    }
+
+    @Test
+    void deduplicateFailsIfTheBlobWasCollectedWhileItWasWritten() {
+        // The store found the content still stored, but collection deleted it before the claim
+        when(contentBlobRepository.findFirstByChecksumAndContentLength(CHECKSUM, 42)).thenReturn(Optional.empty());
+        when(contentBlobRepository.touch(eq("pglo:100"), any())).thenReturn(0);
+        when(contentBlobRepository.insertIfAbsent(eq("pglo:100"), eq(CHECKSUM), eq(42L), eq(0L), any())).thenReturn(1);
+        when(blobStore.exists("pglo:100")).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> contentBlobService.deduplicate(new StoredBlob("pglo:100", 42, CHECKSUM)));
+        verify(transactionManager).commit(argThat(TransactionStatus::isRollbackOnly));
+    }
+
+    @Test
+    void deduplicateFallsBackToTheNewCopyIfTheExistingBlobWasCollected() {
+        ContentBlob existing = new ContentBlob();
+        existing.setBlobRef("pglo:100");
+        existing.setChecksum(CHECKSUM);
+        existing.setContentLength(42);
+        when(contentBlobRepository.findFirstByChecksumAndContentLength(CHECKSUM, 42)).thenReturn(Optional.of(existing));
+        when(contentBlobRepository.touch(any(), any())).thenReturn(1);
+        when(blobStore.exists("pglo:100")).thenReturn(false);
+        when(blobStore.exists("pglo:200")).thenReturn(true);
+
+        assertEquals("pglo:200", contentBlobService.deduplicate(new StoredBlob("pglo:200", 42, CHECKSUM)).getBlobRef());
+    }
+
+    @Test
+    void firstAcquireCountsFilesThatAlreadyReferenceTheBlob() {
+        when(contentBlobRepository.increment(eq("pglo:100"), any())).thenReturn(0);
+        when(fileMetadataRepository.countByBlobRef("pglo:100")).thenReturn(3L);
+        when(contentBlobRepository.insertIfAbsent(eq("pglo:100"), eq(CHECKSUM), eq(42L), eq(3L), any())).thenReturn(1);
+
+        contentBlobService.acquire(new StoredBlob("pglo:100", 42, CHECKSUM));
+
+        verify(contentBlobRepository).insertIfAbsent(eq("pglo:100"), eq(CHECKSUM), eq(42L), eq(3L), any());
+    }
+
+    @Test
+    void releaseOfAnUncountedBlobLeavesItToCollection() throws Exception {
+        when(contentBlobRepository.decrement(eq("pglo:100"), any())).thenReturn(0);
+        when(fileMetadataRepository.countByBlobRef("pglo:100")).thenReturn(0L);
+        when(contentBlobRepository.insertIfAbsent(eq("pglo:100"), eq(CHECKSUM), eq(42L), eq(0L), any())).thenReturn(1);
+
+        contentBlobService.release(new StoredBlob("pglo:100", 42, CHECKSUM));
+
+        verify(blobStore, never()).delete(any());
+    }
+
+    @Test
+    void collectionSkipsBlobsReferencedAgainSinceTheyWereListed() throws Exception {
+        when(contentBlobRepository.findUnreferenced(any(), any())).thenReturn(List.of("pglo:1", "pglo:2"));
+        when(contentBlobRepository.deleteUnreferenced(eq("pglo:1"), any())).thenReturn(1);
+        when(contentBlobRepository.deleteUnreferenced(eq("pglo:2"), any())).thenReturn(0);
+
+        contentBlobService.collectUnreferenced();
+
+        verify(blobStore).delete("pglo:1");
+        verify(blobStore, never()).delete("pglo:2");
+    }
+
+    @Test
+    void failedDeletionKeepsTheRow() throws Exception {
+        when(contentBlobRepository.findUnreferenced(any(), any())).thenReturn(List.of("pglo:1"));
+        when(contentBlobRepository.deleteUnreferenced(eq("pglo:1"), any())).thenReturn(1);
+        doThrow(new IOException("disk gone")).when(blobStore).delete("pglo:1");
+
+        contentBlobService.collectUnreferenced();
+
+        verify(transactionManager).rollback(any());
+    }
+}
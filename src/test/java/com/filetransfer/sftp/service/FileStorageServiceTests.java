@@ -0,0 +1,397 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.exception.ContentProofRequiredException;
+import com.filetransfer.sftp.model.FileMetadata;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.model.UploadSessionStatus;
+import com.filetransfer.sftp.repository.FileMetadataRepository;
+import com.filetransfer.sftp.repository.UploadSessionRepository;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.BlobStreams;
+import com.filetransfer.sftp.storage.FileSystemBlobStore;
+import com.filetransfer.sftp.storage.StoredBlob;
+import net.jpountz.xxhash.XXHashFactory;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileStorageServiceTests {
+
+    @Mock
+    FileMetadataRepository fileMetadataRepository;
+
+    @Mock
+    ChunkIndexService chunkIndexService;
+
+    @Mock
+    UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    ContentBlobService contentBlobService;
+
+    @InjectMocks
+    FileStorageService fileStorageService;
+
+    @TempDir
+    Path storageRoot;
+
+    FileSystemBlobStore blobStore;
+
+    ChunkMerger chunkMerger;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new FileSystemBlobStore(storageRoot.resolve("blobs").toString(), 65536);
+        chunkMerger = new ChunkMerger(4);
+        fileStorageService.blobStoreRegistry = new BlobStoreRegistry(List.of(blobStore), FileSystemBlobStore.SCHEME);
+        fileStorageService.chunkMerger = chunkMerger;
+        fileStorageService.transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        fileStorageService.transferMetrics = TransferMetrics.NONE;
+        ReflectionTestUtils.setField(fileStorageService, "chunkRoot", storageRoot.resolve("chunks").toString());
+        fileStorageService.possessionChallenge = new ContentPossessionChallenge(true, "test-key");
+        lenient().when(contentBlobService.deduplicate(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(contentBlobService.claim(any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunkMerger.shutdown();
+    }
+
+    @Test
+    void saveFileStreamsUploadsLargerThanTheHeap() throws Exception {
+        long size = Runtime.getRuntime().maxMemory() * 3;
+
+        fileStorageService.saveFile(new GeneratedInputStream(size), "large.bin", "alice");
+
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetadataRepository).save(saved.capture());
+        FileMetadata fileMetadata = saved.getValue();
+
+        assertNull(fileMetadata.getFileData());
+        assertEquals(size / 1024, fileMetadata.getFileSize());
+        assertEquals(size, fileMetadata.getContentLength());
+        assertEquals(size, Files.size(blobStore.getLocalPath(fileMetadata.getBlobRef()).orElseThrow()));
+        verify(contentBlobService).acquire(any());
+    }
+
+    @Test
+    void saveFileByHashLinksContentTheUserHasStored() {
+        StoredBlob existing = new StoredBlob("fs:" + "a".repeat(64), 2048, "a".repeat(64));
+        when(fileMetadataRepository.existsByOwnerAndChecksumAndContentLength("bob", "a".repeat(64), 2048L)).thenReturn(true);
+        when(contentBlobService.findByContent("a".repeat(64), 2048)).thenReturn(Optional.of(existing));
+
+        assertTrue(fileStorageService.saveFileByHash("copy.bin", "a".repeat(64), 2048, "bob", null, null));
+        // Same hash with another size, and content only other users have, are not linked
+        assertFalse(fileStorageService.saveFileByHash("other.bin", "a".repeat(64), 4096, "bob", null, null));
+        assertFalse(fileStorageService.saveFileByHash("other.bin", "b".repeat(64), 2048, "bob", null, null));
+
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetadataRepository).save(saved.capture());
+        assertEquals(existing.getBlobRef(), saved.getValue().getBlobRef());
+        assertEquals(2048, saved.getValue().getContentLength());
+        verify(contentBlobService).acquire(existing);
+        verify(contentBlobService, never()).findByContent("b".repeat(64), 2048);
+    }
+
+    @Test
+    void saveFileByHashDoesNotLinkContentCollectedSinceItWasLookedUp() {
+        StoredBlob existing = new StoredBlob("fs:" + "a".repeat(64), 2048, "a".repeat(64));
+        when(fileMetadataRepository.existsByOwnerAndChecksumAndContentLength("bob", "a".repeat(64), 2048L)).thenReturn(true);
+        when(contentBlobService.findByContent("a".repeat(64), 2048)).thenReturn(Optional.of(existing));
+        when(contentBlobService.claim(existing)).thenReturn(false);
+
+        assertFalse(fileStorageService.saveFileByHash("copy.bin", "a".repeat(64), 2048, "bob", null, null));
+        verify(fileMetadataRepository, never()).save(any());
+    }
+
+    @Test
+    void saveFileByHashLinksContentOfOtherUsersOnlyWithProofOfPossession() throws Exception {
+        ReflectionTestUtils.setField(fileStorageService, "crossUserDedup", true);
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        StoredBlob blob = blobStore.write(new ByteArrayInputStream(content));
+        when(contentBlobService.findByContent(blob.getChecksum(), blob.getSize())).thenReturn(Optional.of(blob));
+
+        ContentProofRequiredException required = assertThrows(ContentProofRequiredException.class,
+                () -> fileStorageService.saveFileByHash("copy.bin", blob.getChecksum(), blob.getSize(), "bob", null, null));
+        ContentPossessionChallenge.Challenge challenge = required.getChallenge();
+        assertEquals(ContentPossessionChallenge.RANGE_LENGTH, challenge.length());
+
+        // An answer computed without the content, or for a challenge issued to someone else, is refused
+        String wrongProof = BlobStreams.toHex(BlobStreams.newSha256().digest(new byte[0]));
+        assertThrows(ContentProofRequiredException.class, () -> fileStorageService.saveFileByHash("copy.bin",
+                blob.getChecksum(), blob.getSize(), "bob", challenge.token(), wrongProof));
+        String proof = proof(challenge, content);
+        assertThrows(ContentProofRequiredException.class, () -> fileStorageService.saveFileByHash("copy.bin",
+                blob.getChecksum(), blob.getSize(), "mallory", challenge.token(), proof));
+        verify(fileMetadataRepository, never()).save(any());
+
+        assertTrue(fileStorageService.saveFileByHash("copy.bin", blob.getChecksum(), blob.getSize(), "bob", challenge.token(), proof));
+        verify(contentBlobService).acquire(blob);
+    }
+
+    @Test
+    void crossUserDeduplicationNeedsAChallengeKeyOfItsOwn() {
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> new ContentPossessionChallenge(true, ""));
+        assertTrue(e.getMessage().contains("storage.dedup.challenge-key"));
+        // Without cross-user deduplication no challenges are issued, so none is needed
+        assertThrows(IllegalStateException.class, () -> new ContentPossessionChallenge(false, "").issue("bob", "abc", 1));
+    }
+
+    private static String proof(ContentPossessionChallenge.Challenge challenge, byte[] content) {
+        MessageDigest digest = BlobStreams.newSha256();
+        digest.update(HexFormat.of().parseHex(challenge.nonce()));
+        digest.update(content, (int) challenge.offset(), (int) challenge.length());
+        return BlobStreams.toHex(digest.digest());
+    }
+
+    @Test
+    void transferContentSendsOnlyTheRequestedRange() throws Exception {
+        StoredBlob blob = blobStore.write(new ByteArrayInputStream("0123456789".getBytes()));
+        FileMetadata fileMetadata = new FileMetadata("digits.txt", "alice", 0L, LocalDateTime.now(), null);
+        fileMetadata.setBlobRef(blob.getBlobRef());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        fileStorageService.transferContent(fileMetadata, 3, 4, outputStream);
+
+        assertEquals("3456", outputStream.toString());
+    }
+
+    @Test
+    void saveChunkVerifiesTheDeclaredChecksumBeforeKeepingTheChunk() throws Exception {
+        byte[] content = "chunk-content".getBytes();
+        long hash = XXHashFactory.fastestJavaInstance().hash64().hash(content, 0, content.length, 0);
+        ChunkChecksum checksum = ChunkChecksum.of(null, String.format("%016x", hash));
+        Path chunkDirectory = fileStorageService.chunkDirectory("alice", "report.csv");
+
+        MockMultipartFile corrupted = new MockMultipartFile("file", "chunk-c0ntent".getBytes());
+        assertThrows(ChunkChecksumException.class, () -> fileStorageService.saveChunk(corrupted, "report.csv", 3, "alice", checksum));
+        verify(chunkIndexService, never()).register(anyString(), anyString(), anyInt());
+        try (Stream<Path> files = Files.list(chunkDirectory)) {
+            assertEquals(0, files.count());
+        }
+
+        fileStorageService.saveChunk(new MockMultipartFile("file", content), "report.csv", 3, "alice", checksum);
+        verify(chunkIndexService).register("report.csv", "alice", 3);
+        assertEquals("chunk-content", Files.readString(chunkDirectory.resolve("3.part")));
+    }
+
+    @Test
+    void saveChunkKeepsHostileFileNamesInsideTheChunkRoot() throws Exception {
+        fileStorageService.saveChunk(new MockMultipartFile("file", "x".getBytes()), "../../escaped", 0, "alice");
+
+        Path chunkDirectory = fileStorageService.chunkDirectory("alice", "../../escaped");
+        assertEquals(storageRoot.resolve("chunks"), chunkDirectory.getParent());
+        assertTrue(Files.exists(chunkDirectory.resolve("0.part")));
+        assertFalse(Files.exists(storageRoot.resolve("escaped")));
+    }
+
+    @Test
+    void saveChunkRetryIsAcknowledgedOnlyOnceTheChunkIsRegistered() throws Exception {
+        fileStorageService.saveChunk(new MockMultipartFile("file", "first".getBytes()), "report.csv", 0, "alice");
+        fileStorageService.saveChunk(new MockMultipartFile("file", "retry".getBytes()), "report.csv", 0, "alice");
+
+        verify(chunkIndexService, times(2)).register("report.csv", "alice", 0);
+        Path chunkDirectory = fileStorageService.chunkDirectory("alice", "report.csv");
+        assertEquals("first", Files.readString(chunkDirectory.resolve("0.part")));
+        try (Stream<Path> files = Files.list(chunkDirectory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void saveChunkIsTimedAndSizedAsATransfer() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        fileStorageService.transferMetrics = new TransferMetrics(meterRegistry, observationRegistry);
+
+        fileStorageService.saveChunk(new MockMultipartFile("file", "0123456789".getBytes()), "report.csv", 0, "alice");
+
+        assertEquals(1, meterRegistry.timer("transfer", "operation", "chunk", "error", "none").count());
+        assertEquals(10, meterRegistry.summary("transfer.bytes", "operation", "chunk").totalAmount());
+    }
+
+    @Test
+    void mergeChunksAssemblesChunksInIndexOrder() throws Exception {
+        Path chunkDirectory = Files.createDirectories(fileStorageService.chunkDirectory("alice", "report.csv"));
+        List<Integer> chunkIndexes = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            String chunk = "chunk-" + i + ";".repeat(i * 100);
+            Files.writeString(chunkDirectory.resolve(i + ".part"), chunk);
+            chunkIndexes.add(i);
+            expected.append(chunk);
+        }
+        Collections.shuffle(chunkIndexes);
+        ChunkBitmap uploadedChunks = new ChunkBitmap();
+        chunkIndexes.forEach(uploadedChunks::set);
+
+        FileMetadata existing = new FileMetadata("report.csv", "alice", 0L, LocalDateTime.now(), null);
+        existing.setId(7L);
+        when(fileMetadataRepository.findByFileNameAndOwner("report.csv", "alice")).thenReturn(Optional.of(existing));
+        when(chunkIndexService.getStoredChunks("report.csv", "alice")).thenReturn(uploadedChunks);
+
+        assertTrue(fileStorageService.mergeChunks("report.csv", "alice"));
+
+        ArgumentCaptor<String> blobRef = ArgumentCaptor.forClass(String.class);
+        verify(fileMetadataRepository).replaceBlob(eq(7L), blobRef.capture(), eq((long) expected.length()), anyString());
+        assertEquals(expected.toString(), Files.readString(blobStore.getLocalPath(blobRef.getValue()).orElseThrow()));
+        verify(chunkIndexService).clear("report.csv", "alice");
+        assertFalse(Files.exists(chunkDirectory));
+    }
+
+    @Test
+    void mergeChunksRejectsGapsInTheChunkSequence() throws Exception {
+        // Started before chunk directories were hashed
+        Path chunkDirectory = Files.createDirectories(storageRoot.resolve("chunks").resolve("alice").resolve("report.csv"));
+        Files.writeString(chunkDirectory.resolve("0.part"), "first");
+        Files.writeString(chunkDirectory.resolve("2.part"), "third");
+
+        FileMetadata existing = new FileMetadata("report.csv", "alice", 0L, LocalDateTime.now(), null);
+        when(fileMetadataRepository.findByFileNameAndOwner("report.csv", "alice")).thenReturn(Optional.of(existing));
+        ChunkBitmap uploadedChunks = new ChunkBitmap();
+        uploadedChunks.set(0);
+        uploadedChunks.set(2);
+        when(chunkIndexService.getStoredChunks("report.csv", "alice")).thenReturn(uploadedChunks);
+
+        assertThrows(IOException.class, () -> fileStorageService.mergeChunks("report.csv", "alice"));
+        verify(fileMetadataRepository, never()).replaceBlob(any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void completeUploadSessionStoresTheStagingFileAsANewFile() throws Exception {
+        Path stagingFile = blobStore.newStagingFile();
+        Files.writeString(stagingFile, "0123456789");
+        UploadSession session = new UploadSession("session-1", "digits.txt", "alice", 10, 4,
+                "84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882", stagingFile.toString(), LocalDateTime.now());
+        session.setStatus(UploadSessionStatus.FINALIZING);
+        when(uploadSessionRepository.findById("session-1")).thenReturn(Optional.of(session));
+        when(fileMetadataRepository.findByFileNameAndOwner("digits.txt", "alice")).thenReturn(Optional.empty());
+
+        assertTrue(fileStorageService.completeUploadSession("session-1", MergeProgressListener.NONE));
+
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetadataRepository).save(saved.capture());
+        assertEquals("0123456789", Files.readString(blobStore.getLocalPath(saved.getValue().getBlobRef()).orElseThrow()));
+        verify(uploadSessionRepository).finish(eq("session-1"), eq(UploadSessionStatus.COMPLETED), isNull(), any());
+        verify(uploadSessionRepository).recordBlob(eq("session-1"), eq(saved.getValue().getBlobRef()), eq(saved.getValue().getChecksum()), any());
+        assertFalse(Files.exists(stagingFile));
+    }
+
+    @Test
+    void completeUploadSessionRetriedAfterTheImportStoresTheRecordedBlob() throws Exception {
+        StoredBlob imported = blobStore.write(new ByteArrayInputStream("0123456789".getBytes()));
+        UploadSession session = new UploadSession("session-1", "digits.txt", "alice", 10, 4, null,
+                storageRoot.resolve("consumed").toString(), LocalDateTime.now());
+        session.setStatus(UploadSessionStatus.FINALIZING);
+        session.setBlobRef(imported.getBlobRef());
+        session.setChecksum(imported.getChecksum());
+        when(uploadSessionRepository.findById("session-1")).thenReturn(Optional.of(session));
+        when(fileMetadataRepository.findByFileNameAndOwner("digits.txt", "alice")).thenReturn(Optional.empty());
+
+        assertTrue(fileStorageService.completeUploadSession("session-1", MergeProgressListener.NONE));
+
+        ArgumentCaptor<FileMetadata> saved = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetadataRepository).save(saved.capture());
+        assertEquals(imported.getBlobRef(), saved.getValue().getBlobRef());
+        assertEquals(imported.getChecksum(), saved.getValue().getChecksum());
+        verify(uploadSessionRepository).finish(eq("session-1"), eq(UploadSessionStatus.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void completeUploadSessionFailsOnChecksumMismatch() throws Exception {
+        Path stagingFile = blobStore.newStagingFile();
+        Files.writeString(stagingFile, "0123456789");
+        UploadSession session = new UploadSession("session-1", "digits.txt", "alice", 10, 4,
+                "0".repeat(64), stagingFile.toString(), LocalDateTime.now());
+        session.setStatus(UploadSessionStatus.FINALIZING);
+        when(uploadSessionRepository.findById("session-1")).thenReturn(Optional.of(session));
+
+        assertThrows(IOException.class, () -> fileStorageService.completeUploadSession("session-1", MergeProgressListener.NONE));
+
+        verify(fileMetadataRepository, never()).save(any());
+        verify(uploadSessionRepository).finish(eq("session-1"), eq(UploadSessionStatus.FAILED), anyString(), any());
+        verify(chunkIndexService).clear("session-1", "alice");
+    }
+
+    /**
+     * Produces a deterministic byte sequence of the requested length without holding it in memory.
+     */
+    private static class GeneratedInputStream extends InputStream {
+
+        private final long size;
+        private long position;
+
+        GeneratedInputStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return position < size ? (int) (position++ & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            int count = (int) Math.min(length, size - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) (position++ & 0xFF);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.model.MergeJob;
+import com.filetransfer.sftp.model.MergeJobStatus;
+import com.filetransfer.sftp.repository.MergeJobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Jobs are claimed in transactions of their own, as they are by the application's workers
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MergeJobServiceTests {
+
+    @Autowired
+    MergeJobRepository mergeJobRepository;
+
+    FileStorageService fileStorageService;
+
+    List<MergeJobService> workers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        fileStorageService = mock(FileStorageService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.forEach(MergeJobService::shutdown);
+        mergeJobRepository.deleteAll();
+    }
+
+    @Test
+    void queuedJobIsClaimedAndRun() throws Exception {
+        when(fileStorageService.mergeChunks(eq("file.bin"), eq("alice"), any())).thenReturn(true);
+        queue("job-1", LocalDateTime.now());
+
+        newWorker().poll();
+
+        verify(fileStorageService, timeout(5000)).mergeChunks(eq("file.bin"), eq("alice"), any());
+        assertEquals(MergeJobStatus.COMPLETED, awaitFinished("job-1").getStatus());
+    }
+
+    @Test
+    void runningJobWithoutHeartbeatIsRequeuedAndRunAgain() throws Exception {
+        when(fileStorageService.mergeChunks(eq("file.bin"), eq("alice"), any())).thenReturn(true);
+        LocalDateTime lastHeartbeat = LocalDateTime.now().minusMinutes(10);
+        running("abandoned", lastHeartbeat);
+        running("alive", LocalDateTime.now());
+
+        newWorker().poll();
+
+        assertEquals(MergeJobStatus.COMPLETED, awaitFinished("abandoned").getStatus());
+        verify(fileStorageService, times(1)).mergeChunks(eq("file.bin"), eq("alice"), any());
+        // A job whose worker is still sending heartbeats is left alone
+        assertEquals(MergeJobStatus.RUNNING, mergeJobRepository.findById("alive").orElseThrow().getStatus());
+    }
+
+    @Test
+    void jobIsNotClaimedTwiceByConcurrentWorkers() throws Exception {
+        CountDownLatch merging = new CountDownLatch(1);
+        when(fileStorageService.mergeChunks(eq("file.bin"), eq("alice"), any())).thenAnswer(invocation -> {
+            merging.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        queue("job-1", LocalDateTime.now());
+
+        List<MergeJobService> nodes = List.of(newWorker(), newWorker(), newWorker(), newWorker());
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MergeJobService node : nodes) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        node.dispatchQueuedJobs();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+        merging.countDown();
+
+        assertEquals(MergeJobStatus.COMPLETED, awaitFinished("job-1").getStatus());
+        verify(fileStorageService, times(1)).mergeChunks(eq("file.bin"), eq("alice"), any());
+    }
+
+    @Test
+    void finishedJobIsNotClaimedAgain() throws Exception {
+        when(fileStorageService.mergeChunks(eq("file.bin"), eq("alice"), any())).thenReturn(true);
+        queue("job-1", LocalDateTime.now());
+        MergeJobService worker = newWorker();
+        worker.poll();
+        awaitFinished("job-1");
+
+        worker.poll();
+        newWorker().poll();
+
+        verify(fileStorageService, times(1)).mergeChunks(eq("file.bin"), eq("alice"), any());
+        verify(fileStorageService, never()).completeUploadSession(any(), any());
+    }
+
+    private MergeJobService newWorker() {
+        MergeJobService worker = new MergeJobService(mergeJobRepository, fileStorageService, mock(AdmissionControl.class),
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class), 2, false);
+        ReflectionTestUtils.setField(worker, "staleAfterMs", 120_000L);
+        workers.add(worker);
+        return worker;
+    }
+
+    private void queue(String id, LocalDateTime createdAt) {
+        mergeJobRepository.saveAndFlush(new MergeJob(id, "file.bin", "alice", createdAt));
+    }
+
+    private void running(String id, LocalDateTime heartbeat) {
+        MergeJob job = new MergeJob(id, "file.bin", "alice", heartbeat);
+        job.setStatus(MergeJobStatus.RUNNING);
+        mergeJobRepository.saveAndFlush(job);
+    }
+
+    private MergeJob awaitFinished(String id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            MergeJob job = mergeJobRepository.findById(id).orElseThrow();
+            if (job.getStatus() == MergeJobStatus.COMPLETED || job.getStatus() == MergeJobStatus.FAILED) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Job " + id + " did not finish");
+    }
+}
@@ -0,0 +1,163 @@
+package com.filetransfer.sftp.service;
+
+import com.filetransfer.sftp.dto.UploadSessionDTO;
+import com.filetransfer.sftp.exception.ChunkChecksumException;
+import com.filetransfer.sftp.model.UploadSession;
+import com.filetransfer.sftp.repository.ChunkUploadStateRepository;
+import com.filetransfer.sftp.repository.UploadSessionRepository;
+import com.filetransfer.sftp.storage.BlobStoreRegistry;
+import com.filetransfer.sftp.storage.FileSystemBlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTests {
+
+    @Mock
+    UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    ChunkUploadStateRepository chunkUploadStateRepository;
+
+    @Mock
+    ChunkStateWriter chunkStateWriter;
+
+    @Mock
+    MergeJobService mergeJobService;
+
+    @TempDir
+    Path storageRoot;
+
+    UploadSessionService uploadSessionService;
+
+    @BeforeEach
+    void setUp() {
+        FileSystemBlobStore blobStore = new FileSystemBlobStore(storageRoot.toString(), 65536);
+        uploadSessionService = new UploadSessionService(uploadSessionRepository,
+                new ChunkIndexService(chunkUploadStateRepository, chunkStateWriter), mergeJobService,
+                new BlobStoreRegistry(List.of(blobStore), FileSystemBlobStore.SCHEME),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), TransferMetrics.NONE, 3);
+    }
+
+    private UploadSession openSession(long totalSize, int chunkSize) throws Exception {
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        UploadSessionDTO created = uploadSessionService.create("data.bin", "alice", totalSize, chunkSize, null);
+
+        ArgumentCaptor<UploadSession> saved = ArgumentCaptor.forClass(UploadSession.class);
+        verify(uploadSessionRepository).save(saved.capture());
+        UploadSession session = saved.getValue();
+        assertEquals(created.getUploadId(), session.getId());
+        when(uploadSessionRepository.findByIdAndOwner(session.getId(), "alice")).thenReturn(Optional.of(session));
+        return session;
+    }
+
+    @Test
+    void chunksArrivingOutOfOrderLandAtTheirOffsets() throws Exception {
+        UploadSession session = openSession(10, 4);
+        assertEquals(3, session.getChunkCount());
+        assertEquals(10, Files.size(Paths.get(session.getStagingPath())));
+        when(uploadSessionRepository.startFinalizing(eq(session.getId()), anyString(), any())).thenReturn(1);
+
+        uploadSessionService.writeChunk(session.getId(), "alice", 2, new ByteArrayInputStream("89".getBytes()));
+        uploadSessionService.writeChunk(session.getId(), "alice", 0, new ByteArrayInputStream("0123".getBytes()));
+        verify(mergeJobService, never()).queueUploadSession(anyString(), any());
+
+        uploadSessionService.writeChunk(session.getId(), "alice", 1, new ByteArrayInputStream("4567".getBytes()));
+
+        assertEquals("0123456789", Files.readString(Paths.get(session.getStagingPath())));
+        verify(mergeJobService, times(1)).queueUploadSession(anyString(), eq(session));
+        verify(mergeJobService).dispatchQueuedJobs();
+    }
+
+    @Test
+    void sessionIsFinalizedWhenTheLastChunksWereRegisteredOnAnotherNode() throws Exception {
+        UploadSession session = openSession(10, 4);
+        when(chunkUploadStateRepository.sumChunkCount(session.getId(), "alice")).thenReturn(3L);
+        when(uploadSessionRepository.startFinalizing(eq(session.getId()), anyString(), any())).thenReturn(1);
+
+        // Chunks 0 and 1 went to another node, so this one has only seen chunk 2
+        uploadSessionService.writeChunk(session.getId(), "alice", 2, new ByteArrayInputStream("89".getBytes()));
+
+        verify(mergeJobService, times(1)).queueUploadSession(anyString(), eq(session));
+    }
+
+    @Test
+    void chunksOfTheWrongLengthAreRejected() throws Exception {
+        UploadSession session = openSession(10, 4);
+
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.writeChunk(
+                session.getId(), "alice", 0, new ByteArrayInputStream("012".getBytes())));
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.writeChunk(
+                session.getId(), "alice", 2, new ByteArrayInputStream("89X".getBytes())));
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.writeChunk(
+                session.getId(), "alice", 3, new ByteArrayInputStream("".getBytes())));
+
+        verify(chunkStateWriter, never()).write(any(), anyInt());
+    }
+
+    @Test
+    void chunksThatFailTheirChecksumAreNotRegistered() throws Exception {
+        UploadSession session = openSession(10, 4);
+        CRC32C crc = new CRC32C();
+        crc.update("0123".getBytes());
+        String expected = String.format("%08x", crc.getValue());
+
+        ChunkChecksumException e = assertThrows(ChunkChecksumException.class, () -> uploadSessionService.writeChunk(
+                session.getId(), "alice", 0, new ByteArrayInputStream("0X23".getBytes()), ChunkChecksum.of(expected, null)));
+        assertEquals(0, e.getChunkIndex());
+        verify(chunkStateWriter, never()).write(any(), anyInt());
+
+        // The resent chunk overwrites the corrupted bytes
+        uploadSessionService.writeChunk(session.getId(), "alice", 0, new ByteArrayInputStream("0123".getBytes()),
+                ChunkChecksum.of(expected, null));
+        assertEquals("0123", Files.readString(Paths.get(session.getStagingPath())).substring(0, 4));
+        verify(chunkStateWriter).write(any(), eq(0));
+    }
+
+    @Test
+    void idleSessionsAreAbortedAndTheirStagingFilesDeleted() throws Exception {
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        uploadSessionService.create("data.bin", "alice", 10, 4, null);
+        ArgumentCaptor<UploadSession> saved = ArgumentCaptor.forClass(UploadSession.class);
+        verify(uploadSessionRepository).save(saved.capture());
+        UploadSession session = saved.getValue();
+        ReflectionTestUtils.setField(uploadSessionService, "idleTimeoutMs", 86_400_000L);
+        ReflectionTestUtils.setField(uploadSessionService, "reapBatchSize", 100);
+        when(uploadSessionRepository.findIdle(any(), any())).thenReturn(List.of(session));
+        when(uploadSessionRepository.abortIdle(eq(session.getId()), any(), anyString(), any())).thenReturn(1);
+
+        uploadSessionService.abortIdleSessions();
+
+        assertFalse(Files.exists(Paths.get(session.getStagingPath())));
+        verify(chunkStateWriter).discard(any());
+    }
+}
@@ -0,0 +1,119 @@
+package com.filetransfer.sftp.storage;
+
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressingBlobStoreTests {
+
+    @TempDir
+    Path storageRoot;
+
+    FileSystemBlobStore fileSystemStore;
+
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        fileSystemStore = new FileSystemBlobStore(storageRoot.toString(), 65536);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private BlobStoreRegistry registry(String codec) {
+        return new BlobStoreRegistry(List.of(fileSystemStore), List.of(new GzipCodec(), new ZstdCodec(3), new Lz4Codec()),
+                meterRegistry, ObservationRegistry.NOOP, FileSystemBlobStore.SCHEME, codec, 65536, 65536, 0.9);
+    }
+
+    private static byte[] csv(int rows) {
+        StringBuilder builder = new StringBuilder("id,name,amount\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append(i).append(",customer-").append(i % 100).append(',').append(i * 7 % 1000).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void compressibleContentRoundTripsWithEveryCodec() throws Exception {
+        byte[] content = csv(50_000);
+        String checksum = BlobStreams.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        for (String codec : List.of("gzip", "zstd", "lz4")) {
+            BlobStoreRegistry registry = registry(codec);
+            StoredBlob blob = registry.getActiveStore().write(new ByteArrayInputStream(content));
+
+            assertTrue(blob.getBlobRef().startsWith(codec + "+fs:"), blob.getBlobRef());
+            assertEquals(content.length, blob.getSize());
+            assertEquals(checksum, blob.getChecksum());
+
+            CompressingBlobStore store = (CompressingBlobStore) registry.getStore(blob.getBlobRef());
+            assertTrue(Files.size(store.getCompressedLocalPath(blob.getBlobRef()).orElseThrow()) < content.length / 2);
+            try (InputStream inputStream = store.open(blob.getBlobRef())) {
+                assertArrayEquals(content, inputStream.readAllBytes());
+            }
+            assertEquals(1, meterRegistry.summary("storage.compression.ratio", "codec", codec).count());
+        }
+    }
+
+    @Test
+    void incompressibleContentIsStoredAsIs() throws Exception {
+        byte[] content = new byte[200_000];
+        new Random(42).nextBytes(content);
+        BlobStoreRegistry registry = registry("zstd");
+
+        StoredBlob blob = registry.getActiveStore().write(new ByteArrayInputStream(content));
+
+        assertTrue(blob.getBlobRef().startsWith("fs:"), blob.getBlobRef());
+        assertSame(fileSystemStore, registry.getStore(blob.getBlobRef()));
+        assertArrayEquals(content, Files.readAllBytes(fileSystemStore.getLocalPath(blob.getBlobRef()).orElseThrow()));
+        assertEquals(1.0, meterRegistry.counter("storage.compression.skipped", "codec", "zstd").count());
+    }
+
+    @Test
+    void importedFilesAreCompressedAndConsumed() throws Exception {
+        byte[] content = csv(10_000);
+        BlobStoreRegistry registry = registry("zstd");
+        Path stagingFile = registry.getActiveStore().newStagingFile();
+        Files.write(stagingFile, content);
+
+        StoredBlob blob = registry.getActiveStore().importFile(stagingFile);
+
+        assertTrue(blob.getBlobRef().startsWith("zstd+fs:"), blob.getBlobRef());
+        assertFalse(Files.exists(stagingFile));
+        try (InputStream inputStream = registry.getStore(blob.getBlobRef()).open(blob.getBlobRef())) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void storeCallsAreObservedWhenObservationsAreOn() throws Exception {
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        BlobStoreRegistry registry = new BlobStoreRegistry(List.of(fileSystemStore), List.of(new ZstdCodec(3)),
+                meterRegistry, observationRegistry, FileSystemBlobStore.SCHEME, "zstd", 65536, 65536, 0.9);
+
+        StoredBlob blob = registry.getActiveStore().write(new ByteArrayInputStream(csv(1_000)));
+        registry.getStore(blob.getBlobRef()).open(blob.getBlobRef()).close();
+
+        // Compressed content is staged and then imported into the underlying store
+        assertEquals(1, meterRegistry.timer("storage.blob", "store", "fs", "operation", "import", "error", "none").count());
+        assertEquals(1, meterRegistry.timer("storage.blob", "store", "fs", "operation", "open", "error", "none").count());
+    }
+}